@@ -0,0 +1,80 @@
+package bus.bench;
+
+import bus.BookingEngine;
+import bus.BookingResult;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how booking throughput scales with the number of threads.
+ * Every thread books and cancels random seats on random buses, so most claims
+ * land on different buses (the many-buses workload).
+ * <p>
+ * Usage: BookingEngineBenchmark [buses] [seats] [seconds per run]
+ */
+public class BookingEngineBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int numberOfBuses = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int numberSeatsPerBus = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("buses=" + numberOfBuses + " seats=" + numberSeatsPerBus + " cores=" + cores);
+        run(new BookingEngine(numberOfBuses, numberSeatsPerBus), 1, 1); // warm up
+
+        double singleThread = 0;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            double opsPerSecond = run(new BookingEngine(numberOfBuses, numberSeatsPerBus), threads, seconds);
+            if (threads == 1) {
+                singleThread = opsPerSecond;
+            }
+            System.out.printf("threads=%-3d ops/s=%,14.0f speedup=%.2fx%n", threads, opsPerSecond, opsPerSecond / singleThread);
+        }
+    }
+
+    /**
+     * Runs book/cancel pairs on all threads for a fixed time.
+     *
+     * @return The number of operations per second over all threads.
+     */
+    private static double run(BookingEngine engine, int threads, int seconds) throws InterruptedException {
+        int numberOfBuses = engine.getSeatStore().getNumberOfBuses();
+        int numberSeatsPerBus = engine.getSeatStore().getNumberSeatsPerBus();
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long done = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while ((done & 1023) != 0 || System.nanoTime() < deadline) { // check the clock every 1024 operations
+                    int busId = random.nextInt(numberOfBuses) + 1;
+                    int seatNumber = random.nextInt(numberSeatsPerBus) + 1;
+                    if (engine.book(busId, seatNumber) != BookingResult.BOOKED) {
+                        engine.cancel(busId, seatNumber);
+                    }
+                    done++;
+                }
+                operations.add(done);
+            });
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() / ((System.nanoTime() - begin) / 1e9);
+    }
+}
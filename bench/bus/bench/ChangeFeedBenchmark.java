@@ -0,0 +1,172 @@
+package bus.bench;
+
+import bus.BookingEngine;
+import bus.feed.ChangeFeed;
+import bus.feed.ChangeSubscriber;
+import bus.feed.FeedClient;
+import bus.feed.FeedServer;
+import bus.feed.SeatChange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Books and cancels random seats from several threads while a {@link ChangeFeed} hands every change
+ * to 1, 10 and 100 local subscribers, and to 10 remote ones over a {@link FeedServer}. Each subscriber
+ * keeps the free seats of every bus like a station board and is checked against the engine at the end.
+ * Reports the booking throughput next to the same run without a feed, how often the bookings waited
+ * for a slow subscriber, how many events a batch carried on average and how many remote boards fell
+ * a whole ring behind and were dropped; the dropped boards are not checked.
+ * <p>
+ * Usage: ChangeFeedBenchmark [operations per thread] [threads] [ring capacity]
+ */
+public class ChangeFeedBenchmark {
+
+    private static final int BUSES = 2_000;
+    private static final int SEATS = 50;
+    private static final int BATCH_SIZE = 1024;
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 1 << 16;
+
+        run("warm-up", operations, threads, capacity, 10, false);
+        run("no feed", operations, threads, capacity, 0, false);
+        for (int subscribers : new int[]{1, 10, 100}) {
+            run(subscribers + " local", operations, threads, capacity, subscribers, false);
+        }
+        run("10 socket", operations, threads, capacity, 10, true);
+    }
+
+    /**
+     * Books and cancels with the given subscribers and prints one line of results.
+     */
+    private static void run(String name, int operations, int threads, int capacity, int subscribers, boolean remote) throws Exception {
+        BookingEngine engine = new BookingEngine(BUSES, SEATS);
+        ChangeFeed feed = new ChangeFeed(engine, capacity, BATCH_SIZE);
+        engine.addListener(feed);
+        FeedServer server = null;
+
+        List<Board> boards = new ArrayList<>();
+        List<ChangeFeed.Subscription> subscriptions = new ArrayList<>();
+        List<FeedClient> clients = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        if (remote) {
+            server = new FeedServer(feed, engine, 0);
+            server.start();
+            for (int i = 0; i < subscribers; i++) {
+                Board board = new Board();
+                FeedClient client = new FeedClient("localhost", server.getPort());
+                boards.add(board);
+                clients.add(client);
+                readers.add(Thread.ofPlatform().start(() -> {
+                    try {
+                        client.run(board);
+                    } catch (Exception e) {
+                        System.err.println("-> Error: " + e.getMessage());
+                    }
+                }));
+            }
+            // The snapshots are sent before any change is published
+            while (feed.getSubscriberCount() < subscribers) {
+                Thread.sleep(1);
+            }
+        } else {
+            for (int i = 0; i < subscribers; i++) {
+                Board board = new Board();
+                boards.add(board);
+                subscriptions.add(feed.subscribe(board));
+            }
+        }
+
+        // Every thread books and cancels random seats of its own buses
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers[t] = Thread.ofPlatform().start(() -> {
+                SplittableRandom random = new SplittableRandom(thread);
+                for (int i = 0; i < operations; i++) {
+                    int busId = random.nextInt(BUSES / threads) * threads + thread + 1;
+                    int seatNumber = random.nextInt(SEATS) + 1;
+                    if (!engine.book(busId, seatNumber).isSuccess()) {
+                        engine.cancel(busId, seatNumber);
+                    }
+                }
+            });
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long bookingNanos = System.nanoTime() - start;
+
+        // Wait until every board has caught up, a dropped remote board stops reading
+        long published = feed.getPublished();
+        for (int i = 0; i < boards.size(); i++) {
+            while (boards.get(i).events.get() < published + (remote ? BUSES : 0) && (!remote || readers.get(i).isAlive())) {
+                Thread.sleep(1);
+            }
+        }
+        long deliveredNanos = System.nanoTime() - start;
+
+        int wrong = 0;
+        for (int i = 0; i < boards.size(); i++) {
+            Board board = boards.get(i);
+            if (remote && !readers.get(i).isAlive()) {
+                continue;
+            }
+            for (int busId = 1; busId <= BUSES; busId++) {
+                if (board.freeSeats[busId] != engine.getAvailableSeats(busId)) {
+                    wrong++;
+                }
+            }
+        }
+        long batches = 0;
+        for (ChangeFeed.Subscription subscription : subscriptions) {
+            batches += subscription.getBatches();
+            subscription.close();
+        }
+        for (FeedClient client : clients) {
+            client.close();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (server != null) {
+            server.stop();
+        }
+        long waits = feed.getPublisherWaits();
+        long dropped = feed.getDroppedSubscribers();
+        feed.close();
+
+        long totalOperations = (long) operations * threads;
+        System.out.printf("%-10s %,12.0f ops/s  delivered %,14.0f events/s  publisher waits %,8d  batch %6s  wrong boards %d  dropped %d%n",
+                name, totalOperations * 1e9 / bookingNanos, subscribers == 0 ? 0.0 : published * subscribers * 1e9 / deliveredNanos, waits,
+                batches == 0 ? "-" : String.format("%.1f", (double) published * subscribers / batches), wrong, dropped);
+    }
+
+    /**
+     * This class represents a station board that shows the free seats of every bus.
+     */
+    private static final class Board implements ChangeSubscriber {
+
+        private final int[] freeSeats = new int[BUSES + 1];
+        private final AtomicLong events = new AtomicLong();
+
+        private Board() {
+            Arrays.fill(freeSeats, SEATS);
+        }
+
+        @Override
+        public void onChanges(long[] changes, int count) {
+            for (int i = 0; i < count; i++) {
+                freeSeats[SeatChange.getBusId(changes[i])] = SeatChange.getFreeSeats(changes[i]);
+            }
+            events.addAndGet(count);
+        }
+    }
+}
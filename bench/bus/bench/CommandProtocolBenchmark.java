@@ -0,0 +1,175 @@
+package bus.bench;
+
+import bus.BookingEngine;
+import bus.BookingResult;
+import bus.command.CommandProcessor;
+import bus.command.CommandServer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+
+/**
+ * Runs the same script of random BOOK, CANCEL, STAT and RESET commands through the line command
+ * protocol and through the input path of the menu: Scanner tokens, the regex check the menu used
+ * before the protocol, and responses built from Strings. Then sends the script to a
+ * {@link CommandServer} once pipelined and once waiting for every response, as an interactive client would.
+ * <p>
+ * Usage: CommandProtocolBenchmark [commands] [buses] [seats]
+ */
+public class CommandProtocolBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int commands = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int numberOfBuses = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int numberSeatsPerBus = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        byte[] script = createScript(commands, numberOfBuses, numberSeatsPerBus);
+        System.out.printf("commands=%,d script=%,d bytes%n", commands, script.length);
+
+        for (int pass = 0; pass < 3; pass++) { // the first passes warm up the JIT
+            BookingEngine engine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+            long start = System.nanoTime();
+            CommandProcessor processor = new CommandProcessor(engine);
+            processor.process(new ByteArrayInputStream(script), OutputStream.nullOutputStream());
+            long protocolNanos = System.nanoTime() - start;
+            long protocolBooked = engine.getTotalBookedSeats();
+
+            engine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+            start = System.nanoTime();
+            long scannerCommands = runScanner(engine, script);
+            long scannerNanos = System.nanoTime() - start;
+
+            System.out.printf("protocol %,12.0f commands/s (%,d errors)   scanner %,12.0f commands/s   speedup %.1fx   same seats %b%n",
+                    processor.getCommands() * 1e9 / protocolNanos, processor.getErrors(),
+                    scannerCommands * 1e9 / scannerNanos, (double) scannerNanos / protocolNanos,
+                    protocolBooked == engine.getTotalBookedSeats());
+        }
+
+        // Over a socket: one round trip per command, or the whole script pipelined
+        BookingEngine engine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+        CommandServer server = new CommandServer(engine, 0);
+        server.start();
+        int lockStepCommands = Math.min(commands, 100_000);
+        byte[] lockStepScript = createScript(lockStepCommands, numberOfBuses, numberSeatsPerBus);
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            long start = System.nanoTime();
+            int lineStart = 0;
+            for (int i = 0; i < lockStepScript.length; i++) {
+                if (lockStepScript[i] == '\n') {
+                    out.write(lockStepScript, lineStart, i + 1 - lineStart);
+                    out.flush();
+                    in.readLine();
+                    lineStart = i + 1;
+                }
+            }
+            System.out.printf("socket, lock step  %,12.0f commands/s%n", lockStepCommands * 1e9 / (System.nanoTime() - start));
+        }
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII), 1 << 16);
+            long start = System.nanoTime();
+            Thread writer = Thread.ofPlatform().start(() -> {
+                try {
+                    out.write(script);
+                    out.flush();
+                } catch (Exception e) {
+                    System.err.println("-> Error: " + e.getMessage());
+                }
+            });
+            long responses = 0;
+            while (responses < commands && in.readLine() != null) {
+                responses++;
+            }
+            writer.join();
+            System.out.printf("socket, pipelined  %,12.0f commands/s%n", responses * 1e9 / (System.nanoTime() - start));
+        }
+        server.stop();
+    }
+
+    /**
+     * Creates a script of random commands, mostly bookings and cancels.
+     */
+    private static byte[] createScript(int commands, int numberOfBuses, int numberSeatsPerBus) {
+        SplittableRandom random = new SplittableRandom(7);
+        StringBuilder script = new StringBuilder(commands * 16);
+        for (int i = 0; i < commands; i++) {
+            int busId = random.nextInt(numberOfBuses) + 1;
+            int kind = random.nextInt(100);
+            if (kind < 55) {
+                script.append("BOOK ").append(busId).append(' ').append(random.nextInt(numberSeatsPerBus) + 1);
+            } else if (kind < 85) {
+                script.append("CANCEL ").append(busId).append(' ').append(random.nextInt(numberSeatsPerBus) + 1);
+            } else if (kind < 99) {
+                script.append("STAT ").append(busId);
+            } else {
+                script.append("RESET ").append(busId);
+            }
+            script.append('\n');
+        }
+        return script.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Runs a script the way the menu reads its input.
+     *
+     * @return The number of commands.
+     */
+    private static long runScanner(BookingEngine engine, byte[] script) {
+        int numberOfBuses = engine.getNumberOfBuses();
+        int numberSeatsPerBus = engine.getNumberSeatsPerBus();
+        PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+        Scanner scanner = new Scanner(new ByteArrayInputStream(script), StandardCharsets.US_ASCII);
+        long commands = 0;
+        while (scanner.hasNext()) {
+            String command = scanner.next();
+            String inputBusId = scanner.next();
+            commands++;
+            if (!isInputValid(inputBusId, numberOfBuses)) {
+                out.println("ERR bus ID out of range");
+                continue;
+            }
+            int busId = Integer.parseInt(inputBusId);
+            if (command.equalsIgnoreCase("STAT")) {
+                int bookedSeats = engine.getBookedSeats(busId);
+                out.println("OK " + bookedSeats + " " + (numberSeatsPerBus - bookedSeats));
+            } else if (command.equalsIgnoreCase("RESET")) {
+                engine.reset(busId);
+                out.println("OK " + engine.getAvailableSeats(busId));
+            } else {
+                String inputSeatNumber = scanner.next();
+                if (!isInputValid(inputSeatNumber, numberSeatsPerBus)) {
+                    out.println("ERR seat number out of range");
+                    continue;
+                }
+                int seatNumber = Integer.parseInt(inputSeatNumber);
+                BookingResult result = command.equalsIgnoreCase("BOOK") ? engine.book(busId, seatNumber) : engine.cancel(busId, seatNumber);
+                out.println(result.isSuccess() ? "OK " + engine.getAvailableSeats(busId) : "ERR " + result);
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * The check the menu used before the command protocol, with a regex per input.
+     */
+    private static boolean isInputValid(String input, int max) {
+        if (input == null || !input.matches("^[1-9][0-9]*$")) {
+            return false;
+        }
+        if (input.length() > String.valueOf(max).length()) {
+            return false;
+        }
+        int number = Integer.parseInt(input);
+        return number >= 1 && number <= max;
+    }
+}
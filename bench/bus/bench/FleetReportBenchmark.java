@@ -0,0 +1,90 @@
+package bus.bench;
+
+import bus.SeatStore;
+import bus.report.FleetAnalytics;
+import bus.report.FleetReport;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes the {@link FleetReport} of a large fleet with fork/join pools of 1, 2, 4, ... cores up
+ * to all cores, and compares it with the sequential loop over the booked seat counters that
+ * the overview pages use. Every report must give the same counts; the benchmark checks this.
+ * <p>
+ * Usage: FleetReportBenchmark [buses] [seats] [rounds]
+ */
+public class FleetReportBenchmark {
+
+    public static void main(String[] args) {
+        int numberOfBuses = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int numberSeatsPerBus = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        // Buses between empty and full, so every occupancy bucket gets some
+        SeatStore seatStore = new SeatStore(numberOfBuses, numberSeatsPerBus);
+        SplittableRandom random = new SplittableRandom(5);
+        for (int busId = 1; busId <= numberOfBuses; busId++) {
+            int share = random.nextInt(101);
+            for (int seatNumber = 1; seatNumber <= numberSeatsPerBus; seatNumber++) {
+                if (random.nextInt(100) < share) {
+                    seatStore.book(busId, seatNumber);
+                }
+            }
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("buses=%,d seats=%d booked=%,d cores=%d%n", numberOfBuses, numberSeatsPerBus, seatStore.getTotalBookedSeats(), cores);
+
+        // Only counts the occupancy, without seat positions
+        long[] sequential = new long[rounds];
+        long sink = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int busId = 1; busId <= numberOfBuses; busId++) {
+                sink += seatStore.getBookedSeats(busId);
+            }
+            sequential[round] = System.nanoTime() - start;
+        }
+        System.out.printf("sequential counters    %8.1f ms (booked seats only)%n", median(sequential) / 1e6);
+
+        FleetReport expected = null;
+        double oneCore = 0;
+        for (int parallelism = 1; ; parallelism = Math.min(parallelism * 2, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            FleetAnalytics analytics = new FleetAnalytics(seatStore, pool);
+            long[] times = new long[rounds];
+            for (int round = 0; round < rounds; round++) {
+                FleetReport report = analytics.analyze();
+                times[round] = report.getElapsedNanos();
+                if (expected == null) {
+                    expected = report;
+                } else if (report.getBookedSeats() != expected.getBookedSeats()
+                        || !Arrays.equals(report.getOccupancy(), expected.getOccupancy())
+                        || !Arrays.equals(report.getSeatBookings(), expected.getSeatBookings())
+                        || report.getFullBuses() != expected.getFullBuses() || report.getEmptyBuses() != expected.getEmptyBuses()) {
+                    throw new IllegalStateException("Reports differ with " + parallelism + " cores");
+                }
+            }
+            pool.shutdown();
+            double millis = median(times) / 1e6;
+            if (parallelism == 1) {
+                oneCore = millis;
+            }
+            System.out.printf("fork/join %3d cores   %8.1f ms  speedup %4.1fx%n", parallelism, millis, oneCore / millis);
+            if (parallelism == cores) {
+                break;
+            }
+        }
+        if (expected.getBookedSeats() != seatStore.getTotalBookedSeats() || sink == 0) {
+            throw new IllegalStateException("Report counted " + expected.getBookedSeats() + " booked seats");
+        }
+        expected.printSummary(System.out);
+    }
+
+    private static double median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,97 @@
+package bus.bench;
+
+import bus.BookingEngine;
+import bus.SeatStore;
+import bus.query.FreeSeatIndex;
+
+import java.util.SplittableRandom;
+
+/**
+ * Compares the searches of {@link FreeSeatIndex} with scanning every bus of the fleet,
+ * and measures what keeping the index up to date costs a booking.
+ * The fleet is filled to about 95%, so few buses have room for a large group.
+ * <p>
+ * Usage: FreeSeatIndexBenchmark [buses] [seats] [rounds]
+ */
+public class FreeSeatIndexBenchmark {
+
+    public static void main(String[] args) {
+        int numberOfBuses = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int numberSeatsPerBus = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        BookingEngine engine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+        SeatStore seatStore = engine.getSeatStore();
+        SplittableRandom random = new SplittableRandom(7);
+        for (int busId = 1; busId <= numberOfBuses; busId++) {
+            for (int seatNumber = 1; seatNumber <= numberSeatsPerBus; seatNumber++) {
+                if (random.nextInt(100) < 95) {
+                    seatStore.book(busId, seatNumber);
+                }
+            }
+        }
+        long start = System.nanoTime();
+        FreeSeatIndex index = new FreeSeatIndex(engine);
+        System.out.printf("buses=%,d seats=%d build=%.0f ms%n", numberOfBuses, numberSeatsPerBus, (System.nanoTime() - start) / 1e6);
+
+        int groupSize = numberSeatsPerBus / 5;
+        long sink = 0;
+        for (int pass = 0; pass < 2; pass++) { // the first pass warms up the JIT
+            long scanGroup = 0;
+            long indexGroup = 0;
+            long scanSeat = 0;
+            long indexSeat = 0;
+            long indexEmptiest = 0;
+            for (int round = 0; round < rounds; round++) {
+                int seatNumber = random.nextInt(numberSeatsPerBus) + 1;
+
+                start = System.nanoTime();
+                for (int busId = 1; busId <= numberOfBuses; busId++) {
+                    if (seatStore.getAvailableSeats(busId) >= groupSize) {
+                        sink += busId;
+                    }
+                }
+                scanGroup += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                sink += index.findBusesWithFreeSeats(groupSize).length;
+                indexGroup += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int busId = 1; busId <= numberOfBuses; busId++) {
+                    if (!seatStore.isBooked(busId, seatNumber)) {
+                        sink += busId;
+                    }
+                }
+                scanSeat += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                sink += index.findBusesWithSeatFree(seatNumber).length;
+                indexSeat += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                sink += index.findEmptiestBuses(10).length;
+                indexEmptiest += System.nanoTime() - start;
+            }
+            if (pass == 1) {
+                System.out.printf("at least %d free   scan=%8.3f ms  index=%8.3f ms  (%,d buses)%n",
+                        groupSize, scanGroup / 1e6 / rounds, indexGroup / 1e6 / rounds, index.findBusesWithFreeSeats(groupSize).length);
+                System.out.printf("seat free          scan=%8.3f ms  index=%8.3f ms%n", scanSeat / 1e6 / rounds, indexSeat / 1e6 / rounds);
+                System.out.printf("10 emptiest                          index=%8.3f ms%n", indexEmptiest / 1e6 / rounds);
+            }
+        }
+
+        // Booking with the index following the engine, cancel afterwards so the fleet stays the same
+        int operations = 2_000_000;
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            int busId = random.nextInt(numberOfBuses) + 1;
+            int seatNumber = random.nextInt(numberSeatsPerBus) + 1;
+            if (engine.cancel(busId, seatNumber).isSuccess()) {
+                engine.book(busId, seatNumber);
+            }
+        }
+        System.out.printf("indexed changes    ops/s=%,.0f%n", operations / ((System.nanoTime() - start) / 1e9));
+        System.out.println("(sink " + sink + ")");
+    }
+}
@@ -0,0 +1,66 @@
+package bus.bench;
+
+import bus.BookingEngine;
+
+/**
+ * Compares booking a group seat by seat with the batch operations of {@link BookingEngine}.
+ * Every round books one group on every bus, then resets all buses (not timed).
+ * <p>
+ * Usage: GroupBookingBenchmark [buses] [seats] [group size] [rounds]
+ */
+public class GroupBookingBenchmark {
+
+    public static void main(String[] args) {
+        int numberOfBuses = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int numberSeatsPerBus = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int groupSize = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+
+        BookingEngine engine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+        int[] group = new int[groupSize];
+        for (int i = 0; i < groupSize; i++) {
+            group[i] = numberSeatsPerBus - groupSize + i + 1; // the last seats of the bus
+        }
+        int[] allBuses = new int[numberOfBuses];
+        for (int i = 0; i < numberOfBuses; i++) {
+            allBuses[i] = i + 1;
+        }
+
+        System.out.println("buses=" + numberOfBuses + " seats=" + numberSeatsPerBus + " group=" + groupSize);
+        for (int pass = 0; pass < 2; pass++) { // the first pass warms up the JIT
+            long perSeat = 0;
+            long batch = 0;
+            long any = 0;
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                for (int busId = 1; busId <= numberOfBuses; busId++) {
+                    for (int seatNumber : group) {
+                        engine.book(busId, seatNumber);
+                    }
+                }
+                perSeat += System.nanoTime() - start;
+                engine.resetBuses(allBuses);
+
+                start = System.nanoTime();
+                for (int busId = 1; busId <= numberOfBuses; busId++) {
+                    engine.bookSeats(busId, group);
+                }
+                batch += System.nanoTime() - start;
+                engine.resetBuses(allBuses);
+
+                start = System.nanoTime();
+                for (int busId = 1; busId <= numberOfBuses; busId++) {
+                    engine.bookAnySeats(busId, groupSize);
+                }
+                any += System.nanoTime() - start;
+                engine.resetBuses(allBuses);
+            }
+            if (pass == 1) {
+                double seats = (double) rounds * numberOfBuses * groupSize;
+                System.out.printf("per-seat book      seats/s=%,14.0f%n", seats / (perSeat / 1e9));
+                System.out.printf("bookSeats (batch)  seats/s=%,14.0f speedup=%.1fx%n", seats / (batch / 1e9), (double) perSeat / batch);
+                System.out.printf("bookAnySeats       seats/s=%,14.0f speedup=%.1fx%n", seats / (any / 1e9), (double) perSeat / any);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package bus.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Load-test client for the HTTP booking API started with "Main server PORT BUSES SEATS".
+ * Every client runs on a virtual thread and books or cancels random seats in a loop;
+ * at the end the requests per second and the latency percentiles are printed.
+ * <p>
+ * Usage: HttpLoadTest [base url] [clients] [seconds] [buses] [seats]
+ */
+public class HttpLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int numberOfBuses = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int numberSeatsPerBus = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<long[]>> results = new ArrayList<>();
+        long begin = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                results.add(executor.submit(() -> runClient(client, baseUrl, deadline, numberOfBuses, numberSeatsPerBus)));
+            }
+        }
+
+        // Merge the latencies of all clients
+        long elapsed = System.nanoTime() - begin;
+        long[][] perClient = new long[results.size()][];
+        int total = 0;
+        for (int i = 0; i < perClient.length; i++) {
+            perClient[i] = results.get(i).get();
+            total += perClient[i].length;
+        }
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (long[] clientLatencies : perClient) {
+            System.arraycopy(clientLatencies, 0, latencies, offset, clientLatencies.length);
+            offset += clientLatencies.length;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("clients=%d requests=%d requests/s=%,.0f%n", clients, total, total / (elapsed / 1e9));
+        if (total > 0) {
+            System.out.printf("latency p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms%n",
+                    percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999), latencies[total - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Sends book/cancel requests until the deadline.
+     *
+     * @return The latency of every request in nanoseconds.
+     */
+    private static long[] runClient(HttpClient client, String baseUrl, long deadline, int numberOfBuses, int numberSeatsPerBus) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] latencies = new long[1024];
+        int count = 0;
+        while (System.nanoTime() < deadline) {
+            int busId = random.nextInt(numberOfBuses) + 1;
+            int seatNumber = random.nextInt(numberSeatsPerBus) + 1;
+            String action = random.nextBoolean() ? "book" : "cancel";
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/buses/" + busId + "/seats/" + seatNumber + "/" + action))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+
+            long start = System.nanoTime();
+            client.send(request, HttpResponse.BodyHandlers.discarding());
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - start;
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    /**
+     * @return The latency at a percentile of sorted latencies, in milliseconds.
+     */
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,104 @@
+package bus.bench;
+
+import bus.BookingEngine;
+import bus.BookingResult;
+import bus.persist.BookingJournal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Measures bookings per second with the journal attached, for several fsync batch sizes.
+ * <ul>
+ * <li>async: one thread books as fast as it can, records are forced in the background</li>
+ * <li>sync: many clients each wait until their booking is on disk before the next one</li>
+ * </ul>
+ * Usage: JournalBenchmark [seconds per run] [sync clients] [directory]
+ */
+public class JournalBenchmark {
+
+    private static final int[] BATCH_SIZES = {1, 8, 64, 512, 4096};
+    private static final int NUMBER_OF_BUSES = 100_000;
+    private static final int NUMBER_SEATS_PER_BUS = 100;
+    private static final long MAX_DELAY_MILLIS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        Path parent = args.length > 2 ? Path.of(args[2]) : Path.of(System.getProperty("java.io.tmpdir"));
+
+        System.out.printf("%-6s %-6s %16s %12s%n", "mode", "batch", "bookings/s", "fsyncs");
+        for (int batchSize : BATCH_SIZES) {
+            run("async", batchSize, parent, seconds, 0);
+        }
+        for (int batchSize : BATCH_SIZES) {
+            run("sync", batchSize, parent, seconds, clients);
+        }
+    }
+
+    /**
+     * Runs one mode and batch size in a fresh journal directory.
+     */
+    private static void run(String mode, int batchSize, Path parent, int seconds, int clients) throws Exception {
+        Path directory = Files.createTempDirectory(parent, "journal-bench");
+        BookingEngine engine = new BookingEngine(NUMBER_OF_BUSES, NUMBER_SEATS_PER_BUS);
+        BookingJournal journal = new BookingJournal(directory, 0, batchSize, MAX_DELAY_MILLIS);
+        engine.addListener(journal);
+        LongAdder bookings = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long begin = System.nanoTime();
+
+        if (clients == 0) {
+            bookOrCancel(engine, bookings, deadline, null);
+        } else {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int c = 0; c < clients; c++) {
+                    executor.submit(() -> bookOrCancel(engine, bookings, deadline, journal));
+                }
+            }
+        }
+        journal.close(); // the last batch counts too
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+
+        System.out.printf("%-6s %-6d %,16.0f %,12d%n", mode, batchSize, bookings.sum() / elapsed, journal.getFsyncCount());
+        deleteDirectory(directory);
+    }
+
+    /**
+     * Books or cancels random seats until the deadline, waiting for the disk if a journal is given.
+     */
+    private static void bookOrCancel(BookingEngine engine, LongAdder bookings, long deadline, BookingJournal waitFor) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long done = 0;
+        while (System.nanoTime() < deadline) {
+            int busId = random.nextInt(NUMBER_OF_BUSES) + 1;
+            int seatNumber = random.nextInt(NUMBER_SEATS_PER_BUS) + 1;
+            if (engine.book(busId, seatNumber) != BookingResult.BOOKED) {
+                engine.cancel(busId, seatNumber);
+            }
+            if (waitFor != null) {
+                waitFor.awaitDurable(waitFor.getSequence());
+            }
+            done++;
+        }
+        bookings.add(done);
+    }
+
+    /**
+     * Deletes a benchmark directory and its files.
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
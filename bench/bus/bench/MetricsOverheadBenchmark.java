@@ -0,0 +1,102 @@
+package bus.bench;
+
+import bus.BookingEngine;
+import bus.BookingResult;
+import bus.BookingService;
+import bus.metrics.BookingMetrics;
+import bus.metrics.LatencyHistogram;
+import bus.metrics.MeteredBookingService;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Measures what the metrics cost on the booking path: book/cancel pairs on a plain
+ * {@link BookingEngine} against the same engine behind a {@link MeteredBookingService},
+ * with the bytes allocated per operation. Before that it checks the percentiles of
+ * {@link LatencyHistogram} against exact percentiles of random latencies.
+ * <p>
+ * Usage: MetricsOverheadBenchmark [buses] [seats] [operations]
+ */
+public class MetricsOverheadBenchmark {
+
+    public static void main(String[] args) {
+        int numberOfBuses = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int numberSeatsPerBus = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 10_000_000;
+
+        checkPercentiles();
+
+        BookingEngine plainEngine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+        BookingEngine meteredEngine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+        BookingMetrics metrics = new BookingMetrics(meteredEngine);
+        BookingService metered = new MeteredBookingService(meteredEngine, metrics);
+
+        System.out.println("buses=" + numberOfBuses + " seats=" + numberSeatsPerBus + " operations=" + operations);
+        for (int pass = 0; pass < 2; pass++) { // the first pass warms up the JIT
+            long[] plain = run(plainEngine, operations);
+            long[] measured = run(metered, operations);
+            if (pass == 1) {
+                print("engine        ", plain, operations);
+                print("metered engine", measured, operations);
+                System.out.printf("overhead       %.1f ns/op%n", (double) (measured[0] - plain[0]) / operations);
+            }
+        }
+        metrics.printSummary(System.out);
+    }
+
+    /**
+     * Runs book/cancel pairs on random seats.
+     *
+     * @return The elapsed nanoseconds and the allocated bytes.
+     */
+    private static long[] run(BookingService service, int operations) {
+        SplittableRandom random = new SplittableRandom(7);
+        int numberOfBuses = service.getNumberOfBuses();
+        int numberSeatsPerBus = service.getNumberSeatsPerBus();
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            int busId = random.nextInt(numberOfBuses) + 1;
+            int seatNumber = random.nextInt(numberSeatsPerBus) + 1;
+            if (service.book(busId, seatNumber) != BookingResult.BOOKED) {
+                service.cancel(busId, seatNumber);
+            }
+        }
+        return new long[]{System.nanoTime() - start, allocatedBytes() - bytes};
+    }
+
+    /**
+     * Compares the histogram's percentiles with exact ones; they must be within 1/64 of each other.
+     */
+    private static void checkPercentiles() {
+        SplittableRandom random = new SplittableRandom(11);
+        long[] values = new long[1_000_000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * Math.log(1e10)); // 1 ns to 10 s
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9, 99.99, 100}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = histogram.getValueAtPercentile(percentile);
+            if (estimate < exact || estimate > exact + exact / 64 + 1) {
+                throw new IllegalStateException("p" + percentile + " is " + estimate + " instead of " + exact);
+            }
+        }
+    }
+
+    private static void print(String name, long[] totals, int operations) {
+        System.out.printf("%s  ops/s=%,14.0f  %.1f ns/op  allocated=%,d bytes%n",
+                name, operations / (totals[0] / 1e9), (double) totals[0] / operations, totals[1]);
+    }
+
+    /**
+     * @return The bytes allocated by the current thread so far.
+     */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,183 @@
+package bus.bench;
+
+import bus.BookingEngine;
+import bus.SeatStore;
+import bus.render.FleetRenderer;
+import org.nocrala.tools.texttablefmt.BorderStyle;
+import org.nocrala.tools.texttablefmt.CellStyle;
+import org.nocrala.tools.texttablefmt.ShownBorders;
+import org.nocrala.tools.texttablefmt.Table;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+/**
+ * Compares the "Check Bus" tables built with texttablefmt's {@link Table#render()} with
+ * {@link FleetRenderer}: overview pages, seat tables of single buses and an export of
+ * the whole fleet. Both must give the same text; the benchmark checks this first.
+ * <p>
+ * Usage: RenderBenchmark [buses] [seats] [page size] [rounds]
+ */
+public class RenderBenchmark {
+
+    private static final String RED = "\u001B[31m";
+    private static final String BLACK = "\u001B[30m";
+    private static final String GREEN = "\u001B[32m";
+    private static final String BLUE = "\u001B[34m";
+
+    public static void main(String[] args) throws IOException {
+        int numberOfBuses = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int numberSeatsPerBus = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int pageSize = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 20_000;
+
+        BookingEngine engine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+        SeatStore seatStore = engine.getSeatStore();
+        SplittableRandom random = new SplittableRandom(42);
+        for (long i = (long) numberOfBuses * numberSeatsPerBus / 2; i > 0; i--) {
+            seatStore.book(random.nextInt(numberOfBuses) + 1, random.nextInt(numberSeatsPerBus) + 1);
+        }
+        FleetRenderer renderer = new FleetRenderer(engine, pageSize);
+        int totalPages = renderer.getTotalPages();
+
+        for (int page = 1; page <= Math.min(totalPages, 100); page++) {
+            if (!tablePage(seatStore, page, pageSize, totalPages).equals(renderer.renderPage(page).toString())
+                    || !tableBus(seatStore, page).equals(renderer.renderBus(page).toString())) {
+                throw new IllegalStateException("Renderer output differs from texttablefmt on page " + page);
+            }
+        }
+
+        System.out.println("buses=" + numberOfBuses + " seats=" + numberSeatsPerBus + " pageSize=" + pageSize);
+        long sink = 0;
+        for (int pass = 0; pass < 2; pass++) { // the first pass warms up the JIT
+            long[] table = new long[2];
+            long[] streaming = new long[2];
+            long[] tableBus = new long[2];
+            long[] streamingBus = new long[2];
+            for (int round = 0; round < rounds; round++) {
+                int page = random.nextInt(totalPages) + 1;
+                int busId = random.nextInt(numberOfBuses) + 1;
+
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                sink += tablePage(seatStore, page, pageSize, totalPages).length();
+                table[0] += System.nanoTime() - start;
+                table[1] += allocatedBytes() - bytes;
+
+                bytes = allocatedBytes();
+                start = System.nanoTime();
+                sink += renderer.renderPage(page).length();
+                streaming[0] += System.nanoTime() - start;
+                streaming[1] += allocatedBytes() - bytes;
+
+                bytes = allocatedBytes();
+                start = System.nanoTime();
+                sink += tableBus(seatStore, busId).length();
+                tableBus[0] += System.nanoTime() - start;
+                tableBus[1] += allocatedBytes() - bytes;
+
+                bytes = allocatedBytes();
+                start = System.nanoTime();
+                sink += renderer.renderBus(busId).length();
+                streamingBus[0] += System.nanoTime() - start;
+                streamingBus[1] += allocatedBytes() - bytes;
+            }
+            if (pass == 1) {
+                print("page  Table.render()", table, rounds);
+                print("page  FleetRenderer ", streaming, rounds);
+                print("bus   Table.render()", tableBus, rounds);
+                print("bus   FleetRenderer ", streamingBus, rounds);
+            }
+        }
+
+        CountingWriter writer = new CountingWriter();
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        renderer.writeFleet(writer);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("fleet export        buses/s=%,12.0f chars=%,d allocated=%,d bytes%n",
+                numberOfBuses / seconds, writer.chars, allocatedBytes() - bytes);
+        System.out.println("(sink " + sink + ")");
+    }
+
+    /**
+     * Builds an overview page the way the menu did with texttablefmt.
+     */
+    private static String tablePage(SeatStore seatStore, int page, int pageSize, int totalPages) {
+        int startIndex = (page - 1) * pageSize;
+        int endIndex = Math.min(startIndex + pageSize, seatStore.getNumberOfBuses());
+        CellStyle numberCellStyle = new CellStyle(CellStyle.HorizontalAlign.CENTER);
+        Table table = new Table(4, BorderStyle.UNICODE_BOX_DOUBLE_BORDER, ShownBorders.ALL);
+        table.addCell("Display All Bus information (Page " + page + "/" + totalPages + ")", numberCellStyle, 4);
+        table.addCell(GREEN + "ID" + BLACK, numberCellStyle);
+        table.addCell(GREEN + "Seat" + BLACK, numberCellStyle);
+        table.addCell(GREEN + "Available" + BLACK, numberCellStyle);
+        table.addCell(RED + "Unavailable" + BLACK, numberCellStyle);
+        table.setColumnWidth(0, 10, 15);
+        table.setColumnWidth(1, 20, 25);
+        table.setColumnWidth(2, 20, 25);
+        table.setColumnWidth(3, 20, 25);
+        for (int i = startIndex; i < endIndex; i++) {
+            table.addCell(String.valueOf(i + 1), numberCellStyle);
+            table.addCell(BLUE + seatStore.getNumberSeatsPerBus() + BLACK, numberCellStyle);
+            table.addCell(GREEN + seatStore.getAvailableSeats(i + 1) + BLACK, numberCellStyle);
+            table.addCell(RED + seatStore.getBookedSeats(i + 1) + BLACK, numberCellStyle);
+        }
+        return table.render();
+    }
+
+    /**
+     * Builds the seat table of a bus the way the menu did with texttablefmt.
+     */
+    private static String tableBus(SeatStore seatStore, int busId) {
+        CellStyle numberCellStyle = new CellStyle(CellStyle.HorizontalAlign.CENTER);
+        Table table = new Table(5, BorderStyle.UNICODE_BOX_DOUBLE_BORDER, ShownBorders.ALL);
+        table.addCell("Bus " + busId + " Information", numberCellStyle, 5);
+        for (int column = 0; column < 5; column++) {
+            table.addCell("Seat", numberCellStyle);
+            table.setColumnWidth(column, 10, 15);
+        }
+        for (int i = 0; i < seatStore.getNumberSeatsPerBus(); i++) {
+            if (!seatStore.isBooked(busId, i + 1)) {
+                table.addCell(GREEN + "(+) " + (i + 1) + GREEN, numberCellStyle);
+            } else {
+                table.addCell(RED + "(-) " + (i + 1) + RED, numberCellStyle);
+            }
+        }
+        return table.render();
+    }
+
+    private static void print(String name, long[] totals, int rounds) {
+        System.out.printf("%s  renders/s=%,12.0f  allocated=%,10d bytes/render%n",
+                name, rounds / (totals[0] / 1e9), totals[1] / rounds);
+    }
+
+    /**
+     * @return The bytes allocated by the current thread so far.
+     */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * A writer that only counts the characters, so the export is measured without a disk.
+     */
+    private static class CountingWriter extends Writer {
+        private long chars;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            chars += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
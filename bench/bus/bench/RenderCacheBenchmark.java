@@ -0,0 +1,81 @@
+package bus.bench;
+
+import bus.BookingEngine;
+import bus.render.FleetRenderer;
+import bus.render.RenderCache;
+
+import java.util.SplittableRandom;
+
+/**
+ * Simulates operators looking at bus seat tables and overview pages while seats are booked and
+ * canceled. Most views go to a small set of popular buses. Every view is rendered with a
+ * {@link FleetRenderer} and once more through a {@link RenderCache}. The benchmark checks that the
+ * cached tables equal the fresh ones, then reports the time per view and the hit rate for
+ * several shares of bookings among the operations.
+ * <p>
+ * Usage: RenderCacheBenchmark [buses] [seats] [views] [hot buses]
+ */
+public class RenderCacheBenchmark {
+
+    private static final int PAGE_SIZE = 5;
+
+    public static void main(String[] args) {
+        int numberOfBuses = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int numberSeatsPerBus = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int views = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        int hotBuses = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        System.out.printf("buses=%,d seats=%d views=%,d hot buses=%d (90%% of the views)%n", numberOfBuses, numberSeatsPerBus, views, hotBuses);
+        for (int bookingPercent : new int[]{0, 1, 10, 50}) {
+            for (int pass = 0; pass < 2; pass++) { // the first pass warms up the JIT
+                run(numberOfBuses, numberSeatsPerBus, views, hotBuses, bookingPercent, pass == 1);
+            }
+        }
+    }
+
+    /**
+     * Runs the same views with and without the cache and prints one line of results.
+     */
+    private static void run(int numberOfBuses, int numberSeatsPerBus, int views, int hotBuses, int bookingPercent, boolean print) {
+        BookingEngine engine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+        FleetRenderer renderer = new FleetRenderer(engine, PAGE_SIZE);
+        RenderCache cache = new RenderCache(new FleetRenderer(engine, PAGE_SIZE), numberOfBuses, PAGE_SIZE, 4L << 20);
+        engine.addListener(cache);
+
+        SplittableRandom random = new SplittableRandom(11);
+        long renderNanos = 0;
+        long cacheNanos = 0;
+        long sink = 0;
+        for (int i = 0; i < views; i++) {
+            int busId = random.nextInt(100) < 90 ? random.nextInt(hotBuses) + 1 : random.nextInt(numberOfBuses) + 1;
+            if (random.nextInt(100) < bookingPercent) {
+                int seatNumber = random.nextInt(numberSeatsPerBus) + 1;
+                if (!engine.book(busId, seatNumber).isSuccess()) {
+                    engine.cancel(busId, seatNumber);
+                }
+            }
+            boolean page = random.nextInt(4) == 0; // every fourth view is an overview page
+            int pageNumber = (busId - 1) / PAGE_SIZE + 1;
+
+            long start = System.nanoTime();
+            CharSequence rendered = page ? renderer.renderPage(pageNumber) : renderer.renderBus(busId);
+            long middle = System.nanoTime();
+            CharSequence cached = page ? cache.renderPage(pageNumber) : cache.renderBus(busId, null);
+            long end = System.nanoTime();
+            renderNanos += middle - start;
+            cacheNanos += end - middle;
+            sink += rendered.length() + cached.length();
+
+            if (i % 1024 == 0 && !rendered.toString().contentEquals(cached)) {
+                throw new IllegalStateException("Cached table differs from the rendered one for bus " + busId);
+            }
+        }
+
+        if (print) {
+            long lookups = cache.getHits() + cache.getMisses();
+            System.out.printf("bookings %2d%%  render %,6.0f ns  cached %,6.0f ns  speedup %5.1fx  hit rate %5.1f%%  changed %,d  evicted %,d  %,d tables  %,d chars%s%n",
+                    bookingPercent, (double) renderNanos / views, (double) cacheNanos / views, (double) renderNanos / cacheNanos,
+                    cache.getHits() * 100.0 / lookups, cache.getStale(), cache.getEvictions(), cache.getSize(), cache.getCachedChars(), sink == 0 ? "!" : "");
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package bus.bench;
+
+import bus.BookingResult;
+import bus.SeatStore;
+import bus.route.RouteSeatMap;
+
+import java.util.SplittableRandom;
+
+/**
+ * Sells seats on buses running a route with many stops until they are nearly full, and compares
+ * how many journeys are sold when seats are held between stops (best fit and first fit) with
+ * seats held for the whole journey. Then measures "which seats are free from A to C" and the
+ * best-fit search on the loaded buses.
+ * Journeys get on at a random stop and ride a random number of stops, up to a third of the route.
+ * <p>
+ * Usage: RouteBookingBenchmark [buses] [seats] [stops] [requests per seat]
+ */
+public class RouteBookingBenchmark {
+
+    public static void main(String[] args) {
+        int numberOfBuses = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int numberSeatsPerBus = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int numberOfStops = args.length > 2 ? Integer.parseInt(args[2]) : 24;
+        int requestsPerSeat = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+
+        int requests = numberSeatsPerBus * requestsPerSeat;
+        int[] fromStops = new int[requests];
+        int[] toStops = new int[requests];
+        SplittableRandom random = new SplittableRandom(5);
+        int longestRide = Math.max(1, (numberOfStops - 1) / 3);
+
+        long[] sold = new long[3];
+        long[] nanos = new long[3];
+        long heldSegments = 0;
+        RouteSeatMap bestFit = new RouteSeatMap(numberOfBuses, numberSeatsPerBus, numberOfStops);
+        RouteSeatMap firstFit = new RouteSeatMap(numberOfBuses, numberSeatsPerBus, numberOfStops);
+        SeatStore wholeJourney = new SeatStore(numberOfBuses, numberSeatsPerBus);
+        for (int busId = 1; busId <= numberOfBuses; busId++) {
+            for (int i = 0; i < requests; i++) {
+                fromStops[i] = 1 + random.nextInt(numberOfStops - 1);
+                toStops[i] = Math.min(numberOfStops, fromStops[i] + 1 + random.nextInt(longestRide));
+            }
+
+            // Best fit: the seat whose free stretch around the journey is the shortest
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                int seatNumber = bestFit.findBestFitSeat(busId, fromStops[i], toStops[i]);
+                if (seatNumber != -1 && bestFit.book(busId, seatNumber, fromStops[i], toStops[i]) == BookingResult.BOOKED) {
+                    sold[0]++;
+                    heldSegments += toStops[i] - fromStops[i];
+                }
+            }
+            nanos[0] += System.nanoTime() - start;
+
+            // First fit: the lowest seat that is free between the stops
+            start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                for (int seatNumber = 1; seatNumber <= numberSeatsPerBus; seatNumber++) {
+                    if (firstFit.book(busId, seatNumber, fromStops[i], toStops[i]) == BookingResult.BOOKED) {
+                        sold[1]++;
+                        break;
+                    }
+                }
+            }
+            nanos[1] += System.nanoTime() - start;
+
+            // Whole journey: a seat stays taken until the end of the route
+            start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                int seatNumber = wholeJourney.findFirstAvailableSeat(busId);
+                if (seatNumber != -1 && wholeJourney.book(busId, seatNumber)) {
+                    sold[2]++;
+                }
+            }
+            nanos[2] += System.nanoTime() - start;
+        }
+
+        long attempts = (long) numberOfBuses * requests;
+        double capacity = (double) numberOfBuses * numberSeatsPerBus * (numberOfStops - 1);
+        System.out.printf("buses=%,d seats=%d stops=%d requests=%,d  best fit load factor=%.1f%%%n",
+                numberOfBuses, numberSeatsPerBus, numberOfStops, attempts, heldSegments * 100 / capacity);
+        String[] names = {"best fit", "first fit", "whole journey"};
+        for (int i = 0; i < names.length; i++) {
+            System.out.printf("%-14s sold=%,11d journeys (%5.1f%% of requests)  %6.0f ns/request%n",
+                    names[i], sold[i], sold[i] * 100.0 / attempts, (double) nanos[i] / attempts);
+        }
+
+        // Queries on the loaded buses
+        int queries = 2_000_000;
+        long sink = 0;
+        for (int pass = 0; pass < 2; pass++) { // the first pass warms up the JIT
+            long freeNanos = 0;
+            long fitNanos = 0;
+            for (int i = 0; i < queries; i++) {
+                int busId = 1 + random.nextInt(numberOfBuses);
+                int fromStop = 1 + random.nextInt(numberOfStops - 1);
+                int toStop = fromStop + 1 + random.nextInt(numberOfStops - fromStop);
+
+                long start = System.nanoTime();
+                sink += bestFit.getAvailableSeats(busId, fromStop, toStop);
+                long middle = System.nanoTime();
+                sink += bestFit.findBestFitSeat(busId, fromStop, toStop);
+                fitNanos += System.nanoTime() - middle;
+                freeNanos += middle - start;
+            }
+            if (pass == 1) {
+                System.out.printf("free seats from A to C  %.0f ns/query   best fit seat  %.0f ns/query%n",
+                        (double) freeNanos / queries, (double) fitNanos / queries);
+            }
+        }
+        System.out.println("sink=" + sink);
+    }
+}
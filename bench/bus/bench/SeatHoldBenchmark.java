@@ -0,0 +1,114 @@
+package bus.bench;
+
+import bus.BookingEngine;
+import bus.hold.SeatHolds;
+import bus.hold.TimingWheel;
+
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Places millions of outstanding seat holds and measures what holding, confirming and expiring
+ * one costs with {@link SeatHolds}, then compares its {@link TimingWheel} with a priority queue of
+ * deadlines (what per-hold timers of a scheduled executor use) and with scanning every hold per tick.
+ * Time is simulated, so the holds of a whole hold window expire in one run.
+ * <p>
+ * Usage: SeatHoldBenchmark [holds] [hold seconds] [confirmed percent]
+ */
+public class SeatHoldBenchmark {
+
+    private static final long TICK_MILLIS = 1000;
+
+    public static void main(String[] args) {
+        int holds = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int holdSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int confirmedPercent = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        int numberSeatsPerBus = 50;
+        int numberOfBuses = (holds + numberSeatsPerBus - 1) / numberSeatsPerBus;
+        BookingEngine engine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+        long startMillis = 1_000_000_000L;
+        SeatHolds seatHolds = new SeatHolds(engine, holdSeconds * TICK_MILLIS, TICK_MILLIS, startMillis);
+        engine.addListener(seatHolds);
+
+        // Holds arrive evenly over one hold window, so all of them are outstanding at its end
+        long start = System.nanoTime();
+        for (int i = 0; i < holds; i++) {
+            long nowMillis = startMillis + (long) i * holdSeconds * TICK_MILLIS / holds;
+            seatHolds.hold(i / numberSeatsPerBus + 1, i % numberSeatsPerBus + 1, nowMillis);
+        }
+        long holdNanos = System.nanoTime() - start;
+        System.out.printf("holds=%,d outstanding=%,d  hold %.0f ns%n", holds, seatHolds.getHoldCount(), (double) holdNanos / holds);
+
+        // Some customers pay in time
+        SplittableRandom random = new SplittableRandom(3);
+        int confirms = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < holds; i++) {
+            if (random.nextInt(100) < confirmedPercent) {
+                seatHolds.confirm(i / numberSeatsPerBus + 1, i % numberSeatsPerBus + 1);
+                confirms++;
+            }
+        }
+        long confirmNanos = System.nanoTime() - start;
+
+        // The others are released tick by tick
+        long endMillis = startMillis + 2L * holdSeconds * TICK_MILLIS;
+        int expired = 0;
+        start = System.nanoTime();
+        for (long nowMillis = startMillis; nowMillis <= endMillis; nowMillis += TICK_MILLIS) {
+            expired += seatHolds.expire(nowMillis);
+        }
+        long expireNanos = System.nanoTime() - start;
+        System.out.printf("confirm %.0f ns (%,d)  expire %.0f ns per released seat (%,d)  booked=%,d left=%d%n",
+                (double) confirmNanos / confirms, confirms, (double) expireNanos / expired, expired,
+                engine.getTotalBookedSeats(), seatHolds.getHoldCount());
+
+        // The timer structures alone: schedule every hold, then fire them all tick by tick
+        long ticks = 2L * holdSeconds;
+        for (int pass = 0; pass < 2; pass++) { // the first pass warms up the JIT
+            long[] sink = new long[1];
+            start = System.nanoTime();
+            TimingWheel wheel = new TimingWheel(0, holds);
+            for (int i = 0; i < holds; i++) {
+                wheel.schedule((long) i * holdSeconds / holds + holdSeconds, i);
+            }
+            for (long tick = 1; tick <= ticks; tick++) {
+                wheel.advance(tick, payload -> sink[0] += payload);
+            }
+            long wheelNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+            for (int i = 0; i < holds; i++) {
+                queue.add(new long[]{(long) i * holdSeconds / holds + holdSeconds, i});
+            }
+            for (long tick = 1; tick <= ticks; tick++) {
+                while (!queue.isEmpty() && queue.peek()[0] <= tick) {
+                    sink[0] += queue.poll()[1];
+                }
+            }
+            long queueNanos = System.nanoTime() - start;
+
+            // One scan of every outstanding hold, a scanning design does this every tick
+            long[] deadlines = new long[holds];
+            for (int i = 0; i < holds; i++) {
+                deadlines[i] = (long) i * holdSeconds / holds + holdSeconds;
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < holds; i++) {
+                if (deadlines[i] <= holdSeconds + 1) {
+                    sink[0] += i;
+                }
+            }
+            long scanNanos = System.nanoTime() - start;
+
+            if (pass == 1) {
+                System.out.printf("timing wheel   %.0f ns per hold (schedule + fire)%n", (double) wheelNanos / holds);
+                System.out.printf("priority queue %.0f ns per hold (schedule + fire)%n", (double) queueNanos / holds);
+                System.out.printf("scan           %.1f ms per tick, %.0f ns per hold over %d ticks (sink=%d)%n",
+                        scanNanos / 1e6, (double) scanNanos * ticks / holds, ticks, sink[0]);
+            }
+        }
+    }
+}
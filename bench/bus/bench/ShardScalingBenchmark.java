@@ -0,0 +1,130 @@
+package bus.bench;
+
+import bus.BookingResult;
+import bus.shard.ShardRouter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how booking throughput grows with the number of shards. For every shard count
+ * the benchmark starts that many shard nodes as separate JVMs ("Main shard PORT BUSES SEATS"),
+ * splits the fleet between them and books and cancels random seats through a {@link ShardRouter}
+ * from several threads. The shard nodes run on this machine, so the speedup is bounded by its cores.
+ * <p>
+ * Usage: ShardScalingBenchmark [max shards] [buses] [seats] [threads] [seconds]
+ */
+public class ShardScalingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int maxShards = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int numberOfBuses = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int numberSeatsPerBus = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        System.out.println("buses=" + numberOfBuses + " seats=" + numberSeatsPerBus + " threads=" + threads + " cores=" + Runtime.getRuntime().availableProcessors());
+        for (int shards = 1; shards <= maxShards; shards++) {
+            List<Process> processes = new ArrayList<>();
+            try {
+                List<InetSocketAddress> addresses = new ArrayList<>();
+                for (int shard = 0; shard < shards; shard++) {
+                    int busesOfShard = numberOfBuses / shards + (shard < numberOfBuses % shards ? 1 : 0);
+                    int port = freePort();
+                    processes.add(startShard(port, busesOfShard, numberSeatsPerBus));
+                    addresses.add(new InetSocketAddress("localhost", port));
+                }
+                try (ShardRouter router = connect(addresses)) {
+                    run(router, threads, 1); // warm up the shards and the router
+                    double opsPerSecond = run(router, threads, seconds);
+                    System.out.printf("shards=%d  ops/s=%,12.0f  booked=%,d%n", shards, opsPerSecond, router.getTotalBookedSeats());
+                }
+            } finally {
+                for (Process process : processes) {
+                    process.destroy();
+                }
+                for (Process process : processes) {
+                    process.waitFor();
+                }
+            }
+        }
+    }
+
+    /**
+     * Books and cancels random seats from several threads.
+     *
+     * @return The operations per second.
+     */
+    private static double run(ShardRouter router, int threads, int seconds) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers[t] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                long done = 0;
+                while (System.nanoTime() < end) {
+                    int busId = random.nextInt(router.getNumberOfBuses()) + 1;
+                    int seatNumber = random.nextInt(router.getNumberSeatsPerBus()) + 1;
+                    if (router.book(busId, seatNumber) == BookingResult.ALREADY_BOOKED) {
+                        router.cancel(busId, seatNumber);
+                    }
+                    done++;
+                }
+                operations.add(done);
+            });
+            workers[t].start();
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Starts a shard node in its own JVM with the class path of this benchmark.
+     */
+    private static Process startShard(int port, int numberOfBuses, int numberSeatsPerBus) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Main", "shard",
+                String.valueOf(port), String.valueOf(numberOfBuses), String.valueOf(numberSeatsPerBus))
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    /**
+     * Connects the router once every shard node is listening.
+     */
+    private static ShardRouter connect(List<InetSocketAddress> addresses) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (true) {
+            try {
+                return new ShardRouter(addresses);
+            } catch (IOException | UncheckedIOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(100); // a shard JVM is still starting
+            }
+        }
+    }
+
+    /**
+     * @return A TCP port that is free right now.
+     */
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
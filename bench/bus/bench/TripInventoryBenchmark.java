@@ -0,0 +1,88 @@
+package bus.bench;
+
+import bus.trip.TripInventory;
+
+import java.util.SplittableRandom;
+
+/**
+ * Fills a {@link TripInventory} with millions of sparse future trips and measures bookings,
+ * "free seats on trip X" lookups, the memory per stored trip, and evicting a day of departures.
+ * Every bus runs a departure every 30 minutes over the given number of days, and only a share
+ * of those trips get bookings, so most trips of the timetable are never stored.
+ * <p>
+ * Usage: TripInventoryBenchmark [buses] [seats] [days] [booked trip percent]
+ */
+public class TripInventoryBenchmark {
+
+    // Departures every half hour from 2026-01-01T00:00
+    private static final long FIRST_DEPARTURE = 29_453_760L;
+    private static final int DEPARTURES_PER_DAY = 48;
+    private static final int MINUTES_BETWEEN_DEPARTURES = 30;
+
+    public static void main(String[] args) throws Exception {
+        int numberOfBuses = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int numberSeatsPerBus = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int days = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        int bookedPercent = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+
+        int departures = days * DEPARTURES_PER_DAY;
+        long timetableTrips = (long) numberOfBuses * departures;
+        TripInventory inventory = new TripInventory(numberOfBuses, numberSeatsPerBus);
+        SplittableRandom random = new SplittableRandom(11);
+
+        // Book a few seats on a share of the trips
+        long bookings = 0;
+        long start = System.nanoTime();
+        for (int departure = 0; departure < departures; departure++) {
+            long departureMinute = FIRST_DEPARTURE + (long) departure * MINUTES_BETWEEN_DEPARTURES;
+            for (int busId = 1; busId <= numberOfBuses; busId++) {
+                if (random.nextInt(100) >= bookedPercent) {
+                    continue;
+                }
+                int seats = 1 + random.nextInt(4);
+                for (int i = 0; i < seats; i++) {
+                    inventory.book(busId, departureMinute, 1 + random.nextInt(numberSeatsPerBus));
+                    bookings++;
+                }
+            }
+        }
+        long fillNanos = System.nanoTime() - start;
+        long storedTrips = inventory.getStoredTrips();
+        System.out.printf("timetable=%,d trips  stored=%,d trips  bookings=%,d  %.0f ns/booking  %.1f M bookings/s%n",
+                timetableTrips, storedTrips, bookings, (double) fillNanos / bookings, bookings * 1e3 / fillNanos);
+        System.out.printf("memory=%,d MB  %.0f bytes/stored trip (a %d seat bus needs %d bytes of seat bits)%n",
+                inventory.getMemoryBytes() >> 20, (double) inventory.getMemoryBytes() / storedTrips,
+                numberSeatsPerBus, inventory.getWordsPerBus() * Long.BYTES);
+
+        // Look up random trips of the timetable, stored or not
+        int lookups = 5_000_000;
+        long sink = 0;
+        for (int pass = 0; pass < 2; pass++) { // the first pass warms up the JIT
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                long departureMinute = FIRST_DEPARTURE + (long) random.nextInt(departures) * MINUTES_BETWEEN_DEPARTURES;
+                sink += inventory.getAvailableSeats(1 + random.nextInt(numberOfBuses), departureMinute);
+            }
+            long lookupNanos = System.nanoTime() - start;
+            if (pass == 1) {
+                System.out.printf("free seats lookup   %.0f ns/lookup  %.1f M lookups/s%n",
+                        (double) lookupNanos / lookups, lookups * 1e3 / lookupNanos);
+            }
+        }
+
+        // Evict the departures day by day, as the menu does when time goes by
+        long[] archived = new long[2];
+        start = System.nanoTime();
+        for (int day = 1; day <= days; day++) {
+            long firstKept = FIRST_DEPARTURE + (long) day * DEPARTURES_PER_DAY * MINUTES_BETWEEN_DEPARTURES;
+            inventory.evictDepartedBefore(firstKept, (busId, departureMinute, bookedSeats, seatWords) -> {
+                archived[0]++;
+                archived[1] += bookedSeats;
+            });
+        }
+        long evictNanos = System.nanoTime() - start;
+        System.out.printf("evict %d days  %.1f ms/day  %.0f ns/trip  archived=%,d trips with %,d seats  left=%d%n",
+                days, evictNanos / 1e6 / days, (double) evictNanos / archived[0], archived[0], archived[1], inventory.getStoredTrips());
+        System.out.println("sink=" + sink);
+    }
+}
@@ -0,0 +1,54 @@
+package bus.jmh;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the whole suite and keeps the results as a baseline: the single-threaded benchmarks once,
+ * {@link BookingBenchmark} and {@link ResetBenchmark} at 1, 2, 4, ... threads up to twice the cores
+ * (at least 4). Every run writes a JSON file that later runs can be compared with.
+ * <p>
+ * Usage: java -cp jmh/target/benchmarks.jar bus.jmh.BaselineRunner [result directory] [benchmark regex]
+ */
+public class BaselineRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        File directory = new File(args.length > 0 ? args[0] : "jmh-baseline");
+        String filter = args.length > 1 ? args[1] : ".*";
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create the result directory " + directory);
+        }
+
+        // Benchmarks of one thread: the summaries and the input checks
+        run(new OptionsBuilder()
+                .include(SeatSummaryBenchmark.class.getSimpleName() + "\\." + filter)
+                .include(InputValidatorBenchmark.class.getSimpleName() + "\\." + filter)
+                .threads(1), new File(directory, "single-thread.json"));
+
+        // Benchmarks of the shared engine at several thread counts
+        int maxThreads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run(new OptionsBuilder()
+                    .include(BookingBenchmark.class.getSimpleName() + "\\." + filter)
+                    .include(ResetBenchmark.class.getSimpleName() + "\\." + filter)
+                    .threads(threads), new File(directory, "threads-" + threads + ".json"));
+        }
+    }
+
+    /**
+     * Runs the selected benchmarks and writes their results as JSON.
+     */
+    private static void run(ChainedOptionsBuilder options, File result) throws RunnerException {
+        Options built = options
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath())
+                .build();
+        new Runner(built).run();
+    }
+}
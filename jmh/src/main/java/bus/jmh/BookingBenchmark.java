@@ -0,0 +1,76 @@
+package bus.jmh;
+
+import bus.BookingEngine;
+import bus.BookingResult;
+import bus.query.FreeSeatIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures single-seat claims, the work behind "Booking Bus" and "Cancel Booking": every call
+ * books a random seat on a random bus and cancels it if it was already booked, so about half
+ * of the seats stay booked. The engine is shared by all benchmark threads; run with
+ * {@code -t} or {@link BaselineRunner} to see how it scales.
+ * <ul>
+ * <li>{@code bookCancel}: the lock-free path of an engine without listeners, as used by the servers</li>
+ * <li>{@code bookCancelIndexed}: the striped-lock path with a {@link FreeSeatIndex} listener, as used by the menu</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BookingBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int numberOfBuses;
+
+    @Param({"100"})
+    public int numberSeatsPerBus;
+
+    private BookingEngine engine;
+    private BookingEngine indexedEngine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+        indexedEngine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+        new FreeSeatIndex(indexedEngine);
+    }
+
+    @Benchmark
+    public BookingResult bookCancel() {
+        return claim(engine);
+    }
+
+    @Benchmark
+    public BookingResult bookCancelIndexed() {
+        return claim(indexedEngine);
+    }
+
+    /**
+     * Books a random seat, or cancels it if it is booked.
+     */
+    private BookingResult claim(BookingEngine bookingEngine) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int busId = random.nextInt(numberOfBuses) + 1;
+        int seatNumber = random.nextInt(numberSeatsPerBus) + 1;
+        BookingResult result = bookingEngine.book(busId, seatNumber);
+        return result == BookingResult.BOOKED ? result : bookingEngine.cancel(busId, seatNumber);
+    }
+}
@@ -0,0 +1,37 @@
+package bus.jmh;
+
+import bus.InputValidator;
+import bus.SeatStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link InputValidator#isInputValid} on the kinds of input the menu and the
+ * servers get: short and long valid numbers, numbers out of range, and text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputValidatorBenchmark {
+
+    @Param({"7", "654321", "1000001", "99999999999", "abc", "0"})
+    public String input;
+
+    @Benchmark
+    public boolean isInputValid() {
+        return InputValidator.isInputValid(input, SeatStore.MAX_BUSES);
+    }
+}
@@ -0,0 +1,103 @@
+package bus.jmh;
+
+import bus.BookingEngine;
+import bus.BookingResult;
+import bus.query.FreeSeatIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures "Reset Bus" on buses with many seats. A reset is only interesting on a full bus,
+ * so every call books all seats of the thread's own bus as one group and resets it again;
+ * {@code fillOnly} measures the booking alone so the reset can be told apart.
+ * The {@code legacy} benchmark does the same on an {@code int[]} of seats, like the first version of the menu.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResetBenchmark {
+
+    // More buses than benchmark threads, each thread uses its own bus
+    private static final int NUMBER_OF_BUSES = 1024;
+
+    @Param({"40", "1000"})
+    public int numberSeatsPerBus;
+
+    private BookingEngine engine;
+    private BookingEngine indexedEngine;
+    private int[] allSeats;
+    private final AtomicInteger nextBusId = new AtomicInteger(1);
+
+    /**
+     * The bus and legacy seats of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadBus {
+        int busId;
+        int[] legacySeats;
+
+        @Setup(Level.Trial)
+        public void setUp(ResetBenchmark benchmark) {
+            busId = benchmark.nextBusId.getAndIncrement();
+            legacySeats = new int[benchmark.numberSeatsPerBus];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new BookingEngine(NUMBER_OF_BUSES, numberSeatsPerBus);
+        indexedEngine = new BookingEngine(NUMBER_OF_BUSES, numberSeatsPerBus);
+        new FreeSeatIndex(indexedEngine);
+        allSeats = new int[numberSeatsPerBus];
+        for (int i = 0; i < numberSeatsPerBus; i++) {
+            allSeats[i] = i + 1;
+        }
+    }
+
+    @Benchmark
+    public BookingResult fillOnly(ThreadBus bus) {
+        BookingResult result = engine.bookSeats(bus.busId, allSeats);
+        engine.getSeatStore().reset(bus.busId); // undo without the engine, the cheapest way back
+        return result;
+    }
+
+    @Benchmark
+    public BookingResult fillAndReset(ThreadBus bus) {
+        engine.bookSeats(bus.busId, allSeats);
+        return engine.reset(bus.busId);
+    }
+
+    @Benchmark
+    public BookingResult fillAndResetIndexed(ThreadBus bus) {
+        indexedEngine.bookSeats(bus.busId, allSeats);
+        return indexedEngine.reset(bus.busId);
+    }
+
+    @Benchmark
+    public int legacy(ThreadBus bus) {
+        int[] seats = bus.legacySeats;
+        for (int i = 0; i < seats.length; i++) {
+            seats[i] = 1;
+        }
+        for (int i = 0; i < seats.length; i++) {
+            seats[i] = 0; // reset seat
+        }
+        return seats[seats.length - 1];
+    }
+}
@@ -0,0 +1,160 @@
+package bus.jmh;
+
+import bus.BookingEngine;
+import bus.SeatStore;
+import bus.render.FleetRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the "Check Bus" summaries: counting the available and unavailable seats of a page
+ * of buses, of one bus, and of the whole fleet. Every summary is measured the way the first
+ * version of the menu did it, scanning an {@code int[][]} of seats, and the way it is done now,
+ * reading the booked seat counters of the {@link SeatStore} or rendering with {@link FleetRenderer}.
+ * Half of the seats are booked at random.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SeatSummaryBenchmark {
+
+    // Buses on one page of the menu
+    private static final int PAGE_SIZE = 5;
+
+    @Param({"1000", "100000"})
+    public int numberOfBuses;
+
+    @Param({"50", "1000"})
+    public int numberSeatsPerBus;
+
+    // Seats of the first version of the menu, 1 = booked
+    private int[][] legacyBuses;
+    private BookingEngine engine;
+    private SeatStore seatStore;
+    private FleetRenderer renderer;
+    private int[] pageBusIds;
+    private int[] pageBookedSeats;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        legacyBuses = new int[numberOfBuses][numberSeatsPerBus];
+        engine = new BookingEngine(numberOfBuses, numberSeatsPerBus);
+        seatStore = engine.getSeatStore();
+        random = new SplittableRandom(42);
+        for (long i = (long) numberOfBuses * numberSeatsPerBus / 2; i > 0; i--) {
+            int bus = random.nextInt(numberOfBuses);
+            int seat = random.nextInt(numberSeatsPerBus);
+            legacyBuses[bus][seat] = 1;
+            seatStore.book(bus + 1, seat + 1);
+        }
+        renderer = new FleetRenderer(engine, PAGE_SIZE);
+        pageBusIds = new int[PAGE_SIZE];
+        pageBookedSeats = new int[PAGE_SIZE];
+    }
+
+    @Benchmark
+    public long legacyPageScan() {
+        int startIndex = randomPage() * PAGE_SIZE;
+        int endIndex = Math.min(startIndex + PAGE_SIZE, numberOfBuses);
+        long summary = 0;
+        for (int i = startIndex; i < endIndex; i++) {
+            int availableSeats = 0;
+            int unavailableSeats = 0;
+            for (int j = 0; j < numberSeatsPerBus; j++) {
+                if (legacyBuses[i][j] == 0) { // check if seat is available or unavailable
+                    availableSeats++;
+                } else {
+                    unavailableSeats++;
+                }
+            }
+            summary += availableSeats * 31L + unavailableSeats;
+        }
+        return summary;
+    }
+
+    @Benchmark
+    public long counterPage() {
+        int startIndex = randomPage() * PAGE_SIZE;
+        int rows = Math.min(PAGE_SIZE, numberOfBuses - startIndex);
+        for (int row = 0; row < rows; row++) {
+            pageBusIds[row] = startIndex + row + 1;
+        }
+        engine.copyBookedSeats(pageBusIds, rows, pageBookedSeats);
+        long summary = 0;
+        for (int row = 0; row < rows; row++) {
+            summary += (numberSeatsPerBus - pageBookedSeats[row]) * 31L + pageBookedSeats[row];
+        }
+        return summary;
+    }
+
+    @Benchmark
+    public int renderPage() {
+        return renderer.renderPage(randomPage() + 1).length();
+    }
+
+    @Benchmark
+    public long legacyBusScan() {
+        int[] seats = legacyBuses[random.nextInt(numberOfBuses)];
+        int availableSeats = 0;
+        int unavailableSeats = 0;
+        for (int seat : seats) {
+            if (seat == 0) {
+                availableSeats++;
+            } else {
+                unavailableSeats++;
+            }
+        }
+        return availableSeats * 31L + unavailableSeats;
+    }
+
+    @Benchmark
+    public long counterBus() {
+        int bookedSeats = seatStore.getBookedSeats(random.nextInt(numberOfBuses) + 1);
+        return (numberSeatsPerBus - bookedSeats) * 31L + bookedSeats;
+    }
+
+    @Benchmark
+    public int renderBus() {
+        return renderer.renderBus(random.nextInt(numberOfBuses) + 1).length();
+    }
+
+    @Benchmark
+    public long legacyFleetScan() {
+        long bookedSeats = 0;
+        for (int[] seats : legacyBuses) {
+            for (int seat : seats) {
+                bookedSeats += seat;
+            }
+        }
+        return bookedSeats;
+    }
+
+    @Benchmark
+    public long counterFleet() {
+        return seatStore.getTotalBookedSeats();
+    }
+
+    /**
+     * @return A random page, 0-based.
+     */
+    private int randomPage() {
+        return random.nextInt((numberOfBuses + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+}
@@ -1,6 +1,46 @@
-import org.nocrala.tools.texttablefmt.*;
+import bus.BookingEngine;
+import bus.BookingResult;
+import bus.BookingService;
+import bus.FleetSearch;
+import bus.SeatStore;
+import bus.metrics.BookingMetrics;
+import bus.metrics.MeteredBookingService;
+import bus.command.CommandProcessor;
+import bus.command.CommandServer;
+import bus.feed.ChangeFeed;
+import bus.feed.FeedServer;
+import bus.hold.SeatHolds;
+import bus.metrics.Operation;
+import bus.persist.FleetPersistence;
+import bus.query.FreeSeatIndex;
+import bus.render.FleetRenderer;
+import bus.render.RenderCache;
+import bus.report.FleetAnalytics;
+import bus.report.FleetReport;
+import bus.replay.EventReplayer;
+import bus.route.RouteSeatMap;
+import bus.server.BookingServer;
+import bus.shard.ShardRouter;
+import bus.shard.ShardServer;
+import bus.trip.TripArchiveWriter;
+import bus.trip.TripInventory;
 
+import javax.management.JMException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static bus.InputValidator.isInputValid;
+import static bus.InputValidator.parseDeparture;
+import static bus.InputValidator.parseSeatNumbers;
 
 /**
  * This class represents a Bus Management System that allows users to check bus information,
@@ -14,43 +54,199 @@ public class Main {
     // init Constants for pagination
     private static final int pageSize = 5;
 
+    // init Constants for saving seats to disk
+    private static final int journalBatchSize = 64;
+    private static final long journalMaxDelayMillis = 10;
+    private static final long snapshotIntervalSeconds = 60;
+
+    // init Constants for holding seats while the customer pays
+    private static final long holdMinutes = 5;
+    private static final long holdTickMillis = 1000;
+
+    // init Constants for the cache of rendered tables, in characters
+    private static final long renderCacheChars = 4L << 20;
+
+    // init Constants for the change feed of the displays
+    private static final int feedCapacity = 1 << 16;
+    private static final int feedBatchSize = 1024;
+
     // Variables to store user input and bus information
     private static int numberOfBuses;
     private static int numberSeatsPerBus;
-    private static int[][] buses;
-    private static int availableSeats;
-    private static int unavailableSeats;
+    private static BookingEngine bookingEngine;
+    private static SeatStore buses;
+    private static FleetRenderer renderer;
     private static int currentPage = 1;
+    // Where the menu books and searches: the local engine and index, or the shards of a fleet
+    private static BookingService bookingService;
+    private static FleetSearch fleetSearch;
+    private static ShardRouter shardRouter;
+    // Shard addresses given with "--shards", null to run on a local fleet
+    private static String shardList;
+    private static BookingMetrics metrics;
+    // Seats sold for future departures of the buses, departed trips are archived to the data directory
+    private static TripInventory tripInventory;
+    // Seats held between stops when the buses run a route with "--stops N", null when they are booked for the whole journey
+    private static RouteSeatMap routes;
+    private static int numberOfStops;
+    // Seats held for a few minutes before they are confirmed or released
+    private static SeatHolds seatHolds;
+    // Tables of unchanged buses and pages shown again, null for a sharded fleet
+    private static RenderCache renderCache;
+    // Seat changes published to the displays with "--feed PORT", null without
+    private static int feedPort;
+    private static ChangeFeed changeFeed;
+    private static FeedServer feedServer;
+
+    // Buses of the last search shown in the pagination, null to show all buses
+    private static int[] shownBusIds;
+    private static String shownTitle;
+    private static Path dataDirectory;
+    private static FleetPersistence persistence;
 
     /**
      * Main method to start the Bus Management System.
+     * Run with "server PORT BUSES SEATS" to serve the HTTP API instead of the menu,
+     * with "replay FILE BUSES SEATS" to apply a file of booking events,
+     * with "commands BUSES SEATS [PORT]" to run line commands from stdin or a port,
+     * or with "shard PORT BUSES SEATS" to hold part of a sharded fleet, and add "--data DIR" to keep the seats on disk.
+     * Add "--shards HOST:PORT,..." to run the menu on a fleet spread over shard nodes,
+     * "--stops N" to book seats between the stops of a route of N stops,
+     * and "--feed PORT" to publish every seat change to the displays connected to a port.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+
+        // Keep the seats on disk when a data directory is given
+        args = readDataDirectory(args);
+
+        // Publish the seat changes of a local fleet to displays
+        args = readFeedPort(args);
+        if (feedPort == -1) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: The feed port must be between 1 and 65535." + Color.ANSI_BLACK.getColor());
+            return;
+        }
+
+        // Book seats between stops when the buses run a route
+        args = readNumberOfStops(args);
+        if (numberOfStops != 0 && (numberOfStops < 2 || numberOfStops > RouteSeatMap.MAX_STOPS)) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: The number of stops must be between 2 and " + RouteSeatMap.MAX_STOPS + "." + Color.ANSI_BLACK.getColor());
+            return;
+        }
+
+        // Run the menu on the buses of shard nodes instead of a local fleet
+        args = readShardList(args);
+        if (shardList != null && args.length > 0) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: The shards can only be used from the menu, not with \"" + args[0] + "\"." + Color.ANSI_BLACK.getColor());
+            return;
+        }
+
+        // Start the HTTP API instead of the interactive menu
+        if (args.length > 0 && args[0].equals("server")) {
+            startServer(args);
+            return;
+        }
+
+        // Apply a booking event file instead of the interactive menu
+        if (args.length > 0 && args[0].equals("replay")) {
+            startReplay(args);
+            return;
+        }
+
+        // Run line commands from scripts instead of the interactive menu
+        if (args.length > 0 && args[0].equals("commands")) {
+            startCommands(args);
+            return;
+        }
+
+        // Hold the buses of one shard for the routers of a sharded fleet
+        if (args.length > 0 && args[0].equals("shard")) {
+            startShard(args);
+            return;
+        }
 
         System.out.println("-------------- Setting up Buses --------------");
 
-        // Input for the number of buses
-        System.out.print("-> Enter number of Buses: ");
-        String inputNumberOfBuses = scanner.next();
-        while (!isInputValid(inputNumberOfBuses, 50)) {
-            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter a number between 1 and 50." + Color.ANSI_BLACK.getColor());
+        if (shardList != null) {
+            // Connect to the shard nodes, they already know their buses
+            connectShards(shardList);
+            if (shardRouter == null) {
+                return;
+            }
+            System.out.println(Color.ANSI_GREEN.getColor() + "-> Connected to " + shardList.split(",").length + " shards with " + numberOfBuses + " buses of " + numberSeatsPerBus + " seats (" + shardRouter.getTotalBookedSeats() + " booked)" + Color.ANSI_BLACK.getColor());
+        } else if (dataDirectory != null && FleetPersistence.exists(dataDirectory)) {
+            // Recover the buses saved in the data directory
+            openFleet(0, 0);
+            System.out.println(Color.ANSI_GREEN.getColor() + "-> Recovered " + numberOfBuses + " buses with " + numberSeatsPerBus + " seats (" + buses.getTotalBookedSeats() + " booked, " + persistence.getReplayedRecords() + " journal records replayed)" + Color.ANSI_BLACK.getColor());
+        } else {
+            // Input for the number of buses
             System.out.print("-> Enter number of Buses: ");
-            inputNumberOfBuses = scanner.next();
-        }
-        numberOfBuses = Integer.parseInt(inputNumberOfBuses);
+            String inputNumberOfBuses = scanner.next();
+            while (!isInputValid(inputNumberOfBuses, SeatStore.MAX_BUSES)) {
+                System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter a number between 1 and " + SeatStore.MAX_BUSES + "." + Color.ANSI_BLACK.getColor());
+                System.out.print("-> Enter number of Buses: ");
+                inputNumberOfBuses = scanner.next();
+            }
+            numberOfBuses = Integer.parseInt(inputNumberOfBuses);
 
-        // Input for the number of seats per bus
-        System.out.print("-> Enter number Seat of bus: ");
-        String inputNumberSeatsPerBus = scanner.next();
-        while (!isInputValid(inputNumberSeatsPerBus, 100)) {
-            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter a number between 1 and 100." + Color.ANSI_BLACK.getColor());
+            // Input for the number of seats per bus
             System.out.print("-> Enter number Seat of bus: ");
-            inputNumberSeatsPerBus = scanner.next();
+            String inputNumberSeatsPerBus = scanner.next();
+            while (!isInputValid(inputNumberSeatsPerBus, SeatStore.MAX_SEATS_PER_BUS)) {
+                System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter a number between 1 and " + SeatStore.MAX_SEATS_PER_BUS + "." + Color.ANSI_BLACK.getColor());
+                System.out.print("-> Enter number Seat of bus: ");
+                inputNumberSeatsPerBus = scanner.next();
+            }
+            numberSeatsPerBus = Integer.parseInt(inputNumberSeatsPerBus);
+
+            // Initialize the booking engine and its seat inventory
+            openFleet(numberOfBuses, numberSeatsPerBus);
+        }
+
+        // Index the buses by free seats for the searches of the menu, the shards keep their own indexes
+        if (shardRouter == null) {
+            fleetSearch = new FreeSeatIndex(bookingEngine);
+        }
+
+        // Hold seats between stops, the seats booked so far are held on the whole route
+        if (numberOfStops != 0) {
+            if (shardRouter == null) {
+                routes = new RouteSeatMap(numberOfBuses, numberSeatsPerBus, numberOfStops);
+                routes.holdBookedSeats(bookingEngine);
+                bookingEngine.addListener(routes);
+            } else {
+                System.out.println(Color.ANSI_RED.getColor() + "-> Error: Stops are only kept for a local fleet, seats are booked for the whole journey." + Color.ANSI_BLACK.getColor());
+            }
+        }
+
+        // Measure the operations of the menu for the Stats option and JMX
+        metrics = new BookingMetrics(bookingService);
+        bookingService = new MeteredBookingService(bookingService, metrics);
+        try {
+            metrics.registerMBean();
+        } catch (JMException e) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Could not publish the metrics to JMX: " + e.getMessage() + Color.ANSI_BLACK.getColor());
+        }
+
+        // Publish the seat changes to the displays
+        if (feedPort != 0) {
+            if (shardRouter == null) {
+                startChangeFeed();
+            } else {
+                System.out.println(Color.ANSI_RED.getColor() + "-> Error: The change feed needs a local fleet, the shards publish no changes." + Color.ANSI_BLACK.getColor());
+            }
         }
-        numberSeatsPerBus = Integer.parseInt(inputNumberSeatsPerBus);
 
-        // Initialize the buses array
-        buses = new int[numberOfBuses][numberSeatsPerBus];
+        // Hold seats for a few minutes, the holds of seats canceled or reset by other means are dropped.
+        // The shards cannot book and check a hold under one lock, so a sharded fleet has no holds.
+        if (shardRouter == null) {
+            startHolds(bookingService);
+        }
+
+        // Show unchanged buses and pages again without rendering them, the shards do not report changes
+        if (shardRouter == null) {
+            renderCache = new RenderCache(renderer, numberOfBuses, pageSize, renderCacheChars);
+            bookingEngine.addListener(renderCache);
+        }
 
         // Menu options
         int option;
@@ -61,100 +257,378 @@ public class Main {
             System.out.println("2- Booking Bus");
             System.out.println("3- Cancel Booking");
             System.out.println("4- Reset Bus");
-            System.out.println("5- Exit");
+            System.out.println("5- Group Booking");
+            System.out.println("6- Find Bus");
+            System.out.println("7- Stats");
+            System.out.println("8- Trips");
+            System.out.println("9- Reports");
+            System.out.println("10- Exit");
             System.out.println("---------------------------------------------------");
-            System.out.print("-> Choose option(1-5): ");
-            while (!scanner.hasNext("[1-9]*")) {
+            System.out.print("-> Choose option(1-10): ");
+            while (!scanner.hasNext("[0-9]*")) {
                 System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter only numeric values." + Color.ANSI_BLACK.getColor());
-                System.out.print("-> Choose option(1-5): ");
+                System.out.print("-> Choose option(1-10): ");
                 scanner.next();
             }
             option = scanner.nextInt();
 
-            switch (option) {
-                case 1:
-                    displayPaginatedBusInformation();
-                    break;
-                case 2:
-                    bookingBus();
-                    break;
-                case 3:
-                    cancelBooking();
-                    break;
-                case 4:
-                    resetBus();
-                    break;
-                case 5:
-                    System.out.println("-> Good bye!");
-                    break;
-                default:
-                    System.out.println("-> Invalid option");
-                    break;
+            try {
+                runOption(option);
+            } catch (UncheckedIOException e) {
+                System.out.println(Color.ANSI_RED.getColor() + "-> Error: " + e.getMessage() + Color.ANSI_BLACK.getColor());
             }
-        } while (option != 5);
+        } while (option != 10);
 
     }
 
     /**
-     * Displays paginated information about buses, including available and unavailable seats.
+     * Runs an option of the main menu.
+     *
+     * @param option The selected option.
      */
-    private static void displayPaginatedBusInformation() {
+    private static void runOption(int option) {
+        switch (option) {
+            case 1:
+                if (shownBusIds != null) { // leave the last search and show all buses again
+                    shownBusIds = null;
+                    currentPage = 1;
+                }
+                displayPaginatedBusInformation();
+                break;
+            case 2:
+                bookingBus();
+                break;
+            case 3:
+                cancelBooking();
+                break;
+            case 4:
+                resetBus();
+                break;
+            case 5:
+                groupBooking();
+                break;
+            case 6:
+                findBus();
+                break;
+            case 7:
+                displayStats();
+                break;
+            case 8:
+                trips();
+                break;
+            case 9:
+                reports();
+                break;
+            case 10:
+                closeFleet();
+                System.out.println("-> Good bye!");
+                break;
+            default:
+                System.out.println("-> Invalid option");
+                break;
+        }
+    }
 
-        // Calculate start and end index for the current page
-        int startIndex = (currentPage - 1) * pageSize;
-        int endIndex = Math.min(startIndex + pageSize, numberOfBuses);
+    /**
+     * Removes the "--data DIR" option from the command line and remembers the directory.
+     *
+     * @param args The command line.
+     * @return The command line without the option.
+     */
+    private static String[] readDataDirectory(String[] args) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--data")) {
+                dataDirectory = Path.of(args[i + 1]);
+                String[] remaining = new String[args.length - 2];
+                System.arraycopy(args, 0, remaining, 0, i);
+                System.arraycopy(args, i + 2, remaining, i, args.length - i - 2);
+                return remaining;
+            }
+        }
+        return args;
+    }
 
-        // Define cell style for table
-        CellStyle numberCellStyle = new CellStyle(CellStyle.HorizontalAlign.center);
+    /**
+     * Removes the "--feed PORT" option from the command line and remembers the port, -1 if it is invalid.
+     *
+     * @param args The command line.
+     * @return The command line without the option.
+     */
+    private static String[] readFeedPort(String[] args) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--feed")) {
+                feedPort = isInputValid(args[i + 1], 65535) ? Integer.parseInt(args[i + 1]) : -1;
+                String[] remaining = new String[args.length - 2];
+                System.arraycopy(args, 0, remaining, 0, i);
+                System.arraycopy(args, i + 2, remaining, i, args.length - i - 2);
+                return remaining;
+            }
+        }
+        return args;
+    }
 
-        // Create a table with borders
-        Table table = new Table(4, BorderStyle.UNICODE_BOX_DOUBLE_BORDER, ShownBorders.ALL);
+    /**
+     * Publishes the seat changes of the booking engine and serves them on the feed port.
+     */
+    private static void startChangeFeed() throws IOException {
+        changeFeed = new ChangeFeed(bookingEngine, feedCapacity, feedBatchSize);
+        bookingEngine.addListener(changeFeed);
+        feedServer = new FeedServer(changeFeed, bookingEngine, feedPort);
+        feedServer.start();
+        System.out.println(Color.ANSI_GREEN.getColor() + "-> Publishing seat changes on port " + feedServer.getPort() + Color.ANSI_BLACK.getColor());
+    }
 
-        // Set column widths for the table
-        table.addCell("Display All Bus information (Page " + currentPage + "/" + getTotalPages() + ")", numberCellStyle, 4);
-        table.addCell(Color.ANSI_GREEN.getColor() + "ID" + Color.ANSI_BLACK.getColor(), numberCellStyle);
-        table.addCell(Color.ANSI_GREEN.getColor() + "Seat" + Color.ANSI_BLACK.getColor(), numberCellStyle);
-        table.addCell(Color.ANSI_GREEN.getColor() + "Available" + Color.ANSI_BLACK.getColor(), numberCellStyle);
-        table.addCell(Color.ANSI_RED.getColor() + "Unavailable" + Color.ANSI_BLACK.getColor(), numberCellStyle);
+    /**
+     * Removes the "--stops N" option from the command line and remembers the number of stops.
+     *
+     * @param args The command line.
+     * @return The command line without the option.
+     */
+    private static String[] readNumberOfStops(String[] args) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--stops")) {
+                numberOfStops = isInputValid(args[i + 1], RouteSeatMap.MAX_STOPS) ? Integer.parseInt(args[i + 1]) : -1;
+                String[] remaining = new String[args.length - 2];
+                System.arraycopy(args, 0, remaining, 0, i);
+                System.arraycopy(args, i + 2, remaining, i, args.length - i - 2);
+                return remaining;
+            }
+        }
+        return args;
+    }
 
-        // Set column widths for the table
-        table.setColumnWidth(0, 10, 15);
-        table.setColumnWidth(1, 20, 25);
-        table.setColumnWidth(2, 20, 25);
-        table.setColumnWidth(3, 20, 25);
+    /**
+     * Removes the "--shards HOST:PORT,..." option from the command line and remembers the shard addresses.
+     *
+     * @param args The command line.
+     * @return The command line without the option.
+     */
+    private static String[] readShardList(String[] args) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--shards")) {
+                shardList = args[i + 1];
+                String[] remaining = new String[args.length - 2];
+                System.arraycopy(args, 0, remaining, 0, i);
+                System.arraycopy(args, i + 2, remaining, i, args.length - i - 2);
+                return remaining;
+            }
+        }
+        return args;
+    }
 
-        // Check if there is data to display for the current page
-        if (startIndex >= numberOfBuses) {
-            System.out.println(Color.ANSI_RED.getColor() + "-> Error: No data to display for the current page." + Color.ANSI_BLACK.getColor());
+    /**
+     * Connects the menu to the shard nodes of a fleet.
+     *
+     * @param shardList The shard addresses separated by commas.
+     */
+    private static void connectShards(String shardList) {
+        try {
+            shardRouter = new ShardRouter(ShardRouter.parseAddresses(shardList));
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Could not connect to the shards: " + e.getMessage() + Color.ANSI_BLACK.getColor());
             return;
         }
+        bookingService = shardRouter;
+        fleetSearch = shardRouter;
+        renderer = new FleetRenderer(bookingService, pageSize);
+        numberOfBuses = shardRouter.getNumberOfBuses();
+        numberSeatsPerBus = shardRouter.getNumberSeatsPerBus();
+        // Seats per departure are sold by the menu itself
+        tripInventory = new TripInventory(numberOfBuses, numberSeatsPerBus);
+    }
 
-        // Loop through buses and populate the table
-        for (int i = startIndex; i < endIndex; i++) {
-            availableSeats = 0; // reset available seats
-            unavailableSeats = 0; // reset unavailable seats
-            for (int j = 0; j < numberSeatsPerBus; j++) { // loop through seats for each bus
-                if (buses[i][j] == 0) { // check if seat is available or unavailable
-                    availableSeats++; // increment available seats
-                } else {
-                    unavailableSeats++; // increment unavailable seats
-                }
+    /**
+     * Creates the booking engine and the trip inventory, recovering them from the data directory if one is given.
+     *
+     * @param newNumberOfBuses     The number of buses of a new fleet.
+     * @param newNumberSeatsPerBus The number of seats of a new fleet.
+     */
+    private static void openFleet(int newNumberOfBuses, int newNumberSeatsPerBus) throws IOException {
+        if (dataDirectory == null) {
+            bookingEngine = new BookingEngine(newNumberOfBuses, newNumberSeatsPerBus);
+            tripInventory = new TripInventory(bookingEngine.getNumberOfBuses(), bookingEngine.getNumberSeatsPerBus());
+        } else {
+            persistence = new FleetPersistence(dataDirectory, newNumberOfBuses, newNumberSeatsPerBus, journalBatchSize, journalMaxDelayMillis, snapshotIntervalSeconds);
+            bookingEngine = persistence.getBookingEngine();
+            tripInventory = persistence.getTripInventory(); // the seats sold per departure are saved as well
+        }
+        buses = bookingEngine.getSeatStore();
+        bookingService = bookingEngine;
+        renderer = new FleetRenderer(bookingService, pageSize);
+        numberOfBuses = buses.getNumberOfBuses(); // a recovered fleet keeps its saved size
+        numberSeatsPerBus = buses.getNumberSeatsPerBus();
+    }
+
+    /**
+     * Writes the last snapshot and closes the journal if the seats are kept on disk.
+     */
+    private static void closeFleet() {
+        if (seatHolds != null) {
+            seatHolds.stopExpiring(); // the seats stay held, like after a crash they are held again on the next start
+            seatHolds = null;
+        }
+        if (feedServer != null) {
+            feedServer.stop();
+            changeFeed.close();
+            feedServer = null;
+        }
+        if (shardRouter != null) {
+            shardRouter.close();
+            shardRouter = null;
+        }
+        if (persistence == null) {
+            return;
+        }
+        try {
+            persistence.close();
+        } catch (IOException e) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Could not save the seats: " + e.getMessage() + Color.ANSI_BLACK.getColor());
+        }
+        persistence = null;
+    }
+
+    /**
+     * Starts the HTTP API with the fleet size given on the command line.
+     *
+     * @param args The command line: server PORT BUSES SEATS.
+     */
+    private static void startServer(String[] args) throws IOException {
+        if (args.length != 4 || !isInputValid(args[1], 65535) || !isInputValid(args[2], SeatStore.MAX_BUSES) || !isInputValid(args[3], SeatStore.MAX_SEATS_PER_BUS)) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Usage: server <port 1-65535> <buses 1-" + SeatStore.MAX_BUSES + "> <seats 1-" + SeatStore.MAX_SEATS_PER_BUS + ">" + Color.ANSI_BLACK.getColor());
+            return;
+        }
+        openFleet(Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+
+        if (feedPort != 0) {
+            startChangeFeed();
+        }
+        startHolds(bookingEngine);
+
+        // Send small JSON answers right away instead of waiting for Nagle's algorithm,
+        // must be set before the JDK's HTTP server reads its configuration
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        BookingServer server = new BookingServer(bookingEngine, tripInventory, seatHolds, persistence, Integer.parseInt(args[1]));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            closeFleet();
+        }));
+        server.start();
+        System.out.println(Color.ANSI_GREEN.getColor() + "-> Serving " + numberOfBuses + " buses on http://localhost:" + server.getPort() + "/buses" + Color.ANSI_BLACK.getColor());
+    }
+
+    /**
+     * Runs the line command protocol on stdin and stdout, or serves it on a port.
+     *
+     * @param args The command line: commands BUSES SEATS [PORT].
+     */
+    private static void startCommands(String[] args) throws IOException {
+        if (args.length < 3 || args.length > 4 || !isInputValid(args[1], SeatStore.MAX_BUSES) || !isInputValid(args[2], SeatStore.MAX_SEATS_PER_BUS)
+                || (args.length == 4 && !isInputValid(args[3], 65535))) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Usage: commands <buses 1-" + SeatStore.MAX_BUSES + "> <seats 1-" + SeatStore.MAX_SEATS_PER_BUS + "> [port 1-65535]" + Color.ANSI_BLACK.getColor());
+            return;
+        }
+        openFleet(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+
+        if (feedPort != 0) {
+            startChangeFeed();
+        }
+        startHolds(bookingEngine);
+
+        if (args.length == 3) {
+            // Read the commands from stdin until it ends or a QUIT
+            try {
+                new CommandProcessor(bookingEngine, tripInventory, seatHolds, persistence).process(System.in, System.out);
+            } finally {
+                closeFleet();
             }
-            table.addCell(String.valueOf(i + 1), numberCellStyle);
-            table.addCell(Color.ANSI_BLUE.getColor() + numberSeatsPerBus + Color.ANSI_BLACK.getColor(), numberCellStyle);
-            table.addCell(Color.ANSI_GREEN.getColor() + availableSeats + Color.ANSI_BLACK.getColor(), numberCellStyle);
-            table.addCell(Color.ANSI_RED.getColor() + (unavailableSeats) + Color.ANSI_BLACK.getColor(), numberCellStyle);
+            return;
+        }
+
+        CommandServer server = new CommandServer(bookingEngine, tripInventory, seatHolds, persistence, Integer.parseInt(args[3]));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            closeFleet();
+        }));
+        server.start();
+        System.out.println(Color.ANSI_GREEN.getColor() + "-> Serving line commands for " + numberOfBuses + " buses on port " + server.getPort() + Color.ANSI_BLACK.getColor());
+    }
+
+    /**
+     * Starts a shard node with the buses given on the command line.
+     *
+     * @param args The command line: shard PORT BUSES SEATS.
+     */
+    private static void startShard(String[] args) throws IOException {
+        if (args.length != 4 || !isInputValid(args[1], 65535) || !isInputValid(args[2], SeatStore.MAX_BUSES) || !isInputValid(args[3], SeatStore.MAX_SEATS_PER_BUS)) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Usage: shard <port 1-65535> <buses 1-" + SeatStore.MAX_BUSES + "> <seats 1-" + SeatStore.MAX_SEATS_PER_BUS + ">" + Color.ANSI_BLACK.getColor());
+            return;
+        }
+        openFleet(Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+
+        ShardServer server = new ShardServer(bookingEngine, new FreeSeatIndex(bookingEngine), Integer.parseInt(args[1]));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            closeFleet();
+        }));
+        server.start();
+        System.out.println(Color.ANSI_GREEN.getColor() + "-> Serving " + numberOfBuses + " buses as a shard on port " + server.getPort() + Color.ANSI_BLACK.getColor());
+    }
+
+    /**
+     * Applies a booking event file with the fleet size given on the command line and prints a summary.
+     *
+     * @param args The command line: replay FILE BUSES SEATS.
+     */
+    private static void startReplay(String[] args) throws IOException {
+        if (args.length != 4 || !isInputValid(args[2], SeatStore.MAX_BUSES) || !isInputValid(args[3], SeatStore.MAX_SEATS_PER_BUS)) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Usage: replay <file> <buses 1-" + SeatStore.MAX_BUSES + "> <seats 1-" + SeatStore.MAX_SEATS_PER_BUS + ">" + Color.ANSI_BLACK.getColor());
+            return;
+        }
+        openFleet(Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+
+        EventReplayer replayer = new EventReplayer(bookingEngine, 20);
+        try {
+            replayer.replay(Path.of(args[1]));
+        } finally {
+            closeFleet();
+        }
+        replayer.printSummary(System.out);
+        System.out.println("-> Booked seats in the fleet: " + buses.getTotalBookedSeats() + " of " + (long) numberOfBuses * numberSeatsPerBus);
+    }
+
+    /**
+     * Displays paginated information about buses, including available and unavailable seats.
+     */
+    private static void displayPaginatedBusInformation() {
+
+        // Calculate start index for the current page
+        int startIndex = (currentPage - 1) * pageSize;
+
+        // Check if there is data to display for the current page
+        if (startIndex >= getShownBuses()) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: No data to display for the current page." + Color.ANSI_BLACK.getColor());
+            return;
         }
 
-        // Render and display the table
-        System.out.println(table.render());
+        // Render the rows of the current page straight from the seat counters, unless it is cached and unchanged
+        long start = System.nanoTime();
+        CharSequence page;
+        if (shownBusIds != null) {
+            page = renderer.renderPage(shownTitle, shownBusIds, currentPage);
+        } else if (renderCache != null) {
+            page = renderCache.renderPage(currentPage);
+        } else {
+            page = renderer.renderPage(currentPage);
+        }
+        metrics.record(Operation.RENDER_PAGE, start);
+        System.out.println(page);
 
         // Display pagination options
-        System.out.println(Color.ANSI_BLUE.getColor() + "1. First" + "\t\t" + "2. Next Page" + "\t\t" + "3. Previous" + "\t\t" + "4. Last Page" + "\t\t" + "5. See Detail Each Bus" + "\t\t" + "6. Back" + Color.ANSI_BLACK.getColor());
-        System.out.print("-> Choose option(1-6): ");
+        System.out.println(Color.ANSI_BLUE.getColor() + "1. First" + "\t\t" + "2. Next Page" + "\t\t" + "3. Previous" + "\t\t" + "4. Last Page" + "\t\t" + "5. See Detail Each Bus" + "\t\t" + "6. Export All Buses" + "\t\t" + "7. Back" + Color.ANSI_BLACK.getColor());
+        System.out.print("-> Choose option(1-7): ");
         while (!scanner.hasNext("[1-9]*")) {
             System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter only numeric values." + Color.ANSI_BLACK.getColor());
-            System.out.print("-> Choose option(1-6): ");
+            System.out.print("-> Choose option(1-7): ");
             scanner.next();
         }
         int option = scanner.nextInt();
@@ -178,6 +652,15 @@ public class Main {
         }
         int busId = Integer.parseInt(inputBusId);
 
+        // Input for the stops of the journey on a route
+        int fromStop = 1;
+        int toStop = numberOfStops;
+        if (routes != null) {
+            fromStop = readStop("-> Enter From stop: ", 1, numberOfStops - 1);
+            toStop = readStop("-> Enter To stop: ", fromStop + 1, numberOfStops);
+            displayRouteInformation(busId, fromStop, toStop);
+        }
+
         // Input for seat number
         System.out.print("-> Enter Seat number to booking: ");
         String inputSeatNumber = scanner.next();
@@ -188,23 +671,235 @@ public class Main {
         }
         int seatNumber = Integer.parseInt(inputSeatNumber);
 
-        // Confirm booking choice
-        System.out.print("=> Do you want to book Seat number " + seatNumber + "? (y/n): ");
+        // A held seat can only be confirmed
+        boolean canHold = routes == null && seatHolds != null;
+        if (canHold && seatHolds.isHeld(busId, seatNumber)) {
+            confirmHold(busId, seatNumber);
+            displayBusInformation(busId);
+            return;
+        }
+
+        // Confirm booking choice, or hold the seat while the customer pays
+        String choices = canHold ? "(y/n/h)" : "(y/n)";
+        System.out.print("=> Do you want to book Seat number " + seatNumber + "? " + choices + ": ");
         String inputChoice = scanner.next();
-        while (!inputChoice.matches("[ynYN]")) {
-            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter 'y' or 'n'." + Color.ANSI_BLACK.getColor());
-            System.out.print("=> Do you want to book Seat number " + seatNumber + "? (y/n): ");
+        while (!inputChoice.matches(canHold ? "[ynhYNH]" : "[ynYN]")) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter " + (canHold ? "'y', 'n' or 'h'." : "'y' or 'n'.") + Color.ANSI_BLACK.getColor());
+            System.out.print("=> Do you want to book Seat number " + seatNumber + "? " + choices + ": ");
             inputChoice = scanner.next();
         }
         char choice = inputChoice.charAt(0); // get first character of input
 
         // Process booking based on user choice
-        if (choice == 'y' || choice == 'Y') {
-            if (buses[busId - 1][seatNumber - 1] == 0) { // check if seat is available
-                buses[busId - 1][seatNumber - 1] = 1; // book seat
+        if (choice == 'h' || choice == 'H') {
+            holdSeat(busId, seatNumber);
+        } else if (choice == 'y' || choice == 'Y') {
+            if (routes != null) {
+                bookRouteSeat(busId, seatNumber, fromStop, toStop);
+            } else if (bookingService.book(busId, seatNumber) == BookingResult.BOOKED) { // book seat if it is available
+                awaitSaved();
                 System.out.println(Color.ANSI_GREEN.getColor() + "-> Seat number " + seatNumber + " was booked successfully!" + Color.ANSI_BLACK.getColor());
             } else {
                 System.out.println(Color.ANSI_RED.getColor() + "-> Error: Seat number " + seatNumber + " is already booked." + Color.ANSI_BLACK.getColor());
+                int firstAvailableSeat = bookingService.findFirstAvailableSeat(busId);
+                if (firstAvailableSeat != -1) { // suggest a seat that is still available
+                    System.out.println(Color.ANSI_BLUE.getColor() + "-> Seat number " + firstAvailableSeat + " is available." + Color.ANSI_BLACK.getColor());
+                }
+            }
+        }
+
+        // Display detailed information for the booked bus
+        if (routes != null) {
+            displayRouteInformation(busId, fromStop, toStop);
+        } else {
+            displayBusInformation(busId);
+        }
+    }
+
+    /**
+     * Creates the seat holds and starts releasing the ended ones. The holds that were running when
+     * the fleet was saved are started again and end one hold time from now.
+     *
+     * @param holdService The booking service the held seats are booked with.
+     */
+    private static void startHolds(BookingService holdService) {
+        seatHolds = new SeatHolds(holdService, TimeUnit.MINUTES.toMillis(holdMinutes), holdTickMillis, System.currentTimeMillis());
+        bookingEngine.addListener(seatHolds);
+        if (persistence != null) {
+            long[] heldSeats = persistence.getHeldSeats();
+            for (long seat : heldSeats) {
+                seatHolds.restore((int) (seat >>> 32), (int) seat, System.currentTimeMillis());
+            }
+            if (heldSeats.length > 0) {
+                System.out.println(Color.ANSI_BLUE.getColor() + "-> " + heldSeats.length + " held seats are held again for " + holdMinutes + " minutes." + Color.ANSI_BLACK.getColor());
+            }
+        }
+        seatHolds.startExpiring();
+    }
+
+    /**
+     * Waits until the seat changes made so far are on disk, before they are confirmed to the user.
+     */
+    private static void awaitSaved() {
+        if (persistence != null) {
+            persistence.awaitBookingsDurable();
+        }
+    }
+
+    /**
+     * Waits until the trip sales made so far are on disk, before they are confirmed to the user.
+     */
+    private static void awaitTripsSaved() {
+        if (persistence != null) {
+            persistence.awaitTripsDurable();
+        }
+    }
+
+    /**
+     * Holds a seat for a few minutes; it is released unless the booking is confirmed in time.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to hold.
+     */
+    private static void holdSeat(int busId, int seatNumber) {
+        if (seatHolds.hold(busId, seatNumber, System.currentTimeMillis()) == BookingResult.BOOKED) {
+            awaitSaved();
+            System.out.println(Color.ANSI_GREEN.getColor() + "-> Seat number " + seatNumber + " is held for " + holdMinutes + " minutes, book it again to confirm." + Color.ANSI_BLACK.getColor());
+        } else {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Seat number " + seatNumber + " is already booked." + Color.ANSI_BLACK.getColor());
+            int firstAvailableSeat = bookingService.findFirstAvailableSeat(busId);
+            if (firstAvailableSeat != -1) { // suggest a seat that is still available
+                System.out.println(Color.ANSI_BLUE.getColor() + "-> Seat number " + firstAvailableSeat + " is available." + Color.ANSI_BLACK.getColor());
+            }
+        }
+    }
+
+    /**
+     * Asks whether the booking of a held seat is paid and confirms it.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The held seat number.
+     */
+    private static void confirmHold(int busId, int seatNumber) {
+        System.out.print("=> Seat number " + seatNumber + " is held, do you want to confirm the booking? (y/n): ");
+        String inputChoice = scanner.next();
+        while (!inputChoice.matches("[ynYN]")) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter 'y' or 'n'." + Color.ANSI_BLACK.getColor());
+            System.out.print("=> Seat number " + seatNumber + " is held, do you want to confirm the booking? (y/n): ");
+            inputChoice = scanner.next();
+        }
+        char choice = inputChoice.charAt(0);
+
+        if (choice == 'y' || choice == 'Y') {
+            if (seatHolds.confirm(busId, seatNumber) == BookingResult.BOOKED) {
+                awaitSaved();
+                System.out.println(Color.ANSI_GREEN.getColor() + "-> Seat number " + seatNumber + " was booked successfully!" + Color.ANSI_BLACK.getColor());
+            } else {
+                System.out.println(Color.ANSI_RED.getColor() + "-> Error: The hold on seat number " + seatNumber + " has ended." + Color.ANSI_BLACK.getColor());
+            }
+        }
+    }
+
+    /**
+     * Books a seat between two stops; a seat that was free on the whole route is booked on the bus too.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to book.
+     * @param fromStop   The stop where the passenger gets on.
+     * @param toStop     The stop where the passenger gets off.
+     */
+    private static void bookRouteSeat(int busId, int seatNumber, int fromStop, int toStop) {
+        if (routes.book(busId, seatNumber, fromStop, toStop) == BookingResult.BOOKED) {
+            if (!buses.isBooked(busId, seatNumber)) {
+                bookingService.book(busId, seatNumber); // journal the seat and count it as booked
+            }
+            awaitSaved();
+            System.out.println(Color.ANSI_GREEN.getColor() + "-> Seat number " + seatNumber + " was booked successfully from stop " + fromStop + " to stop " + toStop + "!" + Color.ANSI_BLACK.getColor());
+        } else {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Seat number " + seatNumber + " is already booked between stop " + fromStop + " and stop " + toStop + "." + Color.ANSI_BLACK.getColor());
+            int bestFitSeat = routes.findBestFitSeat(busId, fromStop, toStop);
+            if (bestFitSeat != -1) { // suggest the seat that leaves the longest journeys free for others
+                System.out.println(Color.ANSI_BLUE.getColor() + "-> Seat number " + bestFitSeat + " is available from stop " + fromStop + " to stop " + toStop + "." + Color.ANSI_BLACK.getColor());
+            }
+        }
+    }
+
+    /**
+     * Allows a user to book several seats on a specific bus in one go.
+     */
+    private static void groupBooking() {
+
+        // Input for bus ID
+        System.out.print("-> Enter bus’s Id: ");
+        String inputBusId = scanner.next();
+        while (!isInputValid(inputBusId, numberOfBuses)) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter a bus ID between 1 and " + numberOfBuses + "." + Color.ANSI_BLACK.getColor());
+            System.out.print("-> Enter bus’s Id: ");
+            inputBusId = scanner.next();
+        }
+        int busId = Integer.parseInt(inputBusId);
+
+        // Choose the seats or let the system pick them
+        System.out.print("=> Do you want to choose the Seat numbers? (y/n): ");
+        String inputChoice = scanner.next();
+        while (!inputChoice.matches("[ynYN]")) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter 'y' or 'n'." + Color.ANSI_BLACK.getColor());
+            System.out.print("=> Do you want to choose the Seat numbers? (y/n): ");
+            inputChoice = scanner.next();
+        }
+        boolean chooseSeats = inputChoice.charAt(0) == 'y' || inputChoice.charAt(0) == 'Y';
+
+        int[] seatNumbers = null;
+        int numberOfSeats;
+        if (chooseSeats) {
+            // Input for seat numbers, separated by commas
+            System.out.print("-> Enter Seat numbers to booking (e.g. 1,2,3): ");
+            seatNumbers = parseSeatNumbers(scanner.next(), numberSeatsPerBus);
+            while (seatNumbers == null) {
+                System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter different seat numbers between 1 and " + numberSeatsPerBus + " separated by ','." + Color.ANSI_BLACK.getColor());
+                System.out.print("-> Enter Seat numbers to booking (e.g. 1,2,3): ");
+                seatNumbers = parseSeatNumbers(scanner.next(), numberSeatsPerBus);
+            }
+            numberOfSeats = seatNumbers.length;
+        } else {
+            // Input for number of seats
+            System.out.print("-> Enter number of Seats to booking: ");
+            String inputNumberOfSeats = scanner.next();
+            while (!isInputValid(inputNumberOfSeats, numberSeatsPerBus)) {
+                System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter a number between 1 and " + numberSeatsPerBus + "." + Color.ANSI_BLACK.getColor());
+                System.out.print("-> Enter number of Seats to booking: ");
+                inputNumberOfSeats = scanner.next();
+            }
+            numberOfSeats = Integer.parseInt(inputNumberOfSeats);
+        }
+
+        // Confirm booking choice
+        System.out.print("=> Do you want to book " + numberOfSeats + " Seats on bus " + busId + "? (y/n): ");
+        inputChoice = scanner.next();
+        while (!inputChoice.matches("[ynYN]")) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter 'y' or 'n'." + Color.ANSI_BLACK.getColor());
+            System.out.print("=> Do you want to book " + numberOfSeats + " Seats on bus " + busId + "? (y/n): ");
+            inputChoice = scanner.next();
+        }
+        char choice = inputChoice.charAt(0);
+
+        // Process group booking based on user choice, all seats are booked or none
+        if (choice == 'y' || choice == 'Y') {
+            if (chooseSeats) {
+                if (bookingService.bookSeats(busId, seatNumbers) == BookingResult.BOOKED) {
+                    awaitSaved();
+                    System.out.println(Color.ANSI_GREEN.getColor() + "-> " + numberOfSeats + " Seats were booked successfully!" + Color.ANSI_BLACK.getColor());
+                } else {
+                    System.out.println(Color.ANSI_RED.getColor() + "-> Error: Some of the seats are already booked, no seat was booked." + Color.ANSI_BLACK.getColor());
+                }
+            } else {
+                int[] bookedSeatNumbers = bookingService.bookAnySeats(busId, numberOfSeats);
+                if (bookedSeatNumbers.length > 0) {
+                    awaitSaved();
+                    System.out.println(Color.ANSI_GREEN.getColor() + "-> Seat numbers " + Arrays.toString(bookedSeatNumbers) + " were booked successfully!" + Color.ANSI_BLACK.getColor());
+                } else {
+                    System.out.println(Color.ANSI_RED.getColor() + "-> Error: Bus " + busId + " has only " + bookingService.getAvailableSeats(busId) + " available seats." + Color.ANSI_BLACK.getColor());
+                }
             }
         }
 
@@ -227,8 +922,20 @@ public class Main {
         }
         int busId = Integer.parseInt(inputBusId);
 
+        // Input for the stops of the journey on a route
+        int fromStop = 1;
+        int toStop = numberOfStops;
+        if (routes != null) {
+            fromStop = readStop("-> Enter From stop: ", 1, numberOfStops - 1);
+            toStop = readStop("-> Enter To stop: ", fromStop + 1, numberOfStops);
+        }
+
         // Display information for the selected bus
-        displayBusInformation(busId);
+        if (routes != null) {
+            displayRouteInformation(busId, fromStop, toStop);
+        } else {
+            displayBusInformation(busId);
+        }
 
         // Input for seat number to cancel booking
         System.out.print("-> Enter Seat number to cancel booking: ");
@@ -252,8 +959,10 @@ public class Main {
 
         // Process cancellation based on user choice
         if (choice == 'y' || choice == 'Y') {
-            if (buses[busId - 1][seatNumber - 1] == 1) { // check if seat is unavailable
-                buses[busId - 1][seatNumber - 1] = 0; // cancel booking
+            if (routes != null) {
+                cancelRouteSeat(busId, seatNumber, fromStop, toStop);
+            } else if (bookingService.cancel(busId, seatNumber) == BookingResult.CANCELED) { // cancel booking if seat is unavailable
+                awaitSaved();
                 System.out.println(Color.ANSI_GREEN.getColor() + "-> Seat number " + seatNumber + " was canceled booking successfully!" + Color.ANSI_BLACK.getColor());
             } else {
                 System.out.println(Color.ANSI_RED.getColor() + "-> Error: Seat number " + seatNumber + " is already available." + Color.ANSI_BLACK.getColor());
@@ -261,6 +970,26 @@ public class Main {
         }
     }
 
+    /**
+     * Cancels a seat between two stops; a seat that is no longer held anywhere on the route is canceled on the bus too.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to cancel.
+     * @param fromStop   The stop where the passenger gets on.
+     * @param toStop     The stop where the passenger gets off.
+     */
+    private static void cancelRouteSeat(int busId, int seatNumber, int fromStop, int toStop) {
+        if (routes.cancel(busId, seatNumber, fromStop, toStop) == BookingResult.CANCELED) {
+            if (!routes.isSeatHeld(busId, seatNumber)) {
+                bookingService.cancel(busId, seatNumber);
+            }
+            awaitSaved();
+            System.out.println(Color.ANSI_GREEN.getColor() + "-> Seat number " + seatNumber + " was canceled booking successfully from stop " + fromStop + " to stop " + toStop + "!" + Color.ANSI_BLACK.getColor());
+        } else {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Seat number " + seatNumber + " is not booked all the way from stop " + fromStop + " to stop " + toStop + "." + Color.ANSI_BLACK.getColor());
+        }
+    }
+
     /**
      * Resets all seats on a specific bus.
      */
@@ -288,56 +1017,317 @@ public class Main {
 
         // Process reset based on user choice
         if (choice == 'y' || choice == 'Y') {
-            for (int i = 0; i < numberSeatsPerBus; i++) { // loop through seats for the selected bus
-                buses[busId - 1][i] = 0; // reset seat
-            }
+            bookingService.reset(busId); // make all seats of the selected bus available
+            awaitSaved();
             System.out.println(Color.ANSI_GREEN.getColor() + "-> Bus " + busId + " was reset successfully!" + Color.ANSI_BLACK.getColor());
         }
     }
 
     /**
-     * Displays detailed information about available and unavailable seats on a specific bus.
+     * Searches the buses with the free seat index and shows the result in the pagination.
+     */
+    private static void findBus() {
+        System.out.println(Color.ANSI_BLUE.getColor() + "1. Free Seats" + "\t\t" + "2. Emptiest Buses" + "\t\t" + "3. Fullest Buses" + "\t\t" + "4. Seat Available" + "\t\t" + "5. Back" + Color.ANSI_BLACK.getColor());
+        System.out.print("-> Choose option(1-5): ");
+        while (!scanner.hasNext("[1-9]*")) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter only numeric values." + Color.ANSI_BLACK.getColor());
+            System.out.print("-> Choose option(1-5): ");
+            scanner.next();
+        }
+        int option = scanner.nextInt();
+
+        switch (option) {
+            case 1:
+                int freeSeats = readNumber("-> Enter number of free seats: ", numberSeatsPerBus);
+                showSearchResult("Buses with at least " + freeSeats + " free seats", fleetSearch.findBusesWithFreeSeats(freeSeats));
+                break;
+            case 2:
+                int emptiest = readNumber("-> Enter number of buses: ", numberOfBuses);
+                showSearchResult("The " + emptiest + " emptiest buses", fleetSearch.findEmptiestBuses(emptiest));
+                break;
+            case 3:
+                int fullest = readNumber("-> Enter number of buses: ", numberOfBuses);
+                showSearchResult("The " + fullest + " fullest buses", fleetSearch.findFullestBuses(fullest));
+                break;
+            case 4:
+                int seatNumber = readNumber("-> Enter Seat number: ", numberSeatsPerBus);
+                showSearchResult("Buses with seat " + seatNumber + " available", fleetSearch.findBusesWithSeatFree(seatNumber));
+                break;
+            case 5:
+                break;
+            default:
+                System.out.println("-> Invalid option");
+                break;
+        }
+    }
+
+    /**
+     * Asks for a number until the input is between 1 and a maximum.
      *
-     * @param busId The ID of the bus to display information for.
+     * @param prompt The question to show.
+     * @param max    The largest allowed number.
+     * @return The number entered.
      */
-    private static void displayBusInformation(int busId) {
+    private static int readNumber(String prompt, int max) {
+        System.out.print(prompt);
+        String input = scanner.next();
+        while (!isInputValid(input, max)) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter a number between 1 and " + max + "." + Color.ANSI_BLACK.getColor());
+            System.out.print(prompt);
+            input = scanner.next();
+        }
+        return Integer.parseInt(input);
+    }
+
+    /**
+     * Asks for a stop of the route until the input is between a first and a last stop.
+     *
+     * @param prompt    The question to show.
+     * @param firstStop The first allowed stop.
+     * @param lastStop  The last allowed stop.
+     * @return The stop entered.
+     */
+    private static int readStop(String prompt, int firstStop, int lastStop) {
+        System.out.print(prompt);
+        String input = scanner.next();
+        while (!isInputValid(input, lastStop) || Integer.parseInt(input) < firstStop) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter a stop between " + firstStop + " and " + lastStop + "." + Color.ANSI_BLACK.getColor());
+            System.out.print(prompt);
+            input = scanner.next();
+        }
+        return Integer.parseInt(input);
+    }
+
+    /**
+     * Shows the buses found by a search in the pagination, starting on its first page.
+     *
+     * @param title  The title of the result table.
+     * @param busIds The buses found.
+     */
+    private static void showSearchResult(String title, int[] busIds) {
+        if (busIds.length == 0) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> No bus matches the search." + Color.ANSI_BLACK.getColor());
+            return;
+        }
+        System.out.println(Color.ANSI_GREEN.getColor() + "-> Found " + busIds.length + " buses." + Color.ANSI_BLACK.getColor());
+        shownBusIds = busIds;
+        shownTitle = title;
+        currentPage = 1;
+        displayPaginatedBusInformation();
+    }
+
+    /**
+     * Displays the occupancy report of the fleet, counted in parallel on all cores, and exports it as CSV.
+     */
+    private static void reports() {
+        if (shardRouter != null) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Reports need the seats of a local fleet, the shards only report their counters." + Color.ANSI_BLACK.getColor());
+            return;
+        }
+        FleetReport report = new FleetAnalytics(buses, ForkJoinPool.commonPool()).analyze();
+        report.printSummary(System.out);
+
+        System.out.println(Color.ANSI_BLUE.getColor() + "1. Export CSV" + "\t\t" + "2. Back" + Color.ANSI_BLACK.getColor());
+        System.out.print("-> Choose option(1-2): ");
+        while (!scanner.hasNext("[1-9]*")) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter only numeric values." + Color.ANSI_BLACK.getColor());
+            System.out.print("-> Choose option(1-2): ");
+            scanner.next();
+        }
+        int option = scanner.nextInt();
 
-        availableSeats = 0; // reset available seats
-        unavailableSeats = 0; // reset unavailable seats
+        switch (option) {
+            case 1:
+                System.out.print("-> Enter file name to export: ");
+                String fileName = scanner.next();
+                try (Writer writer = Files.newBufferedWriter(Path.of(fileName))) {
+                    report.writeCsv(writer);
+                    System.out.println(Color.ANSI_GREEN.getColor() + "-> Exported the report to " + fileName + Color.ANSI_BLACK.getColor());
+                } catch (IOException | RuntimeException e) {
+                    System.out.println(Color.ANSI_RED.getColor() + "-> Error: Could not export the report: " + e.getMessage() + Color.ANSI_BLACK.getColor());
+                }
+                break;
+            case 2:
+                break;
+            default:
+                System.out.println("-> Invalid option");
+                break;
+        }
+    }
 
-        // Define cell style for table
-        CellStyle numberCellStyle = new CellStyle(CellStyle.HorizontalAlign.center);
+    /**
+     * Displays the counters and latencies of the menu operations and the seats of the fleet.
+     */
+    private static void displayStats() {
+        metrics.printSummary(System.out);
+        if (renderCache != null) {
+            long lookups = renderCache.getHits() + renderCache.getMisses();
+            System.out.printf("-> Render cache: %,d hits, %,d misses (%,d changed), %.1f%% hit rate, %,d tables, %,d chars, %,d evicted%n",
+                    renderCache.getHits(), renderCache.getMisses(), renderCache.getStale(), lookups == 0 ? 0.0 : renderCache.getHits() * 100.0 / lookups,
+                    renderCache.getSize(), renderCache.getCachedChars(), renderCache.getEvictions());
+        }
 
-        // Create a table with borders
-        Table table = new Table(5, BorderStyle.UNICODE_BOX_DOUBLE_BORDER, ShownBorders.ALL);
-        table.addCell("Bus " + busId + " Information", numberCellStyle, 5);
+        System.out.println(Color.ANSI_BLUE.getColor() + "1. Export Prometheus" + "\t\t" + "2. Back" + Color.ANSI_BLACK.getColor());
+        System.out.print("-> Choose option(1-2): ");
+        while (!scanner.hasNext("[1-9]*")) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter only numeric values." + Color.ANSI_BLACK.getColor());
+            System.out.print("-> Choose option(1-2): ");
+            scanner.next();
+        }
+        int option = scanner.nextInt();
 
-        table.addCell("Seat", numberCellStyle);
-        table.addCell("Seat", numberCellStyle);
-        table.addCell("Seat", numberCellStyle);
-        table.addCell("Seat", numberCellStyle);
-        table.addCell("Seat", numberCellStyle);
+        switch (option) {
+            case 1:
+                System.out.print("-> Enter file name to export: ");
+                String fileName = scanner.next();
+                try (Writer writer = Files.newBufferedWriter(Path.of(fileName))) {
+                    metrics.writePrometheus(writer);
+                    System.out.println(Color.ANSI_GREEN.getColor() + "-> Exported the metrics to " + fileName + Color.ANSI_BLACK.getColor());
+                } catch (IOException | RuntimeException e) {
+                    System.out.println(Color.ANSI_RED.getColor() + "-> Error: Could not export the metrics: " + e.getMessage() + Color.ANSI_BLACK.getColor());
+                }
+                break;
+            case 2:
+                break;
+            default:
+                System.out.println("-> Invalid option");
+                break;
+        }
+    }
 
-        table.setColumnWidth(0, 10, 15);
-        table.setColumnWidth(1, 10, 15);
-        table.setColumnWidth(2, 10, 15);
-        table.setColumnWidth(3, 10, 15);
-        table.setColumnWidth(4, 10, 15);
+    /**
+     * Books, cancels and shows the seats of one departure of a bus.
+     * Trips that have departed are archived first and cannot be booked anymore.
+     */
+    private static void trips() {
+        evictDepartedTrips();
 
-        for (int i = 0; i < numberSeatsPerBus; i++) {
-            if (buses[busId - 1][i] == 0) {
-                table.addCell(Color.ANSI_GREEN.getColor() + "(+) " + (i + 1) + Color.ANSI_GREEN.getColor(), numberCellStyle);
-                availableSeats++;
-            } else {
-                table.addCell(Color.ANSI_RED.getColor() + "(-) " + (i + 1) + Color.ANSI_RED.getColor(), numberCellStyle);
-                unavailableSeats++;
+        System.out.println(Color.ANSI_BLUE.getColor() + "1. Book Trip Seat" + "\t\t" + "2. Cancel Trip Seat" + "\t\t" + "3. Trip Availability" + "\t\t" + "4. Back" + Color.ANSI_BLACK.getColor());
+        System.out.print("-> Choose option(1-4): ");
+        while (!scanner.hasNext("[1-9]*")) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter only numeric values." + Color.ANSI_BLACK.getColor());
+            System.out.print("-> Choose option(1-4): ");
+            scanner.next();
+        }
+        int option = scanner.nextInt();
+        if (option < 1 || option > 3) {
+            if (option != 4) {
+                System.out.println("-> Invalid option");
+            }
+            return;
+        }
+
+        int busId = readNumber("-> Enter bus’s Id: ", numberOfBuses);
+        long departureMinute = readDeparture();
+        try {
+            switch (option) {
+                case 1:
+                    int bookSeat = readNumber("-> Enter Seat number to booking: ", numberSeatsPerBus);
+                    if (tripInventory.book(busId, departureMinute, bookSeat) == BookingResult.BOOKED) {
+                        awaitTripsSaved();
+                        System.out.println(Color.ANSI_GREEN.getColor() + "-> Seat number " + bookSeat + " was booked successfully!" + Color.ANSI_BLACK.getColor());
+                    } else {
+                        System.out.println(Color.ANSI_RED.getColor() + "-> Error: Seat number " + bookSeat + " is already booked." + Color.ANSI_BLACK.getColor());
+                    }
+                    break;
+                case 2:
+                    int cancelSeat = readNumber("-> Enter Seat number to cancel: ", numberSeatsPerBus);
+                    if (tripInventory.cancel(busId, departureMinute, cancelSeat) == BookingResult.CANCELED) {
+                        awaitTripsSaved();
+                        System.out.println(Color.ANSI_GREEN.getColor() + "-> Seat number " + cancelSeat + " was canceled successfully!" + Color.ANSI_BLACK.getColor());
+                    } else {
+                        System.out.println(Color.ANSI_RED.getColor() + "-> Error: Seat number " + cancelSeat + " is not booked." + Color.ANSI_BLACK.getColor());
+                    }
+                    break;
+                default:
+                    break;
             }
+        } catch (IllegalArgumentException e) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: " + e.getMessage() + Color.ANSI_BLACK.getColor());
         }
 
-        System.out.println(table.render());
+        // Display the seats of the trip
+        long[] seatWords = new long[tripInventory.getWordsPerBus()];
+        tripInventory.copySeatWords(busId, departureMinute, seatWords);
+        System.out.println(renderer.renderSeats("Bus " + busId + " at " + TripInventory.toDeparture(departureMinute), seatWords));
+        int availableSeats = tripInventory.getAvailableSeats(busId, departureMinute);
+        int unavailableSeats = tripInventory.getBookedSeats(busId, departureMinute);
         System.out.println(Color.ANSI_RED.getColor() + "(-) : Unavailable(" + unavailableSeats + ")" + Color.ANSI_BLACK.getColor() + "\t\t\t\t" + Color.ANSI_GREEN.getColor() + "(+) : Available(" + availableSeats + ")" + Color.ANSI_BLACK.getColor());
     }
 
+    /**
+     * Asks for a departure until the input is a date and time like 2026-10-18T08:30.
+     *
+     * @return The departure minute of the trip inventory.
+     */
+    private static long readDeparture() {
+        while (true) {
+            System.out.print("-> Enter departure (yyyy-MM-ddTHH:mm): ");
+            long departureMinute = parseDeparture(scanner.next());
+            if (departureMinute >= 0) {
+                return departureMinute;
+            }
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Invalid Input. Please enter a date and time like 2026-10-18T08:30." + Color.ANSI_BLACK.getColor());
+        }
+    }
+
+    /**
+     * Removes the trips that have departed, appending them to the trip archive if the seats are kept on disk.
+     */
+    private static void evictDepartedTrips() {
+        long now = TripInventory.toDepartureMinute(LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES));
+        try {
+            int evicted;
+            if (dataDirectory == null) {
+                evicted = tripInventory.evictDepartedBefore(now, null);
+            } else {
+                try (TripArchiveWriter archive = new TripArchiveWriter(dataDirectory.resolve("trip-archive.csv"))) {
+                    evicted = tripInventory.evictDepartedBefore(now, archive);
+                }
+            }
+            if (evicted > 0) {
+                System.out.println(Color.ANSI_BLUE.getColor() + "-> " + evicted + " departed trips were " + (dataDirectory == null ? "removed" : "archived") + "." + Color.ANSI_BLACK.getColor());
+            }
+        } catch (IOException e) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Could not archive the departed trips: " + e.getMessage() + Color.ANSI_BLACK.getColor());
+        }
+    }
+
+    /**
+     * Displays detailed information about available and unavailable seats on a specific bus.
+     *
+     * @param busId The ID of the bus to display information for.
+     */
+    private static void displayBusInformation(int busId) {
+
+        // Render the seats five per row, held seats with their own symbol
+        long start = System.nanoTime();
+        long[] heldSeatWords = new long[bookingService.getWordsPerBus()];
+        int heldSeats = seatHolds != null ? seatHolds.copyHeldSeatWords(busId, heldSeatWords) : 0;
+        CharSequence seats = renderCache != null ? renderCache.renderBus(busId, heldSeats == 0 ? null : heldSeatWords)
+                : renderer.renderBus(busId, heldSeats == 0 ? null : heldSeatWords);
+        metrics.record(Operation.RENDER_BUS, start);
+        System.out.println(seats);
+
+        int availableSeats = bookingService.getAvailableSeats(busId);
+        int unavailableSeats = Math.max(0, bookingService.getBookedSeats(busId) - heldSeats);
+        System.out.println(Color.ANSI_RED.getColor() + "(-) : Unavailable(" + unavailableSeats + ")" + Color.ANSI_BLACK.getColor() + "\t\t\t\t" + Color.ANSI_BLUE.getColor() + "(*) : Held(" + heldSeats + ")" + Color.ANSI_BLACK.getColor() + "\t\t\t\t" + Color.ANSI_GREEN.getColor() + "(+) : Available(" + availableSeats + ")" + Color.ANSI_BLACK.getColor());
+    }
+
+    /**
+     * Displays which seats of a bus are taken and available between two stops of its route.
+     *
+     * @param busId    The ID of the bus.
+     * @param fromStop The stop where the passenger gets on.
+     * @param toStop   The stop where the passenger gets off.
+     */
+    private static void displayRouteInformation(int busId, int fromStop, int toStop) {
+        long[] takenSeats = new long[bookingService.getWordsPerBus()];
+        int unavailableSeats = routes.copyTakenSeatWords(busId, fromStop, toStop, takenSeats);
+        System.out.println(renderer.renderSeats("Bus " + busId + " from stop " + fromStop + " to stop " + toStop, takenSeats));
+        System.out.println(Color.ANSI_RED.getColor() + "(-) : Unavailable(" + unavailableSeats + ")" + Color.ANSI_BLACK.getColor() + "\t\t\t\t" + Color.ANSI_GREEN.getColor() + "(+) : Available(" + (numberSeatsPerBus - unavailableSeats) + ")" + Color.ANSI_BLACK.getColor());
+    }
+
     /**
      * Displays the first page of all bus information.
      */
@@ -371,8 +1361,7 @@ public class Main {
      * Displays the last page of all bus information.
      */
     private static void displayLastPageOfAllBusInformation() {
-        int totalPages = (int) Math.ceil((double) numberOfBuses / pageSize); // round up to the nearest integer value
-        currentPage = totalPages; // set current page to last page
+        currentPage = getTotalPages(); // set current page to last page
         displayPaginatedBusInformation();
     }
 
@@ -412,6 +1401,10 @@ public class Main {
                 }
                 break;
             case 6:
+                exportAllBuses();
+                displayPaginatedBusInformation();
+                break;
+            case 7:
                 break;
             default:
                 System.out.println("-> Invalid option");
@@ -419,31 +1412,34 @@ public class Main {
         }
     }
 
+    /**
+     * Writes the information of all buses to a file as one table.
+     */
+    private static void exportAllBuses() {
+        System.out.print("-> Enter file name to export: ");
+        String fileName = scanner.next();
+        try (Writer writer = Files.newBufferedWriter(Path.of(fileName))) {
+            renderer.writeFleet(writer); // streams the rows, so the whole fleet is never held in memory
+            System.out.println(Color.ANSI_GREEN.getColor() + "-> Exported " + numberOfBuses + " buses to " + fileName + Color.ANSI_BLACK.getColor());
+        } catch (IOException | RuntimeException e) {
+            System.out.println(Color.ANSI_RED.getColor() + "-> Error: Could not export the buses: " + e.getMessage() + Color.ANSI_BLACK.getColor());
+        }
+    }
+
     /**
      * Calculates the total number of pages needed for pagination.
      *
      * @return The total number of pages.
      */
     private static int getTotalPages() {
-        return (int) Math.ceil((double) numberOfBuses / pageSize); // round up to the nearest integer value
+        return (int) Math.ceil((double) getShownBuses() / pageSize); // round up to the nearest integer value
     }
 
     /**
-     * Checks if user input is a valid numeric value within a specified range.
-     *
-     * @param input The user input to validate.
-     * @param max   The maximum allowed value.
-     * @return True if the input is valid, false otherwise.
+     * @return The number of buses shown in the pagination, all buses or the result of the last search.
      */
-    private static boolean isInputValid(String input, int max) {
-        if (!input.matches("^[1-9][0-9]*$")) {
-            return false; // input is not a number
-        }
-        int number = Integer.parseInt(input);
-        if (number < 1 || number > max) {
-            return false; // number is not within range 1-max
-        }
-        return true;
+    private static int getShownBuses() {
+        return shownBusIds == null ? numberOfBuses : shownBusIds.length;
     }
 
     /**
@@ -0,0 +1,662 @@
+package bus;
+
+import java.util.Arrays;
+
+/**
+ * This class represents the booking operations of the Bus Management System.
+ * It can be called from many threads at once (counter terminals, agents, servers):
+ * every seat is claimed atomically in the {@link SeatStore}, so each request gets
+ * a definite result and a seat is never booked twice.
+ * <p>
+ * While every bus fits into one 64-seat word and no listener is listening (see
+ * {@link BookingListener#isListening}), seats are claimed lock-free: a group is then claimed with a
+ * single compare-and-set. Otherwise each change and its notification run under a lock striped by bus,
+ * so listeners see the changes of a bus in the same order they were applied, and a group spread over
+ * several words is never seen half booked or given back over a seat that someone else booked meanwhile.
+ * A listener that starts listening while a lock-free change is made hears of the change afterwards,
+ * under the lock.
+ * <p>
+ * Holds always take the lock. They are only checked against the other changes of the bus when
+ * those take the lock as well, so the holds (see {@link bus.hold.SeatHolds}) are added as a listener
+ * that listens while any seat is held.
+ * <p>
+ * A change that a listener fails to take, e.g. a journal that can no longer write, is rejected:
+ * the seats are changed back under the same lock, the listeners told before hear of the change
+ * being undone, and the listener's exception is thrown to the caller.
+ */
+public class BookingEngine implements BookingService {
+
+    // Number of locks the buses are spread over, a power of two
+    private static final int LOCK_STRIPES = 1024;
+
+    private final SeatStore seatStore;
+    // A group of seats spread over several words can only be claimed atomically under the lock
+    private final boolean singleWord;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private volatile BookingListener[] listeners = new BookingListener[0];
+
+    /**
+     * Creates an engine for a fleet where every seat is available.
+     *
+     * @param numberOfBuses     The number of buses in the fleet.
+     * @param numberSeatsPerBus The number of seats on each bus.
+     */
+    public BookingEngine(int numberOfBuses, int numberSeatsPerBus) {
+        this(new SeatStore(numberOfBuses, numberSeatsPerBus));
+    }
+
+    /**
+     * Creates an engine over an existing seat inventory.
+     *
+     * @param seatStore The seat inventory to book seats in.
+     */
+    public BookingEngine(SeatStore seatStore) {
+        this.seatStore = seatStore;
+        this.singleWord = seatStore.getWordsPerBus() == 1;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Adds a listener for seat changes. Listeners should be added before the engine
+     * is shared with other threads, changes already in progress are not reported.
+     *
+     * @param listener The listener to notify.
+     */
+    public synchronized void addListener(BookingListener listener) {
+        BookingListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Books a seat on a bus.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to book.
+     * @return BOOKED if the seat was booked, ALREADY_BOOKED if someone else holds it.
+     */
+    @Override
+    public BookingResult book(int busId, int seatNumber) {
+        BookingListener[] current = listeners;
+        if (isLockFree(current)) {
+            if (!seatStore.book(busId, seatNumber)) {
+                return BookingResult.ALREADY_BOOKED;
+            }
+            notifyLate(current, busId, 1L << (seatNumber - 1), true);
+            return BookingResult.BOOKED;
+        }
+        synchronized (lockFor(busId)) {
+            if (!seatStore.book(busId, seatNumber)) {
+                return BookingResult.ALREADY_BOOKED;
+            }
+            notifyBooked(current, busId, seatNumber);
+            return BookingResult.BOOKED;
+        }
+    }
+
+    /**
+     * Cancels the booking of a seat on a bus.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to cancel.
+     * @return CANCELED if the booking was canceled, ALREADY_AVAILABLE if the seat was not booked.
+     */
+    @Override
+    public BookingResult cancel(int busId, int seatNumber) {
+        BookingListener[] current = listeners;
+        if (isLockFree(current)) {
+            if (!seatStore.cancel(busId, seatNumber)) {
+                return BookingResult.ALREADY_AVAILABLE;
+            }
+            notifyLate(current, busId, 1L << (seatNumber - 1), false);
+            return BookingResult.CANCELED;
+        }
+        synchronized (lockFor(busId)) {
+            if (!seatStore.cancel(busId, seatNumber)) {
+                return BookingResult.ALREADY_AVAILABLE;
+            }
+            notifyCanceled(current, busId, seatNumber);
+            return BookingResult.CANCELED;
+        }
+    }
+
+    /**
+     * Books a seat for a hold; the seat is claimed, reported to the listeners as held and checked
+     * under the lock of the bus, so no cancel can come in between. The check comes last, so a hold
+     * a listener rejects is never started.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to hold.
+     * @param claimed    Called with the claimed seat, e.g. to start the hold's timer.
+     * @return BOOKED if the seat is held, ALREADY_BOOKED if it is booked or held already.
+     */
+    @Override
+    public BookingResult hold(int busId, int seatNumber, SeatCondition claimed) {
+        synchronized (lockFor(busId)) {
+            if (!seatStore.book(busId, seatNumber)) {
+                return BookingResult.ALREADY_BOOKED;
+            }
+            BookingListener[] current = listeners;
+            for (int i = 0; i < current.length; i++) {
+                try {
+                    current[i].seatHeld(busId, seatNumber);
+                } catch (RuntimeException e) {
+                    seatStore.cancel(busId, seatNumber);
+                    undo(e, current, i, busId, seatNumber, true);
+                    throw e;
+                }
+            }
+            if (!claimed.test(busId, seatNumber)) {
+                seatStore.cancel(busId, seatNumber);
+                for (BookingListener listener : current) {
+                    listener.seatCanceled(busId, seatNumber); // they saw the seat held
+                }
+                return BookingResult.ALREADY_BOOKED;
+            }
+            return BookingResult.BOOKED;
+        }
+    }
+
+    /**
+     * Confirms the hold of a seat if it is still booked and held, checked under the lock of the bus.
+     * The check ends the hold, so a confirmation a listener rejects releases the seat.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The held seat number.
+     * @param stillHeld  Checks and ends the hold.
+     * @return BOOKED if the hold was confirmed, ALREADY_AVAILABLE if the seat is not held (anymore).
+     */
+    @Override
+    public BookingResult confirmHold(int busId, int seatNumber, SeatCondition stillHeld) {
+        synchronized (lockFor(busId)) {
+            if (!seatStore.isBooked(busId, seatNumber) || !stillHeld.test(busId, seatNumber)) {
+                return BookingResult.ALREADY_AVAILABLE;
+            }
+            BookingListener[] current = listeners;
+            for (int i = 0; i < current.length; i++) {
+                try {
+                    current[i].holdConfirmed(busId, seatNumber);
+                } catch (RuntimeException e) {
+                    seatStore.cancel(busId, seatNumber);
+                    for (BookingListener listener : current) {
+                        try {
+                            listener.seatCanceled(busId, seatNumber);
+                        } catch (RuntimeException undoFailure) {
+                            e.addSuppressed(undoFailure);
+                        }
+                    }
+                    throw e;
+                }
+            }
+            return BookingResult.BOOKED;
+        }
+    }
+
+    /**
+     * Cancels a held seat if it is still held by the hold that ends, checked under the lock of the bus.
+     * A released seat is not taken back if a listener fails: the others still hear of it, then the
+     * first failure is thrown.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The held seat number.
+     * @param stillHeld  Checks and ends the hold.
+     * @return CANCELED if the seat was released, ALREADY_AVAILABLE if it is not held (anymore).
+     */
+    @Override
+    public BookingResult releaseHold(int busId, int seatNumber, SeatCondition stillHeld) {
+        synchronized (lockFor(busId)) {
+            if (!seatStore.isBooked(busId, seatNumber) || !stillHeld.test(busId, seatNumber)) {
+                return BookingResult.ALREADY_AVAILABLE;
+            }
+            seatStore.cancel(busId, seatNumber);
+            RuntimeException failure = null;
+            for (BookingListener listener : listeners) {
+                try {
+                    listener.seatCanceled(busId, seatNumber);
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return BookingResult.CANCELED;
+        }
+    }
+
+    /**
+     * Resets all seats on a bus.
+     *
+     * @param busId The ID of the bus to reset.
+     * @return Always RESET, a reset succeeds even if the bus was already empty.
+     */
+    @Override
+    public BookingResult reset(int busId) {
+        BookingListener[] current = listeners;
+        if (isLockFree(current)) {
+            if (current.length == 0) {
+                seatStore.reset(busId);
+            } else {
+                long[] releasedSeats = new long[1];
+                seatStore.reset(busId, releasedSeats);
+                notifyLate(current, busId, releasedSeats[0], false);
+            }
+            return BookingResult.RESET;
+        }
+        synchronized (lockFor(busId)) {
+            long[] releasedSeats = current.length == 0 ? null : new long[seatStore.getWordsPerBus()];
+            seatStore.reset(busId, releasedSeats);
+            for (int i = 0; i < current.length; i++) {
+                try {
+                    current[i].busReset(busId, releasedSeats);
+                } catch (RuntimeException e) {
+                    seatStore.bookSeats(busId, releasedSeats);
+                    for (int seatNumber : toSeatNumbers(releasedSeats, -1)) {
+                        undo(e, current, i, busId, seatNumber, false);
+                    }
+                    throw e;
+                }
+            }
+            return BookingResult.RESET;
+        }
+    }
+
+    /**
+     * Books a group of seats on a bus, either all of them or none.
+     *
+     * @param busId       The ID of the bus.
+     * @param seatNumbers The seat numbers to book, without duplicates.
+     * @return BOOKED if all seats were booked, ALREADY_BOOKED if any of them was taken.
+     */
+    @Override
+    public BookingResult bookSeats(int busId, int[] seatNumbers) {
+        return claimSeats(busId, toMasks(seatNumbers)) ? BookingResult.BOOKED : BookingResult.ALREADY_BOOKED;
+    }
+
+    /**
+     * Books any seats on a bus for a group, side by side if the bus still has such a row of seats.
+     *
+     * @param busId The ID of the bus.
+     * @param count The number of seats to book.
+     * @return The booked seat numbers, or an empty array if the bus has fewer available seats.
+     */
+    @Override
+    public int[] bookAnySeats(int busId, int count) {
+        if (count < 1 || count > seatStore.getNumberSeatsPerBus()) {
+            throw new IllegalArgumentException("Number of seats must be between 1 and " + seatStore.getNumberSeatsPerBus() + ": " + count);
+        }
+        long[] words = new long[seatStore.getWordsPerBus()];
+        while (true) {
+            seatStore.copySeatWords(busId, words);
+            long[] masks = chooseSeats(words, count);
+            if (masks == null) {
+                return new int[0]; // not enough available seats
+            }
+            if (claimSeats(busId, masks)) {
+                return toSeatNumbers(masks, count);
+            }
+            // another booking took one of the chosen seats, choose again
+        }
+    }
+
+    /**
+     * Cancels the bookings of a group of seats on a bus, if all of them are booked.
+     *
+     * @param busId       The ID of the bus.
+     * @param seatNumbers The seat numbers to cancel, without duplicates.
+     * @return CANCELED if the bookings were canceled, ALREADY_AVAILABLE if any of the seats was not booked.
+     */
+    @Override
+    public BookingResult cancelSeats(int busId, int[] seatNumbers) {
+        long[] masks = toMasks(seatNumbers);
+        BookingListener[] current = listeners;
+        if (isLockFree(current)) {
+            if (!seatStore.cancelSeats(busId, masks)) {
+                return BookingResult.ALREADY_AVAILABLE;
+            }
+            notifyLate(current, busId, masks[0], false);
+            return BookingResult.CANCELED;
+        }
+        synchronized (lockFor(busId)) {
+            if (!seatStore.cancelSeats(busId, masks)) {
+                return BookingResult.ALREADY_AVAILABLE;
+            }
+            for (int n = 0; n < seatNumbers.length; n++) {
+                try {
+                    notifyCanceled(current, busId, seatNumbers[n]);
+                } catch (RuntimeException e) {
+                    // the failed seat is booked again already, the seats before it as well
+                    for (int k = n + 1; k < seatNumbers.length; k++) {
+                        seatStore.book(busId, seatNumbers[k]);
+                    }
+                    for (int k = 0; k < n; k++) {
+                        seatStore.book(busId, seatNumbers[k]);
+                        undo(e, current, current.length, busId, seatNumbers[k], false);
+                    }
+                    throw e;
+                }
+            }
+            return BookingResult.CANCELED;
+        }
+    }
+
+    /**
+     * Resets all seats on several buses.
+     *
+     * @param busIds The IDs of the buses to reset.
+     */
+    public void resetBuses(int[] busIds) {
+        for (int busId : busIds) {
+            reset(busId);
+        }
+    }
+
+    @Override
+    public int getBookedSeats(int busId) {
+        return seatStore.getBookedSeats(busId);
+    }
+
+    @Override
+    public void copyBookedSeats(int[] busIds, int count, int[] bookedSeats) {
+        for (int i = 0; i < count; i++) {
+            bookedSeats[i] = seatStore.getBookedSeats(busIds[i]);
+        }
+    }
+
+    @Override
+    public void copySeatWords(int busId, long[] words) {
+        seatStore.copySeatWords(busId, words);
+    }
+
+    @Override
+    public int findFirstAvailableSeat(int busId) {
+        return seatStore.findFirstAvailableSeat(busId);
+    }
+
+    @Override
+    public long getTotalBookedSeats() {
+        return seatStore.getTotalBookedSeats();
+    }
+
+    @Override
+    public int getNumberOfBuses() {
+        return seatStore.getNumberOfBuses();
+    }
+
+    @Override
+    public int getNumberSeatsPerBus() {
+        return seatStore.getNumberSeatsPerBus();
+    }
+
+    @Override
+    public int getWordsPerBus() {
+        return seatStore.getWordsPerBus();
+    }
+
+    /**
+     * @return The seat inventory used by this engine.
+     */
+    public SeatStore getSeatStore() {
+        return seatStore;
+    }
+
+    /**
+     * Books the seats of a group in one pass over the bus's words and notifies the listeners.
+     */
+    private boolean claimSeats(int busId, long[] masks) {
+        BookingListener[] current = listeners;
+        if (isLockFree(current)) {
+            if (!seatStore.bookSeats(busId, masks)) {
+                return false;
+            }
+            notifyLate(current, busId, masks[0], true);
+            return true;
+        }
+        synchronized (lockFor(busId)) {
+            if (!seatStore.bookSeats(busId, masks)) {
+                return false;
+            }
+            int[] seatNumbers = toSeatNumbers(masks, -1);
+            for (int n = 0; n < seatNumbers.length; n++) {
+                try {
+                    notifyBooked(current, busId, seatNumbers[n]);
+                } catch (RuntimeException e) {
+                    // the failed seat is given back already, the whole group is
+                    for (int k = n + 1; k < seatNumbers.length; k++) {
+                        seatStore.cancel(busId, seatNumbers[k]);
+                    }
+                    for (int k = 0; k < n; k++) {
+                        seatStore.cancel(busId, seatNumbers[k]);
+                        undo(e, current, current.length, busId, seatNumbers[k], true);
+                    }
+                    throw e;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Checks whether a change can skip the lock: every bus fits into one word and no listener
+     * needs to hear of changes right now.
+     */
+    private boolean isLockFree(BookingListener[] current) {
+        if (!singleWord) {
+            return false;
+        }
+        for (BookingListener listener : current) {
+            if (listener.isListening()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports seats changed lock-free if a listener started listening meanwhile, e.g. the first
+     * hold started on the bus while the seats were changed. They are reported under the lock of
+     * the bus, except the seats whose later changes were reported already. The seats are not
+     * changed back if a listener fails, the change was visible already.
+     *
+     * @param seats  The changed seats of the bus's only word.
+     * @param booked True if the seats were booked, false if they became available.
+     */
+    private void notifyLate(BookingListener[] current, int busId, long seats, boolean booked) {
+        if (current.length == 0 || isLockFree(current)) {
+            return;
+        }
+        synchronized (lockFor(busId)) {
+            long word = seatStore.getSeatWord(busId, 0);
+            for (long unchanged = seats & (booked ? word : ~word); unchanged != 0; unchanged &= unchanged - 1) {
+                int seatNumber = Long.numberOfTrailingZeros(unchanged) + 1;
+                for (BookingListener listener : current) {
+                    if (booked) {
+                        listener.seatBooked(busId, seatNumber);
+                    } else {
+                        listener.seatCanceled(busId, seatNumber);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports a booked seat to the listeners; if one of them fails, the seat is given back.
+     * Called under the lock of the bus.
+     */
+    private void notifyBooked(BookingListener[] current, int busId, int seatNumber) {
+        for (int i = 0; i < current.length; i++) {
+            try {
+                current[i].seatBooked(busId, seatNumber);
+            } catch (RuntimeException e) {
+                seatStore.cancel(busId, seatNumber);
+                undo(e, current, i, busId, seatNumber, true);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reports a canceled seat to the listeners; if one of them fails, the seat is booked again.
+     * Called under the lock of the bus.
+     */
+    private void notifyCanceled(BookingListener[] current, int busId, int seatNumber) {
+        for (int i = 0; i < current.length; i++) {
+            try {
+                current[i].seatCanceled(busId, seatNumber);
+            } catch (RuntimeException e) {
+                seatStore.book(busId, seatNumber);
+                undo(e, current, i, busId, seatNumber, false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Tells the first listeners that a change of a seat was taken back after a later listener failed.
+     * Their own failures are added to the failure that is thrown.
+     *
+     * @param count  The number of listeners that heard of the change.
+     * @param booked True if the seat had been booked and is available again, false for the opposite.
+     */
+    private static void undo(RuntimeException failure, BookingListener[] current, int count, int busId, int seatNumber, boolean booked) {
+        for (int i = 0; i < count; i++) {
+            try {
+                if (booked) {
+                    current[i].seatCanceled(busId, seatNumber);
+                } else {
+                    current[i].seatBooked(busId, seatNumber);
+                }
+            } catch (RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Picks seats for a group: the first row of count available seats side by side,
+     * otherwise the lowest available seat numbers.
+     *
+     * @param words The seat bits of the bus.
+     * @param count The number of seats.
+     * @return The chosen seats as masks, or null if fewer seats are available.
+     */
+    private long[] chooseSeats(long[] words, int count) {
+        int numberSeatsPerBus = seatStore.getNumberSeatsPerBus();
+        long[] masks = new long[words.length];
+
+        // Look for a row of available seats that is long enough
+        int position = 0;
+        while (position < numberSeatsPerBus) {
+            int rowStart = nextSeat(words, position, false);
+            if (rowStart == -1) {
+                break;
+            }
+            int rowEnd = nextSeat(words, rowStart, true);
+            if (rowEnd == -1) {
+                rowEnd = numberSeatsPerBus;
+            }
+            if (rowEnd - rowStart >= count) {
+                for (int seat = rowStart; seat < rowStart + count; seat++) {
+                    masks[seat >>> 6] |= 1L << seat;
+                }
+                return masks;
+            }
+            position = rowEnd;
+        }
+
+        // No row is long enough, take the lowest available seats
+        int chosen = 0;
+        for (int i = 0; i < words.length && chosen < count; i++) {
+            long free = ~words[i] & validSeats(i);
+            while (free != 0 && chosen < count) {
+                long lowest = free & -free;
+                masks[i] |= lowest;
+                free ^= lowest;
+                chosen++;
+            }
+        }
+        return chosen == count ? masks : null;
+    }
+
+    /**
+     * Finds the next seat index (0-based) from a position that is booked or available.
+     *
+     * @return The seat index, or -1 if there is none.
+     */
+    private int nextSeat(long[] words, int from, boolean booked) {
+        int i = from >>> 6;
+        long candidates = (booked ? words[i] : ~words[i]) & (-1L << from); // shift uses the low 6 bits of from
+        while (true) {
+            if (candidates != 0) {
+                int seat = (i << 6) + Long.numberOfTrailingZeros(candidates);
+                return seat < seatStore.getNumberSeatsPerBus() ? seat : -1;
+            }
+            if (++i == words.length) {
+                return -1;
+            }
+            candidates = booked ? words[i] : ~words[i];
+        }
+    }
+
+    /**
+     * @return The bits of a word that belong to real seats.
+     */
+    private long validSeats(int wordIndex) {
+        int seatsInWord = seatStore.getNumberSeatsPerBus() - (wordIndex << 6);
+        return seatsInWord >= Long.SIZE ? -1L : (1L << seatsInWord) - 1;
+    }
+
+    /**
+     * Converts seat numbers to one mask per word of the bus.
+     */
+    private long[] toMasks(int[] seatNumbers) {
+        long[] masks = new long[seatStore.getWordsPerBus()];
+        for (int seatNumber : seatNumbers) {
+            if (seatNumber < 1 || seatNumber > seatStore.getNumberSeatsPerBus()) {
+                throw new IllegalArgumentException("Seat number must be between 1 and " + seatStore.getNumberSeatsPerBus() + ": " + seatNumber);
+            }
+            long bit = 1L << (seatNumber - 1);
+            if ((masks[(seatNumber - 1) >>> 6] & bit) != 0) {
+                throw new IllegalArgumentException("Seat number " + seatNumber + " is listed twice");
+            }
+            masks[(seatNumber - 1) >>> 6] |= bit;
+        }
+        return masks;
+    }
+
+    /**
+     * Converts masks back to seat numbers in ascending order.
+     *
+     * @param count The number of seats in the masks, or -1 to count them.
+     */
+    private static int[] toSeatNumbers(long[] masks, int count) {
+        if (count < 0) {
+            count = 0;
+            for (long mask : masks) {
+                count += Long.bitCount(mask);
+            }
+        }
+        int[] seatNumbers = new int[count];
+        int n = 0;
+        for (int i = 0; i < masks.length; i++) {
+            for (long mask = masks[i]; mask != 0; mask &= mask - 1) {
+                seatNumbers[n++] = (i << 6) + Long.numberOfTrailingZeros(mask) + 1;
+            }
+        }
+        return seatNumbers;
+    }
+
+    /**
+     * Finds the lock guarding the changes of a bus.
+     */
+    private Object lockFor(int busId) {
+        return locks[busId & (LOCK_STRIPES - 1)];
+    }
+}
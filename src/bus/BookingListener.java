@@ -0,0 +1,70 @@
+package bus;
+
+/**
+ * Interface for components that follow every seat change made through a {@link BookingEngine}.
+ * Changes of one bus are reported in the order they were applied (except the late reports
+ * described at {@link #isListening}); changes of different buses may be reported from
+ * different threads at the same time.
+ */
+public interface BookingListener {
+
+    /**
+     * Called after a seat was booked.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number that was booked.
+     */
+    default void seatBooked(int busId, int seatNumber) {
+    }
+
+    /**
+     * Called after a seat was booked for a hold (see {@link BookingService#hold}); a held seat
+     * is taken like a booked one, so by default this is reported as a booking.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number that was held.
+     */
+    default void seatHeld(int busId, int seatNumber) {
+        seatBooked(busId, seatNumber);
+    }
+
+    /**
+     * Called after the hold of a seat was confirmed; the seat stays booked.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number whose hold was confirmed.
+     */
+    default void holdConfirmed(int busId, int seatNumber) {
+    }
+
+    /**
+     * Called after the booking of a seat was canceled, also when a hold was released.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number that became available.
+     */
+    default void seatCanceled(int busId, int seatNumber) {
+    }
+
+    /**
+     * Called after all seats of a bus were reset.
+     *
+     * @param busId         The ID of the bus.
+     * @param releasedSeats The seats that were booked before the reset, one mask per word
+     *                      of the bus (see {@link SeatStore#getSeatWord}).
+     */
+    default void busReset(int busId, long[] releasedSeats) {
+    }
+
+    /**
+     * Tells whether the listener needs to hear of changes right now. While no listener does, the
+     * engine may change seats lock-free without reporting them. A listener that starts listening
+     * while such a change is made hears of it afterwards, as single seats booked or canceled and
+     * only if no later change of the seat was reported already. By default a listener always listens.
+     *
+     * @return True if the listener must hear of every change.
+     */
+    default boolean isListening() {
+        return true;
+    }
+}
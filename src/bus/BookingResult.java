@@ -0,0 +1,21 @@
+package bus;
+
+/**
+ * Enum representing the outcome of a booking, cancel or reset request.
+ */
+public enum BookingResult {
+    BOOKED,
+    ALREADY_BOOKED,
+    CANCELED,
+    ALREADY_AVAILABLE,
+    RESET,
+    // A group asked for more seats than the bus had available
+    NOT_ENOUGH_SEATS;
+
+    /**
+     * @return True if the request changed the seat state.
+     */
+    public boolean isSuccess() {
+        return this == BOOKED || this == CANCELED || this == RESET;
+    }
+}
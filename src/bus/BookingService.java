@@ -0,0 +1,168 @@
+package bus;
+
+/**
+ * Interface for the booking operations the menu and the other front ends use.
+ * It is implemented by {@link BookingEngine} for a fleet held in this process, and by
+ * {@link bus.shard.ShardRouter} for a fleet spread over shard nodes.
+ * Bus IDs and seat numbers are 1-based; invalid IDs throw {@link IllegalArgumentException}.
+ */
+public interface BookingService {
+
+    /**
+     * Books a seat on a bus.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to book.
+     * @return BOOKED if the seat was booked, ALREADY_BOOKED if someone else holds it.
+     */
+    BookingResult book(int busId, int seatNumber);
+
+    /**
+     * Cancels the booking of a seat on a bus.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to cancel.
+     * @return CANCELED if the booking was canceled, ALREADY_AVAILABLE if the seat was not booked.
+     */
+    BookingResult cancel(int busId, int seatNumber);
+
+    /**
+     * Books a seat for a hold: the check runs once the seat is claimed, before any other change
+     * of the bus, so a hold can be registered before anyone could cancel the seat. If the check
+     * returns false the seat is given back. {@link BookingEngine} runs both under the lock of the
+     * bus; a service that cannot do that atomically, like {@link bus.shard.ShardRouter}, has no holds.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to hold.
+     * @param claimed    Called with the claimed seat.
+     * @return BOOKED if the seat is held, ALREADY_BOOKED if it is booked or held already.
+     * @throws UnsupportedOperationException If the service has no holds.
+     */
+    default BookingResult hold(int busId, int seatNumber, SeatCondition claimed) {
+        throw new UnsupportedOperationException("Seats can only be held on a local fleet");
+    }
+
+    /**
+     * Turns the hold of a seat into a booking if the seat is still booked and the check agrees
+     * that it is still held. {@link BookingEngine} runs the check under the lock of the bus and
+     * reports the confirmation to its listeners.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The held seat number.
+     * @param stillHeld  Checks and ends the hold.
+     * @return BOOKED if the hold was confirmed, ALREADY_AVAILABLE if the seat is not held (anymore).
+     * @throws UnsupportedOperationException If the service has no holds.
+     */
+    default BookingResult confirmHold(int busId, int seatNumber, SeatCondition stillHeld) {
+        throw new UnsupportedOperationException("Seats can only be held on a local fleet");
+    }
+
+    /**
+     * Cancels a held seat if the check agrees that it is still held by the hold that ends, so a
+     * seat that was canceled and booked again meanwhile is left alone. {@link BookingEngine} runs
+     * the check and the cancel under the lock of the bus.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The held seat number.
+     * @param stillHeld  Checks and ends the hold.
+     * @return CANCELED if the seat was released, ALREADY_AVAILABLE if it is not held (anymore).
+     * @throws UnsupportedOperationException If the service has no holds.
+     */
+    default BookingResult releaseHold(int busId, int seatNumber, SeatCondition stillHeld) {
+        throw new UnsupportedOperationException("Seats can only be held on a local fleet");
+    }
+
+    /**
+     * Resets all seats on a bus.
+     *
+     * @param busId The ID of the bus to reset.
+     * @return Always RESET.
+     */
+    BookingResult reset(int busId);
+
+    /**
+     * Books a group of seats on a bus, either all of them or none.
+     *
+     * @param busId       The ID of the bus.
+     * @param seatNumbers The seat numbers to book, without duplicates.
+     * @return BOOKED if all seats were booked, ALREADY_BOOKED if any of them was taken.
+     */
+    BookingResult bookSeats(int busId, int[] seatNumbers);
+
+    /**
+     * Books any seats on a bus for a group, side by side if possible.
+     *
+     * @param busId The ID of the bus.
+     * @param count The number of seats to book.
+     * @return The booked seat numbers, or an empty array if the bus has fewer available seats.
+     */
+    int[] bookAnySeats(int busId, int count);
+
+    /**
+     * Cancels the bookings of a group of seats on a bus, if all of them are booked.
+     *
+     * @param busId       The ID of the bus.
+     * @param seatNumbers The seat numbers to cancel, without duplicates.
+     * @return CANCELED if the bookings were canceled, ALREADY_AVAILABLE if any of the seats was not booked.
+     */
+    BookingResult cancelSeats(int busId, int[] seatNumbers);
+
+    /**
+     * @param busId The ID of the bus.
+     * @return The number of booked seats on the bus.
+     */
+    int getBookedSeats(int busId);
+
+    /**
+     * Reads the booked seat counters of several buses at once.
+     *
+     * @param busIds      The IDs of the buses.
+     * @param count       The number of IDs to read from the start of busIds.
+     * @param bookedSeats Receives the booked seats of busIds[i] at index i.
+     */
+    void copyBookedSeats(int[] busIds, int count, int[] bookedSeats);
+
+    /**
+     * Copies the seat bits of a bus (see {@link SeatStore#getSeatWord}).
+     *
+     * @param busId The ID of the bus.
+     * @param words The array to copy into, at least {@link #getWordsPerBus} long.
+     */
+    void copySeatWords(int busId, long[] words);
+
+    /**
+     * @param busId The ID of the bus.
+     * @return The first available seat number, or -1 if the bus is full.
+     */
+    int findFirstAvailableSeat(int busId);
+
+    /**
+     * @return The number of booked seats in the whole fleet.
+     */
+    long getTotalBookedSeats();
+
+    /**
+     * @return The number of buses in the fleet.
+     */
+    int getNumberOfBuses();
+
+    /**
+     * @return The number of seats on each bus.
+     */
+    int getNumberSeatsPerBus();
+
+    /**
+     * @return The number of 64-seat words used by each bus.
+     */
+    default int getWordsPerBus() {
+        return (getNumberSeatsPerBus() + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * @param busId The ID of the bus.
+     * @return The number of available seats on the bus.
+     */
+    default int getAvailableSeats(int busId) {
+        return getNumberSeatsPerBus() - getBookedSeats(busId);
+    }
+}
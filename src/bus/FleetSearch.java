@@ -0,0 +1,41 @@
+package bus;
+
+/**
+ * Interface for the searches of the "Find Bus" menu.
+ * It is implemented by {@link bus.query.FreeSeatIndex} for a fleet held in this process,
+ * and by {@link bus.shard.ShardRouter}, which asks every shard and merges the answers.
+ */
+public interface FleetSearch {
+
+    /**
+     * Finds the buses that have room for a group.
+     *
+     * @param minimum The smallest number of free seats.
+     * @return The bus IDs in ascending order.
+     */
+    int[] findBusesWithFreeSeats(int minimum);
+
+    /**
+     * Finds the buses with the most free seats.
+     *
+     * @param count The number of buses to find.
+     * @return The bus IDs, the emptiest first.
+     */
+    int[] findEmptiestBuses(int count);
+
+    /**
+     * Finds the buses with the fewest free seats.
+     *
+     * @param count The number of buses to find.
+     * @return The bus IDs, the fullest first.
+     */
+    int[] findFullestBuses(int count);
+
+    /**
+     * Finds the buses where a seat is still available.
+     *
+     * @param seatNumber The seat number.
+     * @return The bus IDs in ascending order.
+     */
+    int[] findBusesWithSeatFree(int seatNumber);
+}
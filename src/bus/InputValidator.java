@@ -0,0 +1,81 @@
+package bus;
+
+import bus.trip.TripInventory;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * This class holds the input checks shared by the console menu and the servers.
+ */
+public final class InputValidator {
+
+    private InputValidator() {
+    }
+
+    /**
+     * Checks if user input is a valid numeric value within a specified range.
+     * The digits are checked one by one, without a regex, since every menu prompt and HTTP request goes through here;
+     * the command protocol parses its numbers from the raw bytes instead.
+     *
+     * @param input The user input to validate.
+     * @param max   The maximum allowed value.
+     * @return True if the input is valid, false otherwise.
+     */
+    public static boolean isInputValid(String input, int max) {
+        if (input == null || input.isEmpty() || input.charAt(0) == '0') {
+            return false; // input is empty or has a leading zero
+        }
+        long number = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c < '0' || c > '9') {
+                return false; // input is not a number
+            }
+            number = number * 10 + (c - '0');
+            if (number > max) {
+                return false; // number is not within range 1-max
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads seat numbers separated by commas, e.g. "1,2,3".
+     *
+     * @param input             The user input to read.
+     * @param numberSeatsPerBus The highest seat number.
+     * @return The seat numbers, or null if one is invalid or listed twice, or a comma has no seat after it.
+     */
+    public static int[] parseSeatNumbers(String input, int numberSeatsPerBus) {
+        String[] parts = input.split(",", -1); // keep trailing empty parts, "1,2," is not a valid list
+        int[] seatNumbers = new int[parts.length];
+        boolean[] seen = new boolean[numberSeatsPerBus + 1];
+        for (int i = 0; i < parts.length; i++) {
+            if (!isInputValid(parts[i], numberSeatsPerBus)) {
+                return null;
+            }
+            seatNumbers[i] = Integer.parseInt(parts[i]);
+            if (seen[seatNumbers[i]]) {
+                return null; // a seat is listed twice
+            }
+            seen[seatNumbers[i]] = true;
+        }
+        return seatNumbers;
+    }
+
+    /**
+     * Reads a departure written as a date and time like 2026-10-18T08:30.
+     *
+     * @param input The user input to read.
+     * @return The departure minute of the trip inventory, or -1 if the input is not a valid departure.
+     */
+    public static long parseDeparture(String input) {
+        try {
+            long departureMinute = TripInventory.toDepartureMinute(LocalDateTime.parse(input));
+            return departureMinute >= 0 && departureMinute <= TripInventory.MAX_DEPARTURE_MINUTE ? departureMinute : -1;
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
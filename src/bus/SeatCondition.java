@@ -0,0 +1,16 @@
+package bus;
+
+/**
+ * Interface for checks that decide whether a change of a seat goes ahead, e.g. whether a seat is
+ * still held by the hold that is ending (see {@link BookingService#releaseHold}).
+ */
+@FunctionalInterface
+public interface SeatCondition {
+
+    /**
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number.
+     * @return True to go ahead with the change.
+     */
+    boolean test(int busId, int seatNumber);
+}
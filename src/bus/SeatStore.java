@@ -0,0 +1,383 @@
+package bus;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class represents the seat inventory of the whole fleet.
+ * Every bus keeps its seats in a packed bitset (one bit per seat, 1 = booked) and
+ * a counter of booked seats, so availability can be read without scanning seats.
+ * Bus IDs and seat numbers are 1-based, the same as they are shown to the user.
+ * <p>
+ * The store is thread-safe: seats are claimed with compare-and-set on their word, so
+ * two callers can never both book the same seat. Counters are updated right after the
+ * seat bits and may briefly lag behind them while other threads are booking.
+ */
+public class SeatStore {
+
+    // Limits for the size of the fleet
+    public static final int MAX_BUSES = 1_000_000;
+    public static final int MAX_SEATS_PER_BUS = 1_000;
+
+    // Number of seats packed in one word of the bitset
+    private static final int SEATS_PER_WORD = Long.SIZE;
+
+    private final int numberOfBuses;
+    private final int numberSeatsPerBus;
+    private final int wordsPerBus;
+
+    // Seat bits of all buses, bus i uses words [i * wordsPerBus, (i + 1) * wordsPerBus)
+    private final AtomicLongArray seats;
+
+    // Number of booked seats for each bus
+    private final AtomicIntegerArray bookedSeats;
+    private final LongAdder totalBookedSeats = new LongAdder();
+
+    /**
+     * Creates an empty seat inventory where every seat is available.
+     *
+     * @param numberOfBuses     The number of buses in the fleet.
+     * @param numberSeatsPerBus The number of seats on each bus.
+     */
+    public SeatStore(int numberOfBuses, int numberSeatsPerBus) {
+        if (numberOfBuses < 1 || numberOfBuses > MAX_BUSES) {
+            throw new IllegalArgumentException("Number of buses must be between 1 and " + MAX_BUSES + ": " + numberOfBuses);
+        }
+        if (numberSeatsPerBus < 1 || numberSeatsPerBus > MAX_SEATS_PER_BUS) {
+            throw new IllegalArgumentException("Number of seats must be between 1 and " + MAX_SEATS_PER_BUS + ": " + numberSeatsPerBus);
+        }
+        this.numberOfBuses = numberOfBuses;
+        this.numberSeatsPerBus = numberSeatsPerBus;
+        this.wordsPerBus = (numberSeatsPerBus + SEATS_PER_WORD - 1) / SEATS_PER_WORD; // round up to whole words
+        this.seats = new AtomicLongArray(numberOfBuses * wordsPerBus);
+        this.bookedSeats = new AtomicIntegerArray(numberOfBuses);
+    }
+
+    /**
+     * Books a seat if it is available.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to book.
+     * @return True if the seat was booked, false if it was already booked.
+     */
+    public boolean book(int busId, int seatNumber) {
+        int index = wordIndex(busId, seatNumber);
+        long mask = seatMask(seatNumber);
+        long word;
+        do {
+            word = seats.get(index);
+            if ((word & mask) != 0) {
+                return false; // seat is already booked
+            }
+        } while (!seats.compareAndSet(index, word, word | mask)); // retry if another seat of the word changed
+        bookedSeats.incrementAndGet(busId - 1);
+        totalBookedSeats.increment();
+        return true;
+    }
+
+    /**
+     * Cancels the booking of a seat if it is booked.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to cancel.
+     * @return True if the booking was canceled, false if the seat was already available.
+     */
+    public boolean cancel(int busId, int seatNumber) {
+        int index = wordIndex(busId, seatNumber);
+        long mask = seatMask(seatNumber);
+        long word;
+        do {
+            word = seats.get(index);
+            if ((word & mask) == 0) {
+                return false; // seat is already available
+            }
+        } while (!seats.compareAndSet(index, word, word & ~mask)); // retry if another seat of the word changed
+        bookedSeats.decrementAndGet(busId - 1);
+        totalBookedSeats.decrement();
+        return true;
+    }
+
+    /**
+     * Makes all seats of a bus available.
+     *
+     * @param busId The ID of the bus to reset.
+     * @return The number of seats that were booked before the reset.
+     */
+    public int reset(int busId) {
+        return reset(busId, null);
+    }
+
+    /**
+     * Makes all seats of a bus available and reports which seats it released.
+     *
+     * @param busId         The ID of the bus to reset.
+     * @param releasedSeats Receives the seats that were booked before the reset, one mask per
+     *                      word of the bus (see {@link #getSeatWord}), or null if not needed.
+     * @return The number of seats that were booked before the reset.
+     */
+    public int reset(int busId, long[] releasedSeats) {
+        checkBusId(busId);
+        int start = (busId - 1) * wordsPerBus;
+        int released = 0;
+        for (int i = 0; i < wordsPerBus; i++) {
+            long word = seats.getAndSet(start + i, 0);
+            released += Long.bitCount(word); // count only the seats this reset released
+            if (releasedSeats != null) {
+                releasedSeats[i] = word;
+            }
+        }
+        bookedSeats.addAndGet(busId - 1, -released);
+        totalBookedSeats.add(-released);
+        return released;
+    }
+
+    /**
+     * Books several seats of a bus at once, either all of them or none.
+     * Each word of the bus is claimed with one compare-and-set; if a seat turns out to be
+     * booked, the words claimed so far are given back. A group within one word is therefore
+     * atomic on its own; a group over several words is only atomic if no other caller changes
+     * the bus meanwhile, {@link BookingEngine} keeps them out with a lock. Otherwise the claimed
+     * words are seen before the rest of the group, and giving them back could clear a seat that
+     * another caller canceled and booked again in between.
+     *
+     * @param busId The ID of the bus.
+     * @param masks The seats to book, one mask per word of the bus (see {@link #getSeatWord}).
+     * @return True if all seats were booked, false if any of them was already booked.
+     */
+    public boolean bookSeats(int busId, long[] masks) {
+        checkMasks(busId, masks);
+        int start = (busId - 1) * wordsPerBus;
+        for (int i = 0; i < wordsPerBus; i++) {
+            if ((seats.get(start + i) & masks[i]) != 0) {
+                return false; // a seat of the group is booked, claim nothing
+            }
+        }
+        for (int i = 0; i < wordsPerBus; i++) {
+            long mask = masks[i];
+            if (mask == 0) {
+                continue;
+            }
+            long word;
+            do {
+                word = seats.get(start + i);
+                if ((word & mask) != 0) {
+                    for (int j = 0; j < i; j++) { // give back the words claimed before this one
+                        addBookedSeats(busId, -clearBits(start + j, masks[j]));
+                    }
+                    return false;
+                }
+            } while (!seats.compareAndSet(start + i, word, word | mask));
+            addBookedSeats(busId, Long.bitCount(mask));
+        }
+        return true;
+    }
+
+    /**
+     * Cancels several bookings of a bus at once, if all of the seats are booked.
+     * When another caller cancels one of the seats at the same time, that seat is
+     * counted by the other caller and the rest of the group is still canceled.
+     *
+     * @param busId The ID of the bus.
+     * @param masks The seats to cancel, one mask per word of the bus (see {@link #getSeatWord}).
+     * @return True if the bookings were canceled, false if any of the seats was already available.
+     */
+    public boolean cancelSeats(int busId, long[] masks) {
+        checkMasks(busId, masks);
+        int start = (busId - 1) * wordsPerBus;
+        for (int i = 0; i < wordsPerBus; i++) {
+            if ((seats.get(start + i) & masks[i]) != masks[i]) {
+                return false; // a seat of the group is available, change nothing
+            }
+        }
+        for (int i = 0; i < wordsPerBus; i++) {
+            if (masks[i] != 0) {
+                addBookedSeats(busId, -clearBits(start + i, masks[i]));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the seat bits of a bus, the copy does not change when seats are booked later.
+     *
+     * @param busId The ID of the bus.
+     * @param words The array to copy into, at least {@link #getWordsPerBus} long.
+     */
+    public void copySeatWords(int busId, long[] words) {
+        checkBusId(busId);
+        int start = (busId - 1) * wordsPerBus;
+        for (int i = 0; i < wordsPerBus; i++) {
+            words[i] = seats.get(start + i);
+        }
+    }
+
+    /**
+     * Checks whether a seat is booked.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to check.
+     * @return True if the seat is booked, false if it is available.
+     */
+    public boolean isBooked(int busId, int seatNumber) {
+        return (seats.get(wordIndex(busId, seatNumber)) & seatMask(seatNumber)) != 0;
+    }
+
+    /**
+     * Finds the lowest seat number that is still available on a bus.
+     *
+     * @param busId The ID of the bus.
+     * @return The first available seat number, or -1 if the bus is full.
+     */
+    public int findFirstAvailableSeat(int busId) {
+        checkBusId(busId);
+        int start = (busId - 1) * wordsPerBus;
+        for (int i = 0; i < wordsPerBus; i++) {
+            long free = ~seats.get(start + i);
+            if (free != 0) {
+                int seatNumber = i * SEATS_PER_WORD + Long.numberOfTrailingZeros(free) + 1;
+                return seatNumber <= numberSeatsPerBus ? seatNumber : -1; // bits past the last seat are never booked
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param busId The ID of the bus.
+     * @return The number of booked seats on the bus.
+     */
+    public int getBookedSeats(int busId) {
+        checkBusId(busId);
+        int booked = bookedSeats.get(busId - 1);
+        return Math.max(0, Math.min(booked, numberSeatsPerBus)); // keep the value in range while a reset races a booking
+    }
+
+    /**
+     * @param busId The ID of the bus.
+     * @return The number of available seats on the bus.
+     */
+    public int getAvailableSeats(int busId) {
+        return numberSeatsPerBus - getBookedSeats(busId);
+    }
+
+    /**
+     * @return The number of booked seats in the whole fleet.
+     */
+    public long getTotalBookedSeats() {
+        return totalBookedSeats.sum();
+    }
+
+    /**
+     * Reads one word of a bus's seat bits, used to save the seats to disk.
+     *
+     * @param busId     The ID of the bus.
+     * @param wordIndex The word of the bus, seat numbers 64 * wordIndex + 1 to 64 * wordIndex + 64.
+     * @return The seat bits, bit i is set if seat 64 * wordIndex + i + 1 is booked.
+     */
+    public long getSeatWord(int busId, int wordIndex) {
+        checkBusId(busId);
+        return seats.get((busId - 1) * wordsPerBus + wordIndex);
+    }
+
+    /**
+     * Replaces one word of a bus's seat bits and updates the counters, used to load the seats from disk.
+     *
+     * @param busId     The ID of the bus.
+     * @param wordIndex The word of the bus, seat numbers 64 * wordIndex + 1 to 64 * wordIndex + 64.
+     * @param word      The seat bits, bits past the last seat are ignored.
+     */
+    public void restoreSeatWord(int busId, int wordIndex, long word) {
+        checkBusId(busId);
+        int lastSeats = numberSeatsPerBus - wordIndex * SEATS_PER_WORD; // seats that live in this word
+        if (lastSeats < SEATS_PER_WORD) {
+            word &= (1L << lastSeats) - 1; // drop bits past the last seat
+        }
+        long previous = seats.getAndSet((busId - 1) * wordsPerBus + wordIndex, word);
+        int change = Long.bitCount(word) - Long.bitCount(previous);
+        bookedSeats.addAndGet(busId - 1, change);
+        totalBookedSeats.add(change);
+    }
+
+    /**
+     * @return The number of 64-seat words used by each bus.
+     */
+    public int getWordsPerBus() {
+        return wordsPerBus;
+    }
+
+    /**
+     * @return The number of buses in the fleet.
+     */
+    public int getNumberOfBuses() {
+        return numberOfBuses;
+    }
+
+    /**
+     * @return The number of seats on each bus.
+     */
+    public int getNumberSeatsPerBus() {
+        return numberSeatsPerBus;
+    }
+
+    /**
+     * Validates the seat masks of a group booking.
+     */
+    private void checkMasks(int busId, long[] masks) {
+        checkBusId(busId);
+        if (masks.length != wordsPerBus) {
+            throw new IllegalArgumentException("Expected " + wordsPerBus + " seat masks: " + masks.length);
+        }
+        int lastSeats = numberSeatsPerBus - (wordsPerBus - 1) * SEATS_PER_WORD; // seats that live in the last word
+        if (lastSeats < SEATS_PER_WORD && (masks[wordsPerBus - 1] >>> lastSeats) != 0) {
+            throw new IllegalArgumentException("Seat masks go past seat " + numberSeatsPerBus);
+        }
+    }
+
+    /**
+     * Clears bits of a word.
+     *
+     * @return The number of bits that were set before.
+     */
+    private int clearBits(int index, long mask) {
+        long word;
+        do {
+            word = seats.get(index);
+        } while (!seats.compareAndSet(index, word, word & ~mask));
+        return Long.bitCount(word & mask);
+    }
+
+    /**
+     * Changes the booked seat counters of a bus and of the fleet.
+     */
+    private void addBookedSeats(int busId, int change) {
+        bookedSeats.addAndGet(busId - 1, change);
+        totalBookedSeats.add(change);
+    }
+
+    /**
+     * Calculates the position of the word holding a seat's bit.
+     */
+    private int wordIndex(int busId, int seatNumber) {
+        checkBusId(busId);
+        if (seatNumber < 1 || seatNumber > numberSeatsPerBus) {
+            throw new IllegalArgumentException("Seat number must be between 1 and " + numberSeatsPerBus + ": " + seatNumber);
+        }
+        return (busId - 1) * wordsPerBus + (seatNumber - 1) / SEATS_PER_WORD;
+    }
+
+    /**
+     * Calculates the bit of a seat inside its word.
+     */
+    private static long seatMask(int seatNumber) {
+        return 1L << ((seatNumber - 1) % SEATS_PER_WORD);
+    }
+
+    /**
+     * Validates that a bus ID belongs to the fleet.
+     */
+    private void checkBusId(int busId) {
+        if (busId < 1 || busId > numberOfBuses) {
+            throw new IllegalArgumentException("Bus ID must be between 1 and " + numberOfBuses + ": " + busId);
+        }
+    }
+}
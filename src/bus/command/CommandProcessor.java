@@ -0,0 +1,517 @@
+package bus.command;
+
+import bus.BookingResult;
+import bus.BookingService;
+import bus.hold.SeatHolds;
+import bus.persist.FleetPersistence;
+import bus.trip.TripInventory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * This class represents the line command protocol for scripts: it reads commands from a stream,
+ * runs them on a {@link BookingService} and writes one response line per command.
+ * <pre>
+ * BOOK bus seat     OK free       seats still free on the bus
+ * CANCEL bus seat   OK free
+ * RESET bus         OK free
+ * STAT bus          OK booked free
+ * HOLD bus seat     OK free       holds the seat for a few minutes while the customer pays
+ * CONFIRM bus seat  OK free       books a held seat for good
+ * TBOOK bus departure seat     OK free      seats still free on the trip
+ * TCANCEL bus departure seat   OK free
+ * TSTAT bus departure          OK booked free
+ * QUIT              ends the session without a response
+ * </pre>
+ * The T commands sell seats per departure on a {@link TripInventory}; a departure is written
+ * like 2026-10-18T08:30. HOLD and CONFIRM use the {@link SeatHolds} shared with the other front ends.
+ * Anything else is answered with "ERR reason". Keywords are case-insensitive, words are separated
+ * by spaces or tabs, blank lines and lines starting with '#' get no response. Bus IDs and seat
+ * numbers are checked like the menu does: digits without a leading zero, from 1 to the size of the fleet.
+ * <p>
+ * The input is read into a byte buffer and parsed in place, the responses are written into another
+ * one, so a command allocates nothing. Commands can be pipelined: the responses are only flushed when
+ * no further input is waiting or the buffer is full. When the seats are kept on disk, the changes
+ * answered by a flush are forced to disk first, all of them with one wait.
+ */
+public class CommandProcessor {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Longest response line: "OK " and two ints
+    private static final int MAX_RESPONSE = 32;
+
+    private static final byte[] BOOK = "book".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CANCEL = "cancel".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESET = "reset".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STAT = "stat".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] QUIT = "quit".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TBOOK = "tbook".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TCANCEL = "tcancel".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TSTAT = "tstat".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HOLD = "hold".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONFIRM = "confirm".getBytes(StandardCharsets.US_ASCII);
+    // Length of a departure like 2026-10-18T08:30
+    private static final int DEPARTURE_LENGTH = 16;
+
+    private static final byte[] OK = "OK ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ALREADY_BOOKED = error("seat already booked");
+    private static final byte[] ALREADY_AVAILABLE = error("seat already available");
+    private static final byte[] INVALID_BUS = error("bus ID out of range");
+    private static final byte[] INVALID_SEAT = error("seat number out of range");
+    private static final byte[] INVALID_DEPARTURE = error("invalid departure");
+    private static final byte[] DEPARTED = error("trip already departed");
+    private static final byte[] NOT_HELD = error("seat not held");
+    private static final byte[] MALFORMED = error("malformed command");
+    private static final byte[] UNKNOWN = error("unknown command");
+    private static final byte[] TOO_LONG = error("line too long");
+
+    private final BookingService bookingService;
+    private final TripInventory tripInventory;
+    private final SeatHolds seatHolds;
+    private final FleetPersistence persistence;
+    private final int numberOfBuses;
+    private final int numberSeatsPerBus;
+
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private final byte[] output = new byte[BUFFER_SIZE];
+    private int outputLength;
+    // Changes in the buffered responses that are not forced to disk yet
+    private boolean unsavedBookings;
+    private boolean unsavedTrips;
+
+    // Position after the word or number parsed last
+    private int position;
+
+    // Summary of the processed commands
+    private long commands;
+    private long errors;
+
+    /**
+     * Creates a processor for one session; it keeps its buffers, so every connection needs its own.
+     *
+     * @param bookingService The booking service to run the commands on.
+     */
+    public CommandProcessor(BookingService bookingService) {
+        this(bookingService, null, null, null);
+    }
+
+    /**
+     * Creates a processor for one session that also sells seats per departure and holds seats.
+     *
+     * @param bookingService The booking service to run the commands on.
+     * @param tripInventory  The trips of the same fleet, or null to answer the T commands as unknown.
+     * @param seatHolds      The holds of the booking service's seats, or null to answer HOLD and CONFIRM as unknown.
+     * @param persistence    The disk storage of the seats and trips, or null if they are kept in memory only.
+     */
+    public CommandProcessor(BookingService bookingService, TripInventory tripInventory, SeatHolds seatHolds, FleetPersistence persistence) {
+        this.bookingService = bookingService;
+        this.tripInventory = tripInventory;
+        this.seatHolds = seatHolds;
+        this.persistence = persistence;
+        this.numberOfBuses = bookingService.getNumberOfBuses();
+        this.numberSeatsPerBus = bookingService.getNumberSeatsPerBus();
+    }
+
+    /**
+     * Runs the commands of a stream until it ends or a QUIT command.
+     *
+     * @param in  The commands.
+     * @param out The stream the responses are written to.
+     * @return False if the session ended with QUIT.
+     */
+    public boolean process(InputStream in, OutputStream out) throws IOException {
+        int start = 0; // first byte of the current line
+        int scan = 0; // first byte not searched for a newline yet
+        int end = 0; // end of the bytes read
+        boolean skipping = false; // dropping the rest of a line that did not fit into the buffer
+        try {
+            while (true) {
+                while (scan < end) {
+                    if (input[scan++] == '\n') {
+                        if (skipping) {
+                            skipping = false;
+                        } else {
+                            if (outputLength > output.length - MAX_RESPONSE) {
+                                flush(out);
+                            }
+                            if (!handleLine(start, scan - 1)) {
+                                return false;
+                            }
+                        }
+                        start = scan;
+                    }
+                }
+                if (skipping) {
+                    start = scan = end = 0;
+                } else if (start > 0) {
+                    // move the incomplete line to the front of the buffer
+                    System.arraycopy(input, start, input, 0, end - start);
+                    end -= start;
+                    scan = end;
+                    start = 0;
+                } else if (end == input.length) {
+                    if (outputLength > output.length - MAX_RESPONSE) {
+                        flush(out);
+                    }
+                    respondError(TOO_LONG);
+                    commands++;
+                    skipping = true;
+                    start = scan = end = 0;
+                }
+
+                if (in.available() == 0) {
+                    flush(out); // no pipelined command is waiting, send the responses
+                }
+                int read = in.read(input, end, input.length - end);
+                if (read < 0) {
+                    return skipping || start == end || handleLine(start, end); // last line without a newline
+                }
+                end += read;
+            }
+        } finally {
+            flush(out);
+        }
+    }
+
+    /**
+     * @return The number of commands processed.
+     */
+    public long getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return The number of commands answered with an error.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Parses and runs one line between two positions of the input buffer.
+     *
+     * @return False for QUIT.
+     */
+    private boolean handleLine(int start, int end) {
+        if (end > start && input[end - 1] == '\r') {
+            end--; // Windows line ending
+        }
+        position = start;
+        skipBlanks(end);
+        if (position == end || input[position] == '#') {
+            return true; // blank line or comment
+        }
+        int wordStart = position;
+        while (position < end && !isBlank(input[position])) {
+            position++;
+        }
+        int wordEnd = position;
+        commands++;
+
+        if (matches(wordStart, wordEnd, BOOK)) {
+            changeSeat(BOOK, end);
+        } else if (matches(wordStart, wordEnd, CANCEL)) {
+            changeSeat(CANCEL, end);
+        } else if (seatHolds != null && matches(wordStart, wordEnd, HOLD)) {
+            changeSeat(HOLD, end);
+        } else if (seatHolds != null && matches(wordStart, wordEnd, CONFIRM)) {
+            changeSeat(CONFIRM, end);
+        } else if (matches(wordStart, wordEnd, RESET)) {
+            int busId = parseBusId(end);
+            if (busId > 0) {
+                bookingService.reset(busId);
+                unsavedBookings = true;
+                respondOk(bookingService.getAvailableSeats(busId), -1);
+            }
+        } else if (matches(wordStart, wordEnd, STAT)) {
+            int busId = parseBusId(end);
+            if (busId > 0) {
+                int bookedSeats = bookingService.getBookedSeats(busId);
+                respondOk(bookedSeats, numberSeatsPerBus - bookedSeats);
+            }
+        } else if (tripInventory != null && matches(wordStart, wordEnd, TBOOK)) {
+            changeTripSeat(true, end);
+        } else if (tripInventory != null && matches(wordStart, wordEnd, TCANCEL)) {
+            changeTripSeat(false, end);
+        } else if (tripInventory != null && matches(wordStart, wordEnd, TSTAT)) {
+            statTrip(end);
+        } else if (matches(wordStart, wordEnd, QUIT) && atEnd(end)) {
+            commands--;
+            return false;
+        } else {
+            respondError(UNKNOWN);
+        }
+        return true;
+    }
+
+    /**
+     * Runs BOOK, CANCEL, HOLD or CONFIRM with the bus ID and seat number that follow.
+     *
+     * @param command The keyword of the command.
+     */
+    private void changeSeat(byte[] command, int end) {
+        int busId = parseNumber(end, numberOfBuses);
+        if (busId <= 0) {
+            respondError(busId == 0 ? INVALID_BUS : MALFORMED);
+            return;
+        }
+        int seatNumber = parseNumber(end, numberSeatsPerBus);
+        if (seatNumber <= 0 || !atEnd(end)) {
+            respondError(seatNumber == 0 ? INVALID_SEAT : MALFORMED);
+            return;
+        }
+        BookingResult result;
+        if (command == BOOK) {
+            result = bookingService.book(busId, seatNumber);
+        } else if (command == CANCEL) {
+            result = bookingService.cancel(busId, seatNumber);
+        } else if (command == HOLD) {
+            result = seatHolds.hold(busId, seatNumber, System.currentTimeMillis());
+        } else {
+            result = seatHolds.confirm(busId, seatNumber);
+        }
+        if (result.isSuccess()) {
+            unsavedBookings = true;
+            respondOk(bookingService.getAvailableSeats(busId), -1);
+        } else if (command == CONFIRM) {
+            respondError(NOT_HELD); // not held, or the hold has ended
+        } else {
+            respondError(result == BookingResult.ALREADY_BOOKED ? ALREADY_BOOKED : ALREADY_AVAILABLE);
+        }
+    }
+
+    /**
+     * Runs TBOOK or TCANCEL with the bus ID, departure and seat number that follow.
+     */
+    private void changeTripSeat(boolean book, int end) {
+        int busId = parseNumber(end, numberOfBuses);
+        if (busId <= 0) {
+            respondError(busId == 0 ? INVALID_BUS : MALFORMED);
+            return;
+        }
+        long departureMinute = parseDeparture(end);
+        if (departureMinute < 0) {
+            respondError(INVALID_DEPARTURE);
+            return;
+        }
+        int seatNumber = parseNumber(end, numberSeatsPerBus);
+        if (seatNumber <= 0 || !atEnd(end)) {
+            respondError(seatNumber == 0 ? INVALID_SEAT : MALFORMED);
+            return;
+        }
+        BookingResult result;
+        try {
+            result = book ? tripInventory.book(busId, departureMinute, seatNumber) : tripInventory.cancel(busId, departureMinute, seatNumber);
+        } catch (IllegalArgumentException e) {
+            respondError(DEPARTED); // the numbers were checked above
+            return;
+        }
+        if (result.isSuccess()) {
+            unsavedTrips = true;
+            respondOk(tripInventory.getAvailableSeats(busId, departureMinute), -1);
+        } else {
+            respondError(result == BookingResult.ALREADY_BOOKED ? ALREADY_BOOKED : ALREADY_AVAILABLE);
+        }
+    }
+
+    /**
+     * Runs TSTAT with the bus ID and departure that follow.
+     */
+    private void statTrip(int end) {
+        int busId = parseNumber(end, numberOfBuses);
+        if (busId <= 0) {
+            respondError(busId == 0 ? INVALID_BUS : MALFORMED);
+            return;
+        }
+        long departureMinute = parseDeparture(end);
+        if (departureMinute < 0 || !atEnd(end)) {
+            respondError(departureMinute < 0 ? INVALID_DEPARTURE : MALFORMED);
+            return;
+        }
+        int bookedSeats = tripInventory.getBookedSeats(busId, departureMinute);
+        respondOk(bookedSeats, numberSeatsPerBus - bookedSeats);
+    }
+
+    /**
+     * Parses the next word as a departure like 2026-10-18T08:30, in place.
+     *
+     * @return The departure minute of the trip inventory, or -1 if the word is not a valid departure.
+     */
+    private long parseDeparture(int end) {
+        skipBlanks(end);
+        int start = position;
+        while (position < end && !isBlank(input[position])) {
+            position++;
+        }
+        if (position - start != DEPARTURE_LENGTH || input[start + 4] != '-' || input[start + 7] != '-'
+                || (input[start + 10] | 0x20) != 't' || input[start + 13] != ':') {
+            return -1;
+        }
+        int year = digits(start, 4);
+        int month = digits(start + 5, 2);
+        int day = digits(start + 8, 2);
+        int hour = digits(start + 11, 2);
+        int minute = digits(start + 14, 2);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return -1;
+        }
+        try {
+            long departureMinute = LocalDate.of(year, month, day).toEpochDay() * 1440 + hour * 60 + minute;
+            return departureMinute >= 0 && departureMinute <= TripInventory.MAX_DEPARTURE_MINUTE ? departureMinute : -1;
+        } catch (DateTimeException e) {
+            return -1; // no such day, e.g. February 30
+        }
+    }
+
+    /**
+     * @return The value of a number of digits in the input, or -1 if one is not a digit.
+     */
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            if (input[i] < '0' || input[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + (input[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Parses the bus ID that ends the line, answering with an error if it is invalid.
+     *
+     * @return The bus ID, or 0 if the error was answered.
+     */
+    private int parseBusId(int end) {
+        int busId = parseNumber(end, numberOfBuses);
+        if (busId <= 0 || !atEnd(end)) {
+            respondError(busId == 0 ? INVALID_BUS : MALFORMED);
+            return 0;
+        }
+        return busId;
+    }
+
+    /**
+     * Parses the next word as a number from 1 to max, with the same rules as the menu.
+     *
+     * @return The number, 0 if it is out of range, or -1 if the word is missing or not a number.
+     */
+    private int parseNumber(int end, int max) {
+        skipBlanks(end);
+        int start = position;
+        long value = 0;
+        while (position < end && input[position] >= '0' && input[position] <= '9') {
+            if (value <= max) {
+                value = value * 10 + (input[position] - '0');
+            }
+            position++;
+        }
+        if (position == start || (position < end && !isBlank(input[position]))) {
+            return -1;
+        }
+        if (input[start] == '0' || value > max) {
+            return 0; // a leading zero is rejected like in the menu
+        }
+        return (int) value;
+    }
+
+    private void skipBlanks(int end) {
+        while (position < end && isBlank(input[position])) {
+            position++;
+        }
+    }
+
+    /**
+     * @return True if only blanks follow the last word.
+     */
+    private boolean atEnd(int end) {
+        skipBlanks(end);
+        return position == end;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Compares a word with a lower-case keyword, ignoring case.
+     */
+    private boolean matches(int start, int end, byte[] keyword) {
+        if (end - start != keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length; i++) {
+            if ((input[start + i] | 0x20) != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes "OK" with one number, or two if the second is not negative.
+     */
+    private void respondOk(int first, int second) {
+        System.arraycopy(OK, 0, output, outputLength, OK.length);
+        outputLength += OK.length;
+        writeNumber(first);
+        if (second >= 0) {
+            output[outputLength++] = ' ';
+            writeNumber(second);
+        }
+        output[outputLength++] = '\n';
+    }
+
+    /**
+     * Writes an error response.
+     */
+    private void respondError(byte[] response) {
+        System.arraycopy(response, 0, output, outputLength, response.length);
+        outputLength += response.length;
+        errors++;
+    }
+
+    /**
+     * Writes the digits of a number that is not negative.
+     */
+    private void writeNumber(int number) {
+        int digits = 1;
+        for (int rest = number / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = outputLength + digits - 1; i >= outputLength; i--) {
+            output[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        outputLength += digits;
+    }
+
+    /**
+     * Writes the buffered responses once their changes are on disk; called before a read could block
+     * and when the buffer is nearly full.
+     */
+    private void flush(OutputStream out) throws IOException {
+        if (persistence != null && unsavedBookings) {
+            persistence.awaitBookingsDurable();
+        }
+        if (persistence != null && unsavedTrips) {
+            persistence.awaitTripsDurable();
+        }
+        unsavedBookings = false;
+        unsavedTrips = false;
+        if (outputLength > 0) {
+            out.write(output, 0, outputLength);
+            outputLength = 0;
+        }
+        out.flush();
+    }
+
+    private static byte[] error(String reason) {
+        return ("ERR " + reason + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,134 @@
+package bus.command;
+
+import bus.BookingService;
+import bus.hold.SeatHolds;
+import bus.persist.FleetPersistence;
+import bus.trip.TripInventory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents the TCP endpoint of the line command protocol (see {@link CommandProcessor}),
+ * e.g. for scripts using netcat. Every connection is served by its own virtual thread and processor.
+ */
+public class CommandServer {
+
+    private final BookingService bookingService;
+    private final TripInventory tripInventory;
+    private final SeatHolds seatHolds;
+    private final FleetPersistence persistence;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a command endpoint that is not started yet.
+     *
+     * @param bookingService The booking service to run the commands on.
+     * @param port           The TCP port to listen on, 0 picks a free port.
+     */
+    public CommandServer(BookingService bookingService, int port) throws IOException {
+        this(bookingService, null, null, null, port);
+    }
+
+    /**
+     * Creates a command endpoint that also sells seats per departure and holds seats, not started yet.
+     *
+     * @param bookingService The booking service to run the commands on.
+     * @param tripInventory  The trips of the same fleet, or null without the trip commands.
+     * @param seatHolds      The holds of the booking service's seats, or null without HOLD and CONFIRM.
+     * @param persistence    The disk storage of the seats and trips, or null if they are kept in memory only.
+     * @param port           The TCP port to listen on, 0 picks a free port.
+     */
+    public CommandServer(BookingService bookingService, TripInventory tripInventory, SeatHolds seatHolds, FleetPersistence persistence,
+                         int port) throws IOException {
+        this.bookingService = bookingService;
+        this.tripInventory = tripInventory;
+        this.seatHolds = seatHolds;
+        this.persistence = persistence;
+        this.serverSocket = new ServerSocket(port, 1024);
+        this.acceptor = new Thread(this::acceptLoop, "command-acceptor");
+    }
+
+    /**
+     * Starts accepting connections.
+     */
+    public void start() {
+        acceptor.start();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     */
+    public void stop() {
+        stopped = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections and starts a virtual thread for each.
+     */
+    private void acceptLoop() {
+        while (!stopped) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true); // responses are small and already batched
+                connections.add(socket);
+                Thread.ofVirtual().name("command-connection").start(() -> serve(socket));
+            } catch (IOException e) {
+                if (!stopped) {
+                    System.err.println("-> Error: Command server could not accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the commands of one connection until the client closes it or sends QUIT.
+     */
+    private void serve(Socket socket) {
+        try (InputStream in = socket.getInputStream();
+             OutputStream out = socket.getOutputStream()) {
+            new CommandProcessor(bookingService, tripInventory, seatHolds, persistence).process(in, out);
+        } catch (SocketException e) {
+            // the client went away
+        } catch (IOException e) {
+            if (!stopped) {
+                System.err.println("-> Error: Command connection failed: " + e.getMessage());
+            }
+        } finally {
+            connections.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+    }
+}
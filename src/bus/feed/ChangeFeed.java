@@ -0,0 +1,444 @@
+package bus.feed;
+
+import bus.BookingListener;
+import bus.BookingService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class represents the change feed of the seats: added as a {@link BookingListener} to the
+ * engine, it turns every book, cancel and reset into a {@link SeatChange} event and publishes it
+ * into a bounded ring buffer. Every subscriber has its own cursor into the ring and its own virtual
+ * thread that hands it the events in batches, as many as have been published since its last batch.
+ * <p>
+ * A slot of the ring is only reused once every subscriber has read it. When the slowest subscriber
+ * is a whole ring behind, publishing waits for it, which slows down the bookings instead of losing
+ * events (backpressure). Without subscribers nothing is published.
+ * <p>
+ * Publishing runs under the lock of the booked bus, so a subscriber that can stall for good, like a
+ * remote display behind a full TCP buffer, would hold up every booking. Such subscribers are
+ * subscribed as droppable: instead of waiting for them, publishing drops them once they are a whole
+ * ring behind and tells them with {@link ChangeSubscriber#onDropped()}.
+ */
+public class ChangeFeed implements BookingListener, AutoCloseable {
+
+    private final BookingService bookingService;
+    private final long[] ring;
+    private final int mask;
+    private final int batchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition published = lock.newCondition();
+
+    // Guarded by the lock
+    private long sequence;
+    private long slowestCursor;
+    private int waitingPublishers;
+    private int waitingSubscribers;
+    private long publisherWaits;
+    private long droppedSubscribers;
+    private boolean closed;
+
+    // Copied on write, so publishing can check for subscribers without the lock
+    private volatile Subscription[] subscriptions = new Subscription[0];
+
+    /**
+     * Creates a feed without subscribers.
+     *
+     * @param bookingService The booking service whose free seat counts go into the events.
+     * @param capacity       The number of events the ring holds, rounded up to a power of two.
+     * @param batchSize      The largest number of events handed to a subscriber at once.
+     */
+    public ChangeFeed(BookingService bookingService, int capacity, int batchSize) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + (1 << 30) + ": " + capacity);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        this.bookingService = bookingService;
+        int ringSize = Integer.highestOneBit(capacity);
+        this.ring = new long[ringSize < capacity ? ringSize * 2 : ringSize];
+        this.mask = ring.length - 1;
+        this.batchSize = Math.min(batchSize, ring.length);
+    }
+
+    /**
+     * Starts handing the events published from now on to a subscriber.
+     *
+     * @param subscriber The subscriber.
+     * @return The subscription, close it to stop.
+     */
+    public Subscription subscribe(ChangeSubscriber subscriber) {
+        return subscribe(subscriber, false);
+    }
+
+    /**
+     * Starts handing the events published from now on to a subscriber.
+     *
+     * @param subscriber The subscriber.
+     * @param droppable  True to drop the subscriber when it is a whole ring behind instead of waiting for it.
+     * @return The subscription, close it to stop.
+     */
+    public Subscription subscribe(ChangeSubscriber subscriber, boolean droppable) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The change feed is closed");
+            }
+            Subscription subscription = new Subscription(subscriber, droppable, sequence);
+            Subscription[] updated = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+            updated[updated.length - 1] = subscription;
+            subscriptions = updated;
+            slowestCursor = slowestCursor();
+            subscription.thread = Thread.ofVirtual().name("change-subscriber").start(subscription::deliver);
+            return subscription;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void seatBooked(int busId, int seatNumber) {
+        if (subscriptions.length > 0) {
+            publish(SeatChange.of(busId, seatNumber, SeatChange.BOOKED, bookingService.getAvailableSeats(busId)));
+        }
+    }
+
+    @Override
+    public void seatCanceled(int busId, int seatNumber) {
+        if (subscriptions.length > 0) {
+            publish(SeatChange.of(busId, seatNumber, SeatChange.AVAILABLE, bookingService.getAvailableSeats(busId)));
+        }
+    }
+
+    @Override
+    public void busReset(int busId, long[] releasedSeats) {
+        if (subscriptions.length > 0) {
+            publish(SeatChange.of(busId, 0, SeatChange.RESET, bookingService.getAvailableSeats(busId)));
+        }
+    }
+
+    /**
+     * Puts an event into the ring, waiting while the slowest subscriber is a whole ring behind;
+     * droppable subscribers that far behind are dropped instead.
+     *
+     * @param change The event, see {@link SeatChange}.
+     */
+    public void publish(long change) {
+        List<Subscription> dropped = null;
+        lock.lock();
+        try {
+            while (!closed && sequence - slowestCursor >= ring.length) {
+                slowestCursor = slowestCursor();
+                if (sequence - slowestCursor < ring.length) {
+                    break;
+                }
+                dropped = dropBehind(dropped);
+                if (sequence - slowestCursor < ring.length) {
+                    break;
+                }
+                publisherWaits++;
+                waitingPublishers++;
+                notFull.awaitUninterruptibly(); // the booking waits, no event is lost
+                waitingPublishers--;
+            }
+            if (closed || subscriptions.length == 0) {
+                return;
+            }
+            ring[(int) sequence & mask] = change;
+            sequence++;
+            if (waitingSubscribers > 0) {
+                published.signalAll();
+            }
+        } finally {
+            lock.unlock();
+            if (dropped != null) {
+                for (Subscription subscription : dropped) {
+                    subscription.dropped();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of events published so far.
+     */
+    public long getPublished() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return How often publishing had to wait for a slow subscriber.
+     */
+    public long getPublisherWaits() {
+        lock.lock();
+        try {
+            return publisherWaits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return How many droppable subscribers were dropped for being a whole ring behind.
+     */
+    public long getDroppedSubscribers() {
+        lock.lock();
+        try {
+            return droppedSubscribers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of open subscriptions.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.length;
+    }
+
+    /**
+     * Stops every subscription; events that were not delivered yet are dropped.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            published.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    /**
+     * Finds the cursor of the subscriber that is the furthest behind. Called under the lock.
+     */
+    private long slowestCursor() {
+        long slowest = sequence;
+        for (Subscription subscription : subscriptions) {
+            slowest = Math.min(slowest, subscription.cursor);
+        }
+        return slowest;
+    }
+
+    /**
+     * Stops and removes the droppable subscriptions that are a whole ring behind. Called under the lock.
+     *
+     * @param dropped The subscriptions dropped so far, or null.
+     * @return The dropped subscriptions including these, or null if there are none.
+     */
+    private List<Subscription> dropBehind(List<Subscription> dropped) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.droppable && sequence - subscription.cursor >= ring.length) {
+                subscription.stopped = true;
+                remove(subscription);
+                droppedSubscribers++;
+                if (dropped == null) {
+                    dropped = new ArrayList<>();
+                }
+                dropped.add(subscription);
+            }
+        }
+        if (dropped != null) {
+            published.signalAll();
+        }
+        return dropped;
+    }
+
+    /**
+     * Removes a subscription and lets waiting publishers go on. Called under the lock.
+     */
+    private void remove(Subscription subscription) {
+        Subscription[] current = subscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscription) {
+                Subscription[] updated = new Subscription[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                subscriptions = updated;
+                break;
+            }
+        }
+        slowestCursor = slowestCursor();
+        notFull.signalAll();
+    }
+
+    /**
+     * This class represents one subscriber of the feed, with its cursor and delivery thread.
+     */
+    public final class Subscription implements AutoCloseable {
+
+        private final ChangeSubscriber subscriber;
+        private final boolean droppable;
+        private Thread thread;
+
+        // Guarded by the lock of the feed
+        private long cursor;
+        private long delivered;
+        private long batches;
+        private boolean stopped;
+
+        private Subscription(ChangeSubscriber subscriber, boolean droppable, long cursor) {
+            this.subscriber = subscriber;
+            this.droppable = droppable;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Hands the published events to the subscriber until the subscription is closed.
+         */
+        private void deliver() {
+            long[] batch = new long[batchSize];
+            while (true) {
+                long from;
+                int count;
+                lock.lock();
+                try {
+                    while (!stopped && !closed && cursor == sequence) {
+                        waitingSubscribers++;
+                        published.awaitUninterruptibly();
+                        waitingSubscribers--;
+                    }
+                    if (stopped || closed) {
+                        return;
+                    }
+                    from = cursor;
+                    count = (int) Math.min(batchSize, sequence - cursor);
+                } finally {
+                    lock.unlock();
+                }
+
+                // The slots up to the cursor cannot be reused, so they are read without the lock
+                for (int i = 0; i < count; i++) {
+                    batch[i] = ring[(int) (from + i) & mask];
+                }
+                if (droppable && isStopped()) {
+                    return; // dropped while copying, the slots may have been reused
+                }
+                try {
+                    subscriber.onChanges(batch, count);
+                } catch (Exception e) {
+                    if (droppable && isStopped()) {
+                        return; // dropped, the subscriber gave up on the batch
+                    }
+                    System.err.println("-> Error: Change subscriber failed, it is unsubscribed: " + e.getMessage());
+                    close();
+                    return;
+                }
+
+                lock.lock();
+                try {
+                    boolean wasSlowest = cursor == slowestCursor;
+                    cursor = from + count;
+                    delivered += count;
+                    batches++;
+                    if (wasSlowest && waitingPublishers > 0) {
+                        notFull.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Tells the subscriber that it was dropped. Called after the lock is released.
+         */
+        private void dropped() {
+            try {
+                subscriber.onDropped();
+            } catch (RuntimeException e) {
+                System.err.println("-> Error: Dropped change subscriber failed: " + e.getMessage());
+            }
+        }
+
+        private boolean isStopped() {
+            lock.lock();
+            try {
+                return stopped;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return The number of events handed to the subscriber.
+         */
+        public long getDelivered() {
+            lock.lock();
+            try {
+                return delivered;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return The number of batches handed to the subscriber.
+         */
+        public long getBatches() {
+            lock.lock();
+            try {
+                return batches;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return The number of published events the subscriber has not received yet.
+         */
+        public long getLag() {
+            lock.lock();
+            try {
+                return sequence - cursor;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Waits until the subscriber has received every event published so far.
+         */
+        public void awaitDelivered() throws InterruptedException {
+            while (getLag() > 0 && thread.isAlive()) {
+                Thread.sleep(1);
+            }
+        }
+
+        /**
+         * Stops the deliveries; a batch that is being handed over is finished first.
+         */
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (stopped) {
+                    return;
+                }
+                stopped = true;
+                remove(this);
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package bus.feed;
+
+/**
+ * Interface for components that follow the seat changes of a {@link ChangeFeed}, e.g. station
+ * boards or a web front end. Every subscriber is called from its own thread, with the events in
+ * the order they were published.
+ */
+public interface ChangeSubscriber {
+
+    /**
+     * Called with the next batch of events. The feed waits for the call to return before it reuses
+     * the slots of the batch, so a slow subscriber slows down the bookings (backpressure).
+     * Subscribers must not book or cancel seats from this method.
+     *
+     * @param changes The events, see {@link SeatChange}; only valid during the call.
+     * @param count   The number of events in the batch.
+     */
+    void onChanges(long[] changes, int count) throws Exception;
+
+    /**
+     * Called once if the subscriber was subscribed as droppable and fell a whole ring behind; no
+     * further batch follows. It is called from a booking thread, so it must return quickly, e.g.
+     * by closing the connection of a remote subscriber that is stuck in {@link #onChanges}.
+     */
+    default void onDropped() {
+    }
+}
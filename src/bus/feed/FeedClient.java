@@ -0,0 +1,86 @@
+package bus.feed;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * This class represents a remote subscriber of a {@link FeedServer}: it reads the batches of
+ * events from the connection and hands them to a {@link ChangeSubscriber}, starting with the
+ * snapshot of the free seats of every bus.
+ */
+public class FeedClient implements Closeable {
+
+    // Largest batch accepted from the server
+    private static final int MAX_BATCH = 1 << 20;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final int numberOfBuses;
+    private final int numberSeatsPerBus;
+
+    /**
+     * Connects to a feed and reads the size of the fleet.
+     *
+     * @param host The host of the feed.
+     * @param port The port of the feed.
+     */
+    public FeedClient(String host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        this.numberOfBuses = in.readInt();
+        this.numberSeatsPerBus = in.readInt();
+    }
+
+    /**
+     * Hands the events to a subscriber until the connection is closed.
+     *
+     * @param subscriber The subscriber.
+     * @return The number of events received.
+     */
+    public long run(ChangeSubscriber subscriber) throws Exception {
+        long received = 0;
+        long[] changes = new long[1024];
+        try {
+            while (true) {
+                int count = in.readInt();
+                if (count < 0 || count > MAX_BATCH) {
+                    throw new IOException("Invalid batch size from the change feed: " + count);
+                }
+                if (count > changes.length) {
+                    changes = new long[count];
+                }
+                for (int i = 0; i < count; i++) {
+                    changes[i] = in.readLong();
+                }
+                subscriber.onChanges(changes, count);
+                received += count;
+            }
+        } catch (EOFException | SocketException e) {
+            return received; // the feed or this client closed the connection
+        }
+    }
+
+    /**
+     * @return The number of buses of the fleet.
+     */
+    public int getNumberOfBuses() {
+        return numberOfBuses;
+    }
+
+    /**
+     * @return The number of seats on each bus.
+     */
+    public int getNumberSeatsPerBus() {
+        return numberSeatsPerBus;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,182 @@
+package bus.feed;
+
+import bus.BookingService;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class represents the TCP endpoint of a {@link ChangeFeed} for remote displays.
+ * A connection gets the size of the fleet (two ints), then batches of events: an int count
+ * followed by that many longs (see {@link SeatChange}). The first batches hold a
+ * {@link SeatChange#SNAPSHOT} of the free seats of every bus, then every change follows
+ * as it is published. The client only reads; closing the connection ends the subscription.
+ * <p>
+ * A client that stops reading must not hold up the bookings, so the connections subscribe as
+ * droppable: once a client is a whole ring of the feed behind, its connection is closed and it
+ * has to connect again for a fresh snapshot.
+ */
+public class FeedServer {
+
+    // Snapshot events sent per batch
+    private static final int SNAPSHOT_BATCH = 1024;
+
+    private final ChangeFeed changeFeed;
+    private final BookingService bookingService;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a feed endpoint that is not started yet.
+     *
+     * @param changeFeed     The feed to hand out.
+     * @param bookingService The booking service for the snapshots.
+     * @param port           The TCP port to listen on, 0 picks a free port.
+     */
+    public FeedServer(ChangeFeed changeFeed, BookingService bookingService, int port) throws IOException {
+        this.changeFeed = changeFeed;
+        this.bookingService = bookingService;
+        this.serverSocket = new ServerSocket(port, 1024);
+        this.acceptor = new Thread(this::acceptLoop, "feed-acceptor");
+        this.acceptor.setDaemon(true);
+    }
+
+    /**
+     * Starts accepting connections.
+     */
+    public void start() {
+        acceptor.start();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     */
+    public void stop() {
+        stopped = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * @return The port the feed listens on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections and starts a virtual thread for each.
+     */
+    private void acceptLoop() {
+        while (!stopped) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true); // events are already batched
+                connections.add(socket);
+                Thread.ofVirtual().name("feed-connection").start(() -> serve(socket));
+            } catch (IOException e) {
+                if (!stopped) {
+                    System.err.println("-> Error: Change feed could not accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Subscribes a connection, sends the snapshot and waits until the client goes away.
+     */
+    private void serve(Socket socket) {
+        ChangeFeed.Subscription subscription = null;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+             InputStream in = socket.getInputStream()) {
+            ReentrantLock writeLock = new ReentrantLock();
+            writeLock.lock();
+            try {
+                out.writeInt(bookingService.getNumberOfBuses());
+                out.writeInt(bookingService.getNumberSeatsPerBus());
+
+                // Subscribe before the snapshot, so no change falls in between; the batches wait for the lock
+                subscription = changeFeed.subscribe(new ChangeSubscriber() {
+                    @Override
+                    public void onChanges(long[] changes, int count) throws IOException {
+                        writeLock.lock();
+                        try {
+                            out.writeInt(count);
+                            for (int i = 0; i < count; i++) {
+                                out.writeLong(changes[i]);
+                            }
+                            out.flush();
+                        } finally {
+                            writeLock.unlock();
+                        }
+                    }
+
+                    @Override
+                    public void onDropped() {
+                        closeQuietly(socket); // ends a blocked write or snapshot, and the read below
+                    }
+                }, true);
+                writeSnapshot(out);
+                out.flush();
+            } finally {
+                writeLock.unlock();
+            }
+
+            while (in.read() != -1) {
+                // the client does not send anything, wait for it to close the connection
+            }
+        } catch (IOException e) {
+            // the client went away
+        } finally {
+            if (subscription != null) {
+                subscription.close();
+            }
+            connections.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Writes the free seats of every bus as snapshot events.
+     */
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        int numberOfBuses = bookingService.getNumberOfBuses();
+        int numberSeatsPerBus = bookingService.getNumberSeatsPerBus();
+        int[] busIds = new int[SNAPSHOT_BATCH];
+        int[] bookedSeats = new int[SNAPSHOT_BATCH];
+        for (int firstBusId = 1; firstBusId <= numberOfBuses; firstBusId += SNAPSHOT_BATCH) {
+            int count = Math.min(SNAPSHOT_BATCH, numberOfBuses - firstBusId + 1);
+            for (int i = 0; i < count; i++) {
+                busIds[i] = firstBusId + i;
+            }
+            bookingService.copyBookedSeats(busIds, count, bookedSeats);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(SeatChange.of(busIds[i], 0, SeatChange.SNAPSHOT, numberSeatsPerBus - bookedSeats[i]));
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package bus.feed;
+
+/**
+ * This class holds the layout of the events of the {@link ChangeFeed}. An event is one long:
+ * the bus, the seat, the new state of the seat and the number of free seats of the bus after
+ * the change. The free count is absolute, so a display can apply an event twice without harm.
+ * <pre>
+ * bits 23..42  bus ID
+ * bits 13..22  seat number, 0 for a reset or a snapshot of the whole bus
+ * bits 11..12  state: {@link #AVAILABLE}, {@link #BOOKED}, {@link #RESET} or {@link #SNAPSHOT}
+ * bits  0..10  free seats of the bus
+ * </pre>
+ */
+public final class SeatChange {
+
+    // States
+    public static final int AVAILABLE = 0;
+    public static final int BOOKED = 1;
+    public static final int RESET = 2;
+    // The free seats of a bus when a remote subscriber connects, seat number 0
+    public static final int SNAPSHOT = 3;
+
+    // Field positions
+    private static final int FREE_BITS = 11;
+    private static final int STATE_SHIFT = FREE_BITS;
+    private static final int SEAT_SHIFT = STATE_SHIFT + 2;
+    private static final int BUS_SHIFT = SEAT_SHIFT + 10;
+
+    private SeatChange() {
+    }
+
+    /**
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number, 0 for a reset.
+     * @param state      The new state of the seat.
+     * @param freeSeats  The free seats of the bus after the change.
+     * @return The event.
+     */
+    public static long of(int busId, int seatNumber, int state, int freeSeats) {
+        return (long) busId << BUS_SHIFT | (long) seatNumber << SEAT_SHIFT | (long) state << STATE_SHIFT | freeSeats;
+    }
+
+    public static int getBusId(long change) {
+        return (int) (change >>> BUS_SHIFT);
+    }
+
+    public static int getSeatNumber(long change) {
+        return (int) (change >>> SEAT_SHIFT) & 0x3ff;
+    }
+
+    public static int getState(long change) {
+        return (int) (change >>> STATE_SHIFT) & 0x3;
+    }
+
+    public static int getFreeSeats(long change) {
+        return (int) change & ((1 << FREE_BITS) - 1);
+    }
+
+    /**
+     * @return A readable form of an event, e.g. "bus 3 seat 7 booked, 42 free".
+     */
+    public static String toString(long change) {
+        int state = getState(change);
+        String seat = state == RESET ? " reset" : state == SNAPSHOT ? "" : " seat " + getSeatNumber(change) + (state == BOOKED ? " booked" : " available");
+        return "bus " + getBusId(change) + seat + ", " + getFreeSeats(change) + " free";
+    }
+}
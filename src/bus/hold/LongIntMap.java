@@ -0,0 +1,129 @@
+package bus.hold;
+
+/**
+ * This class represents a hash map from positive long keys to int values in two primitive arrays,
+ * with linear probing and no boxing. Key 0 marks an empty entry. The map is not thread safe.
+ */
+class LongIntMap {
+
+    // Value returned for a key that is not in the map
+    static final int MISSING = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * @param expectedSize The number of entries to make room for.
+     */
+    LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * @return The value of a key, or {@link #MISSING}.
+     */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = indexOf(key, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            if (keys[i] == 0) {
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * Adds a key that is not in the map yet.
+     */
+    void put(long key, int value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2); // keep the table at most half full
+        }
+        insert(key, value);
+        size++;
+    }
+
+    /**
+     * @return The value the key had, or {@link #MISSING}.
+     */
+    int remove(long key) {
+        int mask = keys.length - 1;
+        int i = indexOf(key, mask);
+        while (keys[i] != key) {
+            if (keys[i] == 0) {
+                return MISSING;
+            }
+            i = (i + 1) & mask;
+        }
+        int value = values[i];
+
+        // Shift later entries of the probe chain back, so no tombstone is needed
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (keys[j] == 0) {
+                break;
+            }
+            int home = indexOf(keys[j], mask);
+            boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+            if (movable) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = 0;
+        size--;
+        return value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return A copy of the keys in the map.
+     */
+    long[] keys() {
+        long[] copy = new long[size];
+        int count = 0;
+        for (long key : keys) {
+            if (key != 0) {
+                copy[count++] = key;
+            }
+        }
+        return copy;
+    }
+
+    private void insert(long key, int value) {
+        int mask = keys.length - 1;
+        int i = indexOf(key, mask);
+        while (keys[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int indexOf(long key, int mask) {
+        long h = key * 0x9e3779b97f4a7c15L; // Fibonacci hashing, the high bits are the best mixed
+        return (int) (h >>> 32) & mask;
+    }
+}
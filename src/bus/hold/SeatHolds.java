@@ -0,0 +1,353 @@
+package bus.hold;
+
+import bus.BookingListener;
+import bus.BookingResult;
+import bus.BookingService;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class represents the temporary holds on seats: a seat is held for a few minutes while the
+ * customer pays, and is then confirmed as booked or released automatically. A held seat is booked
+ * in the booking service, so nobody else can take it, and this class remembers when the hold ends.
+ * <p>
+ * Hold ends are timers of a {@link TimingWheel}, so placing, confirming and expiring a hold cost
+ * O(1) however many holds are outstanding. {@link #expire} moves the wheel to the current time
+ * and cancels the seats whose holds ended. Added as a {@link BookingListener} to the engine, the
+ * holds of seats that are canceled or reset by other means are dropped.
+ * <p>
+ * The timer of a hold is started while the engine still holds the lock of the bus (see
+ * {@link BookingService#hold}), and a seat is only released or confirmed after checking under
+ * that lock that it is still held by the same hold, so a seat canceled and booked again by
+ * someone else meanwhile is never released by an old hold.
+ * <p>
+ * While no seat is held this listener is not listening (see {@link BookingListener#isListening}),
+ * so the engine keeps booking lock-free and cancels and resets skip the lock of this class.
+ * A hold is counted before its seat is claimed, so no cancel of the seat goes unreported.
+ * Times are in milliseconds, e.g. from {@link System#currentTimeMillis()}.
+ */
+public class SeatHolds implements BookingListener, AutoCloseable {
+
+    // A hold key is the bus ID above the seat number
+    private static final int SEAT_BITS = 10;
+    // Timer of a hold that ended and whose seat is being released
+    private static final int EXPIRED = -2;
+
+    private final BookingService bookingService;
+    private final long holdMillis;
+    private final long tickMillis;
+    private final TimingWheel wheel;
+    private final LongIntMap timersBySeat;
+    // The holds in the map plus the holds being placed, read without the lock
+    private final AtomicInteger activeHolds = new AtomicInteger();
+    private long[] expiredSeats = new long[64];
+    private int expiredCount;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates the holds of a booking service.
+     *
+     * @param bookingService The booking service where held seats are booked.
+     * @param holdMillis     How long a hold lasts.
+     * @param tickMillis     The resolution of the hold ends.
+     * @param nowMillis      The current time.
+     */
+    public SeatHolds(BookingService bookingService, long holdMillis, long tickMillis, long nowMillis) {
+        if (tickMillis < 1 || holdMillis < tickMillis) {
+            throw new IllegalArgumentException("A hold must last at least one tick: " + holdMillis + " ms, tick " + tickMillis + " ms");
+        }
+        this.bookingService = bookingService;
+        this.holdMillis = holdMillis;
+        this.tickMillis = tickMillis;
+        this.wheel = new TimingWheel(nowMillis / tickMillis, 1024);
+        this.timersBySeat = new LongIntMap(1024);
+    }
+
+    /**
+     * Books a seat and holds it until it is confirmed or the hold ends.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to hold.
+     * @param nowMillis  The current time.
+     * @return BOOKED if the seat is held, ALREADY_BOOKED if it is booked or held already.
+     */
+    public BookingResult hold(int busId, int seatNumber, long nowMillis) {
+        long deadlineTick = (nowMillis + holdMillis + tickMillis - 1) / tickMillis;
+        activeHolds.incrementAndGet(); // listen before the seat is claimed
+        try {
+            return bookingService.hold(busId, seatNumber, (claimedBus, claimedSeat) -> start(seatKey(claimedBus, claimedSeat), deadlineTick));
+        } finally {
+            activeHolds.decrementAndGet(); // a started hold is counted by its timer
+        }
+    }
+
+    /**
+     * Starts a hold on a seat that is booked already, e.g. a hold recovered from the journal.
+     * The hold lasts a whole hold time from now, the customer may still be paying.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The held seat number.
+     * @param nowMillis  The current time.
+     */
+    public void restore(int busId, int seatNumber, long nowMillis) {
+        start(seatKey(busId, seatNumber), (nowMillis + holdMillis + tickMillis - 1) / tickMillis);
+    }
+
+    /**
+     * Turns a hold into a booking.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number.
+     * @return BOOKED if the hold was confirmed, ALREADY_AVAILABLE if the seat is not held (anymore).
+     */
+    public BookingResult confirm(int busId, int seatNumber) {
+        return bookingService.confirmHold(busId, seatNumber, this::endRunningHold);
+    }
+
+    /**
+     * Releases the seats whose holds ended by now.
+     *
+     * @param nowMillis The current time.
+     * @return The number of seats released.
+     */
+    public int expire(long nowMillis) {
+        long[] seats;
+        int count;
+        synchronized (this) {
+            expiredCount = 0;
+            wheel.advance(nowMillis / tickMillis, this::collectExpired);
+            count = expiredCount;
+            seats = count == 0 ? expiredSeats : Arrays.copyOf(expiredSeats, count); // the buffer is reused by the next call
+        }
+
+        // Release outside the lock, the engine checks that the hold is still there under its own locks
+        int released = 0;
+        for (int i = 0; i < count; i++) {
+            if (bookingService.releaseHold(busIdOf(seats[i]), seatNumberOf(seats[i]), this::endExpiredHold) == BookingResult.CANCELED) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Starts a thread that releases the seats of ended holds once per tick.
+     */
+    public synchronized void startExpiring() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "seat-hold-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                expire(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                System.err.println("-> Error: Releasing held seats failed: " + e.getMessage());
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the thread that releases the seats of ended holds. The seats stay held, e.g. to be
+     * held again from the journal on the next start.
+     */
+    public synchronized void stopExpiring() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Stops the expiry thread and releases the seats that are still held.
+     */
+    @Override
+    public void close() {
+        long[] seats;
+        synchronized (this) {
+            stopExpiring();
+            seats = timersBySeat.keys();
+        }
+        for (long seat : seats) {
+            bookingService.releaseHold(busIdOf(seat), seatNumberOf(seat), this::endAnyHold);
+        }
+    }
+
+    /**
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number.
+     * @return True if the seat is held and not confirmed yet.
+     */
+    public synchronized boolean isHeld(int busId, int seatNumber) {
+        return timersBySeat.get(seatKey(busId, seatNumber)) >= 0;
+    }
+
+    /**
+     * Copies which seats of a bus are held as seat bits (see {@link bus.SeatStore#getSeatWord}).
+     *
+     * @param busId The ID of the bus.
+     * @param words The array to copy into, one word per 64 seats.
+     * @return The number of held seats.
+     */
+    public synchronized int copyHeldSeatWords(int busId, long[] words) {
+        int numberSeatsPerBus = bookingService.getNumberSeatsPerBus();
+        Arrays.fill(words, 0, (numberSeatsPerBus + Long.SIZE - 1) / Long.SIZE, 0);
+        if (timersBySeat.size() == 0) {
+            return 0;
+        }
+        int heldSeats = 0;
+        for (int seatNumber = 1; seatNumber <= numberSeatsPerBus; seatNumber++) {
+            if (timersBySeat.get(seatKey(busId, seatNumber)) >= 0) {
+                words[(seatNumber - 1) / Long.SIZE] |= 1L << (seatNumber - 1);
+                heldSeats++;
+            }
+        }
+        return heldSeats;
+    }
+
+    /**
+     * @return The number of seats held and not confirmed yet.
+     */
+    public synchronized int getHoldCount() {
+        return timersBySeat.size();
+    }
+
+    /**
+     * @return How long a hold lasts in milliseconds.
+     */
+    public long getHoldMillis() {
+        return holdMillis;
+    }
+
+    /**
+     * A held seat that is canceled is no longer held.
+     */
+    @Override
+    public void seatCanceled(int busId, int seatNumber) {
+        if (activeHolds.get() != 0) {
+            drop(seatKey(busId, seatNumber));
+        }
+    }
+
+    @Override
+    public void busReset(int busId, long[] releasedSeats) {
+        if (activeHolds.get() == 0) {
+            return;
+        }
+        for (int word = 0; word < releasedSeats.length; word++) {
+            for (long bits = releasedSeats[word]; bits != 0; bits &= bits - 1) {
+                drop(seatKey(busId, word * Long.SIZE + Long.numberOfTrailingZeros(bits) + 1));
+            }
+        }
+    }
+
+    /**
+     * Holds are only reported while some seat is held or a hold is being placed.
+     */
+    @Override
+    public boolean isListening() {
+        return activeHolds.get() != 0;
+    }
+
+    private synchronized void drop(long key) {
+        int timer = remove(key);
+        if (timer >= 0) {
+            wheel.cancel(timer);
+        }
+    }
+
+    /**
+     * Starts the timer of a hold whose seat was just claimed, under the lock of the bus.
+     */
+    private synchronized boolean start(long key, long deadlineTick) {
+        drop(key); // a hold the engine did not report as canceled
+        timersBySeat.put(key, wheel.schedule(deadlineTick, key));
+        activeHolds.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Ends a hold that is still running, for a confirmation under the lock of the bus.
+     */
+    private synchronized boolean endRunningHold(int busId, int seatNumber) {
+        long key = seatKey(busId, seatNumber);
+        int timer = timersBySeat.get(key);
+        if (timer < 0) {
+            return false; // not held, or the hold ended and its seat is being released
+        }
+        remove(key);
+        wheel.cancel(timer);
+        return true;
+    }
+
+    /**
+     * Ends a hold that expired, for its release under the lock of the bus. A seat canceled
+     * meanwhile has lost its hold, so a new booking of it is not released.
+     */
+    private synchronized boolean endExpiredHold(int busId, int seatNumber) {
+        long key = seatKey(busId, seatNumber);
+        if (timersBySeat.get(key) != EXPIRED) {
+            return false;
+        }
+        remove(key);
+        return true;
+    }
+
+    /**
+     * Ends any hold of a seat, for releasing the seats still held on close.
+     */
+    private synchronized boolean endAnyHold(int busId, int seatNumber) {
+        long key = seatKey(busId, seatNumber);
+        if (timersBySeat.get(key) == LongIntMap.MISSING) {
+            return false;
+        }
+        drop(key);
+        return true;
+    }
+
+    /**
+     * Called by the wheel for every hold that ended, under the lock. The hold stays in the map,
+     * marked as expired, until its seat is released.
+     */
+    private void collectExpired(long key) {
+        timersBySeat.remove(key);
+        timersBySeat.put(key, EXPIRED);
+        if (expiredCount == expiredSeats.length) {
+            expiredSeats = Arrays.copyOf(expiredSeats, expiredCount * 2);
+        }
+        expiredSeats[expiredCount++] = key;
+    }
+
+    /**
+     * Removes a hold from the map and stops counting it, under the lock.
+     *
+     * @return The removed timer, EXPIRED, or MISSING if the seat was not held.
+     */
+    private int remove(long key) {
+        int timer = timersBySeat.remove(key);
+        if (timer != LongIntMap.MISSING) {
+            activeHolds.decrementAndGet();
+        }
+        return timer;
+    }
+
+    private static long seatKey(int busId, int seatNumber) {
+        return (long) busId << SEAT_BITS | seatNumber;
+    }
+
+    private static int busIdOf(long key) {
+        return (int) (key >>> SEAT_BITS);
+    }
+
+    private static int seatNumberOf(long key) {
+        return (int) (key & ((1 << SEAT_BITS) - 1));
+    }
+}
@@ -0,0 +1,204 @@
+package bus.hold;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * This class represents a hierarchical timing wheel: timers that fire at a tick, each carrying a
+ * long payload. Level 0 has one slot per tick for the next 64 ticks, level 1 one slot per 64 ticks,
+ * and so on; a timer sits in the lowest level where its deadline and the current tick share all
+ * higher bits. When the current tick enters a slot of a higher level, its timers move down, so
+ * scheduling, canceling and firing a timer are O(1) no matter how many timers are pending.
+ * <p>
+ * Timers live in primitive arrays linked into the slots by index, and their indexes are reused
+ * once they fired or were canceled. The wheel is not thread safe.
+ */
+public class TimingWheel {
+
+    // Every level has 64 slots, 11 levels cover every long deadline
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+
+    // End of a slot list or of the free list
+    private static final int NONE = -1;
+
+    private final int[] slotHeads = new int[LEVELS * SLOTS];
+    private long[] deadlines;
+    private long[] payloads;
+    private int[] next;
+    private int[] previous;
+    private int[] slots;
+    private int freeTimers = NONE;
+    private int usedTimers;
+    private int size;
+    private long currentTick;
+
+    /**
+     * Creates an empty wheel.
+     *
+     * @param startTick       The current tick, timers fire at later ticks.
+     * @param initialCapacity The number of timers to make room for.
+     */
+    public TimingWheel(long startTick, int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.deadlines = new long[capacity];
+        this.payloads = new long[capacity];
+        this.next = new int[capacity];
+        this.previous = new int[capacity];
+        this.slots = new int[capacity];
+        this.currentTick = startTick;
+        Arrays.fill(slotHeads, NONE);
+    }
+
+    /**
+     * Adds a timer.
+     *
+     * @param deadlineTick The tick to fire at; a tick that has passed fires at the next tick.
+     * @param payload      The value handed over when the timer fires.
+     * @return The ID of the timer, valid until it fires or is canceled.
+     */
+    public int schedule(long deadlineTick, long payload) {
+        int timer;
+        if (freeTimers != NONE) {
+            timer = freeTimers;
+            freeTimers = next[timer];
+        } else {
+            if (usedTimers == deadlines.length) {
+                grow();
+            }
+            timer = usedTimers++;
+        }
+        deadlines[timer] = Math.max(deadlineTick, currentTick + 1);
+        payloads[timer] = payload;
+        link(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Removes a timer that has not fired yet.
+     *
+     * @param timer The ID returned by {@link #schedule}.
+     * @return The payload of the timer.
+     */
+    public long cancel(int timer) {
+        long payload = payloads[timer];
+        unlink(timer);
+        free(timer);
+        return payload;
+    }
+
+    /**
+     * Moves the wheel forward and fires every timer with a deadline up to a tick.
+     * The consumer must not schedule or cancel timers of this wheel.
+     *
+     * @param tick    The new current tick.
+     * @param expired Receives the payload of every timer that fires, in deadline order.
+     * @return The number of timers that fired.
+     */
+    public int advance(long tick, LongConsumer expired) {
+        int fired = 0;
+        while (currentTick < tick) {
+            if (size == 0) {
+                currentTick = tick; // nothing to fire on the way
+                break;
+            }
+            long now = ++currentTick;
+
+            // Move the timers of the higher level slots that start at this tick down the wheel
+            int topLevel = Math.min(LEVELS - 1, Long.numberOfTrailingZeros(now) / SLOT_BITS);
+            for (int level = topLevel; level >= 1; level--) {
+                int slot = level * SLOTS + ((int) (now >>> (level * SLOT_BITS)) & (SLOTS - 1));
+                int timer = slotHeads[slot];
+                slotHeads[slot] = NONE;
+                while (timer != NONE) {
+                    int following = next[timer];
+                    link(timer);
+                    timer = following;
+                }
+            }
+
+            // Fire the timers of this tick
+            int slot = (int) now & (SLOTS - 1);
+            int timer = slotHeads[slot];
+            slotHeads[slot] = NONE;
+            while (timer != NONE) {
+                int following = next[timer];
+                long payload = payloads[timer];
+                free(timer);
+                expired.accept(payload);
+                fired++;
+                timer = following;
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * @return The number of timers that have not fired yet.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The last tick the wheel was moved to.
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * @param timer The ID of a pending timer.
+     * @return The tick the timer fires at.
+     */
+    public long getDeadline(int timer) {
+        return deadlines[timer];
+    }
+
+    /**
+     * Puts a timer in the slot of its deadline, seen from the current tick.
+     */
+    private void link(int timer) {
+        long deadline = deadlines[timer];
+        int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(deadline ^ currentTick)) / SLOT_BITS;
+        int slot = level * SLOTS + ((int) (deadline >>> (level * SLOT_BITS)) & (SLOTS - 1));
+        int head = slotHeads[slot];
+        slots[timer] = slot;
+        previous[timer] = NONE;
+        next[timer] = head;
+        if (head != NONE) {
+            previous[head] = timer;
+        }
+        slotHeads[slot] = timer;
+    }
+
+    private void unlink(int timer) {
+        int before = previous[timer];
+        int after = next[timer];
+        if (before == NONE) {
+            slotHeads[slots[timer]] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+    }
+
+    private void free(int timer) {
+        next[timer] = freeTimers;
+        freeTimers = timer;
+        size--;
+    }
+
+    private void grow() {
+        int capacity = deadlines.length * 2;
+        deadlines = Arrays.copyOf(deadlines, capacity);
+        payloads = Arrays.copyOf(payloads, capacity);
+        next = Arrays.copyOf(next, capacity);
+        previous = Arrays.copyOf(previous, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+    }
+}
@@ -0,0 +1,193 @@
+package bus.metrics;
+
+import bus.BookingResult;
+import bus.BookingService;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class represents the runtime metrics of the Bus Management System: a latency histogram
+ * and result counters for every {@link Operation}, and gauges of the seats in the fleet.
+ * The gauges read the booked seat counters the fleet already maintains, they never scan seats.
+ * <p>
+ * Recording is thread-safe and allocation-free. The metrics can be printed for the Stats menu,
+ * written in the Prometheus text format, and published as a JMX MBean.
+ */
+public class BookingMetrics {
+
+    // Name of the MBean in the platform MBean server
+    public static final String OBJECT_NAME = "bus:type=BookingMetrics";
+
+    // Percentiles shown in the summary and exported as Prometheus quantiles
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999"};
+
+    private static final int RESULTS = BookingResult.values().length;
+
+    private final BookingService bookingService;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+
+    // Results of each operation, operation o and result r at o * RESULTS + r
+    private final LongAdder[] results = new LongAdder[Operation.values().length * RESULTS];
+
+    /**
+     * Creates empty metrics for a fleet.
+     *
+     * @param bookingService The fleet whose seats are shown by the gauges.
+     */
+    public BookingMetrics(BookingService bookingService) {
+        this.bookingService = bookingService;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records an operation that has finished.
+     *
+     * @param operation  The operation.
+     * @param startNanos The {@link System#nanoTime()} when it started.
+     */
+    public void record(Operation operation, long startNanos) {
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a booking operation that has finished with a result.
+     *
+     * @param operation  The operation.
+     * @param startNanos The {@link System#nanoTime()} when it started.
+     * @param result     The result of the operation.
+     */
+    public void record(Operation operation, long startNanos, BookingResult result) {
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+        results[operation.ordinal() * RESULTS + result.ordinal()].increment();
+    }
+
+    /**
+     * @param operation The operation.
+     * @return The latencies of the operation.
+     */
+    public LatencyHistogram getLatency(Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    /**
+     * @param operation The operation.
+     * @param result    The result.
+     * @return How often the operation ended with the result.
+     */
+    public long getResultCount(Operation operation, BookingResult result) {
+        return results[operation.ordinal() * RESULTS + result.ordinal()].sum();
+    }
+
+    /**
+     * @param operation The operation.
+     * @return How often the operation did not change any seat, e.g. a seat was already booked.
+     */
+    public long getFailures(Operation operation) {
+        long failures = 0;
+        for (BookingResult result : BookingResult.values()) {
+            if (!result.isSuccess()) {
+                failures += getResultCount(operation, result);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return The number of seats in the fleet.
+     */
+    public long getTotalSeats() {
+        return (long) bookingService.getNumberOfBuses() * bookingService.getNumberSeatsPerBus();
+    }
+
+    /**
+     * @return The number of booked seats in the fleet.
+     */
+    public long getBookedSeats() {
+        return bookingService.getTotalBookedSeats();
+    }
+
+    /**
+     * @return The number of available seats in the fleet.
+     */
+    public long getFreeSeats() {
+        return getTotalSeats() - getBookedSeats();
+    }
+
+    /**
+     * Prints the metrics for the Stats menu.
+     *
+     * @param out The stream to print to.
+     */
+    public void printSummary(PrintStream out) {
+        long bookedSeats = getBookedSeats();
+        out.println("-------------- Booking Statistics --------------");
+        out.printf("-> Seats: %,d   Booked: %,d   Available: %,d%n", getTotalSeats(), bookedSeats, getTotalSeats() - bookedSeats);
+        out.printf("   %-13s %10s %10s %10s %10s %10s %10s %10s%n", "Operation", "Count", "Failed", "Mean(us)", "p50(us)", "p99(us)", "p99.9(us)", "Max(us)");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latency = latencies[operation.ordinal()];
+            out.printf("   %-13s %,10d %,10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", operation.getDisplayName(),
+                    latency.getCount(), getFailures(operation), latency.getMeanNanos() / 1e3,
+                    latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+                    latency.getValueAtPercentile(99.9) / 1e3, latency.getMaxNanos() / 1e3);
+        }
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format.
+     *
+     * @param out Where to write the metrics.
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        out.append("# HELP bus_operation_duration_seconds Latency of the booking operations and table renders.\n");
+        out.append("# TYPE bus_operation_duration_seconds summary\n");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latency = latencies[operation.ordinal()];
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                out.append("bus_operation_duration_seconds{operation=\"").append(operation.getLabel())
+                        .append("\",quantile=\"").append(QUANTILES[i]).append("\"} ")
+                        .append(String.valueOf(latency.getValueAtPercentile(PERCENTILES[i]) / 1e9)).append('\n');
+            }
+            out.append("bus_operation_duration_seconds_sum{operation=\"").append(operation.getLabel()).append("\"} ")
+                    .append(String.valueOf(latency.getTotalNanos() / 1e9)).append('\n');
+            out.append("bus_operation_duration_seconds_count{operation=\"").append(operation.getLabel()).append("\"} ")
+                    .append(String.valueOf(latency.getCount())).append('\n');
+        }
+
+        out.append("# HELP bus_operation_results_total Results of the booking operations.\n");
+        out.append("# TYPE bus_operation_results_total counter\n");
+        for (Operation operation : Operation.values()) {
+            for (BookingResult result : BookingResult.values()) {
+                long count = getResultCount(operation, result);
+                if (count > 0) {
+                    out.append("bus_operation_results_total{operation=\"").append(operation.getLabel())
+                            .append("\",result=\"").append(result.name().toLowerCase()).append("\"} ")
+                            .append(String.valueOf(count)).append('\n');
+                }
+            }
+        }
+
+        long bookedSeats = getBookedSeats();
+        out.append("# HELP bus_seats Seats in the fleet by state.\n");
+        out.append("# TYPE bus_seats gauge\n");
+        out.append("bus_seats{state=\"booked\"} ").append(String.valueOf(bookedSeats)).append('\n');
+        out.append("bus_seats{state=\"available\"} ").append(String.valueOf(getTotalSeats() - bookedSeats)).append('\n');
+    }
+
+    /**
+     * Publishes the metrics in the platform MBean server under {@value #OBJECT_NAME}.
+     */
+    public void registerMBean() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this), new ObjectName(OBJECT_NAME));
+    }
+}
@@ -0,0 +1,121 @@
+package bus.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class represents a histogram of latencies in nanoseconds, laid out like HdrHistogram:
+ * values below {@value #SUB_BUCKETS} are counted exactly, larger values in 64 buckets per power
+ * of two, so every recorded value is kept within 1/64 (about 1.6%) of its real size.
+ * <p>
+ * Recording is thread-safe, lock-free and does not allocate: it increments one counter of a
+ * fixed array. Percentiles are read from the live counters while other threads keep recording.
+ */
+public class LatencyHistogram {
+
+    // Values below SUB_BUCKETS are counted exactly, above it HALF buckets share each power of two
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    // Longest latency counted apart, about 73 minutes; longer latencies count as this one
+    public static final long HIGHEST_TRACKABLE_NANOS = (1L << 42) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(HIGHEST_TRACKABLE_NANOS) + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds, negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), HIGHEST_TRACKABLE_NANOS);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        totalNanos.add(value);
+        if (value > maxNanos.get()) { // only contend on the maximum when it grows
+            maxNanos.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * @return The number of latencies recorded.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return The sum of all latencies recorded, in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @return The mean latency in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMeanNanos() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : (double) totalNanos.sum() / recorded;
+    }
+
+    /**
+     * @return The longest latency recorded, in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Finds the latency below which a percentage of the recorded latencies fall.
+     *
+     * @param percentile The percentage, between 0 and 100.
+     * @return The latency in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long recorded = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            recorded += counts.get(i);
+        }
+        if (recorded == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * recorded));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Finds the bucket of a value.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1); // keeps the top 7 bits
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /**
+     * @return The largest value counted in a bucket.
+     */
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
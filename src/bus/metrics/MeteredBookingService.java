@@ -0,0 +1,136 @@
+package bus.metrics;
+
+import bus.BookingResult;
+import bus.BookingService;
+import bus.SeatCondition;
+
+/**
+ * This class represents a {@link BookingService} that records the latency and result of every
+ * booking, cancel and reset in {@link BookingMetrics} before passing it on to another service.
+ * Reads are passed on unmeasured. Calls that throw are not recorded.
+ */
+public class MeteredBookingService implements BookingService {
+
+    private final BookingService bookingService;
+    private final BookingMetrics metrics;
+
+    /**
+     * Creates a measured view of a booking service.
+     *
+     * @param bookingService The service that runs the operations.
+     * @param metrics        Where the operations are recorded.
+     */
+    public MeteredBookingService(BookingService bookingService, BookingMetrics metrics) {
+        this.bookingService = bookingService;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public BookingResult book(int busId, int seatNumber) {
+        long start = System.nanoTime();
+        BookingResult result = bookingService.book(busId, seatNumber);
+        metrics.record(Operation.BOOK, start, result);
+        return result;
+    }
+
+    @Override
+    public BookingResult cancel(int busId, int seatNumber) {
+        long start = System.nanoTime();
+        BookingResult result = bookingService.cancel(busId, seatNumber);
+        metrics.record(Operation.CANCEL, start, result);
+        return result;
+    }
+
+    @Override
+    public BookingResult hold(int busId, int seatNumber, SeatCondition claimed) {
+        long start = System.nanoTime();
+        BookingResult result = bookingService.hold(busId, seatNumber, claimed);
+        metrics.record(Operation.BOOK, start, result);
+        return result;
+    }
+
+    @Override
+    public BookingResult confirmHold(int busId, int seatNumber, SeatCondition stillHeld) {
+        return bookingService.confirmHold(busId, seatNumber, stillHeld); // the seat was counted when it was held
+    }
+
+    @Override
+    public BookingResult releaseHold(int busId, int seatNumber, SeatCondition stillHeld) {
+        long start = System.nanoTime();
+        BookingResult result = bookingService.releaseHold(busId, seatNumber, stillHeld);
+        metrics.record(Operation.CANCEL, start, result);
+        return result;
+    }
+
+    @Override
+    public BookingResult reset(int busId) {
+        long start = System.nanoTime();
+        BookingResult result = bookingService.reset(busId);
+        metrics.record(Operation.RESET, start, result);
+        return result;
+    }
+
+    @Override
+    public BookingResult bookSeats(int busId, int[] seatNumbers) {
+        long start = System.nanoTime();
+        BookingResult result = bookingService.bookSeats(busId, seatNumbers);
+        metrics.record(Operation.GROUP_BOOK, start, result);
+        return result;
+    }
+
+    @Override
+    public int[] bookAnySeats(int busId, int count) {
+        long start = System.nanoTime();
+        int[] seatNumbers = bookingService.bookAnySeats(busId, count);
+        metrics.record(Operation.GROUP_BOOK, start, seatNumbers.length > 0 ? BookingResult.BOOKED : BookingResult.NOT_ENOUGH_SEATS);
+        return seatNumbers;
+    }
+
+    @Override
+    public BookingResult cancelSeats(int busId, int[] seatNumbers) {
+        long start = System.nanoTime();
+        BookingResult result = bookingService.cancelSeats(busId, seatNumbers);
+        metrics.record(Operation.GROUP_CANCEL, start, result);
+        return result;
+    }
+
+    @Override
+    public int getBookedSeats(int busId) {
+        return bookingService.getBookedSeats(busId);
+    }
+
+    @Override
+    public void copyBookedSeats(int[] busIds, int count, int[] bookedSeats) {
+        bookingService.copyBookedSeats(busIds, count, bookedSeats);
+    }
+
+    @Override
+    public void copySeatWords(int busId, long[] words) {
+        bookingService.copySeatWords(busId, words);
+    }
+
+    @Override
+    public int findFirstAvailableSeat(int busId) {
+        return bookingService.findFirstAvailableSeat(busId);
+    }
+
+    @Override
+    public long getTotalBookedSeats() {
+        return bookingService.getTotalBookedSeats();
+    }
+
+    @Override
+    public int getNumberOfBuses() {
+        return bookingService.getNumberOfBuses();
+    }
+
+    @Override
+    public int getNumberSeatsPerBus() {
+        return bookingService.getNumberSeatsPerBus();
+    }
+
+    @Override
+    public int getWordsPerBus() {
+        return bookingService.getWordsPerBus();
+    }
+}
@@ -0,0 +1,116 @@
+package bus.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents {@link BookingMetrics} as a read-only JMX MBean.
+ * Every operation has the attributes {@code <Operation>Count}, {@code <Operation>Failures},
+ * {@code <Operation>MeanMicros}, {@code <Operation>P50Micros}, {@code <Operation>P99Micros},
+ * {@code <Operation>P999Micros} and {@code <Operation>MaxMicros}, e.g. {@code BookP99Micros};
+ * the fleet has {@code TotalSeats}, {@code BookedSeats} and {@code FreeSeats}.
+ */
+class MetricsMBean implements DynamicMBean {
+
+    // Attributes of every operation, after the operation's name
+    private static final String[] OPERATION_ATTRIBUTES = {"Count", "Failures", "MeanMicros", "P50Micros", "P99Micros", "P999Micros", "MaxMicros"};
+
+    private final BookingMetrics metrics;
+    private final MBeanInfo info;
+
+    MetricsMBean(BookingMetrics metrics) {
+        this.metrics = metrics;
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            for (String attribute : OPERATION_ATTRIBUTES) {
+                boolean count = attribute.equals("Count") || attribute.equals("Failures");
+                attributes.add(new MBeanAttributeInfo(operation.getDisplayName() + attribute, count ? "long" : "double",
+                        attribute + " of " + operation.getDisplayName(), true, false, false));
+            }
+        }
+        for (String gauge : new String[]{"TotalSeats", "BookedSeats", "FreeSeats"}) {
+            attributes.add(new MBeanAttributeInfo(gauge, "long", gauge + " of the fleet", true, false, false));
+        }
+        this.info = new MBeanInfo(getClass().getName(), "Metrics of the Bus Management System",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+
+    @Override
+    public Object getAttribute(String name) throws AttributeNotFoundException {
+        switch (name) {
+            case "TotalSeats":
+                return metrics.getTotalSeats();
+            case "BookedSeats":
+                return metrics.getBookedSeats();
+            case "FreeSeats":
+                return metrics.getFreeSeats();
+            default:
+                break;
+        }
+        for (Operation operation : Operation.values()) {
+            if (name.startsWith(operation.getDisplayName())) {
+                LatencyHistogram latency = metrics.getLatency(operation);
+                switch (name.substring(operation.getDisplayName().length())) {
+                    case "Count":
+                        return latency.getCount();
+                    case "Failures":
+                        return metrics.getFailures(operation);
+                    case "MeanMicros":
+                        return latency.getMeanNanos() / 1e3;
+                    case "P50Micros":
+                        return latency.getValueAtPercentile(50) / 1e3;
+                    case "P99Micros":
+                        return latency.getValueAtPercentile(99) / 1e3;
+                    case "P999Micros":
+                        return latency.getValueAtPercentile(99.9) / 1e3;
+                    case "MaxMicros":
+                        return latency.getMaxNanos() / 1e3;
+                    default:
+                        break; // not an attribute of this operation
+                }
+            }
+        }
+        throw new AttributeNotFoundException(name);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        AttributeList list = new AttributeList();
+        for (String name : names) {
+            try {
+                list.add(new Attribute(name, getAttribute(name)));
+            } catch (AttributeNotFoundException e) {
+                // unknown attributes are left out, as JMX expects
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList(); // nothing can be set
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "Metrics have no operations: " + actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return info;
+    }
+}
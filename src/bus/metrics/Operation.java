@@ -0,0 +1,36 @@
+package bus.metrics;
+
+/**
+ * Enum representing the operations measured by {@link BookingMetrics}.
+ */
+public enum Operation {
+    BOOK("Book", "book"),
+    CANCEL("Cancel", "cancel"),
+    RESET("Reset", "reset"),
+    GROUP_BOOK("GroupBook", "group_book"),
+    GROUP_CANCEL("GroupCancel", "group_cancel"),
+    RENDER_PAGE("RenderPage", "render_page"),
+    RENDER_BUS("RenderBus", "render_bus");
+
+    private final String displayName;
+    private final String label;
+
+    Operation(String displayName, String label) {
+        this.displayName = displayName;
+        this.label = label;
+    }
+
+    /**
+     * @return The name shown in the Stats menu and used for JMX attributes.
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * @return The value of the operation label in Prometheus.
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,405 @@
+package bus.persist;
+
+import bus.BookingListener;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class represents the append-only journal of seat changes.
+ * Bookings only copy a small record into a memory buffer; a writer thread writes the
+ * buffered records to disk and forces them with one fsync per batch (group commit),
+ * so the booking path never waits for the disk unless it asks to with {@link #awaitDurable}.
+ * <p>
+ * The journal is split into segment files named after the sequence number of their first
+ * record, so segments that are covered by a snapshot can be deleted.
+ * Every record is {@link #RECORD_SIZE} bytes: operation, bus ID, seat number.
+ * <p>
+ * Held seats are written as HOLD records and their confirmations as CONFIRM records, so a
+ * recovered fleet can tell them from bookings and let the holds end. The journal keeps the
+ * seats that are held right now and writes them again at the start of every new segment,
+ * so a snapshot never loses a hold.
+ */
+public class BookingJournal implements BookingListener, AutoCloseable {
+
+    // Record layout
+    public static final int RECORD_SIZE = 9;
+    public static final byte BOOK = 1;
+    public static final byte CANCEL = 2;
+    public static final byte RESET = 3;
+    public static final byte HOLD = 4;
+    public static final byte CONFIRM = 5;
+
+    // File names of journal segments
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int batchSize;
+    private final long maxDelayNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchReady = lock.newCondition();
+    private final Condition bufferFree = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+
+    // Records are appended to the active buffer while the writer flushes the other one
+    private ByteBuffer activeBuffer;
+    private ByteBuffer flushBuffer;
+    private long sequence;
+    private long durableSequence;
+    private long segmentStart;
+    private long rollRequests;
+    private long completedRolls;
+    private long fsyncCount;
+    private boolean closed;
+    private IOException failure;
+    // Seats held and not confirmed yet, as bus ID above seat number
+    private final Set<Long> heldSeats = new HashSet<>();
+
+    private FileChannel channel;
+    private final Thread writer;
+
+    /**
+     * Opens a new journal segment and starts the writer thread.
+     *
+     * @param directory     The directory of the journal segments.
+     * @param startSequence The sequence number of the next record.
+     * @param batchSize     The number of records to collect before an fsync.
+     * @param maxDelayMillis The longest time a record waits for its batch to fill up, at least 1.
+     */
+    public BookingJournal(Path directory, long startSequence, int batchSize, long maxDelayMillis) throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        if (maxDelayMillis < 1) {
+            // without a delay the writer would never wait for records and spin on empty batches
+            throw new IllegalArgumentException("Maximum delay must be at least 1 ms: " + maxDelayMillis);
+        }
+        this.directory = directory;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        int capacity = Math.max(batchSize * 4, 8192) * RECORD_SIZE; // room to keep appending during an fsync
+        this.activeBuffer = ByteBuffer.allocateDirect(capacity);
+        this.flushBuffer = ByteBuffer.allocateDirect(capacity);
+        this.sequence = startSequence;
+        this.durableSequence = startSequence;
+        this.segmentStart = startSequence;
+        this.channel = openSegment(startSequence);
+        this.writer = new Thread(this::writeLoop, "booking-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void seatBooked(int busId, int seatNumber) {
+        append(BOOK, busId, seatNumber);
+    }
+
+    @Override
+    public void seatCanceled(int busId, int seatNumber) {
+        append(CANCEL, busId, seatNumber);
+    }
+
+    @Override
+    public void busReset(int busId, long[] releasedSeats) {
+        append(RESET, busId, 0);
+    }
+
+    @Override
+    public void seatHeld(int busId, int seatNumber) {
+        append(HOLD, busId, seatNumber);
+    }
+
+    @Override
+    public void holdConfirmed(int busId, int seatNumber) {
+        append(CONFIRM, busId, seatNumber);
+    }
+
+    /**
+     * Adds a record to the journal, waiting only if the buffer is full.
+     *
+     * @return The sequence number of the record, pass it to {@link #awaitDurable} to wait for the disk.
+     */
+    public long append(byte operation, int busId, int seatNumber) {
+        lock.lock();
+        try {
+            while (activeBuffer.remaining() < RECORD_SIZE && !closed) {
+                bufferFree.awaitUninterruptibly(); // the writer is behind, slow down bookings
+            }
+            checkOpen();
+            activeBuffer.put(operation).putInt(busId).putInt(seatNumber);
+            sequence++;
+            trackHold(operation, busId, seatNumber);
+            if (activeBuffer.position() >= batchSize * RECORD_SIZE) {
+                batchReady.signal();
+            }
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a record and all records before it are forced to disk.
+     *
+     * @param recordSequence The sequence number returned by {@link #append}.
+     */
+    public void awaitDurable(long recordSequence) {
+        lock.lock();
+        try {
+            while (durableSequence < recordSequence) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Journal writer failed", failure);
+                }
+                flushed.awaitUninterruptibly(); // a closing journal still flushes its last batch
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the current segment and starts a new one, used before a snapshot.
+     * The seats held right now are written again into the new segment.
+     *
+     * @return The sequence number of the first record in the new segment; every
+     * record before it was already applied to the seats.
+     */
+    public long roll() {
+        lock.lock();
+        try {
+            long request = ++rollRequests;
+            batchReady.signal();
+            while (completedRolls < request) {
+                checkOpen();
+                flushed.awaitUninterruptibly();
+            }
+            for (Long seat : heldSeats.toArray(new Long[0])) {
+                while (activeBuffer.remaining() < RECORD_SIZE && !closed) {
+                    bufferFree.awaitUninterruptibly();
+                }
+                checkOpen();
+                // Written only if still held, a confirmation may have come in while waiting
+                if (heldSeats.contains(seat)) {
+                    activeBuffer.put(HOLD).putInt((int) (seat >>> 32)).putInt(seat.intValue());
+                    sequence++;
+                }
+            }
+            return segmentStart;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the seats that were held when the fleet was recovered, so the next segment keeps them.
+     *
+     * @param seats The held seats, bus ID above seat number (see {@link #heldSeat}).
+     */
+    void addHeldSeats(Set<Long> seats) {
+        lock.lock();
+        try {
+            heldSeats.addAll(seats);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The sequence number of the last appended record.
+     */
+    public long getSequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of fsyncs done so far.
+     */
+    public long getFsyncCount() {
+        lock.lock();
+        try {
+            return fsyncCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the remaining records, forces them to disk and stops the writer thread.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            batchReady.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Follows which seats are held, under the lock.
+     */
+    private void trackHold(byte operation, int busId, int seatNumber) {
+        if (operation == HOLD) {
+            heldSeats.add(heldSeat(busId, seatNumber));
+        } else if (heldSeats.isEmpty()) {
+            return;
+        } else if (operation == CONFIRM || operation == CANCEL) {
+            heldSeats.remove(heldSeat(busId, seatNumber));
+        } else if (operation == RESET) {
+            heldSeats.removeIf(seat -> (int) (seat >>> 32) == busId);
+        }
+    }
+
+    /**
+     * @return The key of a held seat: the bus ID above the seat number.
+     */
+    static long heldSeat(int busId, int seatNumber) {
+        return (long) busId << 32 | seatNumber;
+    }
+
+    /**
+     * Writer thread: waits for a full batch (or the maximum delay), then writes and forces it.
+     */
+    private void writeLoop() {
+        try {
+            while (true) {
+                ByteBuffer batch;
+                long batchSequence;
+                boolean roll;
+                boolean stop;
+
+                lock.lock();
+                try {
+                    long deadline = System.nanoTime() + maxDelayNanos;
+                    while (!closed && rollRequests == completedRolls && activeBuffer.position() < batchSize * RECORD_SIZE) {
+                        long remaining = activeBuffer.position() == 0 ? maxDelayNanos : deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            break; // the oldest record waited long enough
+                        }
+                        batchReady.awaitNanos(remaining);
+                    }
+                    // Swap buffers so bookings can continue while this batch is written
+                    batch = activeBuffer;
+                    activeBuffer = flushBuffer;
+                    flushBuffer = batch;
+                    batchSequence = sequence;
+                    roll = rollRequests != completedRolls;
+                    stop = closed;
+                    bufferFree.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                batch.flip();
+                boolean written = batch.hasRemaining();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                if (written) {
+                    channel.force(false); // one fsync for the whole batch
+                }
+                batch.clear();
+
+                if (roll) {
+                    channel.close();
+                    channel = openSegment(batchSequence);
+                }
+
+                lock.lock();
+                try {
+                    durableSequence = batchSequence;
+                    if (written) {
+                        fsyncCount++;
+                    }
+                    if (roll) {
+                        segmentStart = batchSequence;
+                        completedRolls = rollRequests;
+                    }
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                if (stop) {
+                    channel.close();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(new InterruptedIOException("Journal writer was interrupted"));
+        }
+    }
+
+    /**
+     * Stops the journal after the writer failed and wakes up every waiting thread.
+     */
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            failure = e;
+            closed = true;
+            bufferFree.signalAll();
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Throws if the journal was closed or the writer failed.
+     */
+    private void checkOpen() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal writer failed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+    }
+
+    /**
+     * Creates the segment file that starts at a sequence number.
+     */
+    private FileChannel openSegment(long startSequence) throws IOException {
+        return FileChannel.open(segmentPath(directory, startSequence),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @return The path of the segment file that starts at a sequence number.
+     */
+    static Path segmentPath(Path directory, long startSequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, startSequence, SEGMENT_SUFFIX));
+    }
+}
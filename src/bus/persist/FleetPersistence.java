@@ -0,0 +1,322 @@
+package bus.persist;
+
+import bus.BookingEngine;
+import bus.SeatStore;
+import bus.trip.TripInventory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps the seats of a {@link BookingEngine} on disk.
+ * Every change goes to the {@link BookingJournal}; a {@link SeatSnapshot} is written
+ * periodically, after which older journal segments are deleted. On startup the latest
+ * snapshot is loaded and the journal written after it is replayed. Seats that were held
+ * and not confirmed are booked again and listed by {@link #getHeldSeats}, so their holds
+ * can be started again.
+ * <p>
+ * The seats sold on trips of the {@link TripInventory} go to a {@link TripJournal} in the
+ * same directory, flushed as often as the journal waits for a batch at most.
+ */
+public final class FleetPersistence implements AutoCloseable {
+
+    private final Path directory;
+    private final BookingEngine bookingEngine;
+    private final BookingJournal journal;
+    private final TripInventory tripInventory;
+    private final TripJournal tripJournal;
+    private final ScheduledExecutorService scheduler;
+    private final long replayedRecords;
+    private final Set<Long> heldSeats = new HashSet<>();
+
+    /**
+     * Recovers the seats from a data directory, or creates an empty fleet if it has no snapshot yet.
+     *
+     * @param directory               The data directory.
+     * @param numberOfBuses           The number of buses of a new fleet, ignored when recovering.
+     * @param numberSeatsPerBus       The number of seats of a new fleet, ignored when recovering.
+     * @param batchSize               The number of journal records per fsync.
+     * @param maxDelayMillis          The longest time a journal record waits for its batch.
+     * @param snapshotIntervalSeconds The time between snapshots, 0 to only snapshot on close.
+     */
+    public FleetPersistence(Path directory, int numberOfBuses, int numberSeatsPerBus, int batchSize, long maxDelayMillis,
+                            long snapshotIntervalSeconds) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+
+        // Load the latest snapshot, or start a new fleet with an empty one
+        List<Long> snapshots = listSequences(directory, SeatSnapshot.SNAPSHOT_PREFIX, SeatSnapshot.SNAPSHOT_SUFFIX);
+        SeatStore seatStore;
+        long snapshotSequence;
+        if (snapshots.isEmpty()) {
+            seatStore = new SeatStore(numberOfBuses, numberSeatsPerBus);
+            snapshotSequence = 0;
+            SeatSnapshot.write(directory, seatStore, snapshotSequence);
+        } else {
+            snapshotSequence = snapshots.get(snapshots.size() - 1);
+            seatStore = SeatSnapshot.read(SeatSnapshot.snapshotPath(directory, snapshotSequence));
+        }
+
+        // Replay the journal records written after the snapshot
+        long nextSequence = snapshotSequence;
+        long replayed = 0;
+        for (long segmentStart : listSequences(directory, BookingJournal.SEGMENT_PREFIX, BookingJournal.SEGMENT_SUFFIX)) {
+            long[] result = replaySegment(BookingJournal.segmentPath(directory, segmentStart), segmentStart, snapshotSequence, seatStore, heldSeats);
+            replayed += result[0];
+            nextSequence = Math.max(nextSequence, result[1]);
+        }
+        this.replayedRecords = replayed;
+
+        this.bookingEngine = new BookingEngine(seatStore);
+        this.journal = new BookingJournal(directory, nextSequence, batchSize, maxDelayMillis);
+        this.journal.addHeldSeats(heldSeats);
+        this.bookingEngine.addListener(journal);
+
+        this.tripInventory = new TripInventory(seatStore.getNumberOfBuses(), seatStore.getNumberSeatsPerBus());
+        this.tripJournal = new TripJournal(directory, tripInventory);
+        this.tripInventory.addListener(tripJournal);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "seat-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (snapshotIntervalSeconds > 0) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    snapshot();
+                } catch (IOException e) {
+                    System.err.println("-> Error: Snapshot failed: " + e.getMessage());
+                }
+            }, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        }
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                tripJournal.flush();
+            } catch (IOException e) {
+                System.err.println("-> Error: Trip journal flush failed, trip sales are rejected: " + e.getMessage());
+                throw new UncheckedIOException(e); // ends the periodic flushes, the journal stays failed
+            }
+        }, maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks whether a data directory already holds a fleet.
+     *
+     * @param directory The data directory.
+     * @return True if a snapshot exists.
+     */
+    public static boolean exists(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return false;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SeatSnapshot.SNAPSHOT_PREFIX + "*" + SeatSnapshot.SNAPSHOT_SUFFIX)) {
+            return files.iterator().hasNext();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the seats and deletes the journal segments and snapshots it replaces.
+     */
+    public synchronized void snapshot() throws IOException {
+        long sequence = journal.roll(); // every record before this is already applied to the seats
+        SeatSnapshot.write(directory, bookingEngine.getSeatStore(), sequence);
+
+        for (long older : listSequences(directory, SeatSnapshot.SNAPSHOT_PREFIX, SeatSnapshot.SNAPSHOT_SUFFIX)) {
+            if (older < sequence) {
+                Files.deleteIfExists(SeatSnapshot.snapshotPath(directory, older));
+            }
+        }
+        for (long segmentStart : listSequences(directory, BookingJournal.SEGMENT_PREFIX, BookingJournal.SEGMENT_SUFFIX)) {
+            if (segmentStart < sequence) {
+                Files.deleteIfExists(BookingJournal.segmentPath(directory, segmentStart));
+            }
+        }
+        tripJournal.snapshot(tripInventory);
+    }
+
+    /**
+     * Waits until every seat change made so far is forced to disk, so it can be confirmed to a
+     * client. The changes of concurrent callers go to disk with the same fsync (group commit).
+     */
+    public void awaitBookingsDurable() {
+        journal.awaitDurable(journal.getSequence());
+    }
+
+    /**
+     * Writes every trip sale made so far and forces it to disk, so it can be confirmed to a client.
+     * Concurrent callers wait for one flush that writes the sales of all of them.
+     */
+    public void awaitTripsDurable() {
+        try {
+            tripJournal.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Trip journal flush failed", e);
+        }
+    }
+
+    /**
+     * @return The engine whose changes are saved.
+     */
+    public BookingEngine getBookingEngine() {
+        return bookingEngine;
+    }
+
+    /**
+     * @return The journal the changes are written to.
+     */
+    public BookingJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return The trips whose sold seats are saved.
+     */
+    public TripInventory getTripInventory() {
+        return tripInventory;
+    }
+
+    /**
+     * @return The seats that were held and not confirmed when the fleet was recovered,
+     * as bus ID above seat number; they are booked in the engine.
+     */
+    public long[] getHeldSeats() {
+        long[] seats = new long[heldSeats.size()];
+        int i = 0;
+        for (long seat : heldSeats) {
+            seats[i++] = seat;
+        }
+        return seats;
+    }
+
+    /**
+     * @return The number of journal records replayed on startup.
+     */
+    public long getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    /**
+     * Stops the periodic snapshots and flushes, writes a final snapshot and closes the journals.
+     */
+    @Override
+    public void close() throws IOException {
+        // Not interrupted: an interrupt during a write would close the file channel
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            snapshot();
+        } finally {
+            try {
+                journal.close();
+            } finally {
+                tripJournal.close();
+            }
+        }
+    }
+
+    /**
+     * Applies the records of one journal segment that come after the snapshot.
+     * A partly written record at the end (from a crash) is cut off.
+     *
+     * @return The number of applied records and the sequence number after the segment.
+     */
+    private static long[] replaySegment(Path file, long segmentStart, long snapshotSequence, SeatStore seatStore, Set<Long> heldSeats) throws IOException {
+        long applied = 0;
+        long sequence = segmentStart;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long completeSize = channel.size() - channel.size() % BookingJournal.RECORD_SIZE;
+            if (completeSize != channel.size()) {
+                channel.truncate(completeSize); // drop the torn record
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BookingJournal.RECORD_SIZE * 8192);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= BookingJournal.RECORD_SIZE) {
+                    byte operation = buffer.get();
+                    int busId = buffer.getInt();
+                    int seatNumber = buffer.getInt();
+                    if (sequence >= snapshotSequence) {
+                        apply(seatStore, heldSeats, operation, busId, seatNumber, file);
+                        applied++;
+                    }
+                    sequence++;
+                }
+                buffer.compact(); // keep a record that was split over two reads
+            }
+        }
+        return new long[]{applied, sequence};
+    }
+
+    /**
+     * Applies one journal record. Records set the seat to its new state, so applying a
+     * change the snapshot already contains does no harm.
+     */
+    private static void apply(SeatStore seatStore, Set<Long> heldSeats, byte operation, int busId, int seatNumber, Path file) throws IOException {
+        try {
+            switch (operation) {
+                case BookingJournal.BOOK:
+                    seatStore.book(busId, seatNumber);
+                    break;
+                case BookingJournal.CANCEL:
+                    seatStore.cancel(busId, seatNumber);
+                    heldSeats.remove(BookingJournal.heldSeat(busId, seatNumber));
+                    break;
+                case BookingJournal.RESET:
+                    seatStore.reset(busId);
+                    heldSeats.removeIf(seat -> (int) (seat >>> 32) == busId);
+                    break;
+                case BookingJournal.HOLD:
+                    seatStore.book(busId, seatNumber);
+                    heldSeats.add(BookingJournal.heldSeat(busId, seatNumber));
+                    break;
+                case BookingJournal.CONFIRM:
+                    heldSeats.remove(BookingJournal.heldSeat(busId, seatNumber));
+                    break;
+                default:
+                    throw new IOException("Unknown journal operation " + operation + " in " + file);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Journal record does not fit the fleet in " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lists the sequence numbers in the names of snapshot or journal files, in ascending order.
+     */
+    static List<Long> listSequences(Path directory, String prefix, String suffix) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    sequences.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // not one of our files
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+}
@@ -0,0 +1,108 @@
+package bus.persist;
+
+import bus.SeatStore;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads and writes compact binary snapshots of the seat bitmap.
+ * A snapshot holds the fleet size, the journal sequence number it starts replaying from,
+ * and the raw seat words of every bus; it is written and read through memory-mapped files.
+ */
+public final class SeatSnapshot {
+
+    // File layout: magic, version, buses, seats per bus, journal sequence, then the seat words
+    private static final int MAGIC = 0x42555353; // "BUSS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8;
+
+    // File names of snapshots
+    static final String SNAPSHOT_PREFIX = "snapshot-";
+    static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private SeatSnapshot() {
+    }
+
+    /**
+     * Writes the seats to a new snapshot file. Seats may change while the snapshot is written;
+     * replaying the journal from journalSequence repairs every seat that changed.
+     *
+     * @param directory       The directory of the snapshots.
+     * @param seatStore       The seats to save.
+     * @param journalSequence The first journal record that is not yet applied for sure.
+     * @return The path of the snapshot file.
+     */
+    public static Path write(Path directory, SeatStore seatStore, long journalSequence) throws IOException {
+        int numberOfBuses = seatStore.getNumberOfBuses();
+        int wordsPerBus = seatStore.getWordsPerBus();
+        long size = HEADER_SIZE + (long) numberOfBuses * wordsPerBus * Long.BYTES;
+        Path target = snapshotPath(directory, journalSequence);
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mapped.putInt(MAGIC).putInt(VERSION)
+                    .putInt(numberOfBuses).putInt(seatStore.getNumberSeatsPerBus())
+                    .putLong(journalSequence);
+            LongBuffer words = mapped.asLongBuffer();
+            for (int busId = 1; busId <= numberOfBuses; busId++) {
+                for (int word = 0; word < wordsPerBus; word++) {
+                    words.put(seatStore.getSeatWord(busId, word));
+                }
+            }
+            mapped.force();
+        }
+        // Replace the file in one step so a crash never leaves a half-written snapshot
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+
+    /**
+     * Reads a snapshot file into a new seat inventory.
+     *
+     * @param file The snapshot file.
+     * @return The seats saved in the snapshot.
+     */
+    public static SeatStore read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                throw new IOException("Not a seat snapshot: " + file);
+            }
+            int numberOfBuses = mapped.getInt();
+            int numberSeatsPerBus = mapped.getInt();
+            mapped.getLong(); // journal sequence, also part of the file name
+
+            SeatStore seatStore = new SeatStore(numberOfBuses, numberSeatsPerBus);
+            int wordsPerBus = seatStore.getWordsPerBus();
+            if (channel.size() != HEADER_SIZE + (long) numberOfBuses * wordsPerBus * Long.BYTES) {
+                throw new IOException("Snapshot is truncated: " + file);
+            }
+            LongBuffer words = mapped.asLongBuffer();
+            for (int busId = 1; busId <= numberOfBuses; busId++) {
+                for (int word = 0; word < wordsPerBus; word++) {
+                    long seats = words.get();
+                    if (seats != 0) {
+                        seatStore.restoreSeatWord(busId, word, seats);
+                    }
+                }
+            }
+            return seatStore;
+        }
+    }
+
+    /**
+     * @return The path of the snapshot that starts replaying at a journal sequence number.
+     */
+    static Path snapshotPath(Path directory, long journalSequence) {
+        return directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, journalSequence, SNAPSHOT_SUFFIX));
+    }
+}
@@ -0,0 +1,311 @@
+package bus.persist;
+
+import bus.trip.TripInventory;
+import bus.trip.TripListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * This class represents the journal of the seats sold on trips of a {@link TripInventory}.
+ * Sales only copy a small record into a memory buffer; {@link #flush} writes the buffer and forces
+ * it to disk with one fsync, {@link FleetPersistence} calls it every few milliseconds.
+ * <p>
+ * The journal is kept in generations: "trips-N.log" holds the changes made after generation N
+ * started, and "trips-N.snapshot" every trip with bookings, copied after generation N started.
+ * A snapshot may already contain some changes of its log; replaying them again does no harm,
+ * since every record sets a seat to its new state. On startup the latest snapshot and the logs
+ * from its generation on are replayed, then a new generation starts with a fresh snapshot.
+ * Every record is {@link #RECORD_SIZE} bytes: operation, bus ID, departure minute, seat number.
+ * <p>
+ * Once a flush fails, the journal stops like the {@link BookingJournal} does: every later sale
+ * and flush throws, so no sale is confirmed that can no longer be saved.
+ */
+public final class TripJournal implements TripListener, AutoCloseable {
+
+    // Record layout
+    public static final int RECORD_SIZE = 1 + 4 + 8 + 4;
+    static final byte BOOK = 1;
+    static final byte CANCEL = 2;
+    static final byte EVICT = 3;
+
+    // File names of the generations
+    static final String PREFIX = "trips-";
+    static final String LOG_SUFFIX = ".log";
+    static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private final Path directory;
+    private final long replayedRecords;
+
+    // Records are appended to the active buffer while a flush writes the other one
+    private ByteBuffer activeBuffer = ByteBuffer.allocate(RECORD_SIZE * 4096);
+    private ByteBuffer flushBuffer = ByteBuffer.allocate(RECORD_SIZE * 4096);
+
+    // Held while the log file is written, forced or replaced; taken before the lock on this
+    private final Object fileLock = new Object();
+    private FileChannel channel;
+    private long generation;
+    // Guarded by the lock on this
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * Loads the trips saved in a directory into an inventory and starts a new generation.
+     * The journal is not added to the inventory as a listener yet.
+     *
+     * @param directory The data directory.
+     * @param inventory An inventory without bookings, of the same fleet size as the saved one.
+     */
+    public TripJournal(Path directory, TripInventory inventory) throws IOException {
+        this.directory = directory;
+        List<Long> snapshots = FleetPersistence.listSequences(directory, PREFIX, SNAPSHOT_SUFFIX);
+        List<Long> logs = FleetPersistence.listSequences(directory, PREFIX, LOG_SUFFIX);
+        long start = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+        long replayed = 0;
+        if (!snapshots.isEmpty()) {
+            replayed += replay(path(start, SNAPSHOT_SUFFIX), inventory);
+        }
+        long last = start;
+        for (long log : logs) {
+            if (log >= start) {
+                replayed += replay(path(log, LOG_SUFFIX), inventory);
+            }
+            last = Math.max(last, log);
+        }
+        this.replayedRecords = replayed;
+
+        // Start from a snapshot of the replayed trips, so the old files can go
+        this.generation = snapshots.isEmpty() && logs.isEmpty() ? 0 : last + 1;
+        this.channel = openLog(generation);
+        writeSnapshot(inventory, generation);
+    }
+
+    @Override
+    public void seatBooked(int busId, long departureMinute, int seatNumber) {
+        append(BOOK, busId, departureMinute, seatNumber);
+    }
+
+    @Override
+    public void seatCanceled(int busId, long departureMinute, int seatNumber) {
+        append(CANCEL, busId, departureMinute, seatNumber);
+    }
+
+    @Override
+    public void tripsEvicted(long departureMinute) {
+        append(EVICT, 0, departureMinute, 0);
+    }
+
+    /**
+     * Writes the buffered records to the log and forces them to disk.
+     */
+    public void flush() throws IOException {
+        synchronized (fileLock) {
+            ByteBuffer batch;
+            synchronized (this) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (activeBuffer.position() == 0) {
+                    return;
+                }
+                // Swap buffers so sales can continue while this batch is written
+                batch = activeBuffer;
+                activeBuffer = flushBuffer;
+                flushBuffer = batch;
+            }
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+                batch.clear();
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Starts a new generation and writes a snapshot of the inventory for it, then deletes the
+     * files of the older generations.
+     *
+     * @param inventory The inventory this journal listens to.
+     */
+    public void snapshot(TripInventory inventory) throws IOException {
+        long snapshotGeneration;
+        synchronized (fileLock) {
+            flush();
+            channel.close();
+            snapshotGeneration = ++generation; // the records that follow go to the new log
+            channel = openLog(snapshotGeneration);
+        }
+        writeSnapshot(inventory, snapshotGeneration);
+    }
+
+    /**
+     * @return The number of records replayed on startup.
+     */
+    public long getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    /**
+     * Writes the remaining records, forces them to disk and closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (fileLock) {
+            try {
+                flush();
+            } finally {
+                synchronized (this) {
+                    closed = true;
+                }
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Adds a record to the buffer, which grows if the sales come faster than the flushes.
+     */
+    private synchronized void append(byte operation, int busId, long departureMinute, int seatNumber) {
+        if (failure != null) {
+            throw new UncheckedIOException("Trip journal failed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Trip journal is closed");
+        }
+        if (activeBuffer.remaining() < RECORD_SIZE) {
+            ByteBuffer larger = ByteBuffer.allocate(activeBuffer.capacity() * 2);
+            activeBuffer.flip();
+            activeBuffer = larger.put(activeBuffer);
+        }
+        activeBuffer.put(operation).putInt(busId).putLong(departureMinute).putInt(seatNumber);
+    }
+
+    /**
+     * Writes every trip of the inventory as BOOK records after the first bookable departure,
+     * then deletes the files of the generations before.
+     */
+    private void writeSnapshot(TripInventory inventory, long snapshotGeneration) throws IOException {
+        Path target = path(snapshotGeneration, SNAPSHOT_SUFFIX);
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 4096);
+            buffer.put(EVICT).putInt(0).putLong(inventory.getEvictedBefore()).putInt(0);
+            inventory.exportTrips((busId, departureMinute, bookedSeats, seatWords) -> {
+                for (int word = 0; word < seatWords.length; word++) {
+                    for (long bits = seatWords[word]; bits != 0; bits &= bits - 1) {
+                        if (buffer.remaining() < RECORD_SIZE) {
+                            writeFully(file, buffer);
+                        }
+                        int seatNumber = word * Long.SIZE + Long.numberOfTrailingZeros(bits) + 1;
+                        buffer.put(BOOK).putInt(busId).putLong(departureMinute).putInt(seatNumber);
+                    }
+                }
+            });
+            writeFully(file, buffer);
+            file.force(false);
+        }
+        // Replace the file in one step so a crash never leaves a half-written snapshot
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (String suffix : new String[]{SNAPSHOT_SUFFIX, LOG_SUFFIX}) {
+            for (long older : FleetPersistence.listSequences(directory, PREFIX, suffix)) {
+                if (older < snapshotGeneration) {
+                    Files.deleteIfExists(path(older, suffix));
+                }
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel file, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Applies the records of a log or snapshot to the inventory. A partly written record at the
+     * end (from a crash) is cut off.
+     *
+     * @return The number of applied records.
+     */
+    private static long replay(Path file, TripInventory inventory) throws IOException {
+        long applied = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long completeSize = channel.size() - channel.size() % RECORD_SIZE;
+            if (completeSize != channel.size()) {
+                channel.truncate(completeSize); // drop the torn record
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 4096);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    apply(inventory, buffer.get(), buffer.getInt(), buffer.getLong(), buffer.getInt(), file);
+                    applied++;
+                }
+                buffer.compact(); // keep a record that was split over two reads
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Applies one record. Sales of trips that were evicted later in the journal are skipped.
+     */
+    private static void apply(TripInventory inventory, byte operation, int busId, long departureMinute, int seatNumber,
+                              Path file) throws IOException {
+        try {
+            switch (operation) {
+                case BOOK:
+                    if (departureMinute >= inventory.getEvictedBefore()) {
+                        inventory.book(busId, departureMinute, seatNumber);
+                    }
+                    break;
+                case CANCEL:
+                    if (departureMinute >= inventory.getEvictedBefore()) {
+                        inventory.cancel(busId, departureMinute, seatNumber);
+                    }
+                    break;
+                case EVICT:
+                    inventory.evictDepartedBefore(departureMinute, null);
+                    break;
+                default:
+                    throw new IOException("Unknown trip journal operation " + operation + " in " + file);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Trip journal record does not fit the fleet in " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates the log file of a generation.
+     */
+    private FileChannel openLog(long logGeneration) throws IOException {
+        return FileChannel.open(path(logGeneration, LOG_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @return The path of a log or snapshot file of a generation.
+     */
+    private Path path(long fileGeneration, String suffix) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, fileGeneration, suffix));
+    }
+}
@@ -0,0 +1,336 @@
+package bus.query;
+
+import bus.BookingEngine;
+import bus.BookingListener;
+import bus.FleetSearch;
+import bus.SeatStore;
+
+import java.util.Arrays;
+
+/**
+ * This class represents an index of the fleet that answers seat queries without visiting every bus.
+ * <p>
+ * Buses are kept in one linked list per number of free seats, so a booking, cancel or reset
+ * moves a bus between two lists in constant time, and the buses with the most or the fewest
+ * free seats are found by walking the lists from either end. For single seats the index keeps
+ * the seat bits turned around: one bitset per seat with a bit for every bus, so the buses
+ * where a seat is free are read {@value #BLOCK_SIZE} at a time. This costs as much memory as
+ * the seat bits of the fleet.
+ * <p>
+ * The index follows the engine as a {@link BookingListener}, so it must be created before the
+ * engine is shared with other threads. The buses are spread over {@value #PARTITIONS} partitions
+ * by blocks of {@value #BLOCK_SIZE} buses, each partition with its own lists and lock, so the
+ * changes of buses in different partitions do not wait for each other, and every word of the
+ * bitsets belongs to one partition. A search visits the partitions one after another and sees
+ * each of them at one moment.
+ */
+public final class FreeSeatIndex implements BookingListener, FleetSearch {
+
+    // Number of buses in one word of the per-seat bitsets
+    private static final int BLOCK_SIZE = Long.SIZE;
+    // Number of partitions with their own lists and lock, a power of two
+    private static final int PARTITIONS = 64;
+
+    private final int numberOfBuses;
+    private final int numberSeatsPerBus;
+    private final int blocks;
+    private final Object[] locks = new Object[PARTITIONS];
+    private final int[] partitionSizes = new int[PARTITIONS];
+
+    // Buses by free seats: head of the list for each partition and count, links between bus indexes (0-based)
+    private final int[] heads;
+    private final int[] listSizes;
+    private final int[] next;
+    private final int[] previous;
+    private final short[] freeSeats;
+
+    // Buses with the seat booked, bus i of seat s is bit i % 64 of word (s - 1) * blocks + i / 64
+    private final long[] bookedBuses;
+
+    /**
+     * Builds the index from the current seats and starts following the engine.
+     *
+     * @param bookingEngine The engine whose changes update the index.
+     */
+    public FreeSeatIndex(BookingEngine bookingEngine) {
+        SeatStore seatStore = bookingEngine.getSeatStore();
+        this.numberOfBuses = seatStore.getNumberOfBuses();
+        this.numberSeatsPerBus = seatStore.getNumberSeatsPerBus();
+        this.blocks = (numberOfBuses + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.heads = new int[PARTITIONS * (numberSeatsPerBus + 1)];
+        this.listSizes = new int[PARTITIONS * (numberSeatsPerBus + 1)];
+        this.next = new int[numberOfBuses];
+        this.previous = new int[numberOfBuses];
+        this.freeSeats = new short[numberOfBuses];
+        this.bookedBuses = new long[numberSeatsPerBus * blocks];
+        Arrays.fill(heads, -1);
+        for (int i = 0; i < PARTITIONS; i++) {
+            locks[i] = new Object();
+        }
+
+        long[] words = new long[seatStore.getWordsPerBus()];
+        for (int bus = 0; bus < numberOfBuses; bus++) {
+            seatStore.copySeatWords(bus + 1, words);
+            int booked = 0;
+            for (int i = 0; i < words.length; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    int seat = (i << 6) + Long.numberOfTrailingZeros(word); // 0-based
+                    bookedBuses[seat * blocks + bus / BLOCK_SIZE] |= 1L << bus;
+                    booked++;
+                }
+            }
+            freeSeats[bus] = (short) (numberSeatsPerBus - booked);
+            link(bus);
+            partitionSizes[partitionOf(bus)]++;
+        }
+        bookingEngine.addListener(this);
+    }
+
+    @Override
+    public void seatBooked(int busId, int seatNumber) {
+        int bus = busId - 1;
+        synchronized (locks[partitionOf(bus)]) {
+            bookedBuses[(seatNumber - 1) * blocks + bus / BLOCK_SIZE] |= 1L << bus;
+            move(bus, freeSeats[bus] - 1);
+        }
+    }
+
+    @Override
+    public void seatCanceled(int busId, int seatNumber) {
+        int bus = busId - 1;
+        synchronized (locks[partitionOf(bus)]) {
+            bookedBuses[(seatNumber - 1) * blocks + bus / BLOCK_SIZE] &= ~(1L << bus);
+            move(bus, freeSeats[bus] + 1);
+        }
+    }
+
+    @Override
+    public void busReset(int busId, long[] releasedSeats) {
+        int bus = busId - 1;
+        int block = bus / BLOCK_SIZE;
+        long busBit = 1L << bus;
+        synchronized (locks[partitionOf(bus)]) {
+            for (int i = 0; i < releasedSeats.length; i++) {
+                for (long word = releasedSeats[i]; word != 0; word &= word - 1) {
+                    bookedBuses[((i << 6) + Long.numberOfTrailingZeros(word)) * blocks + block] &= ~busBit;
+                }
+            }
+            move(bus, numberSeatsPerBus);
+        }
+    }
+
+    /**
+     * Finds the buses that have room for a group.
+     *
+     * @param minimum The smallest number of free seats.
+     * @return The bus IDs in ascending order.
+     */
+    @Override
+    public int[] findBusesWithFreeSeats(int minimum) {
+        checkSeatCount(minimum);
+        int[][] found = new int[PARTITIONS][];
+        int total = 0;
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            synchronized (locks[partition]) {
+                int count = 0;
+                for (int free = minimum; free <= numberSeatsPerBus; free++) {
+                    count += listSizes[listIndex(partition, free)];
+                }
+                found[partition] = collect(partition, numberSeatsPerBus, minimum, count);
+            }
+            total += found[partition].length;
+        }
+        int[] busIds = new int[total];
+        int offset = 0;
+        for (int[] partitionBusIds : found) {
+            System.arraycopy(partitionBusIds, 0, busIds, offset, partitionBusIds.length);
+            offset += partitionBusIds.length;
+        }
+        Arrays.sort(busIds);
+        return busIds;
+    }
+
+    /**
+     * Finds the buses with the most free seats.
+     *
+     * @param count The number of buses to find.
+     * @return The bus IDs, the emptiest first; buses with the same free seats are in no particular order.
+     */
+    @Override
+    public int[] findEmptiestBuses(int count) {
+        return findByFreeSeats(count, true);
+    }
+
+    /**
+     * Finds the buses with the fewest free seats.
+     *
+     * @param count The number of buses to find.
+     * @return The bus IDs, the fullest first; buses with the same free seats are in no particular order.
+     */
+    @Override
+    public int[] findFullestBuses(int count) {
+        return findByFreeSeats(count, false);
+    }
+
+    /**
+     * Finds the buses where a seat is still available.
+     *
+     * @param seatNumber The seat number.
+     * @return The bus IDs in ascending order.
+     */
+    @Override
+    public int[] findBusesWithSeatFree(int seatNumber) {
+        if (seatNumber < 1 || seatNumber > numberSeatsPerBus) {
+            throw new IllegalArgumentException("Seat number must be between 1 and " + numberSeatsPerBus + ": " + seatNumber);
+        }
+        int offset = (seatNumber - 1) * blocks;
+        int lastBuses = numberOfBuses - (blocks - 1) * BLOCK_SIZE; // buses in the last word
+        long lastMask = lastBuses == BLOCK_SIZE ? -1L : (1L << lastBuses) - 1;
+        long[] freeBuses = new long[blocks];
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            synchronized (locks[partition]) {
+                for (int block = partition; block < blocks; block += PARTITIONS) {
+                    freeBuses[block] = ~bookedBuses[offset + block];
+                }
+            }
+        }
+        freeBuses[blocks - 1] &= lastMask; // no buses past the end of the fleet
+        int free = 0;
+        for (long word : freeBuses) {
+            free += Long.bitCount(word);
+        }
+        int[] busIds = new int[free];
+        int found = 0;
+        for (int block = 0; block < blocks; block++) {
+            for (long word = freeBuses[block]; word != 0; word &= word - 1) {
+                busIds[found++] = block * BLOCK_SIZE + Long.numberOfTrailingZeros(word) + 1;
+            }
+        }
+        return busIds;
+    }
+
+    /**
+     * @param busId The ID of the bus.
+     * @return The free seats of the bus according to the index.
+     */
+    public int getFreeSeats(int busId) {
+        if (busId < 1 || busId > numberOfBuses) {
+            throw new IllegalArgumentException("Bus ID must be between 1 and " + numberOfBuses + ": " + busId);
+        }
+        synchronized (locks[partitionOf(busId - 1)]) {
+            return freeSeats[busId - 1];
+        }
+    }
+
+    /**
+     * Takes the emptiest or fullest buses of every partition and keeps the first of all of them.
+     */
+    private int[] findByFreeSeats(int count, boolean emptiest) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of buses must not be negative: " + count);
+        }
+        count = Math.min(count, numberOfBuses);
+        int fromFree = emptiest ? numberSeatsPerBus : 0;
+        int toFree = emptiest ? 0 : numberSeatsPerBus;
+
+        // Sort key: the rank of the free seats above the bus ID
+        long[] candidates = new long[(int) Math.min((long) count * PARTITIONS, numberOfBuses)];
+        int found = 0;
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            synchronized (locks[partition]) {
+                for (int busId : collect(partition, fromFree, toFree, Math.min(count, partitionSizes[partition]))) {
+                    int free = freeSeats[busId - 1];
+                    candidates[found++] = (long) (emptiest ? numberSeatsPerBus - free : free) << 32 | busId;
+                }
+            }
+        }
+        Arrays.sort(candidates, 0, found);
+        int[] busIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            busIds[i] = (int) candidates[i];
+        }
+        return busIds;
+    }
+
+    /**
+     * Walks the lists of a partition from one free-seat count towards another and collects bus IDs.
+     * Called under the lock of the partition.
+     */
+    private int[] collect(int partition, int fromFree, int toFree, int count) {
+        int[] busIds = new int[count];
+        int found = 0;
+        int step = fromFree <= toFree ? 1 : -1;
+        for (int free = fromFree; found < count; free += step) {
+            for (int bus = heads[listIndex(partition, free)]; bus != -1 && found < count; bus = next[bus]) {
+                busIds[found++] = bus + 1;
+            }
+            if (free == toFree) {
+                break;
+            }
+        }
+        return busIds;
+    }
+
+    /**
+     * Moves a bus to the list of its new number of free seats.
+     */
+    private void move(int bus, int free) {
+        unlink(bus);
+        freeSeats[bus] = (short) free;
+        link(bus);
+    }
+
+    /**
+     * Adds a bus at the head of the list of its free seats.
+     */
+    private void link(int bus) {
+        int list = listIndex(partitionOf(bus), freeSeats[bus]);
+        int head = heads[list];
+        next[bus] = head;
+        previous[bus] = -1;
+        if (head != -1) {
+            previous[head] = bus;
+        }
+        heads[list] = bus;
+        listSizes[list]++;
+    }
+
+    /**
+     * Removes a bus from the list of its free seats.
+     */
+    private void unlink(int bus) {
+        int list = listIndex(partitionOf(bus), freeSeats[bus]);
+        if (previous[bus] == -1) {
+            heads[list] = next[bus];
+        } else {
+            next[previous[bus]] = next[bus];
+        }
+        if (next[bus] != -1) {
+            previous[next[bus]] = previous[bus];
+        }
+        listSizes[list]--;
+    }
+
+    /**
+     * Finds the partition of a bus index (0-based); the buses of a bitset word share it.
+     */
+    private static int partitionOf(int bus) {
+        return (bus / BLOCK_SIZE) & (PARTITIONS - 1);
+    }
+
+    /**
+     * Finds the list of a partition for a number of free seats.
+     */
+    private int listIndex(int partition, int free) {
+        return partition * (numberSeatsPerBus + 1) + free;
+    }
+
+    /**
+     * Validates a number of free seats.
+     */
+    private void checkSeatCount(int seats) {
+        if (seats < 0 || seats > numberSeatsPerBus) {
+            throw new IllegalArgumentException("Number of seats must be between 0 and " + numberSeatsPerBus + ": " + seats);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package bus.render;
+
+import bus.BookingService;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * This class represents the renderer of the "Check Bus" tables.
+ * It writes the same text as the texttablefmt tables with double Unicode borders and
+ * centered cells, but appends the rows straight into one reused buffer: the borders,
+ * header rows and ANSI color fragments are built once, and numbers are appended without
+ * creating strings. The counters of a page are read in one call, so a fleet spread over
+ * shards is asked once per shard. A renderer reuses its buffers, so it must only be used
+ * by one thread.
+ */
+public class FleetRenderer {
+
+    // ANSI colors, the same codes as the menu uses
+    private static final String RED = "\u001B[31m";
+    private static final String BLACK = "\u001B[30m";
+    private static final String GREEN = "\u001B[32m";
+    private static final String BLUE = "\u001B[34m";
+    private static final String RESET = "\u001B[0m"; // added by texttablefmt after a cell with colors
+
+    // Column widths of the overview table (ID, Seat, Available, Unavailable) and of the seat table
+    private static final int[] OVERVIEW_WIDTHS = {10, 20, 20, 20};
+    private static final int SEAT_COLUMNS = 5;
+    private static final int SEAT_WIDTH = 10;
+
+    // Title of the overview of the whole fleet
+    private static final String FLEET_TITLE = "Display All Bus information";
+
+    // Rows of the fleet export that are collected before they are written
+    private static final int EXPORT_ROWS_PER_WRITE = 1024;
+
+    private static final String SPACES = " ".repeat(64);
+
+    private final BookingService bookingService;
+    private final int pageSize;
+    private final StringBuilder buffer = new StringBuilder(4096);
+    private final long[] seatWords;
+    private final int[] rowBusIds;
+    private final int[] rowBookedSeats;
+    private char[] chars = new char[0];
+
+    // Lines and cells that are the same on every page
+    private final String overviewTop;
+    private final String overviewTitleSeparator;
+    private final String overviewSeparator;
+    private final String overviewBottom;
+    private final String overviewHeader;
+    private final String seatsCell;
+    private final String seatTop;
+    private final String seatTitleSeparator;
+    private final String seatSeparator;
+    private final String seatBottom;
+    private final String seatHeader;
+
+    /**
+     * @param bookingService The fleet to render.
+     * @param pageSize       The number of buses on one page of the overview.
+     */
+    public FleetRenderer(BookingService bookingService, int pageSize) {
+        this.bookingService = bookingService;
+        this.pageSize = pageSize;
+        this.seatWords = new long[bookingService.getWordsPerBus()];
+        this.rowBusIds = new int[Math.max(pageSize, EXPORT_ROWS_PER_WRITE)];
+        this.rowBookedSeats = new int[rowBusIds.length];
+
+        int[] seatWidths = new int[SEAT_COLUMNS];
+        Arrays.fill(seatWidths, SEAT_WIDTH);
+
+        this.overviewTop = border('╔', '═', '═', '╗', OVERVIEW_WIDTHS) + "\n";
+        this.overviewTitleSeparator = border('╟', '─', '┬', '╢', OVERVIEW_WIDTHS) + "\n";
+        this.overviewSeparator = border('╟', '─', '┼', '╢', OVERVIEW_WIDTHS) + "\n";
+        this.overviewBottom = border('╚', '═', '╧', '╝', OVERVIEW_WIDTHS);
+        this.seatTop = border('╔', '═', '═', '╗', seatWidths) + "\n";
+        this.seatTitleSeparator = border('╟', '─', '┬', '╢', seatWidths) + "\n";
+        this.seatSeparator = border('╟', '─', '┼', '╢', seatWidths) + "\n";
+        this.seatBottom = border('╚', '═', '╧', '╝', seatWidths);
+
+        buffer.append('║');
+        appendColoredCell(GREEN, "ID", BLACK, OVERVIEW_WIDTHS[0]);
+        buffer.append('│');
+        appendColoredCell(GREEN, "Seat", BLACK, OVERVIEW_WIDTHS[1]);
+        buffer.append('│');
+        appendColoredCell(GREEN, "Available", BLACK, OVERVIEW_WIDTHS[2]);
+        buffer.append('│');
+        appendColoredCell(RED, "Unavailable", BLACK, OVERVIEW_WIDTHS[3]);
+        buffer.append("║\n");
+        this.overviewHeader = takeBuffer();
+
+        appendColoredCell(BLUE, String.valueOf(bookingService.getNumberSeatsPerBus()), BLACK, OVERVIEW_WIDTHS[1]);
+        this.seatsCell = takeBuffer();
+
+        buffer.append('║');
+        for (int column = 0; column < SEAT_COLUMNS; column++) {
+            if (column > 0) {
+                buffer.append('│');
+            }
+            appendCentered("Seat", SEAT_WIDTH);
+        }
+        buffer.append("║\n");
+        this.seatHeader = takeBuffer();
+    }
+
+    /**
+     * @return The number of pages of the overview.
+     */
+    public int getTotalPages() {
+        return getTotalPages(bookingService.getNumberOfBuses());
+    }
+
+    /**
+     * @param numberOfRows The number of buses in a list.
+     * @return The number of pages needed to show the list.
+     */
+    public int getTotalPages(int numberOfRows) {
+        return (numberOfRows + pageSize - 1) / pageSize;
+    }
+
+    /**
+     * Renders one page of the overview: the ID, seats, available and unavailable seats of each bus.
+     * The returned text is overwritten by the next call.
+     *
+     * @param page The page number, starting at 1.
+     * @return The table, without a line break at the end.
+     */
+    public CharSequence renderPage(int page) {
+        return renderPage(FLEET_TITLE, null, page);
+    }
+
+    /**
+     * Renders one page of a list of buses, such as the result of a search, in the overview layout.
+     * The returned text is overwritten by the next call.
+     *
+     * @param title  The title of the table, at most 50 characters.
+     * @param busIds The buses to show in this order, or null for the whole fleet.
+     * @param page   The page number, starting at 1.
+     * @return The table, without a line break at the end.
+     */
+    public CharSequence renderPage(String title, int[] busIds, int page) {
+        int numberOfRows = busIds == null ? bookingService.getNumberOfBuses() : busIds.length;
+        int totalPages = getTotalPages(numberOfRows);
+        if (page < 1 || page > totalPages) {
+            throw new IllegalArgumentException("Page must be between 1 and " + totalPages + ": " + page);
+        }
+        int firstRow = (page - 1) * pageSize;
+        int lastRow = Math.min(firstRow + pageSize, numberOfRows);
+
+        int rows = lastRow - firstRow;
+        for (int row = 0; row < rows; row++) {
+            rowBusIds[row] = busIds == null ? firstRow + row + 1 : busIds[firstRow + row];
+        }
+        bookingService.copyBookedSeats(rowBusIds, rows, rowBookedSeats);
+
+        buffer.setLength(0);
+        appendOverviewTitle(title, page, totalPages);
+        appendOverviewRows(rows);
+        buffer.append(overviewBottom);
+        return buffer;
+    }
+
+    /**
+     * Renders the seat table of one bus, five seats per row.
+     * The returned text is overwritten by the next call.
+     *
+     * @param busId The ID of the bus, starting at 1.
+     * @return The table, without a line break at the end.
+     */
+    public CharSequence renderBus(int busId) {
+        return renderBus(busId, null);
+    }
+
+    /**
+     * Renders the seat table of one bus, showing held seats with their own symbol.
+     * The returned text is overwritten by the next call.
+     *
+     * @param busId     The ID of the bus, starting at 1.
+     * @param heldWords The seat bits of the held seats, or null if no seat is held.
+     * @return The table, without a line break at the end.
+     */
+    public CharSequence renderBus(int busId, long[] heldWords) {
+        bookingService.copySeatWords(busId, seatWords); // one consistent read per word
+        return renderSeats("Bus " + busId + " Information", seatWords, heldWords);
+    }
+
+    /**
+     * Renders a seat table from seat bits, five seats per row, e.g. for one trip of a bus.
+     * The returned text is overwritten by the next call.
+     *
+     * @param title The title of the table, at most 54 characters.
+     * @param words The seat bits (see {@link bus.SeatStore#getSeatWord}).
+     * @return The table, without a line break at the end.
+     */
+    public CharSequence renderSeats(String title, long[] words) {
+        return renderSeats(title, words, null);
+    }
+
+    /**
+     * Renders a seat table from seat bits, five seats per row: booked seats as (-), held seats
+     * as (*) and available seats as (+). The returned text is overwritten by the next call.
+     *
+     * @param title     The title of the table, at most 54 characters.
+     * @param words     The seat bits of the booked and held seats (see {@link bus.SeatStore#getSeatWord}).
+     * @param heldWords The seat bits of the held seats, or null if no seat is held.
+     * @return The table, without a line break at the end.
+     */
+    public CharSequence renderSeats(String title, long[] words, long[] heldWords) {
+        int numberSeatsPerBus = bookingService.getNumberSeatsPerBus();
+        int titleWidth = SEAT_COLUMNS * SEAT_WIDTH + SEAT_COLUMNS - 1;
+        if (title.length() > titleWidth) {
+            throw new IllegalArgumentException("Title is too long for the table: " + title);
+        }
+
+        buffer.setLength(0);
+        buffer.append(seatTop).append('║');
+        appendCentered(title, titleWidth);
+        buffer.append("║\n").append(seatTitleSeparator).append(seatHeader);
+
+        for (int rowStart = 1; rowStart <= numberSeatsPerBus; rowStart += SEAT_COLUMNS) {
+            buffer.append(seatSeparator).append('║');
+            for (int column = 0; column < SEAT_COLUMNS; column++) {
+                if (column > 0) {
+                    buffer.append('│');
+                }
+                int seatNumber = rowStart + column;
+                if (seatNumber > numberSeatsPerBus) {
+                    buffer.append(SPACES, 0, SEAT_WIDTH); // empty cells fill the last row
+                    continue;
+                }
+                boolean booked = (words[(seatNumber - 1) / 64] & (1L << (seatNumber - 1))) != 0;
+                boolean held = heldWords != null && (heldWords[(seatNumber - 1) / 64] & (1L << (seatNumber - 1))) != 0;
+                String color = held ? BLUE : booked ? RED : GREEN;
+                int padding = SEAT_WIDTH - 4 - digits(seatNumber);
+                buffer.append(SPACES, 0, padding / 2)
+                        .append(color).append(held ? "(*) " : booked ? "(-) " : "(+) ").append(seatNumber).append(color)
+                        .append(SPACES, 0, padding - padding / 2)
+                        .append(RESET);
+            }
+            buffer.append("║\n");
+        }
+        buffer.append(seatBottom);
+        return buffer;
+    }
+
+    /**
+     * Streams the overview of the whole fleet as one table, for exports.
+     * The rows are written in chunks, so the size of the fleet does not matter.
+     *
+     * @param out The writer to write to, it is not flushed or closed.
+     */
+    public void writeFleet(Writer out) throws IOException {
+        buffer.setLength(0);
+        appendOverviewTitle(FLEET_TITLE, 1, 1);
+        int numberOfBuses = bookingService.getNumberOfBuses();
+        for (int firstBusId = 1; firstBusId <= numberOfBuses; firstBusId += EXPORT_ROWS_PER_WRITE) {
+            int rows = Math.min(EXPORT_ROWS_PER_WRITE, numberOfBuses - firstBusId + 1);
+            for (int row = 0; row < rows; row++) {
+                rowBusIds[row] = firstBusId + row;
+            }
+            bookingService.copyBookedSeats(rowBusIds, rows, rowBookedSeats);
+            appendOverviewRows(rows);
+            writeBuffer(out);
+        }
+        buffer.append(overviewBottom).append('\n');
+        writeBuffer(out);
+    }
+
+    /**
+     * Appends the title row and the header row of the overview.
+     */
+    private void appendOverviewTitle(String title, int page, int totalPages) {
+        buffer.append(overviewTop).append('║');
+        int titleWidth = OVERVIEW_WIDTHS[0] + OVERVIEW_WIDTHS[1] + OVERVIEW_WIDTHS[2] + OVERVIEW_WIDTHS[3] + 3;
+        int padding = titleWidth - title.length() - " (Page /)".length() - digits(page) - digits(totalPages);
+        if (padding < 0) {
+            throw new IllegalArgumentException("Title is too long for the table: " + title);
+        }
+        buffer.append(SPACES, 0, padding / 2)
+                .append(title).append(" (Page ").append(page).append('/').append(totalPages).append(')')
+                .append(SPACES, 0, padding - padding / 2)
+                .append("║\n").append(overviewTitleSeparator).append(overviewHeader);
+    }
+
+    /**
+     * Appends the overview rows of the buses and counters read into the row arrays.
+     */
+    private void appendOverviewRows(int rows) {
+        int numberSeatsPerBus = bookingService.getNumberSeatsPerBus();
+        for (int row = 0; row < rows; row++) {
+            int bookedSeats = rowBookedSeats[row];
+            buffer.append(overviewSeparator).append('║');
+            appendCenteredNumber(rowBusIds[row], OVERVIEW_WIDTHS[0], null);
+            buffer.append('│').append(seatsCell).append('│');
+            appendCenteredNumber(numberSeatsPerBus - bookedSeats, OVERVIEW_WIDTHS[2], GREEN);
+            buffer.append('│');
+            appendCenteredNumber(bookedSeats, OVERVIEW_WIDTHS[3], RED);
+            buffer.append("║\n");
+        }
+    }
+
+    /**
+     * Appends a centered number, colored and closed with a reset like a texttablefmt cell when a color is given.
+     */
+    private void appendCenteredNumber(int number, int width, String color) {
+        int padding = width - digits(number);
+        buffer.append(SPACES, 0, padding / 2);
+        if (color == null) {
+            buffer.append(number).append(SPACES, 0, padding - padding / 2);
+        } else {
+            buffer.append(color).append(number).append(BLACK)
+                    .append(SPACES, 0, padding - padding / 2)
+                    .append(RESET);
+        }
+    }
+
+    /**
+     * Appends a centered colored text closed with a reset like a texttablefmt cell.
+     */
+    private void appendColoredCell(String color, String text, String endColor, int width) {
+        int padding = width - text.length();
+        buffer.append(SPACES, 0, padding / 2)
+                .append(color).append(text).append(endColor)
+                .append(SPACES, 0, padding - padding / 2)
+                .append(RESET);
+    }
+
+    /**
+     * Appends a centered text without colors; the extra space of an odd padding goes to the right.
+     */
+    private void appendCentered(String text, int width) {
+        int padding = width - text.length();
+        buffer.append(SPACES, 0, padding / 2).append(text).append(SPACES, 0, padding - padding / 2);
+    }
+
+    /**
+     * Writes the buffer to a writer through a reused char array and empties it.
+     */
+    private void writeBuffer(Writer out) throws IOException {
+        int length = buffer.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        buffer.getChars(0, length, chars, 0);
+        out.write(chars, 0, length);
+        buffer.setLength(0);
+    }
+
+    /**
+     * @return The content of the buffer, which is emptied.
+     */
+    private String takeBuffer() {
+        String text = buffer.toString();
+        buffer.setLength(0);
+        return text;
+    }
+
+    /**
+     * Builds a horizontal border line of a table.
+     */
+    private static String border(char left, char line, char cross, char right, int[] widths) {
+        StringBuilder border = new StringBuilder().append(left);
+        for (int column = 0; column < widths.length; column++) {
+            if (column > 0) {
+                border.append(cross);
+            }
+            border.append(String.valueOf(line).repeat(widths[column]));
+        }
+        return border.append(right).toString();
+    }
+
+    /**
+     * @return The number of digits of a number that is not negative.
+     */
+    private static int digits(int number) {
+        int digits = 1;
+        while (number >= 10) {
+            number /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,198 @@
+package bus.render;
+
+import bus.BookingListener;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class represents a cache of the tables of a {@link FleetRenderer}: the seat tables of single
+ * buses and the pages of the fleet overview. Added as a {@link BookingListener} to the engine, it
+ * counts a version per bus and per overview page that goes up on every book, cancel and reset, and
+ * a cached table is only shown while the versions it was rendered at are still current. Showing an
+ * unchanged bus again therefore costs a map lookup instead of a render.
+ * <p>
+ * The cache holds at most a given number of characters; the tables used least recently are dropped
+ * first. Pages of search results are not cached, their lists change with every search. Like the
+ * renderer, the cache must only be used by one thread; the versions may be counted by any thread.
+ */
+public class RenderCache implements BookingListener {
+
+    private final FleetRenderer renderer;
+    private final int pageSize;
+    private final long maxChars;
+    private final AtomicIntegerArray busVersions;
+    private final AtomicIntegerArray pageVersions;
+
+    // Keys are the bus ID for a seat table and minus the page number for an overview page
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedChars;
+
+    // Statistics
+    private long hits;
+    private long misses;
+    private long stale;
+    private long evictions;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param renderer      The renderer of the tables.
+     * @param numberOfBuses The number of buses of the fleet.
+     * @param pageSize      The number of buses on one page of the overview.
+     * @param maxChars      The number of characters the cached tables may hold together.
+     */
+    public RenderCache(FleetRenderer renderer, int numberOfBuses, int pageSize, long maxChars) {
+        this.renderer = renderer;
+        this.pageSize = pageSize;
+        this.maxChars = maxChars;
+        this.busVersions = new AtomicIntegerArray(numberOfBuses + 1);
+        this.pageVersions = new AtomicIntegerArray((numberOfBuses + pageSize - 1) / pageSize + 1);
+    }
+
+    /**
+     * Returns a page of the fleet overview, rendered again only if one of its buses changed.
+     *
+     * @param page The page number, starting at 1.
+     * @return The table, without a line break at the end.
+     */
+    public CharSequence renderPage(int page) {
+        int version = pageVersions.get(page); // read before rendering, a change during the render makes the entry stale
+        Entry entry = entries.get((long) -page);
+        if (entry != null && entry.version == version) {
+            hits++;
+            return entry.text;
+        }
+        return put(-page, version, null, renderer.renderPage(page), entry != null);
+    }
+
+    /**
+     * Returns the seat table of a bus, rendered again only if the bus or its held seats changed.
+     *
+     * @param busId     The ID of the bus, starting at 1.
+     * @param heldWords The seat bits of the held seats, or null if no seat is held.
+     * @return The table, without a line break at the end.
+     */
+    public CharSequence renderBus(int busId, long[] heldWords) {
+        int version = busVersions.get(busId);
+        Entry entry = entries.get((long) busId);
+        // A confirmed hold keeps the seat booked, so the held seats are compared as well
+        if (entry != null && entry.version == version && Arrays.equals(entry.heldWords, heldWords)) {
+            hits++;
+            return entry.text;
+        }
+        return put(busId, version, heldWords == null ? null : heldWords.clone(), renderer.renderBus(busId, heldWords), entry != null);
+    }
+
+    @Override
+    public void seatBooked(int busId, int seatNumber) {
+        changed(busId);
+    }
+
+    @Override
+    public void seatCanceled(int busId, int seatNumber) {
+        changed(busId);
+    }
+
+    @Override
+    public void busReset(int busId, long[] releasedSeats) {
+        changed(busId);
+    }
+
+    /**
+     * @return How often a table was taken from the cache.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return How often a table had to be rendered, including the stale ones.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return How often a cached table was rendered again because its bus or page changed.
+     */
+    public long getStale() {
+        return stale;
+    }
+
+    /**
+     * @return The number of tables dropped to stay within the size of the cache.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The number of cached tables.
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of characters of the cached tables.
+     */
+    public long getCachedChars() {
+        return cachedChars;
+    }
+
+    /**
+     * Counts a change of a bus in its version and in the version of its overview page.
+     */
+    private void changed(int busId) {
+        busVersions.incrementAndGet(busId);
+        pageVersions.incrementAndGet((busId - 1) / pageSize + 1);
+    }
+
+    /**
+     * Caches a freshly rendered table and drops the least recently used ones beyond the size.
+     */
+    private String put(long key, int version, long[] heldWords, CharSequence rendered, boolean wasStale) {
+        misses++;
+        if (wasStale) {
+            stale++;
+        }
+        String text = rendered.toString(); // the renderer reuses its buffer
+        Entry previous = entries.put(key, new Entry(version, heldWords, text));
+        if (previous != null) {
+            cachedChars -= previous.text.length();
+        }
+        cachedChars += text.length();
+
+        Iterator<Map.Entry<Long, Entry>> eldest = entries.entrySet().iterator();
+        while (cachedChars > maxChars && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            if (evicted.text == text) {
+                break; // a table larger than the whole cache is still shown
+            }
+            eldest.remove();
+            cachedChars -= evicted.text.length();
+            evictions++;
+        }
+        return text;
+    }
+
+    /**
+     * This class represents a cached table and the version it was rendered at.
+     */
+    private static final class Entry {
+
+        private final int version;
+        private final long[] heldWords;
+        private final String text;
+
+        private Entry(int version, long[] heldWords, String text) {
+            this.version = version;
+            this.heldWords = heldWords;
+            this.text = text;
+        }
+    }
+}
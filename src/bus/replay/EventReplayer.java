@@ -0,0 +1,398 @@
+package bus.replay;
+
+import bus.BookingEngine;
+import bus.BookingResult;
+import bus.persist.BookingJournal;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class streams a file of booking events through a {@link BookingEngine} without any user input.
+ * Two formats are read, told apart by the first byte of the file:
+ * <ul>
+ * <li>CSV lines "book,12,7", "cancel,12,7" or "reset,12"; blank lines and lines starting with '#' are skipped</li>
+ * <li>binary records in the journal format, {@link BookingJournal#RECORD_SIZE} bytes each</li>
+ * </ul>
+ * The file is read through a large NIO buffer and parsed byte by byte, with no regex and no
+ * String per line. Events that cannot be applied are counted and the first ones are kept for the summary.
+ */
+public class EventReplayer {
+
+    /**
+     * Enum representing why an event was not applied.
+     */
+    public enum Rejection {
+        ALREADY_BOOKED("seat already booked"),
+        ALREADY_AVAILABLE("seat already available"),
+        INVALID_BUS("bus ID out of range"),
+        INVALID_SEAT("seat number out of range"),
+        MALFORMED("malformed event");
+
+        private final String description;
+
+        Rejection(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte[] BOOK = "book".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CANCEL = "cancel".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESET = "reset".getBytes(StandardCharsets.US_ASCII);
+
+    private final BookingEngine bookingEngine;
+    private final int numberOfBuses;
+    private final int numberSeatsPerBus;
+    private final int maxReportedRejections;
+
+    // Summary of the replayed events
+    private long events;
+    private long booked;
+    private long canceled;
+    private long reset;
+    private final long[] rejected = new long[Rejection.values().length];
+    private final List<String> reportedRejections = new ArrayList<>();
+    private long elapsedNanos;
+
+    // Position of the number parsed last by parseNumber
+    private int numberEnd;
+
+    /**
+     * Creates a replayer for an engine.
+     *
+     * @param bookingEngine         The engine to apply the events to.
+     * @param maxReportedRejections The number of rejected events kept for the summary.
+     */
+    public EventReplayer(BookingEngine bookingEngine, int maxReportedRejections) {
+        this.bookingEngine = bookingEngine;
+        this.numberOfBuses = bookingEngine.getSeatStore().getNumberOfBuses();
+        this.numberSeatsPerBus = bookingEngine.getSeatStore().getNumberSeatsPerBus();
+        this.maxReportedRejections = maxReportedRejections;
+    }
+
+    /**
+     * Applies all events of a file.
+     *
+     * @param file The CSV or binary event file.
+     */
+    public void replay(Path file) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            if (channel.read(buffer) > 0) {
+                buffer.flip();
+                byte first = buffer.get(0);
+                if (first >= BookingJournal.BOOK && first <= BookingJournal.CONFIRM) {
+                    replayBinary(channel, buffer);
+                } else {
+                    replayCsv(channel, buffer);
+                }
+            }
+        }
+        elapsedNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Prints the number of applied and rejected events and the first rejected events.
+     *
+     * @param out The stream to print to.
+     */
+    public void printSummary(PrintStream out) {
+        double seconds = elapsedNanos / 1e9;
+        out.println("-------------- Replay Summary --------------");
+        out.printf("-> Events: %,d in %.2f s (%,.0f events/s)%n", events, seconds, seconds > 0 ? events / seconds : 0);
+        out.printf("-> Booked: %,d   Canceled: %,d   Reset: %,d%n", booked, canceled, reset);
+        out.printf("-> Rejected: %,d%n", getRejectedEvents());
+        for (Rejection rejection : Rejection.values()) {
+            if (rejected[rejection.ordinal()] > 0) {
+                out.printf("   %-26s %,d%n", rejection.getDescription() + ":", rejected[rejection.ordinal()]);
+            }
+        }
+        if (!reportedRejections.isEmpty()) {
+            out.println("-> First rejected events:");
+            for (String reportedRejection : reportedRejections) {
+                out.println("   " + reportedRejection);
+            }
+        }
+    }
+
+    /**
+     * @return The number of events read.
+     */
+    public long getEvents() {
+        return events;
+    }
+
+    /**
+     * @return The number of events that were not applied.
+     */
+    public long getRejectedEvents() {
+        long total = 0;
+        for (long count : rejected) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param rejection The reason.
+     * @return The number of events rejected for a reason.
+     */
+    public long getRejectedEvents(Rejection rejection) {
+        return rejected[rejection.ordinal()];
+    }
+
+    /**
+     * Reads fixed-size binary records.
+     */
+    private void replayBinary(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long recordNumber = 0;
+        while (true) {
+            while (buffer.remaining() >= BookingJournal.RECORD_SIZE) {
+                byte operation = buffer.get();
+                int busId = buffer.getInt();
+                int seatNumber = buffer.getInt();
+                events++;
+                apply(operation, busId, seatNumber, "record", ++recordNumber);
+            }
+            buffer.compact(); // keep a record that was split over two reads
+            boolean endOfFile = channel.read(buffer) < 0;
+            buffer.flip();
+            if (endOfFile) {
+                break;
+            }
+        }
+        if (buffer.hasRemaining()) {
+            events++;
+            reject(Rejection.MALFORMED, "record", recordNumber + 1, "incomplete record at end of file");
+        }
+    }
+
+    /**
+     * Reads CSV lines; a line that is split over two reads is moved to the front of the buffer first.
+     */
+    private void replayCsv(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long lineNumber = 0;
+        boolean endOfFile = false;
+        while (true) {
+            int lineStart = buffer.position();
+            int limit = buffer.limit();
+            for (int i = lineStart; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    parseLine(buffer, lineStart, i, ++lineNumber);
+                    lineStart = i + 1;
+                }
+            }
+            buffer.position(lineStart);
+            if (endOfFile) {
+                if (buffer.hasRemaining()) {
+                    parseLine(buffer, lineStart, limit, ++lineNumber); // last line without a newline
+                }
+                return;
+            }
+            if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                // a line longer than the whole buffer, skip it
+                buffer.clear();
+                events++;
+                reject(Rejection.MALFORMED, "line", ++lineNumber, "line too long");
+                skipToNextLine(channel, buffer);
+                continue;
+            }
+            buffer.compact();
+            endOfFile = channel.read(buffer) < 0;
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Drops bytes up to and including the next newline.
+     */
+    private static void skipToNextLine(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (channel.read(buffer) > 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                if (buffer.get() == '\n') {
+                    return; // the rest of the buffer stays for the next lines
+                }
+            }
+            buffer.clear();
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Parses one CSV line "operation,busId[,seatNumber]" between two buffer positions.
+     */
+    private void parseLine(ByteBuffer buffer, int start, int end, long lineNumber) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--; // Windows line ending
+        }
+        while (start < end && buffer.get(start) == ' ') {
+            start++;
+        }
+        if (start == end || buffer.get(start) == '#') {
+            return; // blank line or comment
+        }
+        events++;
+
+        int comma = start;
+        while (comma < end && buffer.get(comma) != ',') {
+            comma++;
+        }
+        byte operation;
+        if (matches(buffer, start, comma, BOOK)) {
+            operation = BookingJournal.BOOK;
+        } else if (matches(buffer, start, comma, CANCEL)) {
+            operation = BookingJournal.CANCEL;
+        } else if (matches(buffer, start, comma, RESET)) {
+            operation = BookingJournal.RESET;
+        } else {
+            reject(Rejection.MALFORMED, "line", lineNumber, text(buffer, start, end));
+            return;
+        }
+
+        int busId = comma < end ? parseNumber(buffer, comma + 1, end) : -1;
+        int seatNumber = 0;
+        if (busId >= 0) {
+            if (numberEnd < end && buffer.get(numberEnd) == ',') {
+                seatNumber = parseNumber(buffer, numberEnd + 1, end);
+                if (numberEnd != end) {
+                    seatNumber = -1; // something follows the seat number
+                }
+            } else if (numberEnd != end || operation != BookingJournal.RESET) {
+                seatNumber = -1; // book and cancel need a seat number
+            }
+        }
+        if (busId < 0 || seatNumber < 0) {
+            reject(Rejection.MALFORMED, "line", lineNumber, text(buffer, start, end));
+            return;
+        }
+        apply(operation, busId, seatNumber, "line", lineNumber);
+    }
+
+    /**
+     * Parses digits from a position up to the next comma or the end of the line.
+     *
+     * @return The number, or -1 if there are no digits or too many.
+     */
+    private int parseNumber(ByteBuffer buffer, int start, int end) {
+        long value = 0;
+        int i = start;
+        while (i < end) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+            i++;
+        }
+        numberEnd = i;
+        return i == start ? -1 : (int) value;
+    }
+
+    /**
+     * Applies one event and counts its result.
+     */
+    private void apply(byte operation, int busId, int seatNumber, String unit, long number) {
+        if (busId < 1 || busId > numberOfBuses) {
+            reject(Rejection.INVALID_BUS, unit, number, describe(operation, busId, seatNumber));
+            return;
+        }
+        if (operation != BookingJournal.RESET && (seatNumber < 1 || seatNumber > numberSeatsPerBus)) {
+            reject(Rejection.INVALID_SEAT, unit, number, describe(operation, busId, seatNumber));
+            return;
+        }
+        switch (operation) {
+            case BookingJournal.BOOK:
+            case BookingJournal.HOLD: // a held seat is taken like a booked one
+                if (bookingEngine.book(busId, seatNumber) == BookingResult.BOOKED) {
+                    booked++;
+                } else {
+                    reject(Rejection.ALREADY_BOOKED, unit, number, describe(operation, busId, seatNumber));
+                }
+                break;
+            case BookingJournal.CANCEL:
+                if (bookingEngine.cancel(busId, seatNumber) == BookingResult.CANCELED) {
+                    canceled++;
+                } else {
+                    reject(Rejection.ALREADY_AVAILABLE, unit, number, describe(operation, busId, seatNumber));
+                }
+                break;
+            case BookingJournal.RESET:
+                bookingEngine.reset(busId);
+                reset++;
+                break;
+            case BookingJournal.CONFIRM:
+                break; // the seat was booked by its hold
+            default:
+                reject(Rejection.MALFORMED, unit, number, "unknown operation " + operation);
+                break;
+        }
+    }
+
+    /**
+     * Counts a rejected event and keeps its description if the report is not full yet.
+     */
+    private void reject(Rejection rejection, String unit, long number, String event) {
+        rejected[rejection.ordinal()]++;
+        if (reportedRejections.size() < maxReportedRejections) {
+            reportedRejections.add(unit + " " + number + ": " + event + " (" + rejection.getDescription() + ")");
+        }
+    }
+
+    /**
+     * @return The CSV form of an event, for the summary.
+     */
+    private static String describe(byte operation, int busId, int seatNumber) {
+        switch (operation) {
+            case BookingJournal.BOOK:
+            case BookingJournal.HOLD:
+                return "book," + busId + "," + seatNumber;
+            case BookingJournal.CANCEL:
+                return "cancel," + busId + "," + seatNumber;
+            default:
+                return "reset," + busId;
+        }
+    }
+
+    /**
+     * Compares a token with a lower-case keyword, ignoring case.
+     */
+    private static boolean matches(ByteBuffer buffer, int start, int end, byte[] keyword) {
+        if (end - start != keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length; i++) {
+            if ((buffer.get(start + i) | 0x20) != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The text of a line, only used for rejected lines.
+     */
+    private static String text(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[Math.min(end - start, 80)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
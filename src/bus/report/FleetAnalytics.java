@@ -0,0 +1,123 @@
+package bus.report;
+
+import bus.SeatStore;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class computes the {@link FleetReport} of a fleet in parallel: the buses are split into ranges
+ * with fork/join, every range counts the bits of its seat words on its own and the partial reports
+ * are merged on the way back. The seats are read while bookings go on, so a report of a busy fleet
+ * is a close estimate rather than a snapshot.
+ */
+public class FleetAnalytics {
+
+    // Buses counted by one task without splitting further
+    private static final int BUSES_PER_TASK = 8192;
+    // Bit planes of the seat position counters, they count up to 63 buses before they are emptied
+    private static final int PLANES = 6;
+    private static final int BUSES_PER_FLUSH = (1 << PLANES) - 1;
+
+    private final SeatStore seatStore;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param seatStore The seats of the fleet.
+     * @param pool      The pool that counts the ranges, its parallelism is the number of cores used.
+     */
+    public FleetAnalytics(SeatStore seatStore, ForkJoinPool pool) {
+        this.seatStore = seatStore;
+        this.pool = pool;
+    }
+
+    /**
+     * Counts the seats of the whole fleet.
+     *
+     * @return The report.
+     */
+    public FleetReport analyze() {
+        long start = System.nanoTime();
+        FleetReport report = pool.invoke(new CountTask(1, seatStore.getNumberOfBuses() + 1));
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Counts the buses of one range, the IDs from start up to end, splitting it while it is large.
+     * Tasks are never serialized, {@link RecursiveTask} is only serializable by inheritance.
+     */
+    @SuppressWarnings("serial")
+    private final class CountTask extends RecursiveTask<FleetReport> {
+
+        private final int start;
+        private final int end;
+
+        private CountTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected FleetReport compute() {
+            if (end - start <= BUSES_PER_TASK) {
+                return count();
+            }
+            int middle = (start + end) >>> 1;
+            CountTask right = new CountTask(middle, end);
+            right.fork();
+            FleetReport report = new CountTask(start, middle).compute();
+            report.merge(right.join());
+            return report;
+        }
+
+        /**
+         * Counts the booked seats of every bus of the range and how often each seat position is booked.
+         * The positions are counted 64 at a time in bit planes: plane p holds bit p of the counter of
+         * every seat of a word, and a word is added like a binary number with a carry per seat, the
+         * same steps for every word. Every 63 buses the planes are added to the counts and emptied.
+         */
+        private FleetReport count() {
+            int wordsPerBus = seatStore.getWordsPerBus();
+            FleetReport report = new FleetReport(seatStore.getNumberSeatsPerBus());
+            long[] planes = new long[wordsPerBus * PLANES];
+            int countedBuses = 0;
+            for (int busId = start; busId < end; busId++) {
+                int bookedSeats = 0;
+                for (int wordIndex = 0; wordIndex < wordsPerBus; wordIndex++) {
+                    long carry = seatStore.getSeatWord(busId, wordIndex);
+                    bookedSeats += Long.bitCount(carry);
+                    int first = wordIndex * PLANES;
+                    for (int plane = first; plane < first + PLANES; plane++) {
+                        long overflow = planes[plane] & carry;
+                        planes[plane] ^= carry;
+                        carry = overflow;
+                    }
+                }
+                report.addBus(busId, bookedSeats);
+                if (++countedBuses == BUSES_PER_FLUSH) {
+                    flush(planes, report.getSeatBookings());
+                    countedBuses = 0;
+                }
+            }
+            flush(planes, report.getSeatBookings());
+            return report;
+        }
+
+        /**
+         * Adds the counters of the bit planes to the bookings of the seat positions and empties the planes.
+         */
+        private void flush(long[] planes, long[] seatBookings) {
+            for (int seat = 0; seat < seatBookings.length; seat++) {
+                int first = seat / Long.SIZE * PLANES;
+                long bookings = 0;
+                for (int plane = 0; plane < PLANES; plane++) {
+                    bookings |= (planes[first + plane] >>> seat & 1) << plane;
+                }
+                seatBookings[seat] += bookings;
+            }
+            Arrays.fill(planes, 0);
+        }
+    }
+}
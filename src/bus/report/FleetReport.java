@@ -0,0 +1,222 @@
+package bus.report;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * This class represents the occupancy report of a fleet, computed by {@link FleetAnalytics}:
+ * the booked seats, how many buses fall into each tenth of occupancy, the fully booked and
+ * empty buses, and how often every seat position is booked across the fleet.
+ */
+public class FleetReport {
+
+    // Occupancy buckets: 0-9%, 10-19%, ..., 90-99% and fully booked
+    private static final int BUCKETS = 11;
+    // Bus IDs of fully booked and empty buses kept as examples
+    private static final int EXAMPLES = 10;
+
+    private final int numberSeatsPerBus;
+    private int numberOfBuses;
+    private long bookedSeats;
+    private final long[] occupancy = new long[BUCKETS];
+    private final long[] seatBookings;
+    private int fullBuses;
+    private int emptyBuses;
+    private final int[] fullExamples = new int[EXAMPLES];
+    private final int[] emptyExamples = new int[EXAMPLES];
+    private long elapsedNanos;
+
+    /**
+     * Creates an empty report.
+     *
+     * @param numberSeatsPerBus The number of seats on each bus.
+     */
+    FleetReport(int numberSeatsPerBus) {
+        this.numberSeatsPerBus = numberSeatsPerBus;
+        this.seatBookings = new long[numberSeatsPerBus];
+    }
+
+    /**
+     * Counts one bus; its seat positions are counted into {@link #getSeatBookings()} by the caller.
+     */
+    void addBus(int busId, int booked) {
+        numberOfBuses++;
+        bookedSeats += booked;
+        occupancy[booked * (BUCKETS - 1) / numberSeatsPerBus]++;
+        if (booked == numberSeatsPerBus) {
+            if (fullBuses < EXAMPLES) {
+                fullExamples[fullBuses] = busId;
+            }
+            fullBuses++;
+        }
+        if (booked == 0) {
+            if (emptyBuses < EXAMPLES) {
+                emptyExamples[emptyBuses] = busId;
+            }
+            emptyBuses++;
+        }
+    }
+
+    /**
+     * Adds the counts of a report of buses with higher IDs.
+     */
+    void merge(FleetReport other) {
+        numberOfBuses += other.numberOfBuses;
+        bookedSeats += other.bookedSeats;
+        for (int i = 0; i < BUCKETS; i++) {
+            occupancy[i] += other.occupancy[i];
+        }
+        for (int i = 0; i < numberSeatsPerBus; i++) {
+            seatBookings[i] += other.seatBookings[i];
+        }
+        for (int i = 0; fullBuses + i < EXAMPLES && i < other.fullBuses; i++) {
+            fullExamples[fullBuses + i] = other.fullExamples[i];
+        }
+        for (int i = 0; emptyBuses + i < EXAMPLES && i < other.emptyBuses; i++) {
+            emptyExamples[emptyBuses + i] = other.emptyExamples[i];
+        }
+        fullBuses += other.fullBuses;
+        emptyBuses += other.emptyBuses;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getNumberOfBuses() {
+        return numberOfBuses;
+    }
+
+    public long getBookedSeats() {
+        return bookedSeats;
+    }
+
+    public long getTotalSeats() {
+        return (long) numberOfBuses * numberSeatsPerBus;
+    }
+
+    /**
+     * @return The booked share of all seats, in percent.
+     */
+    public double getOccupancyPercent() {
+        return numberOfBuses == 0 ? 0 : bookedSeats * 100.0 / getTotalSeats();
+    }
+
+    /**
+     * @return The number of buses per occupancy bucket: 0-9%, 10-19%, ..., 90-99% and 100%.
+     */
+    public long[] getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * @return How often each seat position is booked, index 0 is seat 1.
+     */
+    public long[] getSeatBookings() {
+        return seatBookings;
+    }
+
+    public int getFullBuses() {
+        return fullBuses;
+    }
+
+    public int getEmptyBuses() {
+        return emptyBuses;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Finds the seat positions that are booked most often.
+     *
+     * @param count The number of positions.
+     * @return The seat numbers, the most booked first.
+     */
+    public int[] getMostBookedSeats(int count) {
+        Integer[] seatNumbers = new Integer[numberSeatsPerBus];
+        for (int i = 0; i < numberSeatsPerBus; i++) {
+            seatNumbers[i] = i + 1;
+        }
+        // At most 1000 seats, sorting them all is cheap
+        Arrays.sort(seatNumbers, (a, b) -> Long.compare(seatBookings[b - 1], seatBookings[a - 1]));
+        int[] mostBooked = new int[Math.min(count, numberSeatsPerBus)];
+        for (int i = 0; i < mostBooked.length; i++) {
+            mostBooked[i] = seatNumbers[i];
+        }
+        return mostBooked;
+    }
+
+    /**
+     * Prints the report for the menu.
+     *
+     * @param out The stream to print to.
+     */
+    public void printSummary(PrintStream out) {
+        out.println("-------------- Fleet Report --------------");
+        out.printf("-> Buses: %,d   Seats: %,d   Booked: %,d (%.1f%%)   computed in %.1f ms%n",
+                numberOfBuses, getTotalSeats(), bookedSeats, getOccupancyPercent(), elapsedNanos / 1e6);
+        out.printf("-> Fully booked buses: %,d%s%n", fullBuses, examples(fullExamples, fullBuses));
+        out.printf("-> Empty buses: %,d%s%n", emptyBuses, examples(emptyExamples, emptyBuses));
+        out.println("-> Occupancy of the buses:");
+        long largest = 1;
+        for (long buses : occupancy) {
+            largest = Math.max(largest, buses);
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            out.printf("   %-8s %,10d  %s%n", bucketName(i), occupancy[i], "#".repeat((int) (occupancy[i] * 40 / largest)));
+        }
+        out.println("-> Most booked seats:");
+        for (int seatNumber : getMostBookedSeats(10)) {
+            out.printf("   Seat %-4d %,10d buses (%.1f%%)%n", seatNumber, seatBookings[seatNumber - 1],
+                    numberOfBuses == 0 ? 0 : seatBookings[seatNumber - 1] * 100.0 / numberOfBuses);
+        }
+    }
+
+    /**
+     * Writes the report as CSV lines "section,key,value": the summary, the occupancy buckets
+     * and the bookings of every seat position.
+     *
+     * @param out The writer to write to, it is not flushed or closed.
+     */
+    public void writeCsv(Writer out) throws IOException {
+        out.write("section,key,value\n");
+        out.write("summary,buses," + numberOfBuses + "\n");
+        out.write("summary,seats," + getTotalSeats() + "\n");
+        out.write("summary,booked_seats," + bookedSeats + "\n");
+        out.write("summary,occupancy_percent," + String.format(Locale.ROOT, "%.2f", getOccupancyPercent()) + "\n");
+        out.write("summary,fully_booked_buses," + fullBuses + "\n");
+        out.write("summary,empty_buses," + emptyBuses + "\n");
+        for (int i = 0; i < BUCKETS; i++) {
+            out.write("occupancy," + bucketName(i) + "," + occupancy[i] + "\n");
+        }
+        for (int i = 0; i < numberSeatsPerBus; i++) {
+            out.write("seat," + (i + 1) + "," + seatBookings[i] + "\n");
+        }
+    }
+
+    /**
+     * @return The name of an occupancy bucket, e.g. "10-19%".
+     */
+    private static String bucketName(int bucket) {
+        return bucket == BUCKETS - 1 ? "100%" : bucket * 10 + "-" + (bucket * 10 + 9) + "%";
+    }
+
+    /**
+     * @return The example bus IDs, e.g. " (3, 7, 12, ...)", or nothing without buses.
+     */
+    private static String examples(int[] busIds, int count) {
+        if (count == 0) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder(" (");
+        for (int i = 0; i < Math.min(count, EXAMPLES); i++) {
+            text.append(i > 0 ? ", " : "").append(busIds[i]);
+        }
+        return text.append(count > EXAMPLES ? ", ...)" : ")").toString();
+    }
+}
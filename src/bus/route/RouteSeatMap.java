@@ -0,0 +1,356 @@
+package bus.route;
+
+import bus.BookingListener;
+import bus.BookingResult;
+import bus.BookingService;
+import bus.SeatStore;
+
+/**
+ * This class represents the seats of buses that run a route with several stops, where a booking
+ * holds a seat only between the stop where the passenger gets on and the stop where they get off.
+ * A seat freed at a stop in the middle of the route can be sold again for the rest of the journey.
+ * <p>
+ * The route is cut into segments, segment 1 goes from stop 1 to stop 2 and so on, and every seat
+ * has a mask with one bit per segment it is held on. A booking from stop A to stop C needs the
+ * bits [A, C) to be clear, so checking and claiming a seat is one AND and one OR, and
+ * "which seats are free from A to C" is one AND per seat.
+ * <p>
+ * Bookings made without stops (group bookings, recovered seats) hold the seat on the whole route:
+ * added as a {@link BookingListener} to the engine, the map follows those changes.
+ * The masks of a bus are only allocated when one of its seats is held and dropped again when the
+ * bus is reset, so a large fleet with few route bookings takes little memory.
+ * <p>
+ * The segments are kept in memory only. A fleet recovered from a data directory holds its booked
+ * seats on the whole route (see {@link #holdBookedSeats}), the stops of earlier bookings are lost.
+ * Bus IDs, seat numbers and stops are 1-based.
+ */
+public class RouteSeatMap implements BookingListener {
+
+    // A mask of one long holds up to 63 segments
+    public static final int MAX_STOPS = Long.SIZE;
+
+    // Buses share a lock per stripe, a power of two
+    private static final int LOCK_STRIPES = 64;
+
+    private final int numberOfBuses;
+    private final int numberSeatsPerBus;
+    private final int numberOfStops;
+    private final int numberOfSegments;
+    private final long allSegments;
+    // The masks of the seats of every bus, null while no seat of the bus is held
+    private final long[][] busSegments;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * Creates a map where every seat is free on every segment.
+     *
+     * @param numberOfBuses     The number of buses in the fleet.
+     * @param numberSeatsPerBus The number of seats on each bus.
+     * @param numberOfStops     The number of stops of the route, the first and last included.
+     */
+    public RouteSeatMap(int numberOfBuses, int numberSeatsPerBus, int numberOfStops) {
+        if (numberOfBuses < 1 || numberOfBuses > SeatStore.MAX_BUSES) {
+            throw new IllegalArgumentException("Number of buses must be between 1 and " + SeatStore.MAX_BUSES + ": " + numberOfBuses);
+        }
+        if (numberSeatsPerBus < 1 || numberSeatsPerBus > SeatStore.MAX_SEATS_PER_BUS) {
+            throw new IllegalArgumentException("Number of seats must be between 1 and " + SeatStore.MAX_SEATS_PER_BUS + ": " + numberSeatsPerBus);
+        }
+        if (numberOfStops < 2 || numberOfStops > MAX_STOPS) {
+            throw new IllegalArgumentException("Number of stops must be between 2 and " + MAX_STOPS + ": " + numberOfStops);
+        }
+        this.numberOfBuses = numberOfBuses;
+        this.numberSeatsPerBus = numberSeatsPerBus;
+        this.numberOfStops = numberOfStops;
+        this.numberOfSegments = numberOfStops - 1;
+        this.allSegments = (1L << numberOfSegments) - 1;
+        this.busSegments = new long[numberOfBuses + 1][];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Holds every booked seat of a booking service on the whole route,
+     * e.g. the seats of a recovered fleet whose stops were not saved.
+     *
+     * @param bookingService The booking service with the booked seats.
+     */
+    public void holdBookedSeats(BookingService bookingService) {
+        long[] words = new long[bookingService.getWordsPerBus()];
+        for (int busId = 1; busId <= numberOfBuses; busId++) {
+            bookingService.copySeatWords(busId, words);
+            synchronized (lockOf(busId)) {
+                for (int word = 0; word < words.length; word++) {
+                    for (long bits = words[word]; bits != 0; bits &= bits - 1) {
+                        long[] seatSegments = allocatedSegments(busId);
+                        int seat = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                        if (seatSegments[seat] == 0) {
+                            seatSegments[seat] = allSegments;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Books a seat between two stops.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to book.
+     * @param fromStop   The stop where the passenger gets on.
+     * @param toStop     The stop where the passenger gets off.
+     * @return BOOKED if the seat was booked, ALREADY_BOOKED if it is held on any segment in between.
+     */
+    public BookingResult book(int busId, int seatNumber, int fromStop, int toStop) {
+        int seat = seatIndex(busId, seatNumber);
+        long segments = segmentsBetween(fromStop, toStop);
+        synchronized (lockOf(busId)) {
+            long[] seatSegments = allocatedSegments(busId);
+            if ((seatSegments[seat] & segments) != 0) {
+                return BookingResult.ALREADY_BOOKED;
+            }
+            seatSegments[seat] |= segments;
+            return BookingResult.BOOKED;
+        }
+    }
+
+    /**
+     * Cancels the booking of a seat between two stops.
+     *
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number to cancel.
+     * @param fromStop   The stop where the passenger gets on.
+     * @param toStop     The stop where the passenger gets off.
+     * @return CANCELED if the seat was released, ALREADY_AVAILABLE if it is not held on every segment in between.
+     */
+    public BookingResult cancel(int busId, int seatNumber, int fromStop, int toStop) {
+        int seat = seatIndex(busId, seatNumber);
+        long segments = segmentsBetween(fromStop, toStop);
+        synchronized (lockOf(busId)) {
+            long[] seatSegments = busSegments[busId];
+            if (seatSegments == null || (seatSegments[seat] & segments) != segments) {
+                return BookingResult.ALREADY_AVAILABLE;
+            }
+            seatSegments[seat] &= ~segments;
+            return BookingResult.CANCELED;
+        }
+    }
+
+    /**
+     * Releases every seat of a bus on every segment.
+     *
+     * @param busId The ID of the bus.
+     */
+    public void reset(int busId) {
+        seatIndex(busId, 1);
+        synchronized (lockOf(busId)) {
+            busSegments[busId] = null; // every seat is free again
+        }
+    }
+
+    /**
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number.
+     * @return The segments the seat is held on, bit 0 for the segment from stop 1 to stop 2.
+     */
+    public long getSeatSegments(int busId, int seatNumber) {
+        int seat = seatIndex(busId, seatNumber);
+        synchronized (lockOf(busId)) {
+            long[] seatSegments = busSegments[busId];
+            return seatSegments == null ? 0 : seatSegments[seat];
+        }
+    }
+
+    /**
+     * @param busId      The ID of the bus.
+     * @param seatNumber The seat number.
+     * @return True if the seat is held on at least one segment of the route.
+     */
+    public boolean isSeatHeld(int busId, int seatNumber) {
+        return getSeatSegments(busId, seatNumber) != 0;
+    }
+
+    /**
+     * @param busId    The ID of the bus.
+     * @param fromStop The stop where the passenger gets on.
+     * @param toStop   The stop where the passenger gets off.
+     * @return The number of seats that are free on every segment between the stops.
+     */
+    public int getAvailableSeats(int busId, int fromStop, int toStop) {
+        seatIndex(busId, 1);
+        long segments = segmentsBetween(fromStop, toStop);
+        int availableSeats = 0;
+        synchronized (lockOf(busId)) {
+            long[] seatSegments = busSegments[busId];
+            if (seatSegments == null) {
+                return numberSeatsPerBus;
+            }
+            for (int seat = 0; seat < numberSeatsPerBus; seat++) {
+                if ((seatSegments[seat] & segments) == 0) {
+                    availableSeats++;
+                }
+            }
+        }
+        return availableSeats;
+    }
+
+    /**
+     * Copies which seats are taken between two stops as seat bits (see {@link SeatStore#getSeatWord}),
+     * so the seats of a journey can be rendered like the seats of a bus.
+     *
+     * @param busId    The ID of the bus.
+     * @param fromStop The stop where the passenger gets on.
+     * @param toStop   The stop where the passenger gets off.
+     * @param words    The array to copy into, one word per 64 seats.
+     * @return The number of seats taken on at least one segment between the stops.
+     */
+    public int copyTakenSeatWords(int busId, int fromStop, int toStop, long[] words) {
+        seatIndex(busId, 1);
+        long segments = segmentsBetween(fromStop, toStop);
+        int wordsPerBus = (numberSeatsPerBus + Long.SIZE - 1) / Long.SIZE;
+        int takenSeats = 0;
+        synchronized (lockOf(busId)) {
+            long[] seatSegments = busSegments[busId];
+            for (int word = 0; word < wordsPerBus; word++) {
+                long bits = 0;
+                int end = seatSegments == null ? 0 : Math.min(Long.SIZE, numberSeatsPerBus - word * Long.SIZE);
+                for (int bit = 0; bit < end; bit++) {
+                    if ((seatSegments[word * Long.SIZE + bit] & segments) != 0) {
+                        bits |= 1L << bit;
+                    }
+                }
+                words[word] = bits;
+                takenSeats += Long.bitCount(bits);
+            }
+        }
+        return takenSeats;
+    }
+
+    /**
+     * Finds the free seat that fits a journey best: the one whose free stretch around the journey
+     * is the shortest, so the long free stretches of other seats stay for longer journeys.
+     * A seat with bookings right before and after the journey fits exactly and is taken at once.
+     *
+     * @param busId    The ID of the bus.
+     * @param fromStop The stop where the passenger gets on.
+     * @param toStop   The stop where the passenger gets off.
+     * @return The best seat number, or -1 if no seat is free between the stops.
+     */
+    public int findBestFitSeat(int busId, int fromStop, int toStop) {
+        seatIndex(busId, 1);
+        long segments = segmentsBetween(fromStop, toStop);
+        long before = (1L << (fromStop - 1)) - 1;
+        int bestSeat = -1;
+        int bestWaste = Integer.MAX_VALUE;
+        synchronized (lockOf(busId)) {
+            long[] seatSegments = busSegments[busId];
+            for (int seat = 0; seat < numberSeatsPerBus; seat++) {
+                long held = seatSegments == null ? 0 : seatSegments[seat];
+                if ((held & segments) != 0) {
+                    continue;
+                }
+                // The free stretch starts after the last held segment before the journey
+                int freeFrom = Long.SIZE - Long.numberOfLeadingZeros(held & before);
+                // and ends at the first held segment after it
+                long after = held >>> (toStop - 1);
+                int freeTo = after == 0 ? numberOfSegments : toStop - 1 + Long.numberOfTrailingZeros(after);
+                int waste = (fromStop - 1 - freeFrom) + (freeTo - (toStop - 1));
+                if (waste < bestWaste) {
+                    bestWaste = waste;
+                    bestSeat = seat + 1;
+                    if (waste == 0) {
+                        break; // exact fit
+                    }
+                }
+            }
+        }
+        return bestSeat;
+    }
+
+    /**
+     * A seat booked without stops is held on the whole route.
+     */
+    @Override
+    public void seatBooked(int busId, int seatNumber) {
+        int seat = seatIndex(busId, seatNumber);
+        synchronized (lockOf(busId)) {
+            long[] seatSegments = allocatedSegments(busId);
+            if (seatSegments[seat] == 0) {
+                seatSegments[seat] = allSegments;
+            }
+        }
+    }
+
+    /**
+     * A seat canceled without stops is released on the whole route.
+     */
+    @Override
+    public void seatCanceled(int busId, int seatNumber) {
+        int seat = seatIndex(busId, seatNumber);
+        synchronized (lockOf(busId)) {
+            long[] seatSegments = busSegments[busId];
+            if (seatSegments != null) {
+                seatSegments[seat] = 0;
+            }
+        }
+    }
+
+    @Override
+    public void busReset(int busId, long[] releasedSeats) {
+        reset(busId);
+    }
+
+    /**
+     * @return The number of stops of the route.
+     */
+    public int getNumberOfStops() {
+        return numberOfStops;
+    }
+
+    /**
+     * @param fromStop The stop where the passenger gets on.
+     * @param toStop   The stop where the passenger gets off.
+     * @return The mask of the segments between two stops.
+     */
+    public long segmentsBetween(int fromStop, int toStop) {
+        if (fromStop < 1 || fromStop >= numberOfStops) {
+            throw new IllegalArgumentException("From stop must be between 1 and " + (numberOfStops - 1) + ": " + fromStop);
+        }
+        if (toStop <= fromStop || toStop > numberOfStops) {
+            throw new IllegalArgumentException("To stop must be between " + (fromStop + 1) + " and " + numberOfStops + ": " + toStop);
+        }
+        return ((1L << (toStop - 1)) - 1) & ~((1L << (fromStop - 1)) - 1);
+    }
+
+    /**
+     * @return The masks of the seats of a bus, allocated on the first hold; called under the bus's lock.
+     */
+    private long[] allocatedSegments(int busId) {
+        long[] seatSegments = busSegments[busId];
+        if (seatSegments == null) {
+            seatSegments = new long[numberSeatsPerBus];
+            busSegments[busId] = seatSegments;
+        }
+        return seatSegments;
+    }
+
+    /**
+     * Checks a bus ID and seat number.
+     *
+     * @return The index of the seat in the masks of its bus.
+     */
+    private int seatIndex(int busId, int seatNumber) {
+        if (busId < 1 || busId > numberOfBuses) {
+            throw new IllegalArgumentException("Bus ID must be between 1 and " + numberOfBuses + ": " + busId);
+        }
+        if (seatNumber < 1 || seatNumber > numberSeatsPerBus) {
+            throw new IllegalArgumentException("Seat number must be between 1 and " + numberSeatsPerBus + ": " + seatNumber);
+        }
+        return seatNumber - 1;
+    }
+
+    private Object lockOf(int busId) {
+        return locks[busId & (LOCK_STRIPES - 1)];
+    }
+}
@@ -0,0 +1,429 @@
+package bus.server;
+
+import bus.BookingEngine;
+import bus.BookingResult;
+import bus.SeatStore;
+import bus.hold.SeatHolds;
+import bus.persist.FleetPersistence;
+import bus.trip.TripInventory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static bus.InputValidator.isInputValid;
+import static bus.InputValidator.parseDeparture;
+import static bus.InputValidator.parseSeatNumbers;
+
+/**
+ * This class represents the HTTP/JSON API of the Bus Management System.
+ * It runs on the JDK's built-in HTTP server and handles every request on its own
+ * virtual thread, so thousands of clients can book at once through one {@link BookingEngine}.
+ * <p>
+ * Endpoints:
+ * <pre>
+ * GET  /buses                              fleet size and booked seats
+ * GET  /buses/{busId}                      seat information of one bus
+ * POST /buses/{busId}/seats/{seat}/book    book a seat
+ * POST /buses/{busId}/seats/{seat}/cancel  cancel a booking
+ * POST /buses/{busId}/seats/{seat}/hold    hold a seat for a few minutes while the customer pays
+ * POST /buses/{busId}/seats/{seat}/confirm confirm the booking of a held seat
+ * POST /buses/{busId}/reset                reset all seats of a bus
+ * POST /buses/{busId}/group/book?seats=1,2,3   book a group of seats, all or none
+ * POST /buses/{busId}/group/book?count=30      book any seats for a group
+ * POST /buses/{busId}/group/cancel?seats=1,2,3 cancel a group of seats, all or none
+ * GET  /trips/{busId}/{departure}                        seat information of one trip
+ * POST /trips/{busId}/{departure}/seats/{seat}/book      book a seat on a trip
+ * POST /trips/{busId}/{departure}/seats/{seat}/cancel    cancel a booking on a trip
+ * </pre>
+ * A departure is written like 2026-10-18T08:30; trips that have departed answer 409.
+ * When the seats are kept on disk, a change is only answered once it is forced to disk.
+ * Small answers are only sent right away if the JVM runs with "sun.net.httpserver.nodelay=true",
+ * the JDK's HTTP server reads it once for the whole process, so the application sets it.
+ */
+public class BookingServer {
+
+    private static final String BUSES_PATH = "/buses";
+    private static final String TRIPS_PATH = "/trips";
+
+    private final BookingEngine bookingEngine;
+    private final SeatStore seatStore;
+    private final TripInventory tripInventory;
+    private final SeatHolds seatHolds;
+    private final FleetPersistence persistence;
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a server that is not started yet.
+     *
+     * @param bookingEngine The engine to book seats with.
+     * @param tripInventory The seats sold per departure, of the same fleet size.
+     * @param seatHolds     The holds of the engine's seats, shared with the other front ends.
+     * @param persistence   The disk storage of the engine and the trips, or null if they are kept in memory only.
+     * @param port          The TCP port to listen on, 0 picks a free port.
+     */
+    public BookingServer(BookingEngine bookingEngine, TripInventory tripInventory, SeatHolds seatHolds, FleetPersistence persistence,
+                         int port) throws IOException {
+        this.bookingEngine = bookingEngine;
+        this.seatStore = bookingEngine.getSeatStore();
+        this.tripInventory = tripInventory;
+        this.seatHolds = seatHolds;
+        this.persistence = persistence;
+        this.httpServer = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.httpServer.setExecutor(executor);
+        this.httpServer.createContext(BUSES_PATH, this::handle);
+        this.httpServer.createContext(TRIPS_PATH, this::handleTrip);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        httpServer.start();
+    }
+
+    /**
+     * Stops the server, waiting at most one second for running requests.
+     */
+    public void stop() {
+        httpServer.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Dispatches a request to the matching endpoint.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (RuntimeException e) {
+                sendFailure(exchange, e); // before the exchange is closed
+            }
+        }
+    }
+
+    /**
+     * Dispatches a request for a trip.
+     */
+    private void handleTrip(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                routeTrip(exchange);
+            } catch (RuntimeException e) {
+                sendFailure(exchange, e); // before the exchange is closed
+            }
+        }
+    }
+
+    /**
+     * Answers a request that failed inside the server, e.g. because the journal can no longer
+     * write, with 500 unless an answer was sent already.
+     */
+    private static void sendFailure(HttpExchange exchange, RuntimeException e) throws IOException {
+        System.err.println("-> Error: " + e.getMessage());
+        if (exchange.getResponseCode() == -1) {
+            sendError(exchange, 500, "The request failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Validates the path of a request and calls the booking engine.
+     */
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] parts = exchange.getRequestURI().getPath().substring(1).split("/"); // "buses", busId, ...
+
+        if (!parts[0].equals(BUSES_PATH.substring(1))) { // the context also matches e.g. "/busesX"
+            sendError(exchange, 404, "Unknown endpoint " + method + " " + exchange.getRequestURI().getPath() + ".");
+            return;
+        }
+        if (parts.length == 1 && method.equals("GET")) {
+            send(exchange, 200, fleetJson());
+            return;
+        }
+        if (parts.length < 2 || !isInputValid(parts[1], seatStore.getNumberOfBuses())) {
+            sendError(exchange, 400, "Invalid Input. Please enter a bus ID between 1 and " + seatStore.getNumberOfBuses() + ".");
+            return;
+        }
+        int busId = Integer.parseInt(parts[1]);
+
+        if (parts.length == 2 && method.equals("GET")) {
+            send(exchange, 200, busJson(busId));
+        } else if (parts.length == 3 && parts[2].equals("reset") && method.equals("POST")) {
+            BookingResult result = bookingEngine.reset(busId);
+            awaitDurable(result);
+            send(exchange, 200, resultJson(result, busId, 0));
+        } else if (parts.length == 4 && parts[2].equals("group") && method.equals("POST")) {
+            groupRequest(exchange, busId, parts[3]);
+        } else if (parts.length == 5 && parts[2].equals("seats") && method.equals("POST")) {
+            if (!isInputValid(parts[3], seatStore.getNumberSeatsPerBus())) {
+                sendError(exchange, 400, "Invalid Input. Please enter a seat number between 1 and " + seatStore.getNumberSeatsPerBus() + ".");
+                return;
+            }
+            int seatNumber = Integer.parseInt(parts[3]);
+            BookingResult result;
+            if (parts[4].equals("book")) {
+                result = bookingEngine.book(busId, seatNumber);
+            } else if (parts[4].equals("cancel")) {
+                result = bookingEngine.cancel(busId, seatNumber);
+            } else if (parts[4].equals("hold")) {
+                result = seatHolds.hold(busId, seatNumber, System.currentTimeMillis());
+            } else if (parts[4].equals("confirm")) {
+                result = seatHolds.confirm(busId, seatNumber); // ALREADY_AVAILABLE if the hold has ended
+            } else {
+                sendError(exchange, 404, "Unknown action " + parts[4] + ".");
+                return;
+            }
+            awaitDurable(result);
+            send(exchange, result.isSuccess() ? 200 : 409, resultJson(result, busId, seatNumber));
+        } else {
+            sendError(exchange, 404, "Unknown endpoint " + method + " " + exchange.getRequestURI().getPath() + ".");
+        }
+    }
+
+    /**
+     * Validates the path of a trip request and calls the trip inventory.
+     */
+    private void routeTrip(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] parts = exchange.getRequestURI().getPath().substring(1).split("/"); // "trips", busId, departure, ...
+
+        if (!parts[0].equals(TRIPS_PATH.substring(1))) {
+            sendError(exchange, 404, "Unknown endpoint " + method + " " + exchange.getRequestURI().getPath() + ".");
+            return;
+        }
+        if (parts.length < 2 || !isInputValid(parts[1], seatStore.getNumberOfBuses())) {
+            sendError(exchange, 400, "Invalid Input. Please enter a bus ID between 1 and " + seatStore.getNumberOfBuses() + ".");
+            return;
+        }
+        int busId = Integer.parseInt(parts[1]);
+        long departureMinute = parts.length < 3 ? -1 : parseDeparture(parts[2]);
+        if (departureMinute < 0) {
+            sendError(exchange, 400, "Invalid Input. Please enter a departure like 2026-10-18T08:30.");
+            return;
+        }
+
+        if (parts.length == 3 && method.equals("GET")) {
+            send(exchange, 200, tripJson(busId, departureMinute));
+        } else if (parts.length == 6 && parts[3].equals("seats") && method.equals("POST")) {
+            if (!isInputValid(parts[4], seatStore.getNumberSeatsPerBus())) {
+                sendError(exchange, 400, "Invalid Input. Please enter a seat number between 1 and " + seatStore.getNumberSeatsPerBus() + ".");
+                return;
+            }
+            int seatNumber = Integer.parseInt(parts[4]);
+            BookingResult result;
+            try {
+                if (parts[5].equals("book")) {
+                    result = tripInventory.book(busId, departureMinute, seatNumber);
+                } else if (parts[5].equals("cancel")) {
+                    result = tripInventory.cancel(busId, departureMinute, seatNumber);
+                } else {
+                    sendError(exchange, 404, "Unknown action " + parts[5] + ".");
+                    return;
+                }
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 409, e.getMessage()); // the trip has departed
+                return;
+            }
+            if (result.isSuccess() && persistence != null) {
+                persistence.awaitTripsDurable();
+            }
+            send(exchange, result.isSuccess() ? 200 : 409, resultJson(result, busId, seatNumber));
+        } else {
+            sendError(exchange, 404, "Unknown endpoint " + method + " " + exchange.getRequestURI().getPath() + ".");
+        }
+    }
+
+    /**
+     * Books or cancels a group of seats given in the query string.
+     */
+    private void groupRequest(HttpExchange exchange, int busId, String action) throws IOException {
+        String seats = queryParameter(exchange, "seats");
+        String count = queryParameter(exchange, "count");
+        int numberSeatsPerBus = seatStore.getNumberSeatsPerBus();
+
+        if (action.equals("book") && seats == null && count != null) {
+            if (!isInputValid(count, numberSeatsPerBus)) {
+                sendError(exchange, 400, "Invalid Input. Please enter a number of seats between 1 and " + numberSeatsPerBus + ".");
+                return;
+            }
+            int[] bookedSeats = bookingEngine.bookAnySeats(busId, Integer.parseInt(count));
+            BookingResult result = bookedSeats.length > 0 ? BookingResult.BOOKED : BookingResult.NOT_ENOUGH_SEATS;
+            awaitDurable(result);
+            send(exchange, result.isSuccess() ? 200 : 409, groupJson(result, busId, bookedSeats));
+            return;
+        }
+        int[] seatNumbers = seats == null ? null : parseSeatNumbers(seats, numberSeatsPerBus);
+        if (seatNumbers == null) {
+            sendError(exchange, 400, "Invalid Input. Please enter different seat numbers between 1 and " + numberSeatsPerBus + " separated by ','.");
+            return;
+        }
+        BookingResult result;
+        if (action.equals("book")) {
+            result = bookingEngine.bookSeats(busId, seatNumbers);
+        } else if (action.equals("cancel")) {
+            result = bookingEngine.cancelSeats(busId, seatNumbers);
+        } else {
+            sendError(exchange, 404, "Unknown action " + action + ".");
+            return;
+        }
+        awaitDurable(result);
+        send(exchange, result.isSuccess() ? 200 : 409, groupJson(result, busId, seatNumbers));
+    }
+
+    /**
+     * Waits until a successful change is on disk before it is answered, if the seats are kept on disk.
+     */
+    private void awaitDurable(BookingResult result) {
+        if (result.isSuccess() && persistence != null) {
+            persistence.awaitBookingsDurable();
+        }
+    }
+
+    /**
+     * @return The value of a query string parameter, or null if it is missing.
+     */
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return parameter.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds the JSON answer of a group request.
+     */
+    private static String groupJson(BookingResult result, int busId, int[] seatNumbers) {
+        StringBuilder json = new StringBuilder(64);
+        json.append("{\"result\":\"").append(result).append("\",\"busId\":").append(busId).append(",\"seats\":[");
+        for (int i = 0; i < seatNumbers.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(seatNumbers[i]);
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Builds the JSON of the whole fleet.
+     */
+    private String fleetJson() {
+        return "{\"buses\":" + seatStore.getNumberOfBuses()
+                + ",\"seatsPerBus\":" + seatStore.getNumberSeatsPerBus()
+                + ",\"bookedSeats\":" + seatStore.getTotalBookedSeats() + "}";
+    }
+
+    /**
+     * Builds the JSON of one bus, listing its booked seat numbers.
+     */
+    private String busJson(int busId) {
+        StringBuilder json = new StringBuilder(64);
+        json.append("{\"busId\":").append(busId)
+                .append(",\"seats\":").append(seatStore.getNumberSeatsPerBus())
+                .append(",\"available\":").append(seatStore.getAvailableSeats(busId))
+                .append(",\"unavailable\":").append(seatStore.getBookedSeats(busId))
+                .append(",\"bookedSeats\":[");
+        boolean first = true;
+        for (int seatNumber = 1; seatNumber <= seatStore.getNumberSeatsPerBus(); seatNumber++) {
+            if (seatStore.isBooked(busId, seatNumber)) {
+                if (!first) {
+                    json.append(',');
+                }
+                json.append(seatNumber);
+                first = false;
+            }
+        }
+        // Held seats are listed as booked too, nobody else can take them
+        long[] heldWords = new long[seatStore.getWordsPerBus()];
+        seatHolds.copyHeldSeatWords(busId, heldWords);
+        json.append("],\"heldSeats\":[");
+        first = true;
+        for (int word = 0; word < heldWords.length; word++) {
+            for (long bits = heldWords[word]; bits != 0; bits &= bits - 1) {
+                if (!first) {
+                    json.append(',');
+                }
+                json.append(word * Long.SIZE + Long.numberOfTrailingZeros(bits) + 1);
+                first = false;
+            }
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Builds the JSON of one trip, listing its booked seat numbers.
+     */
+    private String tripJson(int busId, long departureMinute) {
+        long[] seatWords = new long[tripInventory.getWordsPerBus()];
+        tripInventory.copySeatWords(busId, departureMinute, seatWords);
+        StringBuilder json = new StringBuilder(64);
+        json.append("{\"busId\":").append(busId)
+                .append(",\"departure\":\"").append(TripInventory.toDeparture(departureMinute))
+                .append("\",\"seats\":").append(tripInventory.getNumberSeatsPerBus())
+                .append(",\"departed\":").append(departureMinute < tripInventory.getEvictedBefore())
+                .append(",\"bookedSeats\":[");
+        int booked = 0;
+        for (int word = 0; word < seatWords.length; word++) {
+            for (long bits = seatWords[word]; bits != 0; bits &= bits - 1) {
+                if (booked++ > 0) {
+                    json.append(',');
+                }
+                json.append(word * Long.SIZE + Long.numberOfTrailingZeros(bits) + 1);
+            }
+        }
+        json.append("],\"available\":").append(tripInventory.getNumberSeatsPerBus() - booked);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Builds the JSON answer of a book, cancel or reset request.
+     */
+    private static String resultJson(BookingResult result, int busId, int seatNumber) {
+        String json = "{\"result\":\"" + result + "\",\"busId\":" + busId;
+        if (seatNumber > 0) {
+            json += ",\"seat\":" + seatNumber;
+        }
+        return json + "}";
+    }
+
+    /**
+     * Sends an error answer with a message.
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, "{\"error\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}");
+    }
+
+    /**
+     * Sends a JSON answer.
+     */
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package bus.shard;
+
+import bus.BookingResult;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * This class holds the binary protocol between a {@link ShardRouter} and its {@link ShardServer}s.
+ * <p>
+ * A request is an operation byte followed by big-endian int arguments; bus IDs are the
+ * shard's own IDs, starting at 1 on every shard. A response starts with a status byte:
+ * {@link #OK} followed by the result, or {@link #ERROR} followed by a UTF message.
+ * Requests may be pipelined, responses come back in the same order.
+ * <pre>
+ * HELLO                                  -&gt; buses, seats per bus
+ * BOOK bus seat, CANCEL bus seat         -&gt; result byte ({@link bus.BookingResult} ordinal)
+ * RESET bus                              -&gt; result byte
+ * BOOK_SEATS bus n seat*n                -&gt; result byte
+ * CANCEL_SEATS bus n seat*n              -&gt; result byte
+ * BOOK_ANY bus count                     -&gt; n seat*n
+ * BOOKED_SEATS n bus*n                   -&gt; booked*n
+ * SEAT_WORDS bus                         -&gt; word*wordsPerBus (longs)
+ * FIRST_AVAILABLE bus                    -&gt; seat or -1
+ * TOTAL_BOOKED                           -&gt; long
+ * FIND_FREE minimum, FIND_EMPTIEST count,
+ * FIND_FULLEST count, FIND_SEAT_FREE seat -&gt; n bus*n
+ * </pre>
+ */
+public final class ShardProtocol {
+
+    // Operations
+    public static final byte HELLO = 0;
+    public static final byte BOOK = 1;
+    public static final byte CANCEL = 2;
+    public static final byte RESET = 3;
+    public static final byte BOOK_SEATS = 4;
+    public static final byte CANCEL_SEATS = 5;
+    public static final byte BOOK_ANY = 6;
+    public static final byte BOOKED_SEATS = 7;
+    public static final byte SEAT_WORDS = 8;
+    public static final byte FIRST_AVAILABLE = 9;
+    public static final byte TOTAL_BOOKED = 10;
+    public static final byte FIND_FREE = 11;
+    public static final byte FIND_EMPTIEST = 12;
+    public static final byte FIND_FULLEST = 13;
+    public static final byte FIND_SEAT_FREE = 14;
+
+    // Response status
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+
+    // Largest list of numbers accepted in one request, more than the seats of a bus or the buses of a page
+    static final int MAX_LIST_LENGTH = 1 << 20;
+
+    private ShardProtocol() {
+    }
+
+    /**
+     * Reads a length-prefixed list of ints.
+     */
+    static int[] readInts(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_LIST_LENGTH) {
+            throw new IOException("Invalid list length: " + length);
+        }
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Reads a result byte and checks that it is a known {@link BookingResult}.
+     */
+    static BookingResult readResult(DataInputStream in) throws IOException {
+        byte ordinal = in.readByte();
+        BookingResult[] results = BookingResult.values();
+        if (ordinal < 0 || ordinal >= results.length) {
+            throw new IOException("Invalid booking result: " + ordinal);
+        }
+        return results[ordinal];
+    }
+}
@@ -0,0 +1,535 @@
+package bus.shard;
+
+import bus.BookingResult;
+import bus.BookingService;
+import bus.FleetSearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class represents a fleet spread over several {@link ShardServer} nodes.
+ * The buses are split into ranges: shard 0 owns the first buses, shard 1 the next ones, and so on,
+ * each with as many buses as the node reports. Every operation on a bus is forwarded to the shard
+ * that owns it; fleet-wide reads (pages, totals, searches) send one request to every shard
+ * involved before reading any answer, so the shards work on them at the same time.
+ * <p>
+ * The router is thread-safe: each call borrows an idle connection to the shard, or opens a new one.
+ * Network failures are thrown as {@link UncheckedIOException}, a shard that does not answer within
+ * 30 seconds counts as failed. A connection is only reused after a complete answer.
+ */
+public final class ShardRouter implements BookingService, FleetSearch, AutoCloseable {
+
+    // Time to connect to a shard and to wait for its answer before the shard counts as failed
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    private final Shard[] shards;
+    private final int[] firstBusIds;
+    private final int numberOfBuses;
+    private final int numberSeatsPerBus;
+
+    /**
+     * Connects to the shards and learns the buses each one owns.
+     *
+     * @param addresses The shard nodes, in the order of their bus ranges.
+     */
+    public ShardRouter(List<InetSocketAddress> addresses) throws IOException {
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.shards = new Shard[addresses.size()];
+        this.firstBusIds = new int[addresses.size()];
+        long totalBuses = 0;
+        int seats = -1;
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                Shard shard = new Shard(addresses.get(i));
+                shards[i] = shard;
+                Connection connection = shard.open();
+                shard.idle.offer(connection); // closed with the others if the handshake fails
+                connection.out.writeByte(ShardProtocol.HELLO);
+                connection.out.flush();
+                checkStatus(connection);
+                shard.numberOfBuses = connection.in.readInt();
+                int shardSeats = connection.in.readInt();
+                if (seats != -1 && shardSeats != seats) {
+                    throw new IOException("Shard " + shard.address + " has " + shardSeats + " seats per bus, the others " + seats);
+                }
+                seats = shardSeats;
+                firstBusIds[i] = (int) totalBuses + 1;
+                totalBuses += shard.numberOfBuses;
+            }
+            if (totalBuses > Integer.MAX_VALUE) {
+                throw new IOException("The shards hold more than " + Integer.MAX_VALUE + " buses");
+            }
+        } catch (IOException | RuntimeException e) {
+            close(); // the connections opened so far
+            throw e;
+        }
+        this.numberOfBuses = (int) totalBuses;
+        this.numberSeatsPerBus = seats;
+    }
+
+    /**
+     * Parses a list of shard addresses.
+     *
+     * @param list The addresses as host:port, separated by commas.
+     * @return The addresses in the same order.
+     */
+    public static List<InetSocketAddress> parseAddresses(String list) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String address : list.split(",")) {
+            int colon = address.lastIndexOf(':');
+            if (colon <= 0 || !address.substring(colon + 1).matches("[0-9]{1,5}")) {
+                throw new IllegalArgumentException("Shard address must be host:port: " + address);
+            }
+            addresses.add(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    @Override
+    public BookingResult book(int busId, int seatNumber) {
+        return callResult(busId, ShardProtocol.BOOK, seatNumber);
+    }
+
+    @Override
+    public BookingResult cancel(int busId, int seatNumber) {
+        return callResult(busId, ShardProtocol.CANCEL, seatNumber);
+    }
+
+    @Override
+    public BookingResult reset(int busId) {
+        int shard = shardOf(busId);
+        return call(shard, out -> {
+            out.writeByte(ShardProtocol.RESET);
+            out.writeInt(localId(busId, shard));
+        }, ShardProtocol::readResult);
+    }
+
+    @Override
+    public BookingResult bookSeats(int busId, int[] seatNumbers) {
+        return callGroup(busId, ShardProtocol.BOOK_SEATS, seatNumbers);
+    }
+
+    @Override
+    public BookingResult cancelSeats(int busId, int[] seatNumbers) {
+        return callGroup(busId, ShardProtocol.CANCEL_SEATS, seatNumbers);
+    }
+
+    @Override
+    public int[] bookAnySeats(int busId, int count) {
+        int shard = shardOf(busId);
+        return call(shard, out -> {
+            out.writeByte(ShardProtocol.BOOK_ANY);
+            out.writeInt(localId(busId, shard));
+            out.writeInt(count);
+        }, ShardProtocol::readInts);
+    }
+
+    @Override
+    public int getBookedSeats(int busId) {
+        int[] bookedSeats = new int[1];
+        copyBookedSeats(new int[]{busId}, 1, bookedSeats);
+        return bookedSeats[0];
+    }
+
+    @Override
+    public void copyBookedSeats(int[] busIds, int count, int[] bookedSeats) {
+        int[] shardOfRow = new int[count];
+        int[] rowsPerShard = new int[shards.length];
+        for (int row = 0; row < count; row++) {
+            shardOfRow[row] = shardOf(busIds[row]);
+            rowsPerShard[shardOfRow[row]]++;
+        }
+        scatter(rowsPerShard, (shard, out) -> {
+            out.writeByte(ShardProtocol.BOOKED_SEATS);
+            out.writeInt(rowsPerShard[shard]);
+            for (int row = 0; row < count; row++) {
+                if (shardOfRow[row] == shard) {
+                    out.writeInt(localId(busIds[row], shard));
+                }
+            }
+        }, (shard, in) -> {
+            for (int row = 0; row < count; row++) { // answers come in the order the buses were asked
+                if (shardOfRow[row] == shard) {
+                    bookedSeats[row] = in.readInt();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void copySeatWords(int busId, long[] words) {
+        int shard = shardOf(busId);
+        int wordsPerBus = getWordsPerBus();
+        call(shard, out -> {
+            out.writeByte(ShardProtocol.SEAT_WORDS);
+            out.writeInt(localId(busId, shard));
+        }, in -> {
+            for (int i = 0; i < wordsPerBus; i++) {
+                words[i] = in.readLong();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public int findFirstAvailableSeat(int busId) {
+        int shard = shardOf(busId);
+        return call(shard, out -> {
+            out.writeByte(ShardProtocol.FIRST_AVAILABLE);
+            out.writeInt(localId(busId, shard));
+        }, DataInputStream::readInt);
+    }
+
+    @Override
+    public long getTotalBookedSeats() {
+        long[] totals = new long[shards.length];
+        scatter(allShards(), (shard, out) -> out.writeByte(ShardProtocol.TOTAL_BOOKED),
+                (shard, in) -> totals[shard] = in.readLong());
+        return Arrays.stream(totals).sum();
+    }
+
+    @Override
+    public int getNumberOfBuses() {
+        return numberOfBuses;
+    }
+
+    @Override
+    public int getNumberSeatsPerBus() {
+        return numberSeatsPerBus;
+    }
+
+    @Override
+    public int[] findBusesWithFreeSeats(int minimum) {
+        if (minimum < 0 || minimum > numberSeatsPerBus) {
+            throw new IllegalArgumentException("Number of seats must be between 0 and " + numberSeatsPerBus + ": " + minimum);
+        }
+        return gatherBusIds(ShardProtocol.FIND_FREE, minimum);
+    }
+
+    @Override
+    public int[] findBusesWithSeatFree(int seatNumber) {
+        if (seatNumber < 1 || seatNumber > numberSeatsPerBus) {
+            throw new IllegalArgumentException("Seat number must be between 1 and " + numberSeatsPerBus + ": " + seatNumber);
+        }
+        return gatherBusIds(ShardProtocol.FIND_SEAT_FREE, seatNumber);
+    }
+
+    @Override
+    public int[] findEmptiestBuses(int count) {
+        return mergeByFreeSeats(gatherBusIds(ShardProtocol.FIND_EMPTIEST, count), count, true);
+    }
+
+    @Override
+    public int[] findFullestBuses(int count) {
+        return mergeByFreeSeats(gatherBusIds(ShardProtocol.FIND_FULLEST, count), count, false);
+    }
+
+    /**
+     * Closes the idle connections to all shards.
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            if (shard == null) {
+                continue;
+            }
+            Connection connection;
+            while ((connection = shard.idle.poll()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Sends a single-seat operation and reads its result.
+     */
+    private BookingResult callResult(int busId, byte operation, int seatNumber) {
+        int shard = shardOf(busId);
+        return call(shard, out -> {
+            out.writeByte(operation);
+            out.writeInt(localId(busId, shard));
+            out.writeInt(seatNumber);
+        }, ShardProtocol::readResult);
+    }
+
+    /**
+     * Sends a group operation and reads its result.
+     */
+    private BookingResult callGroup(int busId, byte operation, int[] seatNumbers) {
+        int shard = shardOf(busId);
+        return call(shard, out -> {
+            out.writeByte(operation);
+            out.writeInt(localId(busId, shard));
+            out.writeInt(seatNumbers.length);
+            for (int seatNumber : seatNumbers) {
+                out.writeInt(seatNumber);
+            }
+        }, ShardProtocol::readResult);
+    }
+
+    /**
+     * Asks every shard for a list of its buses and joins the lists in shard order, with fleet bus IDs.
+     */
+    private int[] gatherBusIds(byte operation, int argument) {
+        int[][] lists = new int[shards.length][];
+        scatter(allShards(), (shard, out) -> {
+            out.writeByte(operation);
+            out.writeInt(argument);
+        }, (shard, in) -> lists[shard] = ShardProtocol.readInts(in));
+
+        int total = 0;
+        for (int[] list : lists) {
+            total += list.length;
+        }
+        int[] busIds = new int[total];
+        int found = 0;
+        for (int shard = 0; shard < shards.length; shard++) {
+            for (int localId : lists[shard]) {
+                busIds[found++] = firstBusIds[shard] + localId - 1;
+            }
+        }
+        return busIds;
+    }
+
+    /**
+     * Merges the best buses of every shard into the best buses of the fleet.
+     */
+    private int[] mergeByFreeSeats(int[] candidates, int count, boolean emptiestFirst) {
+        int[] bookedSeats = new int[candidates.length];
+        copyBookedSeats(candidates, candidates.length, bookedSeats);
+        long[] keys = new long[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            int order = emptiestFirst ? bookedSeats[i] : numberSeatsPerBus - bookedSeats[i];
+            keys[i] = (long) order << 32 | i; // sort by seats, then by shard order
+        }
+        Arrays.sort(keys);
+        int[] busIds = new int[Math.min(count, candidates.length)];
+        for (int i = 0; i < busIds.length; i++) {
+            busIds[i] = candidates[(int) keys[i]];
+        }
+        return busIds;
+    }
+
+    /**
+     * Sends one request to a shard and reads the response.
+     */
+    private <T> T call(int shard, Request request, Response<T> response) {
+        Connection connection = shards[shard].borrow();
+        boolean reusable = false;
+        try {
+            request.write(connection.out);
+            connection.out.flush();
+            try {
+                checkStatus(connection);
+            } catch (IllegalArgumentException e) {
+                reusable = true; // the shard rejected the arguments, the connection is fine
+                throw e;
+            }
+            T result = response.read(connection.in);
+            reusable = true;
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Shard " + shards[shard].address + " failed", e);
+        } finally {
+            // any other failure may have left half a request or response on the connection
+            if (reusable) {
+                shards[shard].idle.offer(connection);
+            } else {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Sends a request to every shard with a non-zero entry in involved, then reads the responses.
+     * All requests are on the wire before the first response is read.
+     */
+    private void scatter(int[] involved, ShardRequest request, ShardResponse response) {
+        Connection[] connections = new Connection[shards.length];
+        IllegalArgumentException rejected = null;
+        int shard = 0;
+        try {
+            for (shard = 0; shard < shards.length; shard++) {
+                if (involved[shard] != 0) {
+                    connections[shard] = shards[shard].borrow();
+                    request.write(shard, connections[shard].out);
+                    connections[shard].out.flush();
+                }
+            }
+            for (shard = 0; shard < shards.length; shard++) {
+                if (connections[shard] != null) {
+                    boolean accepted = true;
+                    try {
+                        checkStatus(connections[shard]);
+                    } catch (IllegalArgumentException e) {
+                        rejected = e; // read the other answers so their connections stay usable
+                        accepted = false;
+                    }
+                    if (accepted) {
+                        response.read(shard, connections[shard].in);
+                    }
+                    shards[shard].idle.offer(connections[shard]);
+                    connections[shard] = null;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Shard " + shards[Math.min(shard, shards.length - 1)].address + " failed", e);
+        } finally {
+            // connections still borrowed here failed, or were never read after another shard failed
+            for (Connection connection : connections) {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+        if (rejected != null) {
+            throw rejected;
+        }
+    }
+
+    /**
+     * @return An involvement array that includes every shard.
+     */
+    private int[] allShards() {
+        int[] involved = new int[shards.length];
+        Arrays.fill(involved, 1);
+        return involved;
+    }
+
+    /**
+     * Reads the status of a response and throws the shard's message if it was rejected.
+     */
+    private static void checkStatus(Connection connection) throws IOException {
+        byte status = connection.in.readByte();
+        if (status == ShardProtocol.ERROR) {
+            throw new IllegalArgumentException(connection.in.readUTF());
+        }
+        if (status != ShardProtocol.OK) {
+            throw new IOException("Invalid response status " + status);
+        }
+    }
+
+    /**
+     * Finds the shard that owns a bus.
+     */
+    private int shardOf(int busId) {
+        if (busId < 1 || busId > numberOfBuses) {
+            throw new IllegalArgumentException("Bus ID must be between 1 and " + numberOfBuses + ": " + busId);
+        }
+        int shard = Arrays.binarySearch(firstBusIds, busId);
+        return shard >= 0 ? shard : -shard - 2; // the last shard starting before the bus
+    }
+
+    /**
+     * Converts a fleet bus ID to the ID of the bus on its shard.
+     */
+    private int localId(int busId, int shard) {
+        return busId - firstBusIds[shard] + 1;
+    }
+
+    /**
+     * Writes the arguments of a request.
+     */
+    private interface Request {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Reads the result of a response after its status.
+     */
+    private interface Response<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Writes the request for one shard of a scatter-gather.
+     */
+    private interface ShardRequest {
+        void write(int shard, DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Reads the response of one shard of a scatter-gather.
+     */
+    private interface ShardResponse {
+        void read(int shard, DataInputStream in) throws IOException;
+    }
+
+    /**
+     * One shard node with its pool of idle connections.
+     */
+    private static class Shard {
+        private final InetSocketAddress address;
+        private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+        private int numberOfBuses;
+
+        Shard(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        /**
+         * Takes an idle connection, or opens a new one if all are in use.
+         */
+        Connection borrow() {
+            Connection connection = idle.poll();
+            if (connection != null) {
+                return connection;
+            }
+            try {
+                return open();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not connect to shard " + address, e);
+            }
+        }
+
+        Connection open() throws IOException {
+            Socket socket = new Socket();
+            try {
+                socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                return new Connection(socket);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * One TCP connection to a shard.
+     */
+    private static class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package bus.shard;
+
+import bus.BookingEngine;
+import bus.BookingResult;
+import bus.FleetSearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents one shard node: it owns the seats of a range of buses and answers
+ * {@link ShardProtocol} requests from routers over TCP.
+ * Every connection is served by its own virtual thread. Pipelined requests are answered
+ * together, the responses are only flushed when no further request is waiting.
+ */
+public class ShardServer {
+
+    private final BookingEngine bookingEngine;
+    private final FleetSearch fleetSearch;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a shard node that is not started yet.
+     *
+     * @param bookingEngine The engine holding the seats of this shard.
+     * @param fleetSearch   The searches over the buses of this shard.
+     * @param port          The TCP port to listen on, 0 picks a free port.
+     */
+    public ShardServer(BookingEngine bookingEngine, FleetSearch fleetSearch, int port) throws IOException {
+        this.bookingEngine = bookingEngine;
+        this.fleetSearch = fleetSearch;
+        this.serverSocket = new ServerSocket(port, 1024);
+        this.acceptor = new Thread(this::acceptLoop, "shard-acceptor");
+    }
+
+    /**
+     * Starts accepting connections.
+     */
+    public void start() {
+        acceptor.start();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     */
+    public void stop() {
+        stopped = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * @return The port the shard listens on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return The number of open connections from routers.
+     */
+    int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Accepts connections and starts a virtual thread for each.
+     */
+    private void acceptLoop() {
+        while (!stopped) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true); // responses are small and already batched
+                connections.add(socket);
+                Thread.ofVirtual().name("shard-connection").start(() -> serve(socket));
+            } catch (IOException e) {
+                if (!stopped) {
+                    System.err.println("-> Error: Shard could not accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the requests of one connection until the router closes it.
+     */
+    private void serve(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16))) {
+            while (true) {
+                int operation = in.read();
+                if (operation == -1) {
+                    return; // the router closed the connection
+                }
+                handle((byte) operation, in, out);
+                if (in.available() == 0) {
+                    out.flush(); // no pipelined request is waiting, send the answers
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            // the connection was closed in the middle of a request
+        } catch (IOException e) {
+            if (!stopped) {
+                System.err.println("-> Error: Shard connection failed: " + e.getMessage());
+            }
+        } finally {
+            connections.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Reads the arguments of one request, runs it and writes its response.
+     * Invalid bus IDs or seat numbers are answered with an error, the connection stays usable.
+     */
+    private void handle(byte operation, DataInputStream in, DataOutputStream out) throws IOException {
+        try {
+            switch (operation) {
+                case ShardProtocol.HELLO:
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeInt(bookingEngine.getNumberOfBuses());
+                    out.writeInt(bookingEngine.getNumberSeatsPerBus());
+                    break;
+                case ShardProtocol.BOOK: {
+                    int busId = in.readInt();
+                    int seatNumber = in.readInt();
+                    writeResult(out, bookingEngine.book(busId, seatNumber));
+                    break;
+                }
+                case ShardProtocol.CANCEL: {
+                    int busId = in.readInt();
+                    int seatNumber = in.readInt();
+                    writeResult(out, bookingEngine.cancel(busId, seatNumber));
+                    break;
+                }
+                case ShardProtocol.RESET:
+                    writeResult(out, bookingEngine.reset(in.readInt()));
+                    break;
+                case ShardProtocol.BOOK_SEATS: {
+                    int busId = in.readInt();
+                    writeResult(out, bookingEngine.bookSeats(busId, ShardProtocol.readInts(in)));
+                    break;
+                }
+                case ShardProtocol.CANCEL_SEATS: {
+                    int busId = in.readInt();
+                    writeResult(out, bookingEngine.cancelSeats(busId, ShardProtocol.readInts(in)));
+                    break;
+                }
+                case ShardProtocol.BOOK_ANY: {
+                    int busId = in.readInt();
+                    int count = in.readInt();
+                    writeInts(out, bookingEngine.bookAnySeats(busId, count));
+                    break;
+                }
+                case ShardProtocol.BOOKED_SEATS: {
+                    int[] busIds = ShardProtocol.readInts(in);
+                    int[] bookedSeats = new int[busIds.length];
+                    bookingEngine.copyBookedSeats(busIds, busIds.length, bookedSeats);
+                    out.writeByte(ShardProtocol.OK);
+                    for (int booked : bookedSeats) {
+                        out.writeInt(booked);
+                    }
+                    break;
+                }
+                case ShardProtocol.SEAT_WORDS: {
+                    long[] words = new long[bookingEngine.getWordsPerBus()];
+                    bookingEngine.copySeatWords(in.readInt(), words);
+                    out.writeByte(ShardProtocol.OK);
+                    for (long word : words) {
+                        out.writeLong(word);
+                    }
+                    break;
+                }
+                case ShardProtocol.FIRST_AVAILABLE: {
+                    int seatNumber = bookingEngine.findFirstAvailableSeat(in.readInt());
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeInt(seatNumber);
+                    break;
+                }
+                case ShardProtocol.TOTAL_BOOKED:
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeLong(bookingEngine.getTotalBookedSeats());
+                    break;
+                case ShardProtocol.FIND_FREE:
+                    writeInts(out, fleetSearch.findBusesWithFreeSeats(in.readInt()));
+                    break;
+                case ShardProtocol.FIND_EMPTIEST:
+                    writeInts(out, fleetSearch.findEmptiestBuses(in.readInt()));
+                    break;
+                case ShardProtocol.FIND_FULLEST:
+                    writeInts(out, fleetSearch.findFullestBuses(in.readInt()));
+                    break;
+                case ShardProtocol.FIND_SEAT_FREE:
+                    writeInts(out, fleetSearch.findBusesWithSeatFree(in.readInt()));
+                    break;
+                default:
+                    throw new IOException("Unknown shard operation " + operation); // the rest of the stream cannot be read
+            }
+        } catch (IllegalArgumentException e) {
+            // every argument was read before the operation ran, so the next request starts cleanly
+            out.writeByte(ShardProtocol.ERROR);
+            out.writeUTF(String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Writes a successful booking result.
+     */
+    private static void writeResult(DataOutputStream out, BookingResult result) throws IOException {
+        out.writeByte(ShardProtocol.OK);
+        out.writeByte(result.ordinal());
+    }
+
+    /**
+     * Writes a successful list of ints.
+     */
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeByte(ShardProtocol.OK);
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+    }
+}
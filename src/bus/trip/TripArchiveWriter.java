@@ -0,0 +1,70 @@
+package bus.trip;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class represents a CSV file of departed trips, appended to on every eviction.
+ * Every line is "departure,busId,bookedSeats,seat seat ...", for example
+ * "2026-10-18T08:30,12,3,1 2 17"; a header is written when the file is created.
+ */
+public class TripArchiveWriter implements TripArchiver, Closeable {
+
+    static final String HEADER = "departure,busId,bookedSeats,seats";
+
+    private final BufferedWriter writer;
+    private final StringBuilder line = new StringBuilder(128);
+
+    /**
+     * Opens the archive, creating it if needed.
+     *
+     * @param file The CSV file.
+     */
+    public TripArchiveWriter(Path file) throws IOException {
+        boolean created = !Files.exists(file);
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (created) {
+            writer.write(HEADER);
+            writer.newLine();
+        }
+    }
+
+    @Override
+    public void archive(int busId, long departureMinute, int bookedSeats, long[] seatWords) throws IOException {
+        line.setLength(0);
+        line.append(TripInventory.toDeparture(departureMinute)).append(',')
+                .append(busId).append(',')
+                .append(bookedSeats).append(',');
+        boolean first = true;
+        for (int word = 0; word < seatWords.length; word++) {
+            // Walk the set bits of the word, lowest seat first
+            for (long bits = seatWords[word]; bits != 0; bits &= bits - 1) {
+                if (!first) {
+                    line.append(' ');
+                }
+                line.append(word * Long.SIZE + Long.numberOfTrailingZeros(bits) + 1);
+                first = false;
+            }
+        }
+        writer.append(line);
+        writer.newLine();
+    }
+
+    /**
+     * Writes the buffered lines to the file.
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
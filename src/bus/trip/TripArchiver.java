@@ -0,0 +1,21 @@
+package bus.trip;
+
+import java.io.IOException;
+
+/**
+ * Interface for components that keep the trips of a {@link TripInventory}: the evicted trips,
+ * handed over in departure order with buses of the same departure by ID, or a copy of every
+ * stored trip (see {@link TripInventory#exportTrips}).
+ */
+public interface TripArchiver {
+
+    /**
+     * Called for every handed over trip that has bookings.
+     *
+     * @param busId           The ID of the bus.
+     * @param departureMinute The departure in minutes since the epoch (see {@link TripInventory#toDepartureMinute}).
+     * @param bookedSeats     The number of booked seats.
+     * @param seatWords       The seat bits of the trip, one word per 64 seats; only valid during the call.
+     */
+    void archive(int busId, long departureMinute, int bookedSeats, long[] seatWords) throws IOException;
+}
@@ -0,0 +1,641 @@
+package bus.trip;
+
+import bus.BookingResult;
+import bus.SeatStore;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * This class represents the seats of every trip of the fleet, a trip being one departure of one bus.
+ * Seats can be sold for any number of future departures, and only trips with at least one booking
+ * take memory: a trip gets a slot with its seat bits and booked seat counter on its first booking
+ * and gives it back when its last booking is canceled or it is evicted.
+ * <p>
+ * Trips are found by a key made of the departure minute and the bus ID, in open-addressing hash
+ * tables spread over {@value #SEGMENTS} segments with a lock each, so a lookup is one probe into
+ * primitive arrays. Every segment also keeps its trip keys in a min-heap, so departed trips are
+ * evicted with {@link #evictDepartedBefore} without looking at the trips that are still ahead; they
+ * are handed to a {@link TripArchiver} in departure order and cannot be booked afterwards.
+ * Every change is reported to the {@link TripListener}s, which is how the sales are saved to disk;
+ * a change a listener fails to take is undone and its exception thrown.
+ * <p>
+ * Departures are minutes since 1970-01-01T00:00 in the timetable's local time, see
+ * {@link #toDepartureMinute}. Bus IDs and seat numbers are 1-based, as in {@link SeatStore}.
+ */
+public class TripInventory {
+
+    // Number of independently locked parts, a power of two
+    private static final int SEGMENTS = 64;
+
+    // A trip key holds the departure minute above the bus ID, so keys sort by departure
+    private static final int BUS_ID_BITS = 20;
+    public static final long MAX_DEPARTURE_MINUTE = (1L << (63 - BUS_ID_BITS)) - 1;
+
+    // Hash table size and slots of a new segment, a power of two
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int numberOfBuses;
+    private final int numberSeatsPerBus;
+    private final int wordsPerBus;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    // Departures before this minute were evicted and can no longer be booked, only raised by evictions
+    private volatile long evictedBefore;
+    private volatile TripListener[] listeners = new TripListener[0];
+
+    /**
+     * Creates an inventory where every seat of every trip is available.
+     *
+     * @param numberOfBuses     The number of buses in the fleet.
+     * @param numberSeatsPerBus The number of seats on each bus.
+     */
+    public TripInventory(int numberOfBuses, int numberSeatsPerBus) {
+        if (numberOfBuses < 1 || numberOfBuses > SeatStore.MAX_BUSES) {
+            throw new IllegalArgumentException("Number of buses must be between 1 and " + SeatStore.MAX_BUSES + ": " + numberOfBuses);
+        }
+        if (numberSeatsPerBus < 1 || numberSeatsPerBus > SeatStore.MAX_SEATS_PER_BUS) {
+            throw new IllegalArgumentException("Number of seats must be between 1 and " + SeatStore.MAX_SEATS_PER_BUS + ": " + numberSeatsPerBus);
+        }
+        this.numberOfBuses = numberOfBuses;
+        this.numberSeatsPerBus = numberSeatsPerBus;
+        this.wordsPerBus = (numberSeatsPerBus + Long.SIZE - 1) / Long.SIZE;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Adds a listener for seat changes. Listeners should be added before the inventory
+     * is shared with other threads, changes already in progress are not reported.
+     *
+     * @param listener The listener to notify.
+     */
+    public synchronized void addListener(TripListener listener) {
+        TripListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Books a seat on a trip.
+     *
+     * @param busId           The ID of the bus.
+     * @param departureMinute The departure of the trip.
+     * @param seatNumber      The seat number to book.
+     * @return BOOKED if the seat was booked, ALREADY_BOOKED if someone else holds it.
+     */
+    public BookingResult book(int busId, long departureMinute, int seatNumber) {
+        long key = tripKey(busId, departureMinute);
+        int word = seatWord(seatNumber);
+        long mask = 1L << (seatNumber - 1);
+        Segment segment = segmentOf(key);
+        synchronized (segment) {
+            checkNotEvicted(departureMinute);
+            int slot = segment.find(key);
+            if (slot == -1) {
+                slot = segment.insert(key); // first booking of the trip
+            }
+            int index = slot * wordsPerBus + word;
+            if ((segment.seatWords[index] & mask) != 0) {
+                return BookingResult.ALREADY_BOOKED;
+            }
+            segment.seatWords[index] |= mask;
+            segment.bookedSeats[slot]++;
+            TripListener[] current = listeners;
+            for (int i = 0; i < current.length; i++) {
+                try {
+                    current[i].seatBooked(busId, departureMinute, seatNumber);
+                } catch (RuntimeException e) {
+                    // A sale a listener fails to take, e.g. the journal, is rejected
+                    segment.seatWords[index] &= ~mask;
+                    if (--segment.bookedSeats[slot] == 0) {
+                        segment.remove(key);
+                    }
+                    for (int j = 0; j < i; j++) {
+                        current[j].seatCanceled(busId, departureMinute, seatNumber);
+                    }
+                    throw e;
+                }
+            }
+            return BookingResult.BOOKED;
+        }
+    }
+
+    /**
+     * Cancels the booking of a seat on a trip.
+     *
+     * @param busId           The ID of the bus.
+     * @param departureMinute The departure of the trip.
+     * @param seatNumber      The seat number to cancel.
+     * @return CANCELED if the booking was canceled, ALREADY_AVAILABLE if the seat was not booked.
+     */
+    public BookingResult cancel(int busId, long departureMinute, int seatNumber) {
+        long key = tripKey(busId, departureMinute);
+        int word = seatWord(seatNumber);
+        long mask = 1L << (seatNumber - 1);
+        Segment segment = segmentOf(key);
+        synchronized (segment) {
+            checkNotEvicted(departureMinute);
+            int slot = segment.find(key);
+            if (slot == -1 || (segment.seatWords[slot * wordsPerBus + word] & mask) == 0) {
+                return BookingResult.ALREADY_AVAILABLE;
+            }
+            segment.seatWords[slot * wordsPerBus + word] &= ~mask;
+            if (--segment.bookedSeats[slot] == 0) {
+                segment.remove(key); // the trip has no bookings left, give its slot back
+            }
+            TripListener[] current = listeners;
+            for (int i = 0; i < current.length; i++) {
+                try {
+                    current[i].seatCanceled(busId, departureMinute, seatNumber);
+                } catch (RuntimeException e) {
+                    // A cancellation a listener fails to take is rejected, the seat is booked again
+                    int restored = segment.find(key);
+                    if (restored == -1) {
+                        restored = segment.insert(key);
+                    }
+                    segment.seatWords[restored * wordsPerBus + word] |= mask;
+                    segment.bookedSeats[restored]++;
+                    for (int j = 0; j < i; j++) {
+                        current[j].seatBooked(busId, departureMinute, seatNumber);
+                    }
+                    throw e;
+                }
+            }
+            return BookingResult.CANCELED;
+        }
+    }
+
+    /**
+     * @param busId           The ID of the bus.
+     * @param departureMinute The departure of the trip.
+     * @return The number of booked seats on the trip.
+     */
+    public int getBookedSeats(int busId, long departureMinute) {
+        long key = tripKey(busId, departureMinute);
+        Segment segment = segmentOf(key);
+        synchronized (segment) {
+            int slot = segment.find(key);
+            return slot == -1 ? 0 : segment.bookedSeats[slot];
+        }
+    }
+
+    /**
+     * @param busId           The ID of the bus.
+     * @param departureMinute The departure of the trip.
+     * @return The number of available seats on the trip.
+     */
+    public int getAvailableSeats(int busId, long departureMinute) {
+        return numberSeatsPerBus - getBookedSeats(busId, departureMinute);
+    }
+
+    /**
+     * @param busId           The ID of the bus.
+     * @param departureMinute The departure of the trip.
+     * @param seatNumber      The seat number.
+     * @return True if the seat is booked on the trip.
+     */
+    public boolean isBooked(int busId, long departureMinute, int seatNumber) {
+        long key = tripKey(busId, departureMinute);
+        int word = seatWord(seatNumber);
+        Segment segment = segmentOf(key);
+        synchronized (segment) {
+            int slot = segment.find(key);
+            return slot != -1 && (segment.seatWords[slot * wordsPerBus + word] & (1L << (seatNumber - 1))) != 0;
+        }
+    }
+
+    /**
+     * Copies the seat bits of a trip (see {@link SeatStore#getSeatWord}).
+     *
+     * @param busId           The ID of the bus.
+     * @param departureMinute The departure of the trip.
+     * @param words           The array to copy into, at least {@link #getWordsPerBus} long.
+     */
+    public void copySeatWords(int busId, long departureMinute, long[] words) {
+        long key = tripKey(busId, departureMinute);
+        Segment segment = segmentOf(key);
+        synchronized (segment) {
+            int slot = segment.find(key);
+            if (slot == -1) {
+                Arrays.fill(words, 0, wordsPerBus, 0);
+            } else {
+                System.arraycopy(segment.seatWords, slot * wordsPerBus, words, 0, wordsPerBus);
+            }
+        }
+    }
+
+    /**
+     * Removes every trip that departed before a minute and makes those departures unbookable.
+     * The trips are passed to the archiver in departure order once all of them are removed,
+     * so they are gone from the inventory even if the archiver fails. Evictions run one at a
+     * time, so the first bookable departure only moves forward and the archiver sees every
+     * departure once, in order.
+     *
+     * @param departureMinute The first departure to keep.
+     * @param archiver        Receives the evicted trips, or null to drop them.
+     * @return The number of trips evicted.
+     */
+    public synchronized int evictDepartedBefore(long departureMinute, TripArchiver archiver) throws IOException {
+        checkDeparture(departureMinute);
+        if (departureMinute <= evictedBefore) {
+            return 0;
+        }
+        evictedBefore = departureMinute; // bookings check this under their segment's lock
+        long firstKeptKey = departureMinute << BUS_ID_BITS;
+
+        // Take the departed trips out of every segment
+        long[] keys = new long[0];
+        int[] bookedSeats = new int[0];
+        long[] seatWords = new long[0];
+        int evicted = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                // Only the departed trips are visited, the heap gives them earliest first
+                while (segment.heapSize > 0 && segment.heap[0] < firstKeptKey) {
+                    long key = segment.pollEarliest();
+                    int slot = segment.find(key);
+                    if (slot == -1) {
+                        continue; // its last booking was canceled, or the key was pushed twice
+                    }
+                    if (evicted == keys.length) {
+                        int capacity = Math.max(16, evicted * 2);
+                        keys = Arrays.copyOf(keys, capacity);
+                        bookedSeats = Arrays.copyOf(bookedSeats, capacity);
+                        seatWords = Arrays.copyOf(seatWords, capacity * wordsPerBus);
+                    }
+                    keys[evicted] = key;
+                    bookedSeats[evicted] = segment.bookedSeats[slot];
+                    System.arraycopy(segment.seatWords, slot * wordsPerBus, seatWords, evicted * wordsPerBus, wordsPerBus);
+                    evicted++;
+                    segment.remove(key);
+                }
+            }
+        }
+        for (TripListener listener : listeners) {
+            listener.tripsEvicted(departureMinute);
+        }
+
+        // Hand them over in departure order
+        if (archiver != null && evicted > 0) {
+            long[] order = new long[evicted];
+            for (int i = 0; i < evicted; i++) {
+                order[i] = keys[i];
+            }
+            Arrays.sort(order);
+            int[] position = sortedPositions(keys, order, evicted);
+            long[] words = new long[wordsPerBus];
+            for (int i = 0; i < evicted; i++) {
+                int trip = position[i];
+                System.arraycopy(seatWords, trip * wordsPerBus, words, 0, wordsPerBus);
+                archiver.archive((int) (keys[trip] & ((1L << BUS_ID_BITS) - 1)), keys[trip] >>> BUS_ID_BITS, bookedSeats[trip], words);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Hands every trip with bookings to an archiver without removing it, e.g. to save the inventory.
+     * Each segment is copied under its lock, so changes made meanwhile may or may not be included.
+     *
+     * @param archiver Receives the trips, in no particular order.
+     * @return The number of trips.
+     */
+    public int exportTrips(TripArchiver archiver) throws IOException {
+        long[] words = new long[wordsPerBus];
+        int exported = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (int slot = 0; slot < segment.usedSlots; slot++) {
+                    long key = segment.slotKeys[slot];
+                    if (key != 0) {
+                        System.arraycopy(segment.seatWords, slot * wordsPerBus, words, 0, wordsPerBus);
+                        archiver.archive((int) (key & ((1L << BUS_ID_BITS) - 1)), key >>> BUS_ID_BITS, segment.bookedSeats[slot], words);
+                        exported++;
+                    }
+                }
+            }
+        }
+        return exported;
+    }
+
+    /**
+     * @return The number of trips that have bookings and take memory.
+     */
+    public long getStoredTrips() {
+        long trips = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                trips += segment.size;
+            }
+        }
+        return trips;
+    }
+
+    /**
+     * @return An estimate of the bytes held by the tables and slots of all segments.
+     */
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.keys.length * (8L + 4L) + segment.slotKeys.length * (8L + 8L * wordsPerBus + 2L + 4L) + segment.heap.length * 8L;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return The first departure that can still be booked.
+     */
+    public long getEvictedBefore() {
+        return evictedBefore;
+    }
+
+    /**
+     * @return The number of buses in the fleet.
+     */
+    public int getNumberOfBuses() {
+        return numberOfBuses;
+    }
+
+    /**
+     * @return The number of seats on each bus.
+     */
+    public int getNumberSeatsPerBus() {
+        return numberSeatsPerBus;
+    }
+
+    /**
+     * @return The number of 64-seat words used by each trip.
+     */
+    public int getWordsPerBus() {
+        return wordsPerBus;
+    }
+
+    /**
+     * Converts a departure time of the timetable to the minute used by the inventory.
+     *
+     * @param departure The departure, seconds are ignored.
+     * @return The minutes since 1970-01-01T00:00.
+     */
+    public static long toDepartureMinute(LocalDateTime departure) {
+        return Math.floorDiv(departure.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    /**
+     * Converts a departure minute of the inventory back to a time of the timetable.
+     *
+     * @param departureMinute The minutes since 1970-01-01T00:00.
+     * @return The departure time.
+     */
+    public static LocalDateTime toDeparture(long departureMinute) {
+        return LocalDateTime.ofEpochSecond(departureMinute * 60, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Finds, for the keys in sorted order, their positions in the unsorted array.
+     */
+    private static int[] sortedPositions(long[] keys, long[] sortedKeys, int count) {
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[Arrays.binarySearch(sortedKeys, 0, count, keys[i])] = i; // keys are unique
+        }
+        return positions;
+    }
+
+    /**
+     * Validates a trip and builds its key.
+     */
+    private long tripKey(int busId, long departureMinute) {
+        if (busId < 1 || busId > numberOfBuses) {
+            throw new IllegalArgumentException("Bus ID must be between 1 and " + numberOfBuses + ": " + busId);
+        }
+        checkDeparture(departureMinute);
+        return departureMinute << BUS_ID_BITS | busId;
+    }
+
+    /**
+     * Validates a seat number and finds the word of its bit.
+     */
+    private int seatWord(int seatNumber) {
+        if (seatNumber < 1 || seatNumber > numberSeatsPerBus) {
+            throw new IllegalArgumentException("Seat number must be between 1 and " + numberSeatsPerBus + ": " + seatNumber);
+        }
+        return (seatNumber - 1) / Long.SIZE;
+    }
+
+    private static void checkDeparture(long departureMinute) {
+        if (departureMinute < 0 || departureMinute > MAX_DEPARTURE_MINUTE) {
+            throw new IllegalArgumentException("Departure is out of range: " + departureMinute);
+        }
+    }
+
+    private void checkNotEvicted(long departureMinute) {
+        if (departureMinute < evictedBefore) {
+            throw new IllegalArgumentException("The trip at " + toDeparture(departureMinute) + " has already departed");
+        }
+    }
+
+    private Segment segmentOf(long key) {
+        return segments[(int) (mix(key) >>> 58)]; // the top 6 bits pick one of 64 segments
+    }
+
+    /**
+     * Spreads the bits of a key (the finalizer of MurmurHash3).
+     */
+    private static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * One locked part of the inventory: a hash table from trip keys to slots, the slots with the
+     * seat bits and booked seat counter of each trip, and a min-heap of the trip keys ordered by
+     * departure. Freed slots are reused first. A trip whose last booking is canceled stays in the
+     * heap until eviction pops it or the heap is rebuilt from the slots when it is full.
+     */
+    private final class Segment {
+        // Linear probing table, key 0 marks an empty entry (bus IDs start at 1)
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private int[] slotOfKey = new int[INITIAL_CAPACITY];
+        private int size;
+
+        // Slots, the trip in slot s has seat words [s * wordsPerBus, (s + 1) * wordsPerBus)
+        private long[] seatWords = new long[INITIAL_CAPACITY * wordsPerBus];
+        private short[] bookedSeats = new short[INITIAL_CAPACITY];
+        private long[] slotKeys = new long[INITIAL_CAPACITY];
+        private int[] freeSlots = new int[INITIAL_CAPACITY];
+        private int freeCount;
+        private int usedSlots;
+
+        // Binary min-heap of trip keys, the earliest departure at index 0
+        private long[] heap = new long[INITIAL_CAPACITY];
+        private int heapSize;
+
+        /**
+         * @return The slot of a trip, or -1 if it has no bookings.
+         */
+        int find(long key) {
+            int mask = keys.length - 1;
+            for (int i = (int) mix(key) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return slotOfKey[i];
+                }
+                if (keys[i] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * Gives a trip an empty slot.
+         */
+        int insert(long key) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2); // keep the table at most half full
+            }
+            int slot;
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                if (usedSlots == slotKeys.length) {
+                    growSlots();
+                }
+                slot = usedSlots++;
+            }
+            push(key); // before the slot holds the key, so a rebuild of the heap does not add it twice
+            slotKeys[slot] = key;
+            put(key, slot);
+            size++;
+            return slot;
+        }
+
+        /**
+         * Removes the earliest key from the heap; the trip itself is left in place.
+         */
+        long pollEarliest() {
+            long earliest = heap[0];
+            long last = heap[--heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= last) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return earliest;
+        }
+
+        /**
+         * Removes a trip and clears its slot for reuse.
+         */
+        void remove(long key) {
+            int mask = keys.length - 1;
+            int i = (int) mix(key) & mask;
+            while (keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            int slot = slotOfKey[i];
+
+            // Shift later entries of the probe chain back, so no tombstone is needed
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (keys[j] == 0) {
+                    break;
+                }
+                int home = (int) mix(keys[j]) & mask;
+                boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+                if (movable) {
+                    keys[i] = keys[j];
+                    slotOfKey[i] = slotOfKey[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            size--;
+
+            Arrays.fill(seatWords, slot * wordsPerBus, (slot + 1) * wordsPerBus, 0);
+            bookedSeats[slot] = 0;
+            slotKeys[slot] = 0;
+            freeSlots[freeCount++] = slot;
+        }
+
+        private void push(long key) {
+            if (heapSize == heap.length) {
+                if (heapSize > 2 * size) {
+                    rebuildHeap(); // mostly keys of trips that lost their bookings, drop them
+                } else {
+                    heap = Arrays.copyOf(heap, heap.length * 2);
+                }
+            }
+            int i = heapSize++;
+            while (i > 0 && heap[(i - 1) / 2] > key) {
+                heap[i] = heap[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heap[i] = key;
+        }
+
+        /**
+         * Fills the heap with the keys of the trips in the slots only, the new key is pushed after.
+         */
+        private void rebuildHeap() {
+            heapSize = 0;
+            for (int slot = 0; slot < usedSlots; slot++) {
+                if (slotKeys[slot] != 0) {
+                    heap[heapSize++] = slotKeys[slot];
+                }
+            }
+            Arrays.sort(heap, 0, heapSize); // a sorted array is a valid heap
+        }
+
+        private void put(long key, int slot) {
+            int mask = keys.length - 1;
+            int i = (int) mix(key) & mask;
+            while (keys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            slotOfKey[i] = slot;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldSlots = slotOfKey;
+            keys = new long[capacity];
+            slotOfKey = new int[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldSlots[i]);
+                }
+            }
+        }
+
+        private void growSlots() {
+            int capacity = slotKeys.length * 2;
+            seatWords = Arrays.copyOf(seatWords, capacity * wordsPerBus);
+            bookedSeats = Arrays.copyOf(bookedSeats, capacity);
+            slotKeys = Arrays.copyOf(slotKeys, capacity);
+            freeSlots = Arrays.copyOf(freeSlots, capacity);
+        }
+    }
+}
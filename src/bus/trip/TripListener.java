@@ -0,0 +1,37 @@
+package bus.trip;
+
+/**
+ * Interface for components that want to know about the seats sold on trips, e.g. to save them.
+ * Seat changes are reported under the lock of the trip's segment, so the changes of a trip arrive
+ * in the order they were applied; listeners must be quick and must not call back into the inventory.
+ */
+public interface TripListener {
+
+    /**
+     * Called after a seat of a trip was booked.
+     *
+     * @param busId           The ID of the bus.
+     * @param departureMinute The departure of the trip.
+     * @param seatNumber      The seat number that was booked.
+     */
+    default void seatBooked(int busId, long departureMinute, int seatNumber) {
+    }
+
+    /**
+     * Called after the booking of a seat of a trip was canceled.
+     *
+     * @param busId           The ID of the bus.
+     * @param departureMinute The departure of the trip.
+     * @param seatNumber      The seat number that became available.
+     */
+    default void seatCanceled(int busId, long departureMinute, int seatNumber) {
+    }
+
+    /**
+     * Called after the trips that departed before a minute were evicted.
+     *
+     * @param departureMinute The first departure that can still be booked.
+     */
+    default void tripsEvicted(long departureMinute) {
+    }
+}
@@ -0,0 +1,221 @@
+package bus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookingEngineTest {
+
+    @Test
+    void reportsTheResultOfEveryOperation() {
+        BookingEngine engine = new BookingEngine(2, 10);
+
+        assertEquals(BookingResult.BOOKED, engine.book(1, 3));
+        assertEquals(BookingResult.ALREADY_BOOKED, engine.book(1, 3));
+        assertEquals(BookingResult.CANCELED, engine.cancel(1, 3));
+        assertEquals(BookingResult.ALREADY_AVAILABLE, engine.cancel(1, 3));
+        engine.book(2, 1);
+        assertEquals(BookingResult.RESET, engine.reset(2));
+        assertEquals(BookingResult.RESET, engine.reset(2));
+        assertEquals(0, engine.getTotalBookedSeats());
+    }
+
+    @Test
+    void booksAGroupOrNone() {
+        BookingEngine engine = new BookingEngine(1, 10);
+        engine.book(1, 5);
+
+        assertEquals(BookingResult.ALREADY_BOOKED, engine.bookSeats(1, new int[]{4, 5, 6}));
+        assertEquals(1, engine.getBookedSeats(1));
+        assertEquals(BookingResult.BOOKED, engine.bookSeats(1, new int[]{4, 6}));
+        assertEquals(3, engine.getBookedSeats(1));
+
+        assertEquals(BookingResult.ALREADY_AVAILABLE, engine.cancelSeats(1, new int[]{4, 7}));
+        assertEquals(BookingResult.CANCELED, engine.cancelSeats(1, new int[]{4, 5, 6}));
+        assertEquals(0, engine.getBookedSeats(1));
+
+        assertThrows(IllegalArgumentException.class, () -> engine.bookSeats(1, new int[]{2, 2}));
+        assertThrows(IllegalArgumentException.class, () -> engine.bookSeats(1, new int[]{11}));
+    }
+
+    @Test
+    void booksAnySeatsSideBySideWhenPossible() {
+        BookingEngine engine = new BookingEngine(1, 10);
+        engine.bookSeats(1, new int[]{2, 5});
+
+        // seats 3 and 4 are too few for three, 6 to 8 are the first row long enough
+        assertArrayEquals(new int[]{6, 7, 8}, engine.bookAnySeats(1, 3));
+        // no row of four is left, the lowest free seats are taken
+        assertArrayEquals(new int[]{1, 3, 4, 9}, engine.bookAnySeats(1, 4));
+        assertArrayEquals(new int[0], engine.bookAnySeats(1, 2));
+        assertArrayEquals(new int[]{10}, engine.bookAnySeats(1, 1));
+        assertThrows(IllegalArgumentException.class, () -> engine.bookAnySeats(1, 0));
+    }
+
+    @Test
+    void notifiesListenersOfEveryChange() {
+        BookingEngine engine = new BookingEngine(2, 100);
+        List<String> events = new ArrayList<>();
+        engine.addListener(new BookingListener() {
+            @Override
+            public void seatBooked(int busId, int seatNumber) {
+                events.add("book " + busId + " " + seatNumber);
+            }
+
+            @Override
+            public void seatCanceled(int busId, int seatNumber) {
+                events.add("cancel " + busId + " " + seatNumber);
+            }
+
+            @Override
+            public void busReset(int busId, long[] releasedSeats) {
+                events.add("reset " + busId + " " + Long.bitCount(releasedSeats[0]) + " " + Long.bitCount(releasedSeats[1]));
+            }
+        });
+
+        engine.book(1, 1);
+        engine.book(1, 1); // changes nothing, so nothing is reported
+        engine.bookSeats(1, new int[]{70, 2});
+        engine.cancelSeats(1, new int[]{2});
+        engine.cancel(2, 1);
+        engine.reset(1);
+
+        assertEquals(List.of("book 1 1", "book 1 2", "book 1 70", "cancel 1 2", "reset 1 1 1"), events);
+    }
+
+    @Test
+    void rejectsAChangeAListenerFails() {
+        BookingEngine engine = new BookingEngine(1, 100);
+        List<String> events = new ArrayList<>();
+        boolean[] failing = {false};
+        engine.addListener(new BookingListener() {
+            @Override
+            public void seatBooked(int busId, int seatNumber) {
+                events.add("book " + seatNumber);
+            }
+
+            @Override
+            public void seatCanceled(int busId, int seatNumber) {
+                events.add("cancel " + seatNumber);
+            }
+        });
+        // Fails like a journal whose writer died
+        engine.addListener(new BookingListener() {
+            @Override
+            public void seatBooked(int busId, int seatNumber) {
+                fail();
+            }
+
+            @Override
+            public void seatCanceled(int busId, int seatNumber) {
+                fail();
+            }
+
+            @Override
+            public void busReset(int busId, long[] releasedSeats) {
+                fail();
+            }
+
+            private void fail() {
+                if (failing[0]) {
+                    throw new IllegalStateException("Journal is closed");
+                }
+            }
+        });
+        engine.book(1, 1);
+        engine.book(1, 70);
+        failing[0] = true;
+        events.clear();
+
+        assertThrows(IllegalStateException.class, () -> engine.book(1, 2));
+        assertFalse(engine.getSeatStore().isBooked(1, 2));
+        assertThrows(IllegalStateException.class, () -> engine.bookSeats(1, new int[]{3, 4, 80}));
+        assertEquals(2, engine.getBookedSeats(1));
+        assertThrows(IllegalStateException.class, () -> engine.cancel(1, 1));
+        assertTrue(engine.getSeatStore().isBooked(1, 1));
+        assertThrows(IllegalStateException.class, () -> engine.reset(1));
+        assertTrue(engine.getSeatStore().isBooked(1, 70));
+        assertEquals(2, engine.getBookedSeats(1));
+        assertEquals(List.of("book 2", "cancel 2", "book 3", "cancel 3", "cancel 1", "book 1", "book 1", "book 70"), events);
+    }
+
+    @Test
+    void reportsALockFreeChangeToAListenerThatStartedListening() {
+        BookingEngine engine = new BookingEngine(1, 10);
+        List<String> events = new ArrayList<>();
+        boolean[] listening = new boolean[1];
+        engine.addListener(new BookingListener() {
+            @Override
+            public void seatBooked(int busId, int seatNumber) {
+                events.add("book " + seatNumber);
+            }
+
+            @Override
+            public void seatCanceled(int busId, int seatNumber) {
+                events.add("cancel " + seatNumber);
+            }
+
+            @Override
+            public boolean isListening() {
+                boolean wasListening = listening[0];
+                listening[0] = true; // starts listening after the engine checked
+                return wasListening;
+            }
+        });
+
+        engine.book(1, 2); // lock-free, reported late
+        engine.book(1, 3); // under the lock
+        listening[0] = false;
+        engine.bookSeats(1, new int[]{4, 5});
+        listening[0] = false;
+        engine.reset(1);
+        assertEquals(List.of("book 2", "book 3", "book 4", "book 5", "cancel 2", "cancel 3", "cancel 4", "cancel 5"), events);
+        assertEquals(0, engine.getTotalBookedSeats());
+    }
+
+    @Test
+    void keepsGroupsAndSingleSeatsConsistent() throws Exception {
+        // Groups over two words race single cancels and books of the same seats
+        BookingEngine engine = new BookingEngine(1, 128);
+        int[] group = {60, 61, 62, 63, 64, 65, 66, 67, 68, 69};
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    if (engine.bookSeats(1, group) == BookingResult.BOOKED) {
+                        engine.cancelSeats(1, group);
+                    }
+                }
+            }));
+            for (int thread = 0; thread < 2; thread++) {
+                int seatNumber = 65 + thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        if (engine.book(1, seatNumber).isSuccess()) {
+                            assertTrue(engine.getSeatStore().isBooked(1, seatNumber));
+                            assertEquals(BookingResult.CANCELED, engine.cancel(1, seatNumber));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, engine.getTotalBookedSeats());
+        assertFalse(engine.getSeatStore().isBooked(1, 65));
+    }
+}
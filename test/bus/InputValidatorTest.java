@@ -0,0 +1,56 @@
+package bus;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InputValidatorTest {
+
+    @Test
+    void acceptsOnlyNumbersWithinTheRange() {
+        assertTrue(isValid("1"));
+        assertTrue(isValid("40"));
+        assertFalse(isValid("41"));
+        assertFalse(isValid("0"));
+        assertFalse(isValid("07"));
+        assertFalse(isValid(""));
+        assertFalse(isValid(null));
+        assertFalse(isValid("-3"));
+        assertFalse(isValid("3a"));
+        assertFalse(isValid("99999999999999999999"));
+    }
+
+    @Test
+    void readsAListOfSeatNumbers() {
+        assertArrayEquals(new int[]{1, 2, 40}, InputValidator.parseSeatNumbers("1,2,40", 40));
+        assertArrayEquals(new int[]{7}, InputValidator.parseSeatNumbers("7", 40));
+    }
+
+    @Test
+    void rejectsInvalidSeatLists() {
+        assertNull(InputValidator.parseSeatNumbers("1,2,", 40));
+        assertNull(InputValidator.parseSeatNumbers("1,2,,", 40));
+        assertNull(InputValidator.parseSeatNumbers(",1", 40));
+        assertNull(InputValidator.parseSeatNumbers("1,,2", 40));
+        assertNull(InputValidator.parseSeatNumbers(",", 40));
+        assertNull(InputValidator.parseSeatNumbers("", 40));
+        assertNull(InputValidator.parseSeatNumbers("1,41", 40));
+        assertNull(InputValidator.parseSeatNumbers("3,5,3", 40));
+    }
+
+    @Test
+    void readsADeparture() {
+        assertEquals(-1, InputValidator.parseDeparture("tomorrow"));
+        assertEquals(-1, InputValidator.parseDeparture("2026-10-18"));
+        long departure = InputValidator.parseDeparture("2026-10-18T08:30");
+        assertEquals(departure + 60, InputValidator.parseDeparture("2026-10-18T09:30"));
+    }
+
+    private static boolean isValid(String input) {
+        return InputValidator.isInputValid(input, 40);
+    }
+}
@@ -0,0 +1,143 @@
+package bus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeatStoreTest {
+
+    @Test
+    void booksAndCancelsSeats() {
+        SeatStore seatStore = new SeatStore(3, 40);
+
+        assertTrue(seatStore.book(2, 7));
+        assertFalse(seatStore.book(2, 7));
+        assertTrue(seatStore.isBooked(2, 7));
+        assertFalse(seatStore.isBooked(1, 7));
+        assertEquals(1, seatStore.getBookedSeats(2));
+        assertEquals(39, seatStore.getAvailableSeats(2));
+
+        assertTrue(seatStore.cancel(2, 7));
+        assertFalse(seatStore.cancel(2, 7));
+        assertEquals(0, seatStore.getBookedSeats(2));
+        assertEquals(0, seatStore.getTotalBookedSeats());
+    }
+
+    @Test
+    void rejectsSeatsOutsideTheFleet() {
+        SeatStore seatStore = new SeatStore(3, 40);
+
+        assertThrows(IllegalArgumentException.class, () -> seatStore.book(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> seatStore.book(4, 1));
+        assertThrows(IllegalArgumentException.class, () -> seatStore.book(1, 0));
+        assertThrows(IllegalArgumentException.class, () -> seatStore.book(1, 41));
+        assertThrows(IllegalArgumentException.class, () -> new SeatStore(0, 40));
+        assertThrows(IllegalArgumentException.class, () -> new SeatStore(1, SeatStore.MAX_SEATS_PER_BUS + 1));
+    }
+
+    @Test
+    void resetReportsTheReleasedSeats() {
+        SeatStore seatStore = new SeatStore(2, 100);
+        seatStore.book(1, 1);
+        seatStore.book(1, 64);
+        seatStore.book(1, 65);
+        seatStore.book(2, 3);
+
+        long[] releasedSeats = new long[seatStore.getWordsPerBus()];
+        assertEquals(3, seatStore.reset(1, releasedSeats));
+        assertArrayEquals(new long[]{1L | 1L << 63, 1L}, releasedSeats);
+        assertEquals(0, seatStore.getBookedSeats(1));
+        assertEquals(1, seatStore.getTotalBookedSeats());
+    }
+
+    @Test
+    void findsTheFirstAvailableSeat() {
+        SeatStore seatStore = new SeatStore(1, 70);
+        for (int seatNumber = 1; seatNumber <= 66; seatNumber++) {
+            seatStore.book(1, seatNumber);
+        }
+        assertEquals(67, seatStore.findFirstAvailableSeat(1));
+
+        for (int seatNumber = 67; seatNumber <= 70; seatNumber++) {
+            seatStore.book(1, seatNumber);
+        }
+        assertEquals(-1, seatStore.findFirstAvailableSeat(1));
+    }
+
+    @Test
+    void booksAGroupAcrossWordsOrNothing() {
+        SeatStore seatStore = new SeatStore(1, 130);
+        long[] group = {1L << 10, 1L << 5, 1L};
+
+        assertTrue(seatStore.bookSeats(1, group));
+        assertEquals(3, seatStore.getBookedSeats(1));
+        assertFalse(seatStore.bookSeats(1, new long[]{1L << 11, 1L << 5, 0}));
+        assertFalse(seatStore.isBooked(1, 12)); // the seat before the taken one is not left booked
+        assertEquals(3, seatStore.getBookedSeats(1));
+
+        assertTrue(seatStore.cancelSeats(1, group));
+        assertFalse(seatStore.cancelSeats(1, group));
+        assertEquals(0, seatStore.getTotalBookedSeats());
+    }
+
+    @Test
+    void rejectsMasksPastTheLastSeat() {
+        SeatStore seatStore = new SeatStore(1, 70);
+
+        assertThrows(IllegalArgumentException.class, () -> seatStore.bookSeats(1, new long[]{0, 1L << 6}));
+        assertThrows(IllegalArgumentException.class, () -> seatStore.bookSeats(1, new long[]{1}));
+    }
+
+    @Test
+    void restoresSeatWordsAndCounters() {
+        SeatStore seatStore = new SeatStore(1, 70);
+        seatStore.book(1, 1);
+
+        seatStore.restoreSeatWord(1, 0, 0b1110);
+        seatStore.restoreSeatWord(1, 1, -1L); // only the 6 seats of the last word are kept
+
+        assertEquals(0b1110, seatStore.getSeatWord(1, 0));
+        assertEquals(0b111111, seatStore.getSeatWord(1, 1));
+        assertEquals(9, seatStore.getBookedSeats(1));
+        assertEquals(9, seatStore.getTotalBookedSeats());
+    }
+
+    @Test
+    void neverBooksASeatTwiceUnderContention() throws Exception {
+        SeatStore seatStore = new SeatStore(4, 100);
+        AtomicInteger booked = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int busId = 1; busId <= 4; busId++) {
+                        for (int seatNumber = 1; seatNumber <= 100; seatNumber++) {
+                            if (seatStore.book(busId, seatNumber)) {
+                                booked.incrementAndGet();
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(400, booked.get());
+        assertEquals(400, seatStore.getTotalBookedSeats());
+    }
+}
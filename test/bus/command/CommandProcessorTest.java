@@ -0,0 +1,124 @@
+package bus.command;
+
+import bus.BookingEngine;
+import bus.hold.SeatHolds;
+import bus.trip.TripInventory;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandProcessorTest {
+
+    private final BookingEngine engine = new BookingEngine(3, 10);
+    private final CommandProcessor processor = new CommandProcessor(engine);
+
+    @Test
+    void runsCommandsAndAnswersEachLine() throws IOException {
+        String responses = run("BOOK 1 3\nbook 1 3\nSTAT 1\nCANCEL 1 3\ncancel 1 3\nRESET 1\n");
+
+        assertEquals("OK 9\nERR seat already booked\nOK 1 9\nOK 10\nERR seat already available\nOK 10\n", responses);
+        assertEquals(6, processor.getCommands());
+        assertEquals(2, processor.getErrors());
+    }
+
+    @Test
+    void checksNumbersLikeTheMenu() throws IOException {
+        String responses = run("BOOK 4 1\nBOOK 1 11\nBOOK 01 1\nBOOK 1\nBOOK 1 x\nBOOK 1 2 3\nSTAT 99999999999\nFLY 1\n");
+
+        assertEquals("ERR bus ID out of range\nERR seat number out of range\nERR bus ID out of range\n"
+                + "ERR malformed command\nERR malformed command\nERR malformed command\n"
+                + "ERR bus ID out of range\nERR unknown command\n", responses);
+        assertEquals(0, engine.getTotalBookedSeats());
+    }
+
+    @Test
+    void skipsBlankLinesAndComments() throws IOException {
+        String responses = run("# a script\n\n  \t\r\n\tBOOK\t2  5 \r\nstat 2");
+
+        assertEquals("OK 9\nOK 1 9\n", responses); // the last line needs no newline
+        assertEquals(2, processor.getCommands());
+    }
+
+    @Test
+    void stopsAtQuit() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean open = processor.process(input("BOOK 1 1\nQUIT\nBOOK 1 2\n"), out);
+
+        assertFalse(open);
+        assertEquals("OK 9\n", out.toString(StandardCharsets.US_ASCII));
+        assertFalse(engine.getSeatStore().isBooked(1, 2));
+    }
+
+    @Test
+    void answersLinesLongerThanTheBufferWithOneError() throws IOException {
+        String responses = run("BOOK 1 1" + " ".repeat(70_000) + "\nBOOK 1 2\n");
+
+        assertEquals("ERR line too long\nOK 9\n", responses);
+        assertTrue(engine.getSeatStore().isBooked(1, 2));
+    }
+
+    @Test
+    void flushesBeforeAnsweringALineTooLong() throws IOException {
+        // 3276 errors of 20 bytes leave 16 bytes of the response buffer, less than the error for the long line
+        String responses = run("X\n".repeat(3276) + "BOOK 1 1" + " ".repeat(70_000) + "\nBOOK 1 2\n");
+
+        assertEquals("ERR unknown command\n".repeat(3276) + "ERR line too long\nOK 9\n", responses);
+    }
+
+    @Test
+    void answersManyPipelinedCommands() throws IOException {
+        StringBuilder commands = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            commands.append(i % 2 == 0 ? "BOOK 3 7\n" : "CANCEL 3 7\n");
+            expected.append(i % 2 == 0 ? "OK 9\n" : "OK 10\n");
+        }
+
+        assertEquals(expected.toString(), run(commands.toString()));
+    }
+
+    @Test
+    void sellsSeatsPerDeparture() throws IOException {
+        TripInventory trips = new TripInventory(3, 10);
+        CommandProcessor tripProcessor = new CommandProcessor(engine, trips, null, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tripProcessor.process(input("TBOOK 1 2026-10-18T08:30 3\ntbook 1 2026-10-18t08:30 3\nTSTAT 1 2026-10-18T08:30\n"
+                + "TCANCEL 1 2026-10-18T08:30 3\nTBOOK 1 2026-02-30T08:30 3\nTBOOK 1 2026-10-18 3\n"), out);
+
+        assertEquals("OK 9\nERR seat already booked\nOK 1 9\nOK 10\nERR invalid departure\nERR invalid departure\n",
+                out.toString(StandardCharsets.US_ASCII));
+        assertEquals(0, engine.getTotalBookedSeats()); // the current trips are not touched
+        assertEquals("ERR unknown command\n", run("TSTAT 1 2026-10-18T08:30\n"));
+    }
+
+    @Test
+    void holdsAndConfirmsSeats() throws IOException {
+        SeatHolds holds = new SeatHolds(engine, 60_000, 1000, System.currentTimeMillis());
+        engine.addListener(holds);
+        CommandProcessor holdProcessor = new CommandProcessor(engine, null, holds, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        holdProcessor.process(input("HOLD 1 3\nhold 1 3\nCONFIRM 1 3\nconfirm 1 3\nHOLD 1 4\nCANCEL 1 4\nCONFIRM 1 4\n"), out);
+
+        assertEquals("OK 9\nERR seat already booked\nOK 9\nERR seat not held\nOK 8\nOK 9\nERR seat not held\n",
+                out.toString(StandardCharsets.US_ASCII));
+        assertEquals(0, holds.getHoldCount());
+        assertEquals("ERR unknown command\n", run("HOLD 1 5\n"));
+    }
+
+    private String run(String commands) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(processor.process(input(commands), out));
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static ByteArrayInputStream input(String commands) {
+        return new ByteArrayInputStream(commands.getBytes(StandardCharsets.US_ASCII));
+    }
+}
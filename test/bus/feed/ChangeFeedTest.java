@@ -0,0 +1,47 @@
+package bus.feed;
+
+import bus.BookingEngine;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeFeedTest {
+
+    private final BookingEngine engine = new BookingEngine(2, 10);
+    private final ChangeFeed feed = new ChangeFeed(engine, 4, 2);
+
+    @Test
+    void dropsAStalledDroppableSubscriber() throws InterruptedException {
+        CountDownLatch dropped = new CountDownLatch(1);
+        AtomicLong received = new AtomicLong();
+        // Stays in its first batch until it is dropped, like a client that stopped reading
+        feed.subscribe(new ChangeSubscriber() {
+            @Override
+            public void onChanges(long[] changes, int count) throws InterruptedException {
+                dropped.await();
+            }
+
+            @Override
+            public void onDropped() {
+                dropped.countDown();
+            }
+        }, true);
+        ChangeFeed.Subscription local = feed.subscribe((changes, count) -> received.addAndGet(count));
+
+        for (int i = 0; i < 100; i++) {
+            feed.publish(SeatChange.of(1, 1, SeatChange.BOOKED, 9));
+        }
+        local.awaitDelivered();
+
+        assertTrue(dropped.await(0, TimeUnit.SECONDS));
+        assertEquals(1, feed.getDroppedSubscribers());
+        assertEquals(1, feed.getSubscriberCount());
+        assertEquals(100, received.get());
+        feed.close();
+    }
+}
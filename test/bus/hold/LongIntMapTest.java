@@ -0,0 +1,72 @@
+package bus.hold;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LongIntMapTest {
+
+    @Test
+    void putsGetsAndRemovesKeys() {
+        LongIntMap map = new LongIntMap(4);
+        map.put(42, 1);
+        map.put(7, 2);
+
+        assertEquals(1, map.get(42));
+        assertEquals(2, map.get(7));
+        assertEquals(LongIntMap.MISSING, map.get(8));
+        assertEquals(2, map.size());
+
+        assertEquals(1, map.remove(42));
+        assertEquals(LongIntMap.MISSING, map.remove(42));
+        assertEquals(LongIntMap.MISSING, map.get(42));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void growsPastItsExpectedSize() {
+        LongIntMap map = new LongIntMap(1);
+        for (int i = 1; i <= 1000; i++) {
+            map.put(i, i * 2);
+        }
+        for (int i = 1; i <= 1000; i++) {
+            assertEquals(i * 2, map.get(i));
+        }
+
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertEquals(1000, keys.length);
+        assertEquals(1, keys[0]);
+        assertEquals(1000, keys[999]);
+    }
+
+    @Test
+    void keepsProbeChainsIntactWhenRemoving() {
+        // Random puts and removes against a HashMap, removals shift colliding keys back
+        SplittableRandom random = new SplittableRandom(9);
+        LongIntMap map = new LongIntMap(16);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            long key = 1 + random.nextInt(200);
+            if (expected.containsKey(key)) {
+                assertEquals((int) expected.remove(key), map.remove(key));
+            } else {
+                map.put(key, i);
+                expected.put(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = 1; key <= 200; key++) {
+            assertEquals((int) expected.getOrDefault(key, LongIntMap.MISSING), map.get(key));
+        }
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(expected.keySet().stream().mapToLong(Long::longValue).sorted().toArray(), keys);
+    }
+}
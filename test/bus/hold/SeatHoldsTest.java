@@ -0,0 +1,93 @@
+package bus.hold;
+
+import bus.BookingEngine;
+import bus.BookingResult;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeatHoldsTest {
+
+    private final BookingEngine engine = new BookingEngine(2, 10);
+    private final SeatHolds holds = new SeatHolds(engine, 60_000, 1000, 0);
+
+    SeatHoldsTest() {
+        engine.addListener(holds);
+    }
+
+    @Test
+    void releasesTheSeatWhenTheHoldEnds() {
+        assertEquals(BookingResult.BOOKED, holds.hold(1, 3, 0));
+        assertEquals(BookingResult.ALREADY_BOOKED, holds.hold(1, 3, 0));
+        assertTrue(holds.isHeld(1, 3));
+
+        assertEquals(0, holds.expire(59_000));
+        assertEquals(1, holds.expire(60_000));
+        assertFalse(engine.getSeatStore().isBooked(1, 3));
+        assertEquals(0, holds.getHoldCount());
+    }
+
+    @Test
+    void keepsAConfirmedSeat() {
+        holds.hold(1, 3, 0);
+
+        assertEquals(BookingResult.BOOKED, holds.confirm(1, 3));
+        assertEquals(BookingResult.ALREADY_AVAILABLE, holds.confirm(1, 3));
+        assertEquals(0, holds.expire(120_000));
+        assertTrue(engine.getSeatStore().isBooked(1, 3));
+    }
+
+    @Test
+    void neverReleasesASeatBookedAgainByOthers() {
+        holds.hold(1, 3, 0);
+        engine.cancel(1, 3); // the hold is dropped with the seat
+        engine.book(1, 3);
+
+        assertFalse(holds.isHeld(1, 3));
+        assertEquals(BookingResult.ALREADY_AVAILABLE, holds.confirm(1, 3));
+        assertEquals(0, holds.expire(120_000));
+        assertTrue(engine.getSeatStore().isBooked(1, 3));
+    }
+
+    @Test
+    void releasesTheSeatsStillHeldOnClose() {
+        holds.hold(2, 1, 0);
+        holds.hold(2, 2, 0);
+        holds.confirm(2, 2);
+
+        holds.close();
+        assertFalse(engine.getSeatStore().isBooked(2, 1));
+        assertTrue(engine.getSeatStore().isBooked(2, 2));
+    }
+
+    @Test
+    void listensOnlyWhileSeatsAreHeld() {
+        assertFalse(holds.isListening());
+        holds.hold(1, 3, 0);
+        holds.hold(1, 4, 0);
+        assertTrue(holds.isListening());
+
+        holds.confirm(1, 3);
+        engine.cancel(1, 4); // drops the hold
+        assertFalse(holds.isListening());
+        assertEquals(BookingResult.ALREADY_BOOKED, holds.hold(1, 3, 0));
+        assertFalse(holds.isListening());
+
+        holds.hold(2, 1, 0);
+        holds.expire(60_000);
+        assertFalse(holds.isListening());
+        assertFalse(engine.getSeatStore().isBooked(2, 1));
+    }
+
+    @Test
+    void keepsTheSeatsHeldWhenExpiringStops() {
+        holds.hold(2, 1, 0);
+        holds.startExpiring();
+
+        holds.stopExpiring();
+        assertTrue(holds.isHeld(2, 1));
+        assertTrue(engine.getSeatStore().isBooked(2, 1));
+    }
+}
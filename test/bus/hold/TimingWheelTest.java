@@ -0,0 +1,92 @@
+package bus.hold;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    @Test
+    void firesTimersAtTheirDeadline() {
+        TimingWheel wheel = new TimingWheel(0, 4);
+        wheel.schedule(5, 50);
+        wheel.schedule(3, 30);
+        wheel.schedule(4, 40);
+        List<Long> fired = new ArrayList<>();
+
+        assertEquals(0, wheel.advance(2, fired::add));
+        assertEquals(1, wheel.advance(3, fired::add));
+        assertEquals(2, wheel.size());
+        assertEquals(2, wheel.advance(10, fired::add));
+        assertEquals(List.of(30L, 40L, 50L), fired);
+        assertEquals(0, wheel.size());
+        assertEquals(10, wheel.getCurrentTick());
+    }
+
+    @Test
+    void firesAPassedDeadlineAtTheNextTick() {
+        TimingWheel wheel = new TimingWheel(100, 4);
+        int timer = wheel.schedule(40, 7);
+
+        assertEquals(101, wheel.getDeadline(timer));
+        List<Long> fired = new ArrayList<>();
+        wheel.advance(101, fired::add);
+        assertEquals(List.of(7L), fired);
+    }
+
+    @Test
+    void canceledTimersDoNotFire() {
+        TimingWheel wheel = new TimingWheel(0, 4);
+        int first = wheel.schedule(10, 1);
+        wheel.schedule(10, 2);
+        int third = wheel.schedule(5000, 3);
+
+        assertEquals(1, wheel.cancel(first));
+        assertEquals(3, wheel.cancel(third));
+        List<Long> fired = new ArrayList<>();
+        wheel.advance(10_000, fired::add);
+        assertEquals(List.of(2L), fired);
+    }
+
+    @Test
+    void reusesTheIdsOfFiredTimers() {
+        TimingWheel wheel = new TimingWheel(0, 16);
+        int timer = wheel.schedule(1, 1);
+        wheel.advance(1, payload -> {
+        });
+
+        assertEquals(timer, wheel.schedule(2, 2));
+    }
+
+    @Test
+    void firesRandomTimersOverManyLevelsInDeadlineOrder() {
+        SplittableRandom random = new SplittableRandom(3);
+        TimingWheel wheel = new TimingWheel(1000, 16);
+        int count = 20_000;
+        for (int i = 0; i < count; i++) {
+            // deadlines spread over four levels of the wheel
+            long deadline = 1001 + random.nextLong(1 << 24);
+            wheel.schedule(deadline, deadline);
+        }
+
+        long[] last = {0};
+        int[] fired = {0};
+        long tick = 1000;
+        while (wheel.size() > 0) {
+            tick += 1 + random.nextInt(5000);
+            long now = tick;
+            wheel.advance(now, payload -> {
+                assertTrue(payload <= now, "fired early");
+                assertTrue(payload >= last[0], "fired out of order");
+                last[0] = payload;
+                fired[0]++;
+            });
+        }
+        assertEquals(count, fired[0]);
+    }
+}
@@ -0,0 +1,65 @@
+package bus.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void isEmptyBeforeTheFirstRecord() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanNanos());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    void countsSmallValuesExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int nanos = 1; nanos <= 100; nanos++) {
+            histogram.record(nanos);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getTotalNanos());
+        assertEquals(50.5, histogram.getMeanNanos());
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(100, histogram.getMaxNanos());
+    }
+
+    @Test
+    void keepsLargeValuesWithinTheirPrecision() {
+        for (long nanos = 128; nanos < LatencyHistogram.HIGHEST_TRACKABLE_NANOS; nanos = nanos * 3 / 2 + 1) {
+            long highest = LatencyHistogram.highestValueAt(LatencyHistogram.indexOf(nanos));
+            assertTrue(highest >= nanos, "bucket of " + nanos + " ends below it");
+            assertTrue(highest - nanos <= nanos / 64, "bucket of " + nanos + " is too wide: " + highest);
+        }
+    }
+
+    @Test
+    void bucketsFollowEachOther() {
+        long previous = -1;
+        for (int index = 0; index <= LatencyHistogram.indexOf(LatencyHistogram.HIGHEST_TRACKABLE_NANOS); index++) {
+            long highest = LatencyHistogram.highestValueAt(index);
+            assertEquals(index, LatencyHistogram.indexOf(previous + 1), "first value of bucket " + index);
+            assertEquals(index, LatencyHistogram.indexOf(highest), "last value of bucket " + index);
+            previous = highest;
+        }
+    }
+
+    @Test
+    void clampsValuesOutsideTheRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.HIGHEST_TRACKABLE_NANOS, histogram.getMaxNanos());
+        assertEquals(LatencyHistogram.HIGHEST_TRACKABLE_NANOS, histogram.getValueAtPercentile(100));
+    }
+}
@@ -0,0 +1,41 @@
+package bus.metrics;
+
+import bus.BookingEngine;
+import org.junit.jupiter.api.Test;
+
+import javax.management.Attribute;
+import javax.management.AttributeNotFoundException;
+import javax.management.ReflectionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MetricsMBeanTest {
+
+    @Test
+    void showsTheMetricsAsAttributes() throws Exception {
+        BookingEngine engine = new BookingEngine(2, 10);
+        engine.book(1, 3);
+        BookingMetrics metrics = new BookingMetrics(engine);
+        metrics.record(Operation.BOOK, System.nanoTime());
+        MetricsMBean mbean = new MetricsMBean(metrics);
+
+        assertEquals(20L, mbean.getAttribute("TotalSeats"));
+        assertEquals(1L, mbean.getAttribute("BookedSeats"));
+        assertEquals(19L, mbean.getAttribute("FreeSeats"));
+        assertEquals(1L, mbean.getAttribute("BookCount"));
+        assertThrows(AttributeNotFoundException.class, () -> mbean.getAttribute("BookLatency"));
+        assertEquals(2, mbean.getAttributes(new String[]{"TotalSeats", "Unknown", "BookCount"}).size());
+    }
+
+    @Test
+    void rejectsChangesAndOperations() {
+        MetricsMBean mbean = new MetricsMBean(new BookingMetrics(new BookingEngine(1, 10)));
+
+        assertThrows(AttributeNotFoundException.class, () -> mbean.setAttribute(new Attribute("TotalSeats", 5L)));
+        ReflectionException e = assertThrows(ReflectionException.class, () -> mbean.invoke("reset", new Object[0], new String[0]));
+        assertInstanceOf(NoSuchMethodException.class, e.getTargetException());
+        assertEquals("reset", e.getTargetException().getMessage());
+    }
+}
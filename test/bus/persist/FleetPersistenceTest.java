@@ -0,0 +1,135 @@
+package bus.persist;
+
+import bus.BookingEngine;
+import bus.SeatStore;
+import bus.hold.SeatHolds;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FleetPersistenceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversHeldSeatsAfterACrash() throws IOException {
+        FleetPersistence persistence = new FleetPersistence(directory, 2, 10, 1, 1, 0);
+        BookingEngine engine = persistence.getBookingEngine();
+        SeatHolds holds = new SeatHolds(engine, 60_000, 1000, 0);
+        engine.addListener(holds);
+        holds.hold(1, 3, 0);
+        holds.hold(1, 4, 0);
+        holds.confirm(1, 4);
+        persistence.snapshot(); // the held seat must survive the snapshot
+        holds.hold(2, 5, 0);
+        engine.book(2, 6);
+        BookingJournal journal = persistence.getJournal();
+        journal.awaitDurable(journal.getSequence());
+
+        // Recover without closing, like after a crash
+        FleetPersistence recovered = new FleetPersistence(directory, 2, 10, 1, 1, 0);
+        assertArrayEquals(new long[]{BookingJournal.heldSeat(1, 3), BookingJournal.heldSeat(2, 5)},
+                Arrays.stream(recovered.getHeldSeats()).sorted().toArray());
+        assertEquals(4, recovered.getBookingEngine().getTotalBookedSeats());
+        assertTrue(recovered.getBookingEngine().getSeatStore().isBooked(1, 4));
+        recovered.close();
+        persistence.close();
+    }
+
+    @Test
+    void recoversFromTheSnapshotAndTheJournalTail() throws IOException {
+        FleetPersistence persistence = new FleetPersistence(directory, 2, 10, 1, 1, 0);
+        BookingEngine engine = persistence.getBookingEngine();
+        engine.book(1, 1);
+        engine.book(1, 2);
+        persistence.snapshot();
+        engine.cancel(1, 1);
+        engine.book(2, 7);
+        engine.book(2, 8);
+        persistence.awaitBookingsDurable();
+
+        FleetPersistence recovered = new FleetPersistence(directory, 2, 10, 1, 1, 0);
+        SeatStore seats = recovered.getBookingEngine().getSeatStore();
+        assertEquals(3, recovered.getReplayedRecords()); // only the tail after the snapshot
+        assertFalse(seats.isBooked(1, 1));
+        assertTrue(seats.isBooked(1, 2));
+        assertTrue(seats.isBooked(2, 7));
+        assertTrue(seats.isBooked(2, 8));
+        assertEquals(3, recovered.getBookingEngine().getTotalBookedSeats());
+        recovered.close();
+        persistence.close();
+    }
+
+    @Test
+    void cutsOffATornFinalRecord() throws IOException {
+        FleetPersistence persistence = new FleetPersistence(directory, 2, 10, 1, 1, 0);
+        BookingEngine engine = persistence.getBookingEngine();
+        engine.book(1, 1);
+        engine.book(2, 2);
+        persistence.awaitBookingsDurable();
+        Path segment = lastSegment();
+        // A crash in the middle of a write leaves part of a record
+        Files.write(segment, new byte[]{BookingJournal.BOOK, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        FleetPersistence recovered = new FleetPersistence(directory, 2, 10, 1, 1, 0);
+        assertEquals(2, recovered.getReplayedRecords());
+        assertEquals(2, recovered.getBookingEngine().getTotalBookedSeats());
+        assertEquals(2L * BookingJournal.RECORD_SIZE, Files.size(segment));
+
+        // Records written after the cut are read back whole
+        recovered.getBookingEngine().book(2, 3);
+        recovered.awaitBookingsDurable();
+        FleetPersistence again = new FleetPersistence(directory, 2, 10, 1, 1, 0);
+        assertEquals(3, again.getReplayedRecords());
+        assertTrue(again.getBookingEngine().getSeatStore().isBooked(2, 3));
+        again.close();
+        recovered.close();
+        persistence.close();
+    }
+
+    @Test
+    void recoversAfterTheSnapshotRollsTheSegment() throws IOException {
+        FleetPersistence persistence = new FleetPersistence(directory, 2, 10, 1, 1, 0);
+        BookingEngine engine = persistence.getBookingEngine();
+        engine.book(1, 1);
+        engine.book(1, 2);
+        persistence.snapshot();
+        engine.book(1, 3);
+        persistence.snapshot();
+        engine.reset(1);
+        engine.book(2, 4);
+        persistence.awaitBookingsDurable();
+
+        // The snapshot replaces the segments and snapshots before it
+        List<Long> segments = FleetPersistence.listSequences(directory, BookingJournal.SEGMENT_PREFIX, BookingJournal.SEGMENT_SUFFIX);
+        List<Long> snapshots = FleetPersistence.listSequences(directory, SeatSnapshot.SNAPSHOT_PREFIX, SeatSnapshot.SNAPSHOT_SUFFIX);
+        assertEquals(List.of(3L), segments);
+        assertEquals(List.of(3L), snapshots);
+
+        FleetPersistence recovered = new FleetPersistence(directory, 2, 10, 1, 1, 0);
+        SeatStore seats = recovered.getBookingEngine().getSeatStore();
+        assertEquals(2, recovered.getReplayedRecords());
+        assertEquals(1, recovered.getBookingEngine().getTotalBookedSeats());
+        assertTrue(seats.isBooked(2, 4));
+        assertFalse(seats.isBooked(1, 3));
+        recovered.close();
+        persistence.close();
+    }
+
+    private Path lastSegment() throws IOException {
+        List<Long> segments = FleetPersistence.listSequences(directory, BookingJournal.SEGMENT_PREFIX, BookingJournal.SEGMENT_SUFFIX);
+        return BookingJournal.segmentPath(directory, segments.get(segments.size() - 1));
+    }
+}
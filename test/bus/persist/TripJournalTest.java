@@ -0,0 +1,77 @@
+package bus.persist;
+
+import bus.BookingResult;
+import bus.trip.TripInventory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TripJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversTheTripsFromTheSnapshotAndTheLog() throws IOException {
+        TripInventory inventory = new TripInventory(10, 100);
+        TripJournal journal = new TripJournal(directory, inventory);
+        inventory.addListener(journal);
+        inventory.book(1, 600, 1);
+        inventory.book(2, 1200, 99);
+        journal.snapshot(inventory);
+        inventory.book(3, 1200, 70);
+        inventory.cancel(2, 1200, 99);
+        inventory.evictDepartedBefore(1000, null);
+        journal.close();
+
+        TripInventory recovered = new TripInventory(10, 100);
+        new TripJournal(directory, recovered).close();
+        assertEquals(1000, recovered.getEvictedBefore());
+        assertEquals(1, recovered.getStoredTrips());
+        assertTrue(recovered.isBooked(3, 1200, 70));
+        assertFalse(recovered.isBooked(2, 1200, 99));
+        assertEquals(BookingResult.BOOKED, recovered.book(2, 1200, 99));
+    }
+
+    @Test
+    void rejectsSalesAfterAFailedFlush() throws IOException {
+        TripInventory inventory = new TripInventory(10, 100);
+        TripJournal journal = new TripJournal(directory, inventory);
+        inventory.addListener(journal);
+        inventory.book(1, 600, 1);
+
+        // An interrupted write closes the log, like a disk that went away
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(IOException.class, journal::flush);
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertThrows(UncheckedIOException.class, () -> inventory.book(1, 600, 2));
+        assertFalse(inventory.isBooked(1, 600, 2));
+        assertThrows(UncheckedIOException.class, () -> inventory.cancel(1, 600, 1));
+        assertTrue(inventory.isBooked(1, 600, 1));
+        assertEquals(1, inventory.getBookedSeats(1, 600));
+        assertThrows(IOException.class, journal::flush);
+        assertThrows(IOException.class, journal::close);
+    }
+
+    @Test
+    void startsEmptyInANewDirectory() throws IOException {
+        TripInventory inventory = new TripInventory(10, 100);
+        TripJournal journal = new TripJournal(directory, inventory);
+        journal.close();
+
+        assertEquals(0, journal.getReplayedRecords());
+        assertEquals(0, inventory.getStoredTrips());
+    }
+}
@@ -0,0 +1,92 @@
+package bus.query;
+
+import bus.BookingEngine;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FreeSeatIndexTest {
+
+    // More buses than one block of every partition, so the searches merge several partitions
+    private final BookingEngine engine = new BookingEngine(200, 10);
+    private final FreeSeatIndex index = new FreeSeatIndex(engine);
+
+    @Test
+    void movesBusesOnBookCancelAndReset() {
+        engine.book(70, 1);
+        engine.book(70, 2);
+        engine.book(70, 3);
+        assertEquals(7, index.getFreeSeats(70));
+        engine.cancel(70, 2);
+        assertEquals(8, index.getFreeSeats(70));
+        engine.bookSeats(150, new int[]{4, 5});
+        engine.cancelSeats(150, new int[]{4});
+        assertEquals(9, index.getFreeSeats(150));
+        engine.reset(70);
+        assertEquals(10, index.getFreeSeats(70));
+        assertEquals(199, index.findBusesWithFreeSeats(10).length);
+    }
+
+    @Test
+    void findsBusesWithRoomForAGroup() {
+        for (int seatNumber = 1; seatNumber <= 6; seatNumber++) {
+            engine.book(3, seatNumber);
+            engine.book(130, seatNumber);
+        }
+        engine.book(199, 1);
+
+        int[] roomForFive = index.findBusesWithFreeSeats(5);
+        assertEquals(198, roomForFive.length);
+        assertEquals(1, roomForFive[0]);
+        assertEquals(200, roomForFive[roomForFive.length - 1]);
+        assertArrayEquals(new int[0], Arrays.stream(roomForFive).filter(busId -> busId == 3 || busId == 130).toArray());
+        assertEquals(200, index.findBusesWithFreeSeats(0).length);
+        assertEquals(200, index.findBusesWithFreeSeats(4).length);
+        assertThrows(IllegalArgumentException.class, () -> index.findBusesWithFreeSeats(11));
+    }
+
+    @Test
+    void findsTheEmptiestAndFullestBuses() {
+        for (int seatNumber = 1; seatNumber <= 10; seatNumber++) {
+            engine.book(150, seatNumber);
+            engine.book(66, seatNumber);
+        }
+        engine.book(2, 1);
+        engine.book(2, 2);
+        for (int busId = 1; busId <= 200; busId++) {
+            if (busId != 2 && busId != 66 && busId != 150 && busId != 180) {
+                engine.book(busId, 1);
+            }
+        }
+
+        assertArrayEquals(new int[]{180}, index.findEmptiestBuses(1));
+        int[] fullest = index.findFullestBuses(3);
+        assertArrayEquals(new int[]{66, 150}, Arrays.stream(fullest, 0, 2).sorted().toArray());
+        assertEquals(2, fullest[2]);
+        assertEquals(200, index.findEmptiestBuses(500).length);
+        assertEquals(2, index.findEmptiestBuses(200)[197]);
+        assertArrayEquals(new int[0], index.findFullestBuses(0));
+        assertThrows(IllegalArgumentException.class, () -> index.findEmptiestBuses(-1));
+        assertThrows(IllegalArgumentException.class, () -> index.findFullestBuses(-1));
+    }
+
+    @Test
+    void findsTheBusesWhereASeatIsFree() {
+        for (int busId = 1; busId <= 200; busId++) {
+            if (busId != 64 && busId != 65 && busId != 200) {
+                engine.book(busId, 7);
+            }
+        }
+
+        assertArrayEquals(new int[]{64, 65, 200}, index.findBusesWithSeatFree(7));
+        engine.reset(65);
+        engine.cancel(1, 7);
+        assertArrayEquals(new int[]{1, 64, 65, 200}, index.findBusesWithSeatFree(7));
+        assertEquals(200, index.findBusesWithSeatFree(8).length);
+        assertThrows(IllegalArgumentException.class, () -> index.findBusesWithSeatFree(0));
+    }
+}
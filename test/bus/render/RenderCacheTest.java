@@ -0,0 +1,118 @@
+package bus.render;
+
+import bus.BookingEngine;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RenderCacheTest {
+
+    private static RenderCache cache(BookingEngine engine, int pageSize, long maxChars) {
+        RenderCache cache = new RenderCache(new FleetRenderer(engine, pageSize), engine.getNumberOfBuses(), pageSize, maxChars);
+        engine.addListener(cache);
+        return cache;
+    }
+
+    @Test
+    void showsAnUnchangedTableFromTheCache() {
+        BookingEngine engine = new BookingEngine(4, 10);
+        RenderCache cache = cache(engine, 2, Long.MAX_VALUE);
+
+        CharSequence bus = cache.renderBus(1, null);
+        CharSequence page = cache.renderPage(1);
+        assertSame(bus, cache.renderBus(1, null));
+        assertSame(page, cache.renderPage(1));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getStale());
+
+        // a change of a bus on another page leaves both tables current
+        engine.book(3, 1);
+        assertSame(bus, cache.renderBus(1, null));
+        assertSame(page, cache.renderPage(1));
+        assertEquals(4, cache.getHits());
+    }
+
+    @Test
+    void rendersAgainAfterEveryBookCancelAndReset() {
+        BookingEngine engine = new BookingEngine(4, 10);
+        RenderCache cache = cache(engine, 2, Long.MAX_VALUE);
+        FleetRenderer renderer = new FleetRenderer(engine, 2);
+        cache.renderBus(2, null);
+        cache.renderPage(1);
+
+        engine.book(2, 5);
+        assertEquals(renderer.renderBus(2, null).toString(), cache.renderBus(2, null).toString());
+        assertEquals(renderer.renderPage(1).toString(), cache.renderPage(1).toString());
+        engine.cancel(2, 5);
+        assertEquals(renderer.renderBus(2, null).toString(), cache.renderBus(2, null).toString());
+        assertEquals(renderer.renderPage(1).toString(), cache.renderPage(1).toString());
+        engine.book(2, 7);
+        engine.reset(2);
+        assertEquals(renderer.renderBus(2, null).toString(), cache.renderBus(2, null).toString());
+        assertEquals(renderer.renderPage(1).toString(), cache.renderPage(1).toString());
+
+        assertEquals(0, cache.getHits());
+        assertEquals(8, cache.getMisses());
+        assertEquals(6, cache.getStale());
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    void comparesTheHeldSeats() {
+        BookingEngine engine = new BookingEngine(1, 10);
+        RenderCache cache = cache(engine, 1, Long.MAX_VALUE);
+        engine.book(1, 4);
+
+        CharSequence booked = cache.renderBus(1, null);
+        // a confirmed hold leaves the version unchanged, only the held seats tell the tables apart
+        CharSequence held = cache.renderBus(1, new long[]{1L << 3});
+        assertNotEquals(booked.toString(), held.toString());
+        assertSame(held, cache.renderBus(1, new long[]{1L << 3}));
+        assertNotEquals(held.toString(), cache.renderBus(1, null).toString());
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(2, cache.getStale());
+    }
+
+    @Test
+    void dropsTheLeastRecentlyUsedTables() {
+        BookingEngine engine = new BookingEngine(4, 10);
+        int length = new FleetRenderer(engine, 1).renderBus(1, null).length();
+        RenderCache cache = cache(engine, 1, 2L * length);
+
+        cache.renderBus(1, null);
+        cache.renderBus(2, null);
+        cache.renderBus(1, null); // bus 2 is now the least recently used
+        cache.renderBus(3, null);
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2L * length, cache.getCachedChars());
+
+        long hits = cache.getHits();
+        cache.renderBus(1, null);
+        assertEquals(hits + 1, cache.getHits());
+        cache.renderBus(2, null);
+        assertEquals(hits + 1, cache.getHits());
+        assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    void keepsATableLargerThanTheWholeCache() {
+        BookingEngine engine = new BookingEngine(2, 10);
+        RenderCache cache = cache(engine, 1, 10);
+
+        CharSequence first = cache.renderBus(1, null);
+        assertEquals(1, cache.getSize());
+        assertEquals(first.length(), cache.getCachedChars());
+        assertSame(first, cache.renderBus(1, null));
+
+        // the next large table replaces it
+        CharSequence second = cache.renderBus(2, null);
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(second.length(), cache.getCachedChars());
+    }
+}
@@ -0,0 +1,128 @@
+package bus.replay;
+
+import bus.BookingEngine;
+import bus.persist.BookingJournal;
+import bus.replay.EventReplayer.Rejection;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventReplayerTest {
+
+    // Larger than the read buffer of the replayer
+    private static final int LONG_LINE = (1 << 20) + 100;
+
+    @TempDir
+    Path directory;
+
+    private final BookingEngine engine = new BookingEngine(5000, 64);
+    private final EventReplayer replayer = new EventReplayer(engine, 10);
+
+    @Test
+    void readsWindowsLineEndingsAndALastLineWithoutNewline() throws IOException {
+        replay("book,1,1\r\nBOOK,1,2\r\n# a comment\r\n\r\n  cancel,1,1\r\nreset,2\r\nbook,1,3");
+
+        assertEquals(5, replayer.getEvents());
+        assertEquals(0, replayer.getRejectedEvents());
+        assertFalse(engine.getSeatStore().isBooked(1, 1));
+        assertTrue(engine.getSeatStore().isBooked(1, 2));
+        assertTrue(engine.getSeatStore().isBooked(1, 3));
+    }
+
+    @Test
+    void countsEveryKindOfRejection() throws IOException {
+        replay("book,1,1\nbook,1,1\n"       // already booked
+                + "cancel,1,2\n"            // already available
+                + "book,5001,1\nbook,0,1\n" // bus out of range
+                + "book,1,65\ncancel,1,0\n" // seat out of range
+                + "fly,1,1\nbook,1\nbook,1,2,3\nbook,x,1\nbook,1,2x\n");
+
+        assertEquals(12, replayer.getEvents());
+        assertEquals(1, replayer.getRejectedEvents(Rejection.ALREADY_BOOKED));
+        assertEquals(1, replayer.getRejectedEvents(Rejection.ALREADY_AVAILABLE));
+        assertEquals(2, replayer.getRejectedEvents(Rejection.INVALID_BUS));
+        assertEquals(2, replayer.getRejectedEvents(Rejection.INVALID_SEAT));
+        assertEquals(5, replayer.getRejectedEvents(Rejection.MALFORMED));
+        assertEquals(11, replayer.getRejectedEvents());
+
+        ByteArrayOutputStream summary = new ByteArrayOutputStream();
+        replayer.printSummary(new PrintStream(summary, true, StandardCharsets.UTF_8));
+        assertTrue(summary.toString(StandardCharsets.UTF_8).contains("line 2: book,1,1 (seat already booked)"));
+    }
+
+    @Test
+    void rejectsNumbersThatOverflow() throws IOException {
+        replay("book,2147483648,1\nbook,1,99999999999\nbook,2147483647,1\n");
+
+        assertEquals(2, replayer.getRejectedEvents(Rejection.MALFORMED));
+        assertEquals(1, replayer.getRejectedEvents(Rejection.INVALID_BUS));
+    }
+
+    @Test
+    void skipsLinesLongerThanTheBuffer() throws IOException {
+        replay("book,1,1\nbook,1," + "1".repeat(LONG_LINE) + "\nbook,1,2\n" + "#".repeat(LONG_LINE) + "\nbook,1,3\n");
+
+        assertEquals(5, replayer.getEvents());
+        assertEquals(2, replayer.getRejectedEvents(Rejection.MALFORMED));
+        assertEquals(3, engine.getBookedSeats(1));
+    }
+
+    @Test
+    void skipsALastLineLongerThanTheBuffer() throws IOException {
+        replay("book,1,1\n" + "x".repeat(LONG_LINE));
+
+        assertEquals(2, replayer.getEvents());
+        assertEquals(1, replayer.getRejectedEvents(Rejection.MALFORMED));
+        assertEquals(1, engine.getBookedSeats(1));
+    }
+
+    @Test
+    void readsLinesSplitOverSeveralReads() throws IOException {
+        StringBuilder events = new StringBuilder();
+        for (int busId = 1; busId <= 5000; busId++) {
+            for (int seatNumber = 1; seatNumber <= 64; seatNumber++) {
+                events.append("book,").append(busId).append(',').append(seatNumber).append('\n');
+            }
+        }
+        replay(events.toString()); // about 4 MB
+
+        assertEquals(320_000, replayer.getEvents());
+        assertEquals(0, replayer.getRejectedEvents());
+        assertEquals(320_000, engine.getTotalBookedSeats());
+    }
+
+    @Test
+    void readsBinaryRecordsSplitOverSeveralReads() throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(320_000 * BookingJournal.RECORD_SIZE + 7);
+        for (int busId = 1; busId <= 5000; busId++) {
+            for (int seatNumber = 1; seatNumber <= 64; seatNumber++) {
+                records.put(seatNumber == 64 ? BookingJournal.HOLD : BookingJournal.BOOK).putInt(busId).putInt(seatNumber);
+            }
+        }
+        records.put(BookingJournal.CANCEL).putInt(1).put((byte) 0).put((byte) 0); // cut off
+        Path file = directory.resolve("events.bin");
+        Files.write(file, records.array());
+        replayer.replay(file);
+
+        assertEquals(320_001, replayer.getEvents());
+        assertEquals(1, replayer.getRejectedEvents(Rejection.MALFORMED));
+        assertEquals(320_000, engine.getTotalBookedSeats());
+    }
+
+    private void replay(String events) throws IOException {
+        Path file = directory.resolve("events.csv");
+        Files.writeString(file, events, StandardCharsets.US_ASCII);
+        replayer.replay(file);
+    }
+}
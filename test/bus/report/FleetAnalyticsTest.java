@@ -0,0 +1,124 @@
+package bus.report;
+
+import bus.SeatStore;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FleetAnalyticsTest {
+
+    @Test
+    void countsLikeALoopOverEverySeat() {
+        // more buses than one task counts and three words per bus
+        int numberOfBuses = 20_000;
+        int numberSeatsPerBus = 150;
+        SeatStore seatStore = new SeatStore(numberOfBuses, numberSeatsPerBus);
+        Random random = new Random(42);
+        for (int busId = 1; busId <= numberOfBuses; busId++) {
+            seatStore.book(busId, 1); // booked on every bus, far beyond what the bit planes count between flushes
+            int share = busId % 7 == 0 ? 100 : random.nextInt(100); // every seventh bus is fully booked
+            for (int seatNumber = 2; seatNumber <= numberSeatsPerBus; seatNumber++) {
+                if (random.nextInt(100) < share) {
+                    seatStore.book(busId, seatNumber);
+                }
+            }
+        }
+
+        long bookedSeats = 0;
+        long[] occupancy = new long[11];
+        long[] seatBookings = new long[numberSeatsPerBus];
+        int fullBuses = 0;
+        for (int busId = 1; busId <= numberOfBuses; busId++) {
+            int booked = 0;
+            for (int seatNumber = 1; seatNumber <= numberSeatsPerBus; seatNumber++) {
+                if (seatStore.isBooked(busId, seatNumber)) {
+                    booked++;
+                    seatBookings[seatNumber - 1]++;
+                }
+            }
+            bookedSeats += booked;
+            occupancy[booked * 10 / numberSeatsPerBus]++;
+            if (booked == numberSeatsPerBus) {
+                fullBuses++;
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            FleetReport report = new FleetAnalytics(seatStore, pool).analyze();
+
+            assertEquals(numberOfBuses, report.getNumberOfBuses());
+            assertEquals(bookedSeats, report.getBookedSeats());
+            assertEquals(seatStore.getTotalBookedSeats(), report.getBookedSeats());
+            assertArrayEquals(occupancy, report.getOccupancy());
+            assertArrayEquals(seatBookings, report.getSeatBookings());
+            assertEquals(numberOfBuses, report.getSeatBookings()[0]);
+            assertEquals(fullBuses, report.getFullBuses());
+            assertEquals(0, report.getEmptyBuses());
+            assertEquals(1, report.getMostBookedSeats(1)[0]);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void writesTheReportAsCsv() throws IOException {
+        SeatStore seatStore = new SeatStore(4, 3);
+        seatStore.book(1, 1);
+        seatStore.book(1, 2);
+        seatStore.book(1, 3);
+        seatStore.book(2, 2);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            StringWriter out = new StringWriter();
+            new FleetAnalytics(seatStore, pool).analyze().writeCsv(out);
+
+            assertEquals("""
+                    section,key,value
+                    summary,buses,4
+                    summary,seats,12
+                    summary,booked_seats,4
+                    summary,occupancy_percent,33.33
+                    summary,fully_booked_buses,1
+                    summary,empty_buses,2
+                    occupancy,0-9%,2
+                    occupancy,10-19%,0
+                    occupancy,20-29%,0
+                    occupancy,30-39%,1
+                    occupancy,40-49%,0
+                    occupancy,50-59%,0
+                    occupancy,60-69%,0
+                    occupancy,70-79%,0
+                    occupancy,80-89%,0
+                    occupancy,90-99%,0
+                    occupancy,100%,1
+                    seat,1,1
+                    seat,2,2
+                    seat,3,1
+                    """, out.toString());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void reportsAnEmptyFleet() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            FleetReport report = new FleetAnalytics(new SeatStore(100, 70), pool).analyze();
+            assertEquals(0, report.getBookedSeats());
+            assertEquals(100, report.getEmptyBuses());
+            assertEquals(0, report.getOccupancyPercent());
+            assertTrue(report.getElapsedNanos() >= 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
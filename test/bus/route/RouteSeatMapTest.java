@@ -0,0 +1,35 @@
+package bus.route;
+
+import bus.BookingResult;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteSeatMapTest {
+
+    @Test
+    void sellsAFreedSeatForTheRestOfTheRoute() {
+        RouteSeatMap routes = new RouteSeatMap(2, 10, 5);
+
+        assertEquals(BookingResult.BOOKED, routes.book(1, 3, 1, 3));
+        assertEquals(BookingResult.ALREADY_BOOKED, routes.book(1, 3, 2, 4));
+        assertEquals(BookingResult.BOOKED, routes.book(1, 3, 3, 5));
+        assertEquals(9, routes.getAvailableSeats(1, 1, 5));
+        assertEquals(10, routes.getAvailableSeats(2, 1, 5)); // nothing held on the other bus
+        assertEquals(BookingResult.ALREADY_AVAILABLE, routes.cancel(2, 3, 1, 2));
+    }
+
+    @Test
+    void followsTheBookingsWithoutStops() {
+        RouteSeatMap routes = new RouteSeatMap(1_000_000, 1000, 64); // a full array would take 8 GB
+
+        routes.seatBooked(999_999, 1000);
+        assertTrue(routes.isSeatHeld(999_999, 1000));
+        assertEquals(1, routes.findBestFitSeat(999_999, 1, 64));
+        routes.busReset(999_999, null);
+        assertFalse(routes.isSeatHeld(999_999, 1000));
+        assertEquals(1000, routes.getAvailableSeats(999_999, 1, 64));
+    }
+}
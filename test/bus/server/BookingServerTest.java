@@ -0,0 +1,70 @@
+package bus.server;
+
+import bus.BookingEngine;
+import bus.BookingListener;
+import bus.trip.TripInventory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookingServerTest {
+
+    private final BookingEngine engine = new BookingEngine(2, 10);
+    private final HttpClient client = HttpClient.newHttpClient();
+    private BookingServer server;
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void answersOnlyThePathsOfTheApi() throws Exception {
+        start();
+
+        assertEquals(200, post("/buses/1/seats/3/book").statusCode());
+        assertEquals(409, post("/buses/1/seats/3/book").statusCode());
+        HttpResponse<String> unknown = post("/busesX/1/seats/4/book");
+        assertEquals(404, unknown.statusCode());
+        assertTrue(unknown.body().startsWith("{\"error\":"));
+        assertEquals(404, post("/tripsX/1/2026-10-18T08:30/seats/4/book").statusCode());
+        assertFalse(engine.getSeatStore().isBooked(1, 4));
+    }
+
+    @Test
+    void answersAFailedChangeWithAServerError() throws Exception {
+        engine.addListener(new BookingListener() {
+            @Override
+            public void seatBooked(int busId, int seatNumber) {
+                throw new IllegalStateException("journal failed");
+            }
+        });
+        start();
+
+        HttpResponse<String> response = post("/buses/2/seats/5/book");
+        assertEquals(500, response.statusCode());
+        assertEquals("{\"error\":\"The request failed: journal failed\"}", response.body());
+        assertFalse(engine.getSeatStore().isBooked(2, 5));
+    }
+
+    private void start() throws IOException {
+        server = new BookingServer(engine, new TripInventory(2, 10), null, null, 0);
+        server.start();
+    }
+
+    private HttpResponse<String> post(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,128 @@
+package bus.shard;
+
+import bus.BookingEngine;
+import bus.BookingResult;
+import bus.query.FreeSeatIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardRouterTest {
+
+    // Buses 1-3 are on the first shard, buses 4-5 on the second
+    private final BookingEngine first = new BookingEngine(3, 10);
+    private final BookingEngine second = new BookingEngine(2, 10);
+    private final ShardServer firstServer = start(first);
+    private final ShardServer secondServer = start(second);
+
+    @AfterEach
+    void stop() {
+        firstServer.stop();
+        secondServer.stop();
+    }
+
+    @Test
+    void forwardsEveryChangeToTheShardOfTheBus() throws IOException {
+        try (ShardRouter router = new ShardRouter(addresses(firstServer, secondServer))) {
+            assertEquals(5, router.getNumberOfBuses());
+            assertEquals(10, router.getNumberSeatsPerBus());
+
+            assertEquals(BookingResult.BOOKED, router.book(4, 3));
+            assertEquals(BookingResult.ALREADY_BOOKED, router.book(4, 3));
+            assertTrue(second.getSeatStore().isBooked(1, 3));
+            assertFalse(first.getSeatStore().isBooked(1, 3));
+            assertEquals(BookingResult.CANCELED, router.cancel(4, 3));
+            assertEquals(BookingResult.ALREADY_AVAILABLE, router.cancel(4, 3));
+
+            assertEquals(BookingResult.BOOKED, router.bookSeats(3, new int[]{1, 2}));
+            assertEquals(BookingResult.BOOKED, router.bookSeats(5, new int[]{1, 2, 3}));
+            assertEquals(2, first.getBookedSeats(3));
+            assertEquals(3, second.getBookedSeats(2));
+            assertEquals(BookingResult.RESET, router.reset(5));
+            assertEquals(0, second.getBookedSeats(2));
+            assertEquals(1, router.findFirstAvailableSeat(5));
+        }
+    }
+
+    @Test
+    void gathersTheCountersOfAllShards() throws IOException {
+        first.book(1, 1);
+        first.book(2, 1);
+        first.book(2, 2);
+        for (int seatNumber = 1; seatNumber <= 10; seatNumber++) {
+            second.book(2, seatNumber);
+        }
+        try (ShardRouter router = new ShardRouter(addresses(firstServer, secondServer))) {
+            assertEquals(13, router.getTotalBookedSeats());
+            int[] bookedSeats = new int[5];
+            router.copyBookedSeats(new int[]{5, 1, 4, 2, 3}, 5, bookedSeats);
+            assertArrayEquals(new int[]{10, 1, 0, 2, 0}, bookedSeats);
+            assertEquals(8, router.getAvailableSeats(2));
+
+            assertArrayEquals(new int[]{1, 2, 3, 4}, router.findBusesWithFreeSeats(8));
+            assertArrayEquals(new int[]{5}, router.findFullestBuses(1));
+            assertEquals(2, router.findFullestBuses(2)[1]);
+            assertArrayEquals(new int[]{1, 3, 4}, router.findBusesWithSeatFree(2));
+            assertArrayEquals(new int[]{1, 2, 5}, Arrays.copyOfRange(router.findEmptiestBuses(5), 2, 5));
+        }
+    }
+
+    @Test
+    void closesItsConnectionsWhenAShardIsDown() throws Exception {
+        ShardServer downServer = start(new BookingEngine(2, 10));
+        downServer.stop();
+
+        assertThrows(IOException.class, () -> new ShardRouter(addresses(firstServer, downServer)));
+        awaitNoConnections(firstServer);
+        assertEquals(0, firstServer.getConnectionCount());
+    }
+
+    @Test
+    void closesItsConnectionsWhenTheShardsDoNotMatch() throws Exception {
+        ShardServer otherServer = start(new BookingEngine(2, 20));
+        try {
+            IOException e = assertThrows(IOException.class, () -> new ShardRouter(addresses(firstServer, otherServer)));
+            assertTrue(e.getMessage().contains("seats per bus"));
+            awaitNoConnections(firstServer);
+            awaitNoConnections(otherServer);
+            assertEquals(0, firstServer.getConnectionCount());
+            assertEquals(0, otherServer.getConnectionCount());
+        } finally {
+            otherServer.stop();
+        }
+    }
+
+    /**
+     * Waits a while for a shard to notice the closed connections on its own threads.
+     */
+    private static void awaitNoConnections(ShardServer server) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (server.getConnectionCount() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static ShardServer start(BookingEngine engine) {
+        try {
+            ShardServer server = new ShardServer(engine, new FreeSeatIndex(engine), 0);
+            server.start();
+            return server;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<InetSocketAddress> addresses(ShardServer... servers) {
+        return Arrays.stream(servers).map(server -> new InetSocketAddress("localhost", server.getPort())).toList();
+    }
+}
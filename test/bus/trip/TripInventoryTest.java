@@ -0,0 +1,72 @@
+package bus.trip;
+
+import bus.BookingResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TripInventoryTest {
+
+    @Test
+    void keepsTheSeatsOfEveryTripApart() {
+        TripInventory inventory = new TripInventory(2, 70);
+
+        assertEquals(BookingResult.BOOKED, inventory.book(1, 600, 65));
+        assertEquals(BookingResult.ALREADY_BOOKED, inventory.book(1, 600, 65));
+        assertEquals(BookingResult.BOOKED, inventory.book(1, 660, 65));
+        assertEquals(BookingResult.BOOKED, inventory.book(2, 600, 65));
+        assertEquals(3, inventory.getStoredTrips());
+
+        assertEquals(BookingResult.CANCELED, inventory.cancel(1, 660, 65));
+        assertEquals(BookingResult.ALREADY_AVAILABLE, inventory.cancel(1, 660, 65));
+        assertEquals(2, inventory.getStoredTrips()); // the trip without bookings gave its slot back
+        assertEquals(69, inventory.getAvailableSeats(1, 600));
+    }
+
+    @Test
+    void evictsOnlyDepartedTripsInDepartureOrder() throws IOException {
+        TripInventory inventory = new TripInventory(100, 10);
+        SplittableRandom random = new SplittableRandom(4);
+        for (int i = 0; i < 5000; i++) {
+            int busId = random.nextInt(100) + 1;
+            long departureMinute = random.nextInt(1000);
+            int seatNumber = random.nextInt(10) + 1;
+            if (!inventory.book(busId, departureMinute, seatNumber).isSuccess()) {
+                inventory.cancel(busId, departureMinute, seatNumber); // leaves keys of empty trips behind
+            }
+        }
+        long storedTrips = inventory.getStoredTrips();
+
+        List<Long> departures = new ArrayList<>();
+        int evicted = inventory.evictDepartedBefore(500, (busId, departureMinute, bookedSeats, seatWords) -> {
+            assertTrue(departureMinute < 500);
+            assertEquals(bookedSeats, Long.bitCount(seatWords[0]));
+            departures.add(departureMinute);
+        });
+        int later = inventory.evictDepartedBefore(1000, null);
+
+        assertEquals(evicted, departures.size());
+        for (int i = 1; i < departures.size(); i++) {
+            assertTrue(departures.get(i - 1) <= departures.get(i), "archived out of order");
+        }
+        assertEquals(storedTrips, evicted + later);
+        assertEquals(0, inventory.getStoredTrips());
+    }
+
+    @Test
+    void neverMovesTheFirstBookableDepartureBack() throws IOException {
+        TripInventory inventory = new TripInventory(1, 10);
+        inventory.evictDepartedBefore(500, null);
+
+        assertEquals(0, inventory.evictDepartedBefore(100, null));
+        assertEquals(500, inventory.getEvictedBefore());
+        assertThrows(IllegalArgumentException.class, () -> inventory.book(1, 300, 1));
+    }
+}